@@ -0,0 +1,29 @@
+package org.rmatil.sync.network.api;
+
+/**
+ * A request which transports a single chunk of a larger payload.
+ * <p>
+ * The receiving node keeps track of all chunks it has received for
+ * the exchange of the request, so that a transfer which got interrupted
+ * can be resumed by sending only the chunks which are still missing.
+ * Furthermore, the chunk counter distinguishes the requests of an exchange
+ * from retries, which are dropped by the receiver.
+ *
+ * @see org.rmatil.sync.network.core.messaging.ChunkProgressTracker
+ */
+public interface IChunkedRequest extends IRequest {
+
+    /**
+     * Returns the zero-based number of the chunk which is transported by this request
+     *
+     * @return The chunk counter
+     */
+    long getChunkCounter();
+
+    /**
+     * Returns the total number of chunks of the exchange
+     *
+     * @return The total number of chunks
+     */
+    long getTotalNrOfChunks();
+}
@@ -0,0 +1,26 @@
+package org.rmatil.sync.network.api;
+
+import org.rmatil.sync.network.core.model.FileChunk;
+
+import java.io.IOException;
+
+/**
+ * The counterpart of {@link IResponseCallback} for file exchanges:
+ * Invoked by the object data reply handler for each chunk of a file
+ * which is received for the exchange the callback is registered to.
+ *
+ * @see org.rmatil.sync.network.core.messaging.ObjectDataReplyHandler#addFileChunkCallback(java.util.UUID, IFileChunkCallback)
+ */
+public interface IFileChunkCallback {
+
+    /**
+     * Should be called from the object data reply handler, once
+     * he receives a chunk of the file exchange this callback is registered to.
+     *
+     * @param fileChunk The received chunk
+     *
+     * @throws IOException If handling the chunk failed
+     */
+    void onFileChunk(FileChunk fileChunk)
+            throws IOException;
+}
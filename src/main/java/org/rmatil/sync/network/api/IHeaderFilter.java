@@ -0,0 +1,24 @@
+package org.rmatil.sync.network.api;
+
+import net.tomp2p.peers.PeerAddress;
+import org.rmatil.sync.network.core.model.MessageHeader;
+
+/**
+ * A filter which is consulted with the unencrypted header of an incoming
+ * message before it is decrypted. Rejected messages are dropped without
+ * spending any work on decrypting them.
+ *
+ * @see org.rmatil.sync.network.core.messaging.EncryptedDataReplyHandler#addHeaderFilter(IHeaderFilter)
+ */
+public interface IHeaderFilter {
+
+    /**
+     * Decides whether the message with the given header should be processed
+     *
+     * @param sender The address of the peer which has sent the message
+     * @param header The unencrypted header of the message
+     *
+     * @return True, if the message should be decrypted and processed, false if it should be dropped
+     */
+    boolean accept(PeerAddress sender, MessageHeader header);
+}
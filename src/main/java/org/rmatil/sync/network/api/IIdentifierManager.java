@@ -1,9 +1,21 @@
 package org.rmatil.sync.network.api;
 
+import org.rmatil.sync.network.core.model.BulkResult;
 import org.rmatil.sync.persistence.exceptions.InputOutputException;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+
 /**
- * An interface for a key-value-value-key store
+ * An interface for a key-value-value-key store.
+ * <p>
+ * Each operation is available as asynchronous variant as well, returning a stage
+ * which is completed exceptionally with an {@link InputOutputException}, if accessing
+ * the storage layer failed. The variants do not block the caller, but the storage layer
+ * is blocking, therefore they run on the bounded pool of {@link org.rmatil.sync.network.core.AsyncStorageExecutor}:
+ * At most {@link org.rmatil.sync.network.core.AsyncStorageExecutor#getMaxConcurrentOperations()} operations
+ * access the DHT at once, further ones are queued.
  *
  * @param <K> The type of the key
  * @param <V> The type of the value
@@ -33,7 +45,8 @@ public interface IIdentifierManager<K, V> {
 
     /**
      * Moves the value associated with the given old key
-     * to the location associated with the new key
+     * to the location associated with the new key.
+     * Moving a key to itself leaves the identifier unchanged
      *
      * @param oldKey The old key
      * @param newKey The new key
@@ -66,4 +79,92 @@ public interface IIdentifierManager<K, V> {
      */
     K getKey(V value)
             throws InputOutputException;
+
+    /**
+     * Add the given value to the specified key without blocking the caller
+     *
+     * @param key   The key to use
+     * @param value The value to use
+     *
+     * @return A stage completed once the pair has been added
+     */
+    CompletionStage<Void> addIdentifierAsync(K key, V value);
+
+    /**
+     * Remove the key-value pair from the manager without blocking the caller
+     *
+     * @param key The key to remove
+     *
+     * @return A stage completed once the pair has been removed
+     */
+    CompletionStage<Void> removeIdentifierAsync(K key);
+
+    /**
+     * Moves the value associated with the given old key
+     * to the location associated with the new key without blocking the caller
+     *
+     * @param oldKey The old key
+     * @param newKey The new key
+     *
+     * @return A stage completed once the value has been moved
+     */
+    CompletionStage<Void> moveKeyAsync(K oldKey, K newKey);
+
+    /**
+     * Get the value of the given key without blocking the caller
+     *
+     * @param key The key from which to get the value
+     *
+     * @return A stage completed with the found value, or null, if the key was not found
+     */
+    CompletionStage<V> getValueAsync(K key);
+
+    /**
+     * Get the key of the given value without blocking the caller
+     *
+     * @param value The value from which to get its key
+     *
+     * @return A stage completed with the found key, or null, if the value was not found
+     */
+    CompletionStage<K> getKeyAsync(V value);
+
+    /**
+     * Adds all given key-value pairs. The pairs are added concurrently,
+     * a failure of one pair does not affect the others.
+     *
+     * @param identifiers The key-value pairs to add
+     *
+     * @return The added pairs and the keys which could not be added
+     */
+    BulkResult<K, V> addIdentifiers(Map<K, V> identifiers);
+
+    /**
+     * Removes the key-value pairs of all given keys. The pairs are removed concurrently,
+     * a failure of one pair does not affect the others.
+     *
+     * @param keys The keys to remove
+     *
+     * @return The removed keys and the keys which could not be removed
+     */
+    BulkResult<K, Void> removeIdentifiers(Collection<K> keys);
+
+    /**
+     * Gets the values of all given keys concurrently
+     *
+     * @param keys The keys from which to get the values
+     *
+     * @return The found values, resp. null for keys which have not been found,
+     * and the keys which could not be looked up
+     */
+    BulkResult<K, V> getValues(Collection<K> keys);
+
+    /**
+     * Gets the keys of all given values concurrently
+     *
+     * @param values The values from which to get their keys
+     *
+     * @return The found keys, resp. null for values which have not been found,
+     * and the values which could not be looked up
+     */
+    BulkResult<V, K> getKeys(Collection<V> values);
 }
@@ -1,5 +1,6 @@
 package org.rmatil.sync.network.api;
 
+import org.rmatil.sync.network.core.CompletionPolicy;
 import org.rmatil.sync.network.core.exception.ConnectionFailedException;
 
 import java.util.concurrent.Callable;
@@ -31,7 +32,7 @@ public interface INetworkHandler<T> extends Runnable {
             throws ConnectionFailedException;
 
     /**
-     * Blocks until all notified clients have responded
+     * Blocks until the notified clients have responded as required by the completion policy
      *
      * @throws InterruptedException If the thread got interrupted while waiting
      */
@@ -50,9 +51,42 @@ public interface INetworkHandler<T> extends Runnable {
             throws InterruptedException;
 
     /**
-     * Returns true once all notified clients have responded.
+     * Gives up on the exchange: Sends a cancellation notice to all notified clients,
+     * so that their request callbacks of this exchange abort, and releases
+     * all threads waiting for responses.
+     */
+    void cancel();
+
+    /**
+     * Returns true, if the exchange has been cancelled.
+     *
+     * @return True, if {@link INetworkHandler#cancel()} has been called
+     */
+    boolean isCancelled();
+
+    /**
+     * Sets the policy deciding after how many responses the exchange is completed.
+     * Must be set before the request is sent.
+     *
+     * @param completionPolicy The completion policy
+     *
+     * @throws IllegalStateException If the request has already been sent
+     */
+    void setCompletionPolicy(CompletionPolicy completionPolicy);
+
+    /**
+     * Returns the policy deciding after how many responses the exchange is completed.
+     * Defaults to {@link CompletionPolicy#ALL}.
+     *
+     * @return The completion policy
+     */
+    CompletionPolicy getCompletionPolicy();
+
+    /**
+     * Returns true once the notified clients have responded as required by the completion policy.
+     * The result of the exchange is available from then on.
      *
-     * @return True, if all notified clients have responded, false otherwise.
+     * @return True, if the completion policy is satisfied, false otherwise.
      */
     boolean isCompleted();
 
@@ -2,14 +2,23 @@ package org.rmatil.sync.network.api;
 
 import net.tomp2p.futures.FutureDirect;
 import net.tomp2p.peers.PeerAddress;
+import org.rmatil.sync.network.core.CircuitBreaker;
+import org.rmatil.sync.network.core.LivenessMonitor;
+import org.rmatil.sync.network.core.RttEstimator;
 import org.rmatil.sync.network.core.exception.ConnectionException;
+import org.rmatil.sync.network.core.exception.CircuitOpenException;
 import org.rmatil.sync.network.core.exception.ConnectionFailedException;
 import org.rmatil.sync.network.core.exception.ObjectSendFailedException;
 import org.rmatil.sync.network.core.messaging.ObjectDataReplyHandler;
 import org.rmatil.sync.network.core.model.NodeLocation;
 
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 import java.security.InvalidKeyException;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A node of a particular user
@@ -72,6 +81,29 @@ public interface INode {
      */
     ObjectDataReplyHandler getObjectDataReplyHandler();
 
+    /**
+     * Returns the estimator of the round trip times to other peers,
+     * from which the timeouts to wait for messages to them are derived
+     *
+     * @return The round trip time estimator
+     */
+    RttEstimator getRttEstimator();
+
+    /**
+     * Returns the circuit breaker shared by all senders of this node, which
+     * makes messages to peers known to be unreachable fail immediately
+     *
+     * @return The circuit breaker
+     */
+    CircuitBreaker getCircuitBreaker();
+
+    /**
+     * Returns the monitor which pings the other nodes of the user in the background
+     *
+     * @return The liveness monitor, or null if the node is not started
+     */
+    LivenessMonitor getLivenessMonitor();
+
     /**
      * Returns the uuid of this node's device
      *
@@ -120,15 +152,136 @@ public interface INode {
     /**
      * Sends the given object to the specified peer address.
      * Note, that you still have to call {@link FutureDirect#await()} on it.
+     * <p>
+     * If too many messages are already in flight towards the node, the calling thread blocks
+     * until one of them has been replied, but at most {@link org.rmatil.sync.network.core.FlowController#MAX_WAITING_TIME}.
+     * Since these replies are delivered on the network threads, this must not be called from a listener
+     * of a {@link FutureDirect} or any other callback running on them. Hand such messages to another thread instead.
      *
      * @param receiverAddress The location of the node to which the object should be sent
      * @param data            The data to send to the node
      *
      * @return The Future. Note, that you have to await until this future is complete
      *
-     * @throws ObjectSendFailedException If sending the object to the node failed
+     * @throws ObjectSendFailedException If sending the object to the node failed or no message in flight has been replied in time
+     * @throws CircuitOpenException      If the node is known to be unreachable
      */
     FutureDirect sendDirect(NodeLocation receiverAddress, Object data)
             throws ObjectSendFailedException;
 
+    /**
+     * Sends the given object to the specified peer address along with the given deadline.
+     * The receiver drops the object instead of processing it, if it arrives or
+     * would be processed after the deadline has passed.
+     * Note, that you still have to call {@link FutureDirect#await()} on it.
+     *
+     * @param receiverAddress The location of the node to which the object should be sent
+     * @param data            The data to send to the node
+     * @param deadline        The absolute time after which the object should not be processed anymore (in milliseconds since the epoch). 0 for none
+     *
+     * @return The Future. Note, that you have to await until this future is complete
+     *
+     * @throws ObjectSendFailedException If sending the object to the node failed
+     */
+    FutureDirect sendDirect(NodeLocation receiverAddress, Object data, long deadline)
+            throws ObjectSendFailedException;
+
+    /**
+     * Sends the given request to the specified node and returns its response
+     * as reply of the same direct message. The receiving node must have registered an
+     * {@link ISyncRequestCallback} for the class of the request on its {@link ObjectDataReplyHandler}.
+     * No {@link IResponseCallback} has to be registered for the exchange.
+     * If the callback does not respond right away, the request is sent again periodically
+     * until the node replies with the response, but at most for {@link org.rmatil.sync.network.core.Node#MAX_REPLY_WAITING_TIME}.
+     *
+     * @param receiverAddress The location of the node to which the request should be sent
+     * @param request         The request to send
+     *
+     * @return A future completed with the response of the node, or completed exceptionally if no valid response has been received
+     *
+     * @throws ObjectSendFailedException If sending the request to the node failed
+     */
+    CompletableFuture<IResponse> sendRequest(NodeLocation receiverAddress, IRequest request)
+            throws ObjectSendFailedException;
+
+    /**
+     * Sends the given request to one of the specified nodes, which must all be able to answer it,
+     * e.g. the devices of the same user. The request is sent to the node with the lowest round trip time first.
+     * If it does not respond within its usual response latency, the request is sent to the next node as well.
+     * The first response wins, later responses to the same exchange are discarded.
+     * <p>
+     * As for {@link INode#sendRequest(NodeLocation, IRequest)}, the receiving nodes
+     * must have registered an {@link ISyncRequestCallback} for the class of the request.
+     *
+     * @param receiverAddresses The locations of the nodes to which the request may be sent
+     * @param request           The request to send
+     *
+     * @return A future completed with the first response, or completed exceptionally if none of the nodes responded
+     */
+    CompletableFuture<IResponse> sendHedgedRequest(List<NodeLocation> receiverAddresses, IRequest request);
+
+    /**
+     * Sends the given object to the specified node. If the outbox of this node is enabled,
+     * the object is collected with other messages to the same node and sent as one single batch.
+     * Otherwise, this behaves like {@link INode#sendDirect(NodeLocation, Object)}.
+     *
+     * @param receiverAddress The location of the node to which the object should be sent
+     * @param data            The data to send to the node
+     *
+     * @return A future completed once the data has been delivered, or completed exceptionally if sending failed
+     */
+    CompletableFuture<Void> sendBatched(NodeLocation receiverAddress, Object data);
+
+    /**
+     * Sends the whole file at the given path to the specified node.
+     *
+     * @param receiverAddress The location of the node to which the file should be sent
+     * @param exchangeId      The id of the file exchange
+     * @param path            The path to the file to send
+     *
+     * @throws ObjectSendFailedException If reading the file or sending one of its chunks failed
+     * @see INode#sendFile(NodeLocation, UUID, FileChannel, long, long)
+     */
+    void sendFile(NodeLocation receiverAddress, UUID exchangeId, Path path)
+            throws ObjectSendFailedException;
+
+    /**
+     * Sends the given region of the file channel in chunks of
+     * {@link org.rmatil.sync.network.config.Config#getChunkSize()} bytes to the specified node.
+     * The region is sent chunked with a bounded number of chunks in flight, so that
+     * memory use does not grow with the size of the region. Each chunk is still copied
+     * into memory and serialized, compressed and encrypted like any other message.
+     * Blocks until all chunks have been sent.
+     * <p>
+     * On the receiving node, register an {@link IFileChunkCallback} for the exchange id
+     * on its {@link ObjectDataReplyHandler} to process the received chunks.
+     *
+     * @param receiverAddress The location of the node to which the file region should be sent
+     * @param exchangeId      The id of the file exchange
+     * @param fileChannel     The file channel to read from
+     * @param position        The position in the file channel at which the region starts
+     * @param length          The length of the region in bytes
+     *
+     * @throws ObjectSendFailedException If reading the file region or sending one of its chunks failed
+     */
+    void sendFile(NodeLocation receiverAddress, UUID exchangeId, FileChannel fileChannel, long position, long length)
+            throws ObjectSendFailedException;
+
+    /**
+     * Sends only the specified chunks of the given file region to the specified node.
+     * Use this to resume an interrupted transfer with the chunks which are still missing on the receiver.
+     *
+     * @param receiverAddress The location of the node to which the file region should be sent
+     * @param exchangeId      The id of the file exchange
+     * @param fileChannel     The file channel to read from
+     * @param position        The position in the file channel at which the region starts
+     * @param length          The length of the region in bytes
+     * @param chunkCounters   The zero-based numbers of the chunks to send
+     *
+     * @throws ObjectSendFailedException If reading the file region or sending one of its chunks failed
+     * @see INode#sendFile(NodeLocation, UUID, FileChannel, long, long)
+     */
+    void sendFile(NodeLocation receiverAddress, UUID exchangeId, FileChannel fileChannel, long position, long length, Collection<Long> chunkCounters)
+            throws ObjectSendFailedException;
+
 }
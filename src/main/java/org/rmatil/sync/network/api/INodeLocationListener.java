@@ -0,0 +1,26 @@
+package org.rmatil.sync.network.api;
+
+import org.rmatil.sync.network.core.model.NodeLocation;
+
+/**
+ * A listener which is notified about nodes of a user
+ * logging in or out, resp. their locations expiring.
+ *
+ * @see INodeManager#watchNodeLocations(String, INodeLocationListener)
+ */
+public interface INodeLocationListener {
+
+    /**
+     * Invoked once a location has been added to the locations of the watched user
+     *
+     * @param nodeLocation The added location
+     */
+    void onNodeLocationAdded(NodeLocation nodeLocation);
+
+    /**
+     * Invoked once a location has been removed from the locations of the watched user
+     *
+     * @param nodeLocation The removed location
+     */
+    void onNodeLocationRemoved(NodeLocation nodeLocation);
+}
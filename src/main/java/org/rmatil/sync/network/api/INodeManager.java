@@ -7,10 +7,16 @@ import org.rmatil.sync.persistence.exceptions.InputOutputException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.util.List;
+import java.util.concurrent.CompletionStage;
 
 /**
  * Provides access to the locations of
  * peers using their public key as peerId
+ * <p>
+ * The asynchronous variants of the operations do not block the caller, but the storage layer
+ * is blocking, therefore they run on the bounded pool of {@link org.rmatil.sync.network.core.AsyncStorageExecutor}:
+ * At most {@link org.rmatil.sync.network.core.AsyncStorageExecutor#getMaxConcurrentOperations()} operations
+ * access the DHT at once, further ones are queued.
  */
 public interface INodeManager {
 
@@ -22,7 +28,10 @@ public interface INodeManager {
     ISecuredDhtStorageAdapter getStorageAdapter();
 
     /**
-     * Adds a new location to the locations of the given user.
+     * Adds a new location to the locations of the given user,
+     * resp. renews its lease if the location is already contained.
+     * The location expires once its lease has not been renewed within
+     * the lease duration.
      *
      * @param location The location to add
      *
@@ -42,7 +51,8 @@ public interface INodeManager {
             throws InputOutputException;
 
     /**
-     * Gets the list of locations of the given user name
+     * Gets the list of locations of the given user name.
+     * Locations with an expired lease are not returned
      *
      * @param username The username from which to get its node locations
      *
@@ -53,6 +63,83 @@ public interface INodeManager {
     List<NodeLocation> getNodeLocations(String username)
             throws InputOutputException;
 
+    /**
+     * Adds a new location to the locations of the given user without blocking the caller
+     *
+     * @param location The location to add
+     *
+     * @return A stage completed once the location has been added, or completed
+     * exceptionally with an {@link InputOutputException} if adding failed
+     *
+     * @see INodeManager#addNodeLocation(NodeLocation)
+     */
+    CompletionStage<Void> addNodeLocationAsync(NodeLocation location);
+
+    /**
+     * Removes the given location from the list of locations without blocking the caller
+     *
+     * @param location The location to remove
+     *
+     * @return A stage completed once the location has been removed, or completed
+     * exceptionally with an {@link InputOutputException} if removing failed
+     *
+     * @see INodeManager#removeNodeLocation(NodeLocation)
+     */
+    CompletionStage<Void> removeNodeLocationAsync(NodeLocation location);
+
+    /**
+     * Gets the list of locations of the given user name without blocking the caller
+     *
+     * @param username The username from which to get its node locations
+     *
+     * @return A stage completed with the list of node locations, or completed
+     * exceptionally with an {@link InputOutputException} if getting the locations failed
+     *
+     * @see INodeManager#getNodeLocations(String)
+     */
+    CompletionStage<List<NodeLocation>> getNodeLocationsAsync(String username);
+
+    /**
+     * Starts to keep the locations of the given user in a local cache and
+     * notifies the given listener about changes. While a user is watched,
+     * {@link INodeManager#getNodeLocations(String)} is served from the cache,
+     * which is updated eagerly by changes made through this manager and changes announced
+     * by other nodes (see {@link INodeManager#applyNodeLocationChange(NodeLocation, boolean)}),
+     * and reconciled with the DHT periodically.
+     *
+     * @param username The name of the user whose locations should be watched
+     * @param listener The listener to notify about changes
+     *
+     * @throws InputOutputException If reading the current locations failed
+     */
+    void watchNodeLocations(String username, INodeLocationListener listener)
+            throws InputOutputException;
+
+    /**
+     * Stops notifying the given listener about changes of the locations of the given user.
+     * Once no listener is left, the locations of the user are not cached anymore
+     *
+     * @param username The name of the user whose locations are watched
+     * @param listener The listener to remove
+     */
+    void unwatchNodeLocations(String username, INodeLocationListener listener);
+
+    /**
+     * Applies a change of the locations announced by another node to
+     * the cached locations of its user. Has no effect, if the user is not watched
+     *
+     * @param nodeLocation The location which has been added resp. removed
+     * @param isAdded      True, if the location has been added, false if it has been removed
+     */
+    void applyNodeLocationChange(NodeLocation nodeLocation, boolean isAdded);
+
+    /**
+     * Returns the time after which a location expires if its lease is not renewed
+     *
+     * @return The lease duration in milliseconds
+     */
+    long getLeaseDuration();
+
     /**
      * Adds the private key of the given user to the storage
      *
@@ -109,6 +196,18 @@ public interface INodeManager {
     PublicKey getPublicKey(String username)
             throws InputOutputException;
 
+    /**
+     * Returns the public key of the user with the given name without blocking the caller
+     *
+     * @param username The name of the user of which to get the public key
+     *
+     * @return A stage completed with the found public key, or null if none is stored, or completed
+     * exceptionally with an {@link InputOutputException} if accessing the storage layer failed
+     *
+     * @see INodeManager#getPublicKey(String)
+     */
+    CompletionStage<PublicKey> getPublicKeyAsync(String username);
+
     /**
      * Add the salt from the given user
      *
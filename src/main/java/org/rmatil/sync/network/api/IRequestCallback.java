@@ -5,6 +5,10 @@ package org.rmatil.sync.network.api;
  * Otherwise, the dynamic instantiation of the request callback can not be guaranteed.
  * <p>
  * All dependencies of a callback are set through setter methods.
+ * <p>
+ * If the requesting client cancels the exchange while the callback is running,
+ * the thread of the callback gets interrupted. Long running callbacks should therefore
+ * check {@link Thread#isInterrupted()} and abort once it is set.
  */
 public interface IRequestCallback extends Runnable {
 
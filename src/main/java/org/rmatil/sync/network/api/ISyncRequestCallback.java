@@ -0,0 +1,33 @@
+package org.rmatil.sync.network.api;
+
+/**
+ * A request callback which answers a request synchronously: The returned response
+ * is sent back as reply of the original direct message, instead of
+ * sending a new message to the requesting client.
+ * <p>
+ * Note, that any implementation of this callback <b>must</b> have a nullary constructor.
+ * Otherwise, the dynamic instantiation of the request callback can not be guaranteed.
+ *
+ * @see INode#sendRequest(org.rmatil.sync.network.core.model.NodeLocation, IRequest)
+ */
+public interface ISyncRequestCallback {
+
+    /**
+     * Set the node on which the request has been received
+     *
+     * @param node The node to use
+     */
+    void setNode(INode node);
+
+    /**
+     * Handles the given request
+     *
+     * @param request The request to handle
+     *
+     * @return The response which is sent back to the requesting client. May be null
+     *
+     * @throws Exception If handling the request failed
+     */
+    IResponse handle(IRequest request)
+            throws Exception;
+}
@@ -0,0 +1,24 @@
+package org.rmatil.sync.network.api;
+
+import org.rmatil.sync.network.core.model.Priority;
+
+import java.lang.annotation.*;
+
+/**
+ * Declares the priority of all messages of the annotated type,
+ * e.g. of an implementation of {@link IRequest} or {@link IResponse}.
+ * Messages without a declared priority are sent with {@link Priority#NORMAL}.
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface MessagePriority {
+
+    /**
+     * The priority of the messages
+     *
+     * @return The priority
+     */
+    Priority value();
+}
@@ -2,18 +2,19 @@ package org.rmatil.sync.network.core;
 
 import net.tomp2p.futures.FutureDirect;
 import org.rmatil.sync.network.api.*;
+import org.rmatil.sync.network.core.exception.CircuitOpenException;
 import org.rmatil.sync.network.core.exception.ConnectionFailedException;
 import org.rmatil.sync.network.core.exception.ObjectSendFailedException;
+import org.rmatil.sync.network.core.messaging.ChunkStatusResponseCallback;
 import org.rmatil.sync.network.core.messaging.FutureDirectListener;
-import org.rmatil.sync.network.core.model.ClientDevice;
-import org.rmatil.sync.network.core.model.NodeLocation;
+import org.rmatil.sync.network.core.messaging.ObjectDataReplyHandler;
+import org.rmatil.sync.network.core.model.*;
 import org.rmatil.sync.persistence.exceptions.InputOutputException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -22,6 +23,10 @@ import java.util.concurrent.TimeUnit;
  * Requires, that each node to which a request has been sent must respond with
  * the corresponding response to the configured request.
  * <p>
+ * The {@link CompletionPolicy} decides how many responses are required,
+ * e.g. all of them or only the first one. Responses arriving after the exchange
+ * has been completed are ignored.
+ * <p>
  * Once all clients responded, handleResult() will be invoked.
  * Note, that the concrete result computation is implemented by the extending class.
  *
@@ -31,6 +36,11 @@ public abstract class ANetworkHandler<T> implements INetworkHandler<T>, IRespons
 
     private final static Logger logger = LoggerFactory.getLogger(ANetworkHandler.class);
 
+    /**
+     * The time to wait for the request to be sent to all clients and for their responses (in milliseconds).
+     * The response timeout estimated by the {@link RttEstimator} of the node may only extend the latter for slow clients,
+     * since it is derived from the delivery of messages but not from the time the clients need to process them
+     */
     public static final long MAX_WAITING_TIME = 30000L;
 
     /**
@@ -52,7 +62,8 @@ public abstract class ANetworkHandler<T> implements INetworkHandler<T>, IRespons
 
     /**
      * A map having the node device which responded along with its response
-     * representing all clients which have responded to the initial request
+     * representing all clients which have responded to the initial request.
+     * Read by {@link ANetworkHandler#cancel()} while the request is still being sent, therefore concurrent
      */
     protected final Map<ClientDevice, FutureDirect> notifiedClients;
 
@@ -61,13 +72,53 @@ public abstract class ANetworkHandler<T> implements INetworkHandler<T>, IRespons
      */
     protected boolean hasStartedToNotify = false;
 
+    /**
+     * The exchange id of the request sent to the clients
+     */
+    protected UUID exchangeId;
+
+    /**
+     * The absolute time after which the notified clients should not process
+     * the request anymore (in milliseconds since the epoch)
+     */
+    protected long deadline;
+
+    /**
+     * Indicates whether the exchange has been cancelled
+     */
+    protected volatile boolean isCancelled = false;
+
+    /**
+     * Decides after how many responses the exchange is completed
+     */
+    protected CompletionPolicy completionPolicy;
+
+    /**
+     * The number of clients to which the request has been sent
+     */
+    protected int nrOfNotifiedClients;
+
+    /**
+     * The number of responses required to complete the exchange
+     */
+    protected int nrOfRequiredResponses;
+
     /**
      * @param node The node of this device
      */
     public ANetworkHandler(INode node) {
+        this(node, CompletionPolicy.ALL);
+    }
+
+    /**
+     * @param node             The node of this device
+     * @param completionPolicy Decides after how many responses the exchange is completed
+     */
+    public ANetworkHandler(INode node, CompletionPolicy completionPolicy) {
         this.node = node;
-        this.notifiedClients = new HashMap<>();
+        this.notifiedClients = new ConcurrentHashMap<>();
         this.waitForSentCountDownLatch = new CountDownLatch(1);
+        this.completionPolicy = completionPolicy;
     }
 
     @Override
@@ -77,26 +128,54 @@ public abstract class ANetworkHandler<T> implements INetworkHandler<T>, IRespons
     public void sendRequest(IRequest request)
             throws ConnectionFailedException {
         this.hasStartedToNotify = true;
+        this.exchangeId = request.getExchangeId();
 
         List<NodeLocation> nodeLocations = request.getReceiverAddresses();
+        RttEstimator rttEstimator = this.node.getRttEstimator();
+        LivenessMonitor livenessMonitor = this.node.getLivenessMonitor();
+
+        // the clients do not have to process the request anymore once we stopped waiting for their responses
+        long responseTimeout = MAX_WAITING_TIME;
+        for (NodeLocation entry : nodeLocations) {
+            responseTimeout = Math.max(responseTimeout, rttEstimator.getResponseTimeout(entry.getPeerAddress()));
+        }
+        this.deadline = System.currentTimeMillis() + responseTimeout;
         boolean ownLocationPresent = false;
 
         // offer file
         for (NodeLocation entry : nodeLocations) {
+            if (this.isCancelled) {
+                logger.debug("Stopping to send request " + request.getExchangeId() + " since the exchange has been cancelled");
+                break;
+            }
+
             if (entry.getPeerAddress().equals(this.node.getPeerAddress())) {
                 logger.debug("Ignoring receiver address " + entry.getIpAddress() + ":" + entry.getPort() + " since it is the own node's address");
                 ownLocationPresent = true;
                 continue;
             }
 
+            if (null != livenessMonitor && ! livenessMonitor.isReachable(entry.getPeerAddress())) {
+                // the liveness monitor removes the location once it is stale
+                logger.debug("Skipping node " + entry.getClientDeviceId() + " since it did not answer its recent pings");
+                continue;
+            }
+
             logger.debug("Sending request " + request.getExchangeId() + " to node " + entry.getIpAddress() + ":" + entry.getPort() + ". Timestamp: " + System.currentTimeMillis());
             try {
-                FutureDirect futureDirect = this.node.sendDirect(entry, request);
+                FutureDirect futureDirect = this.node.sendDirect(entry, request, this.deadline);
                 FutureDirectListener futureDirectListener = new FutureDirectListener();
                 futureDirect.addListener(futureDirectListener);
 
                 // await using a listener instead of the future direct directly
-                futureDirectListener.await();
+                long sendTimeout = rttEstimator.getSendTimeout(entry.getPeerAddress());
+                if (! futureDirectListener.await(sendTimeout)) {
+                    // the node may just be slow, therefore we keep its location and leave it to the circuit breaker and the expiry of its lease.
+                    // The circuit breaker records the outcome once the message completes
+                    rttEstimator.onTimeout(entry.getPeerAddress());
+                    logger.warn("Request " + request.getExchangeId() + " has not been delivered to node " + entry.getClientDeviceId() + " within " + sendTimeout + " ms. Not waiting for its response");
+                    continue;
+                }
 
                 if (futureDirect.isFailed()) {
                     throw new ObjectSendFailedException("Failed to sent request " + request.getExchangeId() + ". Message: " + futureDirect.failedReason());
@@ -110,6 +189,9 @@ public abstract class ANetworkHandler<T> implements INetworkHandler<T>, IRespons
 
                 this.notifiedClients.put(clientDevice, futureDirect);
 
+            } catch (CircuitOpenException e) {
+                // the node is known to be unreachable, but may come back, therefore we keep its location
+                logger.debug("Skipping node " + entry.getClientDeviceId() + " since it is known to be unreachable");
             } catch (ObjectSendFailedException e) {
                 logger.error("Failed to send request to node " + entry.getClientDeviceId() + " (" + entry.getPeerAddress().inetAddress().getHostAddress() + ":" + entry.getPeerAddress().tcpPort() + "). Removing this node from connected node locations. Message: " + e.getMessage(), e);
                 try {
@@ -136,8 +218,21 @@ public abstract class ANetworkHandler<T> implements INetworkHandler<T>, IRespons
             }
         }
 
-        // init count down latch with size of all clients
-        this.countDownLatch = new CountDownLatch(this.notifiedClients.size());
+        this.awaitResponses(this.notifiedClients.size());
+    }
+
+    /**
+     * Starts to await the responses required by the completion policy
+     * once the request has been sent to the given number of clients
+     *
+     * @param nrOfNotifiedClients The number of clients to which the request has been sent
+     */
+    protected void awaitResponses(int nrOfNotifiedClients) {
+        // init count down latch with the number of responses required by the completion policy
+        // no responses are awaited anymore, if the exchange has been cancelled in the meantime
+        this.nrOfNotifiedClients = nrOfNotifiedClients;
+        this.nrOfRequiredResponses = this.completionPolicy.getNrOfRequiredResponses(nrOfNotifiedClients);
+        this.countDownLatch = new CountDownLatch(this.isCancelled ? 0 : this.nrOfRequiredResponses);
         this.waitForSentCountDownLatch.countDown();
     }
 
@@ -146,7 +241,10 @@ public abstract class ANetworkHandler<T> implements INetworkHandler<T>, IRespons
             throws InterruptedException {
         // first wait that count down latch for sending is initialized
         this.waitForSentCountDownLatch.await(MAX_WAITING_TIME, TimeUnit.MILLISECONDS);
-        this.countDownLatch.await(MAX_WAITING_TIME, TimeUnit.MILLISECONDS);
+        if (null != this.countDownLatch) {
+            // wait for the responses until the deadline of the request
+            this.countDownLatch.await(Math.max(0L, this.deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        }
 
     }
 
@@ -155,19 +253,84 @@ public abstract class ANetworkHandler<T> implements INetworkHandler<T>, IRespons
             throws InterruptedException {
         // first wait that count down latch for sending is initialized
         this.waitForSentCountDownLatch.await(timeout, timeUnit);
-        this.countDownLatch.await(timeout, timeUnit);
+        if (null != this.countDownLatch) {
+            this.countDownLatch.await(timeout, timeUnit);
+        }
 
     }
 
+    @Override
+    public void cancel() {
+        this.isCancelled = true;
+
+        if (null != this.exchangeId) {
+            ClientDevice clientDevice = new ClientDevice(
+                    this.node.getUser().getUserName(),
+                    this.node.getClientDeviceId(),
+                    this.node.getPeerAddress()
+            );
+
+            for (ClientDevice notifiedClient : new ArrayList<>(this.notifiedClients.keySet())) {
+                NodeLocation receiverAddress = new NodeLocation(
+                        notifiedClient.getUserName(),
+                        notifiedClient.getClientDeviceId(),
+                        notifiedClient.getPeerAddress()
+                );
+
+                logger.debug("Sending cancellation of exchange " + this.exchangeId + " to node " + notifiedClient.getClientDeviceId());
+                try {
+                    this.node.sendDirect(
+                            receiverAddress,
+                            new CancelRequest(this.exchangeId, clientDevice, Collections.singletonList(receiverAddress))
+                    );
+                } catch (ObjectSendFailedException e) {
+                    logger.warn("Failed to send cancellation of exchange " + this.exchangeId + " to node " + notifiedClient.getClientDeviceId() + ". Message: " + e.getMessage());
+                }
+            }
+        }
+
+        // release all threads waiting for responses
+        this.waitForSentCountDownLatch.countDown();
+        if (null != this.countDownLatch) {
+            while (this.countDownLatch.getCount() > 0) {
+                this.countDownLatch.countDown();
+            }
+        }
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return this.isCancelled;
+    }
+
+    @Override
+    public void setCompletionPolicy(CompletionPolicy completionPolicy) {
+        if (this.hasStartedToNotify) {
+            throw new IllegalStateException("The completion policy can not be changed after the request has been sent");
+        }
+
+        this.completionPolicy = completionPolicy;
+    }
+
+    @Override
+    public CompletionPolicy getCompletionPolicy() {
+        return this.completionPolicy;
+    }
+
     @Override
     public boolean isCompleted() {
-        return null != this.countDownLatch && 0 == this.countDownLatch.getCount();
+        if (null == this.countDownLatch) {
+            return false;
+        }
+
+        return 0 == this.countDownLatch.getCount()
+                || (this.completionPolicy.completesAtDeadline() && System.currentTimeMillis() >= this.deadline);
     }
 
     @Override
     public int getProgress() {
-        if (this.hasStartedToNotify && this.notifiedClients.size() > 0) {
-            return Math.round(((this.notifiedClients.size() - this.countDownLatch.getCount()) / this.notifiedClients.size()) * 100);
+        if (this.hasStartedToNotify && null != this.countDownLatch && this.nrOfRequiredResponses > 0) {
+            return Math.round((this.nrOfRequiredResponses - this.countDownLatch.getCount()) * 100f / this.nrOfRequiredResponses);
         }
 
         if (this.hasStartedToNotify) {
@@ -187,9 +350,88 @@ public abstract class ANetworkHandler<T> implements INetworkHandler<T>, IRespons
             logger.error("Got interrupted while waiting that request has been sent to al clients. Message: " + e.getMessage());
         }
 
+        if (null == this.countDownLatch || 0 == this.countDownLatch.getCount()) {
+            logger.debug("Ignoring late response of exchange " + response.getExchangeId() + " since the exchange is already completed");
+            return;
+        }
+
         this.countDownLatch.countDown();
+
+        if (0 == this.countDownLatch.getCount() && this.nrOfRequiredResponses < this.nrOfNotifiedClients) {
+            this.stopAcceptingResponses(response.getExchangeId());
+        }
     }
 
+    /**
+     * Unregisters this handler from the object data reply handler of the node,
+     * so that the remaining responses of a completed exchange are dropped before being decrypted
+     *
+     * @param exchangeId The id of the completed exchange
+     */
+    protected void stopAcceptingResponses(UUID exchangeId) {
+        ObjectDataReplyHandler objectDataReplyHandler = this.node.getObjectDataReplyHandler();
+        if (null != objectDataReplyHandler && this == objectDataReplyHandler.getResponseCallbackHandlers().get(exchangeId)) {
+            objectDataReplyHandler.removeResponseCallbackHandler(exchangeId);
+        }
+    }
+
+
+    /**
+     * Asks the given receiver which chunks of the specified chunked exchange
+     * it has not received yet. Use this to resume an interrupted transfer by
+     * re-sending only the missing chunks.
+     * <p>
+     * If the receiver does not know the exchange or does not respond within
+     * {@link ANetworkHandler#MAX_WAITING_TIME} resp. its longer response timeout
+     * estimated by the {@link RttEstimator}, all chunks are considered missing.
+     *
+     * @param receiverAddress    The receiver of the chunked exchange
+     * @param transferExchangeId The id of the chunked exchange
+     * @param totalNrOfChunks    The total number of chunks of the exchange
+     *
+     * @return The numbers of the chunks which still have to be sent, in ascending order
+     *
+     * @throws InterruptedException If the thread got interrupted while waiting for the response
+     */
+    protected List<Long> fetchMissingChunks(NodeLocation receiverAddress, UUID transferExchangeId, long totalNrOfChunks)
+            throws InterruptedException {
+        UUID statusExchangeId = UUID.randomUUID();
+        ChunkStatusResponseCallback callback = new ChunkStatusResponseCallback();
+
+        this.node.getObjectDataReplyHandler().addResponseCallbackHandler(statusExchangeId, callback);
+
+        ChunkStatusResponse response = null;
+        try {
+            this.node.sendDirect(
+                    receiverAddress,
+                    new ChunkStatusRequest(
+                            statusExchangeId,
+                            new ClientDevice(
+                                    this.node.getUser().getUserName(),
+                                    this.node.getClientDeviceId(),
+                                    this.node.getPeerAddress()
+                            ),
+                            Collections.singletonList(receiverAddress),
+                            transferExchangeId
+                    )
+            );
+
+            response = callback.await(Math.max(MAX_WAITING_TIME, this.node.getRttEstimator().getResponseTimeout(receiverAddress.getPeerAddress())), TimeUnit.MILLISECONDS);
+        } catch (ObjectSendFailedException e) {
+            logger.warn("Failed to request the chunk status of exchange " + transferExchangeId + ". Resending all chunks. Message: " + e.getMessage());
+        } finally {
+            this.node.getObjectDataReplyHandler().removeResponseCallbackHandler(statusExchangeId);
+        }
+
+        ChunkBitmap chunkBitmap = null != response ? response.getChunkBitmap() : null;
+
+        if (null == chunkBitmap || chunkBitmap.getTotalNrOfChunks() != totalNrOfChunks) {
+            // the receiver does not know about the transfer, so we have to resend everything
+            return new ChunkBitmap(totalNrOfChunks).getMissingChunks();
+        }
+
+        return chunkBitmap.getMissingChunks();
+    }
 
     @Override
     public abstract T getResult();
@@ -0,0 +1,141 @@
+package org.rmatil.sync.network.core;
+
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs blocking operations against the storage layer on a bounded pool of threads
+ * shared by all managers, so that callers issuing many operations at once
+ * do not need a thread per operation.
+ * <p>
+ * The storage layer only offers blocking operations, therefore each running operation
+ * still occupies a pool thread while waiting for the DHT. At most {@link AsyncStorageExecutor#getMaxConcurrentOperations()}
+ * operations are in progress at once, further ones wait in an unbounded queue.
+ * The limit can be raised for callers issuing many lookups, see {@link AsyncStorageExecutor#setMaxConcurrentOperations(int)}.
+ * <p>
+ * Failed operations complete their future exceptionally with a {@link CompletionException}
+ * wrapping the {@link InputOutputException} of the operation.
+ */
+public class AsyncStorageExecutor {
+
+    /**
+     * The default maximum number of storage operations which are run concurrently.
+     * Further operations are queued
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_OPERATIONS = 32;
+
+    /**
+     * A blocking operation against the storage layer returning a result
+     *
+     * @param <T> The type of the result
+     */
+    @FunctionalInterface
+    public interface StorageCall<T> {
+
+        T call()
+                throws InputOutputException;
+    }
+
+    /**
+     * A blocking operation against the storage layer without a result
+     */
+    @FunctionalInterface
+    public interface StorageAction {
+
+        void run()
+                throws InputOutputException;
+    }
+
+    protected static final ThreadPoolExecutor executorService;
+
+    static {
+        AtomicInteger threadCounter = new AtomicInteger();
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_MAX_CONCURRENT_OPERATIONS, DEFAULT_MAX_CONCURRENT_OPERATIONS, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName("AsyncStorage-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        // do not keep threads around while no operations are issued
+        executor.allowCoreThreadTimeOut(true);
+        executorService = executor;
+    }
+
+    private AsyncStorageExecutor() {
+    }
+
+    /**
+     * Returns the maximum number of storage operations which are run concurrently
+     *
+     * @return The maximum number of concurrent operations
+     */
+    public static int getMaxConcurrentOperations() {
+        return executorService.getMaximumPoolSize();
+    }
+
+    /**
+     * Sets the maximum number of storage operations which are run concurrently,
+     * i.e. the number of threads of the shared pool. Applies to operations started afterwards
+     *
+     * @param maxConcurrentOperations The maximum number of concurrent operations
+     *
+     * @throws IllegalArgumentException If the number is not positive
+     */
+    public static synchronized void setMaxConcurrentOperations(int maxConcurrentOperations) {
+        if (maxConcurrentOperations < 1) {
+            throw new IllegalArgumentException("The maximum number of concurrent operations must be positive, got " + maxConcurrentOperations);
+        }
+
+        // the core size must never exceed the maximum size
+        if (maxConcurrentOperations > executorService.getMaximumPoolSize()) {
+            executorService.setMaximumPoolSize(maxConcurrentOperations);
+            executorService.setCorePoolSize(maxConcurrentOperations);
+        } else {
+            executorService.setCorePoolSize(maxConcurrentOperations);
+            executorService.setMaximumPoolSize(maxConcurrentOperations);
+        }
+    }
+
+    /**
+     * Runs the given operation asynchronously
+     *
+     * @param call The operation to run
+     * @param <T>  The type of the result
+     *
+     * @return A future completed with the result of the operation
+     */
+    public static <T> CompletableFuture<T> supply(StorageCall<T> call) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return call.call();
+            } catch (InputOutputException e) {
+                throw new CompletionException(e);
+            }
+        }, executorService);
+    }
+
+    /**
+     * Runs the given operation asynchronously
+     *
+     * @param action The operation to run
+     *
+     * @return A future completed once the operation has finished
+     */
+    public static CompletableFuture<Void> run(StorageAction action) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                action.run();
+            } catch (InputOutputException e) {
+                throw new CompletionException(e);
+            }
+        }, executorService);
+    }
+}
@@ -0,0 +1,325 @@
+package org.rmatil.sync.network.core;
+
+import net.tomp2p.peers.PeerAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps track of the outcome of the messages sent to each peer and stops
+ * sending messages to peers which are known to be unreachable.
+ * <p>
+ * The circuit of a peer is closed as long as messages are delivered. Once
+ * the failure rate of the recent messages exceeds the threshold, the circuit opens
+ * and messages to the peer fail immediately. After the open duration has elapsed,
+ * the circuit becomes half-open and a single message is let through as probe:
+ * If it is delivered, the circuit closes again, otherwise it opens for twice the previous duration.
+ * Outcomes of other messages, e.g. of those sent before the circuit opened, are ignored while the circuit is not closed.
+ */
+public class CircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    /**
+     * The state of the circuit of a single peer
+     */
+    public enum State {
+        /**
+         * Messages are sent to the peer
+         */
+        CLOSED,
+
+        /**
+         * Messages to the peer fail immediately
+         */
+        OPEN,
+
+        /**
+         * A single probe message is sent to the peer to find out whether it is reachable again
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * The default fraction of failed messages among the recent ones which opens the circuit
+     */
+    public static final double DEFAULT_FAILURE_RATE_THRESHOLD = 0.5d;
+
+    /**
+     * The default number of messages which must have been sent before the circuit may open
+     */
+    public static final int DEFAULT_MIN_NR_OF_CALLS = 3;
+
+    /**
+     * The default time a circuit stays open before a probe is sent (in milliseconds)
+     */
+    public static final long DEFAULT_OPEN_DURATION = 5000L;
+
+    /**
+     * The maximum time a circuit stays open before a probe is sent (in milliseconds)
+     */
+    public static final long MAX_OPEN_DURATION = 300000L;
+
+    /**
+     * The number of recent messages per peer of which the failure rate is computed
+     */
+    public static final int WINDOW_SIZE = 20;
+
+    /**
+     * The maximum number of peers which are tracked
+     */
+    public static final int MAX_NR_OF_PEERS = 1024;
+
+    protected double failureRateThreshold;
+
+    protected int minNrOfCalls;
+
+    protected long openDuration;
+
+    /**
+     * The circuits per peer. Only accessed while holding the lock on this map
+     */
+    protected final LinkedHashMap<PeerAddress, Circuit> circuits;
+
+    public CircuitBreaker() {
+        this(DEFAULT_FAILURE_RATE_THRESHOLD, DEFAULT_MIN_NR_OF_CALLS, DEFAULT_OPEN_DURATION);
+    }
+
+    /**
+     * @param failureRateThreshold The fraction of failed messages among the recent ones which opens the circuit, between 0 and 1
+     * @param minNrOfCalls         The number of messages which must have been sent before the circuit may open
+     * @param openDuration         The time a circuit stays open before the first probe is sent (in milliseconds)
+     */
+    public CircuitBreaker(double failureRateThreshold, int minNrOfCalls, long openDuration) {
+        if (failureRateThreshold <= 0d || failureRateThreshold > 1d) {
+            throw new IllegalArgumentException("The failure rate threshold must be in (0, 1], got " + failureRateThreshold);
+        }
+
+        if (minNrOfCalls < 1 || minNrOfCalls > WINDOW_SIZE) {
+            throw new IllegalArgumentException("The minimum number of calls must be between 1 and " + WINDOW_SIZE + ", got " + minNrOfCalls);
+        }
+
+        this.failureRateThreshold = failureRateThreshold;
+        this.minNrOfCalls = minNrOfCalls;
+        this.openDuration = openDuration;
+        this.circuits = new LinkedHashMap<PeerAddress, Circuit>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PeerAddress, Circuit> eldest) {
+                return this.size() > MAX_NR_OF_PEERS;
+            }
+        };
+    }
+
+    /**
+     * Returns true, if a message may be sent to the given peer. If the circuit
+     * of the peer is half-open, the caller is allowed to send the single probe message
+     * and must report its outcome.
+     *
+     * @param peerAddress The address of the peer
+     *
+     * @return True, if the message may be sent, false if it should fail immediately
+     */
+    public boolean allowRequest(PeerAddress peerAddress) {
+        long now = System.currentTimeMillis();
+
+        synchronized (this.circuits) {
+            Circuit circuit = this.circuits.get(peerAddress);
+
+            if (null == circuit || State.CLOSED == circuit.state) {
+                return true;
+            }
+
+            // the open duration elapsed or the previous probe got lost
+            if (now >= circuit.nextProbeTime) {
+                logger.debug("Sending probe to " + peerAddress);
+                circuit.state = State.HALF_OPEN;
+                circuit.probeStartTime = now;
+                circuit.nextProbeTime = now + circuit.openDuration;
+
+                return true;
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * Returns true, if messages to the given peer would currently fail immediately.
+     * In contrast to {@link CircuitBreaker#allowRequest(PeerAddress)}, this does not start a probe.
+     *
+     * @param peerAddress The address of the peer
+     *
+     * @return True, if the circuit of the peer is open and no probe is due
+     */
+    public boolean isOpen(PeerAddress peerAddress) {
+        long now = System.currentTimeMillis();
+
+        synchronized (this.circuits) {
+            Circuit circuit = this.circuits.get(peerAddress);
+
+            return null != circuit && State.CLOSED != circuit.state && now < circuit.nextProbeTime;
+        }
+    }
+
+    /**
+     * Records that a message which has just been allowed has been delivered to the given peer
+     *
+     * @param peerAddress The address of the peer
+     */
+    public void recordSuccess(PeerAddress peerAddress) {
+        this.recordSuccess(peerAddress, System.currentTimeMillis());
+    }
+
+    /**
+     * Records that a message has been delivered to the given peer
+     *
+     * @param peerAddress The address of the peer
+     * @param sendTime    The time at which the message has been allowed by {@link CircuitBreaker#allowRequest(PeerAddress)} (in milliseconds)
+     */
+    public void recordSuccess(PeerAddress peerAddress, long sendTime) {
+        this.record(peerAddress, false, sendTime);
+    }
+
+    /**
+     * Records that a message which has just been allowed could not be delivered to the given peer
+     *
+     * @param peerAddress The address of the peer
+     */
+    public void recordFailure(PeerAddress peerAddress) {
+        this.recordFailure(peerAddress, System.currentTimeMillis());
+    }
+
+    /**
+     * Records that a message could not be delivered to the given peer
+     *
+     * @param peerAddress The address of the peer
+     * @param sendTime    The time at which the message has been allowed by {@link CircuitBreaker#allowRequest(PeerAddress)} (in milliseconds)
+     */
+    public void recordFailure(PeerAddress peerAddress, long sendTime) {
+        this.record(peerAddress, true, sendTime);
+    }
+
+    /**
+     * Returns the state of the circuit of the given peer
+     *
+     * @param peerAddress The address of the peer
+     *
+     * @return The state of the circuit
+     */
+    public State getState(PeerAddress peerAddress) {
+        synchronized (this.circuits) {
+            Circuit circuit = this.circuits.get(peerAddress);
+
+            return null != circuit ? circuit.state : State.CLOSED;
+        }
+    }
+
+    protected void record(PeerAddress peerAddress, boolean failed, long sendTime) {
+        long now = System.currentTimeMillis();
+
+        synchronized (this.circuits) {
+            Circuit circuit = this.circuits.get(peerAddress);
+
+            if (null == circuit) {
+                if (! failed) {
+                    // nothing to remember about peers which never failed
+                    return;
+                }
+
+                circuit = new Circuit(this.openDuration);
+                this.circuits.put(peerAddress, circuit);
+            }
+
+            if (State.CLOSED != circuit.state) {
+                if (State.OPEN == circuit.state || sendTime < circuit.probeStartTime) {
+                    // only the outcome of the probe decides about an open circuit
+                    logger.trace("Ignoring outcome of message to " + peerAddress + " since it is not the probe");
+                    return;
+                }
+
+                if (failed) {
+                    // the probe failed, therefore we wait longer for the next one
+                    circuit.openDuration = Math.min(MAX_OPEN_DURATION, circuit.openDuration * 2);
+                    this.open(peerAddress, circuit, now);
+                } else {
+                    logger.debug("Closing circuit of " + peerAddress);
+                    this.circuits.remove(peerAddress);
+                }
+
+                return;
+            }
+
+            circuit.add(failed);
+
+            if (circuit.nrOfCalls >= this.minNrOfCalls && circuit.getFailureRate() >= this.failureRateThreshold) {
+                this.open(peerAddress, circuit, now);
+            }
+
+            if (0 == circuit.nrOfFailures) {
+                this.circuits.remove(peerAddress);
+            }
+        }
+    }
+
+    protected void open(PeerAddress peerAddress, Circuit circuit, long now) {
+        logger.info("Opening circuit of " + peerAddress + " for " + circuit.openDuration + " ms");
+        circuit.state = State.OPEN;
+        circuit.nextProbeTime = now + circuit.openDuration;
+    }
+
+    /**
+     * The circuit of a single peer along with the outcomes of its recent messages
+     */
+    protected static class Circuit {
+
+        protected State state = State.CLOSED;
+
+        /**
+         * The outcomes of the recent messages, true for failed ones
+         */
+        protected final boolean[] outcomes = new boolean[WINDOW_SIZE];
+
+        protected int nextOutcome;
+
+        protected int nrOfCalls;
+
+        protected int nrOfFailures;
+
+        protected long openDuration;
+
+        protected long nextProbeTime;
+
+        /**
+         * The time at which the current probe has been allowed
+         */
+        protected long probeStartTime;
+
+        protected Circuit(long openDuration) {
+            this.openDuration = openDuration;
+        }
+
+        protected void add(boolean failed) {
+            if (this.nrOfCalls == WINDOW_SIZE) {
+                // the oldest outcome drops out of the window
+                if (this.outcomes[this.nextOutcome]) {
+                    this.nrOfFailures--;
+                }
+            } else {
+                this.nrOfCalls++;
+            }
+
+            this.outcomes[this.nextOutcome] = failed;
+            if (failed) {
+                this.nrOfFailures++;
+            }
+
+            this.nextOutcome = (this.nextOutcome + 1) % WINDOW_SIZE;
+        }
+
+        protected double getFailureRate() {
+            return 0 == this.nrOfCalls ? 0d : (double) this.nrOfFailures / this.nrOfCalls;
+        }
+    }
+}
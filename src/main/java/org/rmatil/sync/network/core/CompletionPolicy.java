@@ -0,0 +1,133 @@
+package org.rmatil.sync.network.core;
+
+/**
+ * Decides after how many responses the exchange of a network handler
+ * is considered complete, i.e. when its result becomes available.
+ *
+ * @see ANetworkHandler
+ */
+public class CompletionPolicy {
+
+    /**
+     * The kind of a completion policy
+     */
+    public enum Type {
+        /**
+         * All notified clients have to respond. Waiting for them stops at the deadline
+         * of the exchange, but the exchange is not completed unless all of them responded
+         */
+        ALL,
+
+        /**
+         * The first response completes the exchange
+         */
+        ANY,
+
+        /**
+         * A fixed number of responses completes the exchange
+         */
+        QUORUM,
+
+        /**
+         * All notified clients should respond, but the exchange
+         * is completed with the responses received so far, once its deadline has passed.
+         * Unlike {@link Type#ALL}, which stops waiting at the deadline as well,
+         * {@link ANetworkHandler#isCompleted()} then reports the exchange as completed
+         */
+        DEADLINE_BEST_EFFORT
+    }
+
+    /**
+     * Waits for the responses of all notified clients
+     */
+    public static final CompletionPolicy ALL = new CompletionPolicy(Type.ALL, 0);
+
+    /**
+     * Waits for the first response only
+     */
+    public static final CompletionPolicy ANY = new CompletionPolicy(Type.ANY, 1);
+
+    /**
+     * Waits for the responses of all notified clients until the deadline of the exchange
+     */
+    public static final CompletionPolicy DEADLINE_BEST_EFFORT = new CompletionPolicy(Type.DEADLINE_BEST_EFFORT, 0);
+
+    protected Type type;
+
+    protected int quorum;
+
+    /**
+     * @param type   The kind of the policy
+     * @param quorum The number of required responses of a quorum
+     */
+    protected CompletionPolicy(Type type, int quorum) {
+        this.type = type;
+        this.quorum = quorum;
+    }
+
+    /**
+     * Returns a policy completing the exchange once the given number
+     * of clients has responded. If fewer clients are notified, all of them have to respond.
+     *
+     * @param quorum The number of required responses
+     *
+     * @return The completion policy
+     */
+    public static CompletionPolicy quorum(int quorum) {
+        if (quorum < 1) {
+            throw new IllegalArgumentException("A quorum requires at least one response, got " + quorum);
+        }
+
+        return new CompletionPolicy(Type.QUORUM, quorum);
+    }
+
+    /**
+     * Returns the number of responses required to complete the exchange
+     *
+     * @param nrOfNotifiedClients The number of clients to which the request has been sent
+     *
+     * @return The number of required responses
+     */
+    public int getNrOfRequiredResponses(int nrOfNotifiedClients) {
+        switch (this.type) {
+            case ANY:
+            case QUORUM:
+                return Math.min(this.quorum, nrOfNotifiedClients);
+            default:
+                return nrOfNotifiedClients;
+        }
+    }
+
+    /**
+     * Returns true, if the exchange is completed once its deadline has passed,
+     * regardless of the number of responses received so far
+     *
+     * @return True, if the exchange completes at its deadline
+     */
+    public boolean completesAtDeadline() {
+        return Type.DEADLINE_BEST_EFFORT == this.type;
+    }
+
+    /**
+     * Returns the kind of this policy
+     *
+     * @return The type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the number of required responses of a quorum
+     *
+     * @return The quorum, 1 for {@link Type#ANY} and 0 for policies depending on the number of notified clients
+     */
+    public int getQuorum() {
+        return quorum;
+    }
+
+    @Override
+    public String toString() {
+        return Type.QUORUM == this.type ? this.type + "(" + this.quorum + ")" : this.type.toString();
+    }
+}
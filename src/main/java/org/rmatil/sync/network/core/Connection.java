@@ -6,12 +6,15 @@ import net.tomp2p.dht.PeerBuilderDHT;
 import net.tomp2p.dht.PeerDHT;
 import net.tomp2p.dht.StorageLayer;
 import net.tomp2p.futures.BaseFuture;
+import net.tomp2p.futures.BaseFutureAdapter;
 import net.tomp2p.futures.FutureBootstrap;
 import net.tomp2p.futures.FutureDirect;
 import net.tomp2p.futures.FutureDiscover;
+import net.tomp2p.futures.FuturePeerConnection;
 import net.tomp2p.p2p.PeerBuilder;
 import net.tomp2p.peers.Number160;
 import net.tomp2p.peers.PeerAddress;
+import org.rmatil.sync.network.api.INodeManager;
 import org.rmatil.sync.network.core.exception.ConnectionException;
 import org.rmatil.sync.network.core.exception.ConnectionFailedException;
 import org.rmatil.sync.network.core.messaging.EncryptedDataReplyHandler;
@@ -63,6 +66,16 @@ public class Connection {
 
     protected EncryptedDataReplyHandler encryptedDataReplyHandler;
 
+    /**
+     * Keeps connections to frequently used peers open
+     */
+    protected PeerConnectionManager peerConnectionManager;
+
+    /**
+     * Pings the other nodes of the user in the background
+     */
+    protected LivenessMonitor livenessMonitor;
+
     public static boolean isPortAvailable(int port) {
         if (port < MIN_PORT_NUMBER || port > MAX_PORT_NUMBER) {
             throw new IllegalArgumentException("Invalid port number " + port + ". Port must be between " + MIN_PORT_NUMBER + " and " + MAX_PORT_NUMBER);
@@ -202,6 +215,8 @@ public class Connection {
             this.peerDHT.peer().objectDataReply(this.encryptedDataReplyHandler);
         }
 
+        this.peerConnectionManager = new PeerConnectionManager(this.peerDHT.peer());
+
         // set storage layer protection
         this.peerDHT.storageLayer().protection(
                 StorageLayer.ProtectionEnable.ALL,
@@ -297,7 +312,9 @@ public class Connection {
     }
 
     /**
-     * Send the given data to the specified receiver
+     * Send the given data to the specified receiver.
+     * If data is sent frequently to the receiver, a persistent
+     * connection is used instead of opening a new one for each message.
      *
      * @param receiverAddress The address to which to send the data
      * @param dataToSend      The data to send
@@ -305,11 +322,81 @@ public class Connection {
      * @return The future
      */
     public FutureDirect sendDirect(PeerAddress receiverAddress, Object dataToSend) {
-        return this.peerDHT
+        FuturePeerConnection peerConnection = null;
+        if (null != this.peerConnectionManager) {
+            peerConnection = this.peerConnectionManager.acquire(receiverAddress);
+        }
+
+        if (null == peerConnection) {
+            return this.peerDHT
+                    .peer()
+                    .sendDirect(receiverAddress)
+                    .object(dataToSend)
+                    .start();
+        }
+
+        FuturePeerConnection usedPeerConnection = peerConnection;
+        FutureDirect futureDirect = this.peerDHT
                 .peer()
-                .sendDirect(receiverAddress)
+                .sendDirect(peerConnection)
                 .object(dataToSend)
                 .start();
+
+        futureDirect.addListener(new BaseFutureAdapter<FutureDirect>() {
+            @Override
+            public void operationComplete(FutureDirect future)
+                    throws Exception {
+                peerConnectionManager.onSendCompleted(receiverAddress, usedPeerConnection);
+
+                if (future.isFailed()) {
+                    // do not reuse a broken connection
+                    logger.debug("Sending over persistent connection to " + receiverAddress + " failed: " + future.failedReason() + ". Closing it");
+                    peerConnectionManager.release(receiverAddress, usedPeerConnection);
+                }
+            }
+        });
+
+        return futureDirect;
+    }
+
+    /**
+     * Returns the manager of the persistent connections to other peers
+     *
+     * @return The peer connection manager, or null if the connection is not yet opened
+     */
+    public PeerConnectionManager getPeerConnectionManager() {
+        return this.peerConnectionManager;
+    }
+
+    /**
+     * Starts to monitor the liveness of the other nodes of the given user
+     *
+     * @param nodeManager The node manager from which the node locations of the user are fetched
+     * @param username    The name of the user whose nodes should be monitored
+     *
+     * @throws IllegalStateException If the connection is not yet opened
+     */
+    public synchronized void startLivenessMonitor(INodeManager nodeManager, String username)
+            throws IllegalStateException {
+        if (null == this.peerDHT) {
+            throw new IllegalStateException("Open the connection first");
+        }
+
+        if (null != this.livenessMonitor) {
+            this.livenessMonitor.stop();
+        }
+
+        this.livenessMonitor = new LivenessMonitor(this.peerDHT, nodeManager, username);
+        this.livenessMonitor.start();
+    }
+
+    /**
+     * Returns the monitor of the liveness of the other nodes of the user
+     *
+     * @return The liveness monitor, or null if it has not been started
+     */
+    public LivenessMonitor getLivenessMonitor() {
+        return this.livenessMonitor;
     }
 
     /**
@@ -330,6 +417,14 @@ public class Connection {
             return;
         }
 
+        if (null != this.livenessMonitor) {
+            this.livenessMonitor.stop();
+        }
+
+        if (null != this.peerConnectionManager) {
+            this.peerConnectionManager.close();
+        }
+
         // notify the shutdown to next neighbours
         boolean announceSuccessful = this.peerDHT.peer()
                 .announceShutdown()
@@ -0,0 +1,265 @@
+package org.rmatil.sync.network.core;
+
+import net.tomp2p.peers.PeerAddress;
+import org.rmatil.sync.network.core.model.CreditGrant;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Limits the number of messages a node has in flight towards each peer.
+ * Each peer has a window of credits, which is adjusted by the {@link CreditGrant}s
+ * the peer returns based on the number of requests it is currently processing.
+ * Senders wait a bounded time for a free credit instead of overwhelming the peer,
+ * and give up if none becomes available.
+ * <p>
+ * A peer may grant no credits at all while it is saturated. Since no reply would then
+ * ever update the window again, a single probe message is let through once nothing
+ * has been in flight for {@link FlowController#PROBE_INTERVAL}, whose reply carries a fresh grant.
+ */
+public class FlowController {
+
+    /**
+     * The number of credits of a peer from which no grant has been received yet
+     */
+    public static final int DEFAULT_INITIAL_CREDITS = 16;
+
+    /**
+     * The default maximum time to wait for a free credit (in milliseconds).
+     * Afterwards, the message is rejected instead of being sent beyond the window
+     */
+    public static final long MAX_WAITING_TIME = 2000L;
+
+    /**
+     * The default time after the last grant after which a single message is sent
+     * to a peer which has granted no credits, to ask for a fresh grant (in milliseconds)
+     */
+    public static final long PROBE_INTERVAL = 500L;
+
+    protected final Map<PeerAddress, Window> windows;
+
+    protected int initialCredits;
+
+    protected long maxWaitingTime;
+
+    protected long probeInterval;
+
+    public FlowController() {
+        this(DEFAULT_INITIAL_CREDITS);
+    }
+
+    /**
+     * @param initialCredits The number of credits of a peer from which no grant has been received yet
+     */
+    public FlowController(int initialCredits) {
+        this(initialCredits, MAX_WAITING_TIME);
+    }
+
+    /**
+     * @param initialCredits The number of credits of a peer from which no grant has been received yet
+     * @param maxWaitingTime The maximum time to wait for a free credit (in milliseconds)
+     */
+    public FlowController(int initialCredits, long maxWaitingTime) {
+        this(initialCredits, maxWaitingTime, PROBE_INTERVAL);
+    }
+
+    /**
+     * @param initialCredits The number of credits of a peer from which no grant has been received yet
+     * @param maxWaitingTime The maximum time to wait for a free credit (in milliseconds)
+     * @param probeInterval  The time after which a peer without credits is probed for a fresh grant (in milliseconds)
+     */
+    public FlowController(int initialCredits, long maxWaitingTime, long probeInterval) {
+        this.windows = new ConcurrentHashMap<>();
+        this.initialCredits = initialCredits;
+        this.maxWaitingTime = maxWaitingTime;
+        this.probeInterval = probeInterval;
+    }
+
+    /**
+     * Waits until a message may be sent to the given peer and reserves a credit for it
+     *
+     * @param receiverAddress The address of the peer
+     *
+     * @return True, if a credit has been reserved. False, if none became available in time
+     *
+     * @throws InterruptedException If the thread got interrupted while waiting
+     */
+    public boolean acquire(PeerAddress receiverAddress)
+            throws InterruptedException {
+        return this.getWindow(receiverAddress).acquire(this.maxWaitingTime);
+    }
+
+    /**
+     * Releases the credit of a message sent to the given peer once it has been delivered
+     *
+     * @param receiverAddress The address of the peer
+     * @param creditGrant     The grant returned by the peer, or null if it did not return one
+     */
+    public void release(PeerAddress receiverAddress, CreditGrant creditGrant) {
+        this.getWindow(receiverAddress).release(creditGrant);
+    }
+
+    /**
+     * Returns the window of the given peer
+     *
+     * @param receiverAddress The address of the peer
+     *
+     * @return The window
+     */
+    public Window getWindow(PeerAddress receiverAddress) {
+        return this.windows.computeIfAbsent(receiverAddress, address -> new Window(this.initialCredits, this.probeInterval));
+    }
+
+    /**
+     * Returns the windows of all peers to which messages have been sent
+     *
+     * @return The windows per peer
+     */
+    public Map<PeerAddress, Window> getWindows() {
+        return new HashMap<>(this.windows);
+    }
+
+    /**
+     * The credits and messages in flight towards a single peer
+     */
+    public static class Window {
+
+        protected int credits;
+
+        protected int inFlight;
+
+        protected int nrOfWaitingSenders;
+
+        protected long nrOfDelayedMessages;
+
+        protected long waitingTime;
+
+        protected long nrOfRejectedMessages;
+
+        protected long probeInterval;
+
+        /**
+         * The time at which the last grant has been received (in milliseconds)
+         */
+        protected long lastGrantTime;
+
+        protected Window(int credits, long probeInterval) {
+            this.credits = credits;
+            this.probeInterval = probeInterval;
+            this.lastGrantTime = System.currentTimeMillis();
+        }
+
+        protected synchronized boolean acquire(long maxWaitingTime)
+                throws InterruptedException {
+            if (! this.hasFreeCredit(System.currentTimeMillis())) {
+                long start = System.currentTimeMillis();
+                long deadline = start + maxWaitingTime;
+
+                this.nrOfWaitingSenders++;
+                this.nrOfDelayedMessages++;
+                try {
+                    long now;
+                    while (! this.hasFreeCredit(now = System.currentTimeMillis()) && deadline > now) {
+                        // wake up in time for the probe, since no release may notify us
+                        this.wait(Math.max(1L, Math.min(deadline, this.lastGrantTime + this.probeInterval) - now));
+                    }
+                } finally {
+                    this.nrOfWaitingSenders--;
+                    this.waitingTime += System.currentTimeMillis() - start;
+                }
+
+                if (! this.hasFreeCredit(System.currentTimeMillis())) {
+                    this.nrOfRejectedMessages++;
+                    return false;
+                }
+            }
+
+            this.inFlight++;
+
+            return true;
+        }
+
+        /**
+         * Returns true, if another message may be sent, either within the credits
+         * or as probe for a fresh grant
+         *
+         * @param now The current time in milliseconds
+         *
+         * @return True, if a message may be sent
+         */
+        protected boolean hasFreeCredit(long now) {
+            return this.inFlight < this.credits || (0 == this.inFlight && now - this.lastGrantTime >= this.probeInterval);
+        }
+
+        protected synchronized void release(CreditGrant creditGrant) {
+            this.inFlight = Math.max(0, this.inFlight - 1);
+
+            if (null != creditGrant) {
+                this.credits = Math.max(0, creditGrant.getCredits());
+                this.lastGrantTime = System.currentTimeMillis();
+            }
+
+            this.notifyAll();
+        }
+
+        /**
+         * Returns the number of messages which may be in flight
+         *
+         * @return The number of credits
+         */
+        public synchronized int getCredits() {
+            return credits;
+        }
+
+        /**
+         * Returns the number of messages currently in flight
+         *
+         * @return The number of messages in flight
+         */
+        public synchronized int getInFlight() {
+            return inFlight;
+        }
+
+        /**
+         * Returns the number of senders currently waiting for a free credit
+         *
+         * @return The queue length
+         */
+        public synchronized int getNrOfWaitingSenders() {
+            return nrOfWaitingSenders;
+        }
+
+        /**
+         * Returns the number of messages which had to wait for a free credit
+         *
+         * @return The number of delayed messages
+         */
+        public synchronized long getNrOfDelayedMessages() {
+            return nrOfDelayedMessages;
+        }
+
+        /**
+         * Returns the total time senders waited for a free credit (in milliseconds)
+         *
+         * @return The waiting time
+         */
+        public synchronized long getWaitingTime() {
+            return waitingTime;
+        }
+
+        /**
+         * Returns the number of messages which have been rejected since no credit became available in time
+         *
+         * @return The number of rejected messages
+         */
+        public synchronized long getNrOfRejectedMessages() {
+            return nrOfRejectedMessages;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return this.inFlight + "/" + this.credits + " in flight, " + this.nrOfWaitingSenders + " waiting, " + this.nrOfDelayedMessages + " delayed for " + this.waitingTime + "ms in total, " + this.nrOfRejectedMessages + " rejected";
+        }
+    }
+}
@@ -3,19 +3,45 @@ package org.rmatil.sync.network.core;
 import org.rmatil.sync.commons.hashing.Hash;
 import org.rmatil.sync.commons.hashing.HashingAlgorithm;
 import org.rmatil.sync.network.api.IIdentifierManager;
+import org.rmatil.sync.network.core.model.BulkResult;
 import org.rmatil.sync.persistence.api.StorageType;
 import org.rmatil.sync.persistence.core.dht.secured.ISecuredDhtStorageAdapter;
 import org.rmatil.sync.persistence.core.dht.secured.SecuredDhtPathElement;
 import org.rmatil.sync.persistence.exceptions.InputOutputException;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 /**
  * A manager to dispense identifier-value pairs.
  */
 public class IdentifierManager implements IIdentifierManager<String, UUID> {
 
+    /**
+     * The default number of storage operations a bulk operation runs concurrently
+     */
+    public static final int DEFAULT_MAX_PARALLELISM = 16;
+
+    /**
+     * The number of locks the paths of the identifiers are distributed over
+     */
+    public static final int NR_OF_LOCK_STRIPES = 64;
+
     /**
      * The username which is used as location key
      */
@@ -36,85 +62,169 @@ public class IdentifierManager implements IIdentifierManager<String, UUID> {
      */
     protected ISecuredDhtStorageAdapter storageAdapter;
 
+    /**
+     * Applies updates on a best-effort basis, retrying them if concurrent writers overwrote them before they have been verified
+     */
+    protected OptimisticDhtUpdater updater;
+
+    /**
+     * The number of storage operations a bulk operation runs concurrently
+     */
+    protected int maxParallelism = DEFAULT_MAX_PARALLELISM;
+
+    /**
+     * Serializes modifications of the same key resp. value, while
+     * modifications of unrelated ones proceed in parallel.
+     * Reads are not locked, since each of them reads a single path only
+     */
+    protected final Lock[] lockStripes = new Lock[NR_OF_LOCK_STRIPES];
+
     public IdentifierManager(ISecuredDhtStorageAdapter storageAdapter, String username, String identifierContentKey, String domainKey) {
         this.storageAdapter = storageAdapter;
         this.username = username;
         this.identifierContentKey = identifierContentKey;
         this.domainKey = domainKey;
+        this.updater = new OptimisticDhtUpdater(storageAdapter);
+
+        for (int i = 0; i < NR_OF_LOCK_STRIPES; i++) {
+            this.lockStripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Sets the number of storage operations a bulk operation runs concurrently
+     *
+     * @param maxParallelism The number of concurrent storage operations, at least 1
+     */
+    public void setMaxParallelism(int maxParallelism) {
+        if (maxParallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be at least 1, got " + maxParallelism);
+        }
+
+        this.maxParallelism = maxParallelism;
     }
 
     @Override
-    public synchronized void addIdentifier(String key, UUID value)
+    public void addIdentifier(String key, UUID value)
             throws InputOutputException {
-        SecuredDhtPathElement keyDhtPathElement = new SecuredDhtPathElement(
-                this.username,
-                Hash.hash(HashingAlgorithm.SHA_256, this.identifierContentKey + key),
-                this.domainKey
-        );
-
-        SecuredDhtPathElement valueDhtPathElement = new SecuredDhtPathElement(
-                this.username,
-                Hash.hash(HashingAlgorithm.SHA_256, this.identifierContentKey + value),
-                this.domainKey
-        );
+        SecuredDhtPathElement keyDhtPathElement = this.getPathElement(key);
+        SecuredDhtPathElement valueDhtPathElement = this.getPathElement(value);
 
         byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
         byte[] valueBytes = value.toString().getBytes(StandardCharsets.UTF_8);
 
-        // store key and value
-        this.storageAdapter.persist(StorageType.FILE, keyDhtPathElement, valueBytes);
-        this.storageAdapter.persist(StorageType.FILE, valueDhtPathElement, keyBytes);
+        List<Lock> locks = this.lock(keyDhtPathElement, valueDhtPathElement);
+        try {
+            // store key and value
+            this.storageAdapter.persist(StorageType.FILE, keyDhtPathElement, valueBytes);
+            this.storageAdapter.persist(StorageType.FILE, valueDhtPathElement, keyBytes);
+        } finally {
+            this.unlock(locks);
+        }
     }
 
     @Override
-    public synchronized void removeIdentifier(String key)
+    public void removeIdentifier(String key)
             throws InputOutputException {
-        SecuredDhtPathElement keyDhtPathElement = new SecuredDhtPathElement(
-                this.username,
-                Hash.hash(HashingAlgorithm.SHA_256, this.identifierContentKey + key),
-                this.domainKey
-        );
+        SecuredDhtPathElement keyDhtPathElement = this.getPathElement(key);
 
         // try to get associated value
         UUID value = this.getValue(key);
-        if (null != value) {
-            // there is a value associated -> remove it too
-            SecuredDhtPathElement valueDhtPathElement = new SecuredDhtPathElement(
-                    this.username,
-                    Hash.hash(HashingAlgorithm.SHA_256, this.identifierContentKey + value),
-                    this.domainKey
-            );
-
-            this.storageAdapter.delete(valueDhtPathElement);
-        }
 
-        this.storageAdapter.delete(keyDhtPathElement);
+        while (true) {
+            List<Lock> locks = null == value ? this.lock(keyDhtPathElement) : this.lock(keyDhtPathElement, this.getPathElement(value));
+            try {
+                // the stripe of the value is only known after reading it,
+                // so make sure it has not been changed before the lock was acquired
+                UUID lockedValue = this.getValue(key);
+                if (! Objects.equals(value, lockedValue)) {
+                    value = lockedValue;
+                    continue;
+                }
+
+                if (null != value) {
+                    // there is a value associated -> remove it too
+                    this.storageAdapter.delete(this.getPathElement(value));
+                }
+
+                this.storageAdapter.delete(keyDhtPathElement);
+
+                return;
+            } finally {
+                this.unlock(locks);
+            }
+        }
     }
 
     @Override
     public void moveKey(String oldKey, String newKey)
             throws InputOutputException {
+        if (oldKey.equals(newKey)) {
+            // moving would delete the old key, which is the new one as well
+            return;
+        }
+
+        SecuredDhtPathElement oldKeyDhtPathElement = this.getPathElement(oldKey);
+        SecuredDhtPathElement newKeyDhtPathElement = this.getPathElement(newKey);
+
         UUID value = this.getValue(oldKey);
 
-        if (null == value) {
-            throw new InputOutputException("Could not move value from " + oldKey + " to " + newKey + ": No value attached to the old key");
-        }
+        while (true) {
+            if (null == value) {
+                throw new InputOutputException("Could not move value from " + oldKey + " to " + newKey + ": No value attached to the old key");
+            }
+
+            SecuredDhtPathElement valueDhtPathElement = this.getPathElement(value);
+
+            List<Lock> locks = this.lock(oldKeyDhtPathElement, newKeyDhtPathElement, valueDhtPathElement);
+            try {
+                UUID lockedValue = this.getValue(oldKey);
+                if (! value.equals(lockedValue)) {
+                    value = lockedValue;
+                    continue;
+                }
 
-        // move data
-        this.removeIdentifier(oldKey);
-        this.addIdentifier(newKey, value);
+                byte[] newKeyBytes = newKey.getBytes(StandardCharsets.UTF_8);
+                byte[] valueBytes = value.toString().getBytes(StandardCharsets.UTF_8);
+
+                // point the value to the new key, unless a move on another node pointed it somewhere else.
+                // Moves on other nodes are only detected if they land before the change has been verified
+                this.updater.update(
+                        valueDhtPathElement,
+                        stored -> {
+                            String storedKey = new String(stored, StandardCharsets.UTF_8);
+
+                            if (newKey.equals(storedKey)) {
+                                return null;
+                            }
+
+                            if (0 != stored.length && ! oldKey.equals(storedKey)) {
+                                throw new InputOutputException("Could not move value from " + oldKey + " to " + newKey + ": The value has been moved to " + storedKey + " concurrently");
+                            }
+
+                            return newKeyBytes;
+                        },
+                        stored -> Arrays.equals(newKeyBytes, stored)
+                );
+
+                this.storageAdapter.persist(StorageType.FILE, newKeyDhtPathElement, valueBytes);
+
+                // only remove the old key if it still points to the moved value
+                if (value.equals(this.getValue(oldKey))) {
+                    this.storageAdapter.delete(oldKeyDhtPathElement);
+                }
+
+                return;
+            } finally {
+                this.unlock(locks);
+            }
+        }
     }
 
     @Override
-    public synchronized UUID getValue(String key)
+    public UUID getValue(String key)
             throws InputOutputException {
-        SecuredDhtPathElement keyDhtPathElement = new SecuredDhtPathElement(
-                this.username,
-                Hash.hash(HashingAlgorithm.SHA_256, this.identifierContentKey + key),
-                this.domainKey
-        );
-
-        byte[] uuidStringBytes = this.storageAdapter.read(keyDhtPathElement);
+        byte[] uuidStringBytes = this.storageAdapter.read(this.getPathElement(key));
 
         if (0 == uuidStringBytes.length) {
             return null;
@@ -124,15 +234,9 @@ public class IdentifierManager implements IIdentifierManager<String, UUID> {
     }
 
     @Override
-    public synchronized String getKey(UUID value)
+    public String getKey(UUID value)
             throws InputOutputException {
-        SecuredDhtPathElement valueDhtPathElement = new SecuredDhtPathElement(
-                this.username,
-                Hash.hash(HashingAlgorithm.SHA_256, this.identifierContentKey + value),
-                this.domainKey
-        );
-
-        byte[] keyStringBytes = this.storageAdapter.read(valueDhtPathElement);
+        byte[] keyStringBytes = this.storageAdapter.read(this.getPathElement(value));
 
         if (0 == keyStringBytes.length) {
             // value not found
@@ -141,4 +245,150 @@ public class IdentifierManager implements IIdentifierManager<String, UUID> {
 
         return new String(keyStringBytes, StandardCharsets.UTF_8);
     }
+
+    @Override
+    public CompletionStage<Void> addIdentifierAsync(String key, UUID value) {
+        return AsyncStorageExecutor.run(() -> this.addIdentifier(key, value));
+    }
+
+    @Override
+    public CompletionStage<Void> removeIdentifierAsync(String key) {
+        return AsyncStorageExecutor.run(() -> this.removeIdentifier(key));
+    }
+
+    @Override
+    public CompletionStage<Void> moveKeyAsync(String oldKey, String newKey) {
+        return AsyncStorageExecutor.run(() -> this.moveKey(oldKey, newKey));
+    }
+
+    @Override
+    public CompletionStage<UUID> getValueAsync(String key) {
+        return AsyncStorageExecutor.supply(() -> this.getValue(key));
+    }
+
+    @Override
+    public CompletionStage<String> getKeyAsync(UUID value) {
+        return AsyncStorageExecutor.supply(() -> this.getKey(value));
+    }
+
+    @Override
+    public BulkResult<String, UUID> addIdentifiers(Map<String, UUID> identifiers) {
+        return this.runBulk(identifiers.keySet(), key -> this.addIdentifierAsync(key, identifiers.get(key)).thenApply(ignored -> identifiers.get(key)));
+    }
+
+    @Override
+    public BulkResult<String, Void> removeIdentifiers(Collection<String> keys) {
+        return this.runBulk(keys, this::removeIdentifierAsync);
+    }
+
+    @Override
+    public BulkResult<String, UUID> getValues(Collection<String> keys) {
+        return this.runBulk(keys, this::getValueAsync);
+    }
+
+    @Override
+    public BulkResult<UUID, String> getKeys(Collection<UUID> values) {
+        return this.runBulk(values, this::getKeyAsync);
+    }
+
+    /**
+     * Applies the given operation to all items, running at most
+     * {@link IdentifierManager#maxParallelism} operations concurrently.
+     * Blocks until all operations have finished.
+     *
+     * @param items     The items to apply the operation to
+     * @param operation The asynchronous operation
+     * @param <I>       The type of the items
+     * @param <R>       The type of the result of a single operation
+     *
+     * @return The results resp. failures of all items
+     */
+    protected <I, R> BulkResult<I, R> runBulk(Collection<I> items, Function<I, CompletionStage<R>> operation) {
+        BulkResult<I, R> bulkResult = new BulkResult<>();
+        int maxParallelism = this.maxParallelism;
+        Semaphore permits = new Semaphore(maxParallelism);
+
+        Iterator<I> iterator = items.iterator();
+        while (iterator.hasNext()) {
+            I item = iterator.next();
+
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                // do not start any further operation
+                InputOutputException cause = new InputOutputException("Interrupted before the operation has been started", e);
+                bulkResult.addFailure(item, cause);
+                iterator.forEachRemaining(remainingItem -> bulkResult.addFailure(remainingItem, cause));
+                break;
+            }
+
+            operation.apply(item).whenComplete((result, throwable) -> {
+                if (null == throwable) {
+                    bulkResult.addResult(item, result);
+                } else {
+                    Throwable cause = throwable instanceof CompletionException && null != throwable.getCause() ? throwable.getCause() : throwable;
+                    bulkResult.addFailure(item, cause instanceof InputOutputException ? (InputOutputException) cause : new InputOutputException(cause));
+                }
+
+                permits.release();
+            });
+        }
+
+        // wait for the running operations to finish
+        permits.acquireUninterruptibly(maxParallelism);
+
+        return bulkResult;
+    }
+
+    /**
+     * Returns the path in the DHT at which the given key resp. value is stored
+     *
+     * @param identifier The key or value
+     *
+     * @return The path element
+     */
+    protected SecuredDhtPathElement getPathElement(Object identifier) {
+        return new SecuredDhtPathElement(
+                this.username,
+                Hash.hash(HashingAlgorithm.SHA_256, this.identifierContentKey + identifier),
+                this.domainKey
+        );
+    }
+
+    /**
+     * Acquires the locks of the stripes the given paths belong to.
+     * The locks are always acquired in the order of their stripe,
+     * so that operations touching overlapping paths can not deadlock.
+     *
+     * @param pathElements The paths to lock
+     *
+     * @return The acquired locks, to be passed to {@link IdentifierManager#unlock(List)}
+     */
+    protected List<Lock> lock(SecuredDhtPathElement... pathElements) {
+        SortedSet<Integer> stripes = new TreeSet<>();
+        for (SecuredDhtPathElement pathElement : pathElements) {
+            stripes.add(Math.floorMod(pathElement.getContentKey().hashCode(), NR_OF_LOCK_STRIPES));
+        }
+
+        List<Lock> locks = new ArrayList<>(stripes.size());
+        for (int stripe : stripes) {
+            this.lockStripes[stripe].lock();
+            locks.add(this.lockStripes[stripe]);
+        }
+
+        return locks;
+    }
+
+    /**
+     * Releases the given locks in the reverse order of acquiring them
+     *
+     * @param locks The locks returned by {@link IdentifierManager#lock(SecuredDhtPathElement...)}
+     */
+    protected void unlock(List<Lock> locks) {
+        for (int i = locks.size() - 1; i >= 0; i--) {
+            locks.get(i).unlock();
+        }
+    }
 }
@@ -0,0 +1,419 @@
+package org.rmatil.sync.network.core;
+
+import net.tomp2p.dht.PeerDHT;
+import net.tomp2p.futures.BaseFutureAdapter;
+import net.tomp2p.futures.FuturePing;
+import net.tomp2p.peers.PeerAddress;
+import org.rmatil.sync.network.api.INodeLocationListener;
+import org.rmatil.sync.network.api.INodeManager;
+import org.rmatil.sync.network.core.model.NodeLocation;
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Periodically pings the other nodes of the user in the background
+ * and keeps a table of their reachability and round trip times,
+ * so that senders do not have to wait for timeouts of nodes which went away.
+ * <p>
+ * The ping interval adapts to each node: It doubles with each successful ping
+ * up to the maximum interval and falls back to the minimum interval once a ping fails.
+ * Nodes which did not answer for longer than the stale timeout are removed
+ * from the node locations of the user.
+ * <p>
+ * If registered as listener of the node locations, nodes which log in
+ * resp. out are monitored resp. forgotten right away instead of on the next refresh.
+ */
+public class LivenessMonitor implements INodeLocationListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(LivenessMonitor.class);
+
+    /**
+     * The default minimum time between two pings to the same node (in milliseconds)
+     */
+    public static final long DEFAULT_MIN_PING_INTERVAL = 5000L;
+
+    /**
+     * The default maximum time between two pings to the same node (in milliseconds)
+     */
+    public static final long DEFAULT_MAX_PING_INTERVAL = 60000L;
+
+    /**
+     * The default time after which a node which did not answer is removed from the node locations (in milliseconds)
+     */
+    public static final long DEFAULT_STALE_TIMEOUT = 120000L;
+
+    /**
+     * The interval in which the node locations of the user are fetched again (in milliseconds)
+     */
+    public static final long LOCATION_REFRESH_INTERVAL = 30000L;
+
+    /**
+     * The interval in which the monitor checks for pings which are due (in milliseconds)
+     */
+    public static final long TICK_INTERVAL = 1000L;
+
+    /**
+     * The number of consecutive failed pings after which a node is considered unreachable
+     */
+    public static final int UNREACHABLE_THRESHOLD = 2;
+
+    /**
+     * The weight of a new measurement in the smoothed round trip time
+     */
+    protected static final double ALPHA = 1d / 8d;
+
+    protected PeerDHT peerDHT;
+
+    protected INodeManager nodeManager;
+
+    protected String username;
+
+    protected long minPingInterval;
+
+    protected long maxPingInterval;
+
+    protected long staleTimeout;
+
+    /**
+     * The reachability of each monitored node
+     */
+    protected final ConcurrentHashMap<PeerAddress, Reachability> reachabilities;
+
+    /**
+     * The time at which the node locations are fetched again
+     */
+    protected long nextRefreshTime = 0L;
+
+    protected ScheduledExecutorService scheduler;
+
+    /**
+     * @param peerDHT     The peer from which the pings are sent
+     * @param nodeManager The node manager from which the node locations are fetched
+     * @param username    The name of the user whose nodes are monitored
+     */
+    public LivenessMonitor(PeerDHT peerDHT, INodeManager nodeManager, String username) {
+        this(peerDHT, nodeManager, username, DEFAULT_MIN_PING_INTERVAL, DEFAULT_MAX_PING_INTERVAL, DEFAULT_STALE_TIMEOUT);
+    }
+
+    /**
+     * @param peerDHT         The peer from which the pings are sent
+     * @param nodeManager     The node manager from which the node locations are fetched
+     * @param username        The name of the user whose nodes are monitored
+     * @param minPingInterval The minimum time between two pings to the same node (in milliseconds)
+     * @param maxPingInterval The maximum time between two pings to the same node (in milliseconds)
+     * @param staleTimeout    The time after which a node which did not answer is removed from the node locations (in milliseconds)
+     */
+    public LivenessMonitor(PeerDHT peerDHT, INodeManager nodeManager, String username, long minPingInterval, long maxPingInterval, long staleTimeout) {
+        if (minPingInterval <= 0L || minPingInterval > maxPingInterval) {
+            throw new IllegalArgumentException("The minimum ping interval must be positive and not greater than the maximum one");
+        }
+
+        this.peerDHT = peerDHT;
+        this.nodeManager = nodeManager;
+        this.username = username;
+        this.minPingInterval = minPingInterval;
+        this.maxPingInterval = maxPingInterval;
+        this.staleTimeout = staleTimeout;
+        this.reachabilities = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Starts to monitor the nodes in the background
+     */
+    public synchronized void start() {
+        if (null != this.scheduler) {
+            return;
+        }
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName("LivenessMonitor");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        this.scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                this.tick(System.currentTimeMillis());
+            } catch (Exception e) {
+                // an exception would stop the periodic execution
+                logger.error("Failed to monitor the liveness of the nodes. Message: " + e.getMessage(), e);
+            }
+        }, 0L, TICK_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops monitoring the nodes
+     */
+    public synchronized void stop() {
+        if (null != this.scheduler) {
+            this.scheduler.shutdownNow();
+            this.scheduler = null;
+        }
+    }
+
+    /**
+     * Returns true, if the given peer answered its recent pings.
+     * Peers which are not monitored are assumed to be reachable.
+     *
+     * @param peerAddress The address of the peer
+     *
+     * @return False, if the peer is known to be unreachable
+     */
+    public boolean isReachable(PeerAddress peerAddress) {
+        Reachability reachability = this.reachabilities.get(peerAddress);
+
+        return null == reachability || reachability.isReachable();
+    }
+
+    /**
+     * Returns the smoothed round trip time of the pings to the given peer
+     *
+     * @param peerAddress The address of the peer
+     *
+     * @return The round trip time in milliseconds, or -1 if the peer did not answer any ping yet
+     */
+    public long getRtt(PeerAddress peerAddress) {
+        Reachability reachability = this.reachabilities.get(peerAddress);
+
+        return null != reachability ? reachability.getRtt() : - 1L;
+    }
+
+    /**
+     * Returns the reachability of the given peer
+     *
+     * @param peerAddress The address of the peer
+     *
+     * @return The reachability, or null if the peer is not monitored
+     */
+    public Reachability getReachability(PeerAddress peerAddress) {
+        return this.reachabilities.get(peerAddress);
+    }
+
+    @Override
+    public void onNodeLocationAdded(NodeLocation nodeLocation) {
+        if (nodeLocation.getPeerAddress().equals(this.getOwnPeerAddress())) {
+            return;
+        }
+
+        this.reachabilities.computeIfAbsent(nodeLocation.getPeerAddress(), peerAddress -> new Reachability(nodeLocation, this.minPingInterval, System.currentTimeMillis()));
+    }
+
+    @Override
+    public void onNodeLocationRemoved(NodeLocation nodeLocation) {
+        this.reachabilities.remove(nodeLocation.getPeerAddress());
+    }
+
+    /**
+     * Refreshes the monitored nodes if due, pings the nodes
+     * whose ping interval elapsed and prunes stale ones
+     *
+     * @param now The current time (in milliseconds)
+     */
+    protected void tick(long now) {
+        if (now >= this.nextRefreshTime) {
+            this.nextRefreshTime = now + LOCATION_REFRESH_INTERVAL;
+            this.refresh(now);
+        }
+
+        for (Reachability reachability : this.reachabilities.values()) {
+            if (! reachability.isReachable() && now - reachability.lastSeen >= this.staleTimeout) {
+                this.prune(reachability);
+                continue;
+            }
+
+            if (now >= reachability.nextPingTime && reachability.isPinging.compareAndSet(false, true)) {
+                this.ping(reachability);
+            }
+        }
+    }
+
+    /**
+     * Fetches the node locations of the user and updates the monitored nodes accordingly
+     *
+     * @param now The current time (in milliseconds)
+     */
+    protected void refresh(long now) {
+        List<NodeLocation> nodeLocations;
+        try {
+            nodeLocations = this.fetchNodeLocations();
+        } catch (InputOutputException e) {
+            logger.debug("Failed to fetch the node locations of user " + this.username + ". Message: " + e.getMessage());
+            return;
+        }
+
+        PeerAddress ownPeerAddress = this.getOwnPeerAddress();
+        Set<PeerAddress> peerAddresses = new HashSet<>();
+
+        for (NodeLocation nodeLocation : nodeLocations) {
+            if (nodeLocation.getPeerAddress().equals(ownPeerAddress)) {
+                continue;
+            }
+
+            peerAddresses.add(nodeLocation.getPeerAddress());
+            this.reachabilities.computeIfAbsent(nodeLocation.getPeerAddress(), peerAddress -> new Reachability(nodeLocation, this.minPingInterval, now));
+        }
+
+        // nodes which logged out do not have to be monitored anymore
+        this.reachabilities.keySet().retainAll(peerAddresses);
+    }
+
+    /**
+     * Pings the node of the given reachability asynchronously
+     *
+     * @param reachability The reachability of the node to ping
+     */
+    protected void ping(Reachability reachability) {
+        long start = System.currentTimeMillis();
+
+        FuturePing futurePing = this.peerDHT
+                .peer()
+                .ping()
+                .peerAddress(reachability.nodeLocation.getPeerAddress())
+                .start();
+
+        futurePing.addListener(new BaseFutureAdapter<FuturePing>() {
+            @Override
+            public void operationComplete(FuturePing future)
+                    throws Exception {
+                long end = System.currentTimeMillis();
+                onPingCompleted(reachability, future.isSuccess(), end - start, end);
+            }
+        });
+    }
+
+    /**
+     * Updates the reachability of a node with the outcome of a ping
+     *
+     * @param reachability The reachability of the pinged node
+     * @param success      Whether the node answered the ping
+     * @param rtt          The round trip time of the ping (in milliseconds)
+     * @param now          The current time (in milliseconds)
+     */
+    protected void onPingCompleted(Reachability reachability, boolean success, long rtt, long now) {
+        synchronized (reachability) {
+            if (success) {
+                reachability.rtt = reachability.rtt < 0d ? rtt : (1d - ALPHA) * reachability.rtt + ALPHA * rtt;
+                reachability.nrOfFailedPings = 0;
+                reachability.lastSeen = now;
+                reachability.pingInterval = Math.min(this.maxPingInterval, reachability.pingInterval * 2);
+            } else {
+                if (reachability.nrOfFailedPings + 1 == UNREACHABLE_THRESHOLD) {
+                    logger.debug("Node " + reachability.nodeLocation.getClientDeviceId() + " did not answer " + UNREACHABLE_THRESHOLD + " pings");
+                }
+
+                reachability.nrOfFailedPings++;
+                reachability.pingInterval = this.minPingInterval;
+            }
+
+            reachability.nextPingTime = now + reachability.pingInterval;
+        }
+
+        reachability.isPinging.set(false);
+    }
+
+    /**
+     * Removes the location of a node which did not answer for longer than the stale timeout
+     *
+     * @param reachability The reachability of the stale node
+     */
+    protected void prune(Reachability reachability) {
+        logger.debug("Removing stale node location " + reachability.nodeLocation);
+
+        try {
+            this.nodeManager.removeNodeLocation(reachability.nodeLocation);
+        } catch (InputOutputException e) {
+            logger.debug("Failed to remove stale node location " + reachability.nodeLocation + ". Message: " + e.getMessage());
+            return;
+        }
+
+        this.reachabilities.remove(reachability.nodeLocation.getPeerAddress(), reachability);
+    }
+
+    protected List<NodeLocation> fetchNodeLocations()
+            throws InputOutputException {
+        return this.nodeManager.getNodeLocations(this.username);
+    }
+
+    protected PeerAddress getOwnPeerAddress() {
+        return this.peerDHT.peerAddress();
+    }
+
+    /**
+     * The reachability of a single monitored node
+     */
+    public static class Reachability {
+
+        protected final NodeLocation nodeLocation;
+
+        /**
+         * The smoothed round trip time of the pings (in milliseconds), negative if unknown
+         */
+        protected volatile double rtt = - 1d;
+
+        protected volatile int nrOfFailedPings;
+
+        /**
+         * The time the node answered a ping the last time, resp. since it is monitored
+         */
+        protected volatile long lastSeen;
+
+        protected long pingInterval;
+
+        protected volatile long nextPingTime;
+
+        protected final AtomicBoolean isPinging = new AtomicBoolean();
+
+        protected Reachability(NodeLocation nodeLocation, long pingInterval, long now) {
+            this.nodeLocation = nodeLocation;
+            this.pingInterval = pingInterval;
+            this.lastSeen = now;
+            this.nextPingTime = now;
+        }
+
+        public NodeLocation getNodeLocation() {
+            return this.nodeLocation;
+        }
+
+        /**
+         * @return False, if the node did not answer its recent pings
+         */
+        public boolean isReachable() {
+            return this.nrOfFailedPings < UNREACHABLE_THRESHOLD;
+        }
+
+        /**
+         * @return The smoothed round trip time in milliseconds, or -1 if the node did not answer any ping yet
+         */
+        public long getRtt() {
+            double rtt = this.rtt;
+
+            return rtt < 0d ? - 1L : Math.round(rtt);
+        }
+
+        /**
+         * @return The time the node answered a ping the last time, resp. since it is monitored (in milliseconds)
+         */
+        public long getLastSeen() {
+            return this.lastSeen;
+        }
+
+        /**
+         * @return The time at which the node is pinged the next time (in milliseconds)
+         */
+        public long getNextPingTime() {
+            return this.nextPingTime;
+        }
+    }
+}
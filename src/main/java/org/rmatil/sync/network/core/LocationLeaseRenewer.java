@@ -0,0 +1,86 @@
+package org.rmatil.sync.network.core;
+
+import org.rmatil.sync.network.api.INodeManager;
+import org.rmatil.sync.network.core.model.NodeLocation;
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renews the lease of the location of a running node in the background,
+ * so that the location stays available to the other nodes as long as
+ * the node is running, but expires once it crashed.
+ * <p>
+ * The lease is renewed several times per lease duration, so that
+ * a single failed renewal does not let the location expire.
+ */
+public class LocationLeaseRenewer {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocationLeaseRenewer.class);
+
+    /**
+     * The number of renewals per lease duration
+     */
+    public static final int NR_OF_RENEWALS_PER_LEASE = 3;
+
+    protected INodeManager nodeManager;
+
+    protected NodeLocation nodeLocation;
+
+    protected ScheduledExecutorService scheduler;
+
+    /**
+     * @param nodeManager  The node manager in which the location is stored
+     * @param nodeLocation The location of which the lease is renewed
+     */
+    public LocationLeaseRenewer(INodeManager nodeManager, NodeLocation nodeLocation) {
+        this.nodeManager = nodeManager;
+        this.nodeLocation = nodeLocation;
+    }
+
+    /**
+     * Starts to renew the lease in the background
+     */
+    public synchronized void start() {
+        if (null != this.scheduler) {
+            return;
+        }
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName("LocationLeaseRenewer");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        long renewalInterval = Math.max(1L, this.nodeManager.getLeaseDuration() / NR_OF_RENEWALS_PER_LEASE);
+        this.scheduler.scheduleWithFixedDelay(this::renew, renewalInterval, renewalInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops renewing the lease. The location expires once its current lease ends
+     */
+    public synchronized void stop() {
+        if (null != this.scheduler) {
+            this.scheduler.shutdownNow();
+            this.scheduler = null;
+        }
+    }
+
+    protected void renew() {
+        try {
+            this.nodeManager.addNodeLocation(this.nodeLocation);
+            logger.trace("Renewed lease of node location " + this.nodeLocation);
+        } catch (InputOutputException e) {
+            logger.warn("Failed to renew lease of node location " + this.nodeLocation + ". Message: " + e.getMessage());
+        } catch (RuntimeException e) {
+            // an exception would stop the periodic renewal
+            logger.error("Failed to renew lease of node location " + this.nodeLocation + ". Message: " + e.getMessage(), e);
+        }
+    }
+}
@@ -1,17 +1,30 @@
 package org.rmatil.sync.network.core;
 
+import net.tomp2p.futures.BaseFutureAdapter;
 import net.tomp2p.futures.FutureDirect;
 import net.tomp2p.peers.PeerAddress;
 import org.rmatil.sync.network.api.*;
 import org.rmatil.sync.network.config.Config;
+import org.rmatil.sync.network.core.compression.AdaptiveCompressor;
+import org.rmatil.sync.network.core.exception.CircuitOpenException;
 import org.rmatil.sync.network.core.exception.ConnectionException;
 import org.rmatil.sync.network.core.exception.ConnectionFailedException;
 import org.rmatil.sync.network.core.exception.ObjectSendFailedException;
 import org.rmatil.sync.network.core.exception.SecurityException;
 import org.rmatil.sync.network.core.messaging.EncryptedDataReplyHandler;
+import org.rmatil.sync.network.core.messaging.FutureDirectListener;
+import org.rmatil.sync.network.core.messaging.LatencyHistogram;
 import org.rmatil.sync.network.core.messaging.ObjectDataReplyHandler;
+import org.rmatil.sync.network.core.messaging.StageMetrics;
+import org.rmatil.sync.network.core.model.ClientDevice;
+import org.rmatil.sync.network.core.model.CreditGrant;
 import org.rmatil.sync.network.core.model.EncryptedData;
+import org.rmatil.sync.network.core.model.FileChunk;
+import org.rmatil.sync.network.core.model.MessageHeader;
 import org.rmatil.sync.network.core.model.NodeLocation;
+import org.rmatil.sync.network.core.model.NodeLocationAnnouncement;
+import org.rmatil.sync.network.core.model.Priority;
+import org.rmatil.sync.network.core.model.ReplyPending;
 import org.rmatil.sync.network.core.security.encryption.asymmetric.rsa.RsaEncryption;
 import org.rmatil.sync.network.core.security.encryption.symmetric.aes.AesEncryption;
 import org.rmatil.sync.network.core.security.encryption.symmetric.aes.AesKeyFactory;
@@ -23,17 +36,40 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.crypto.SecretKey;
+import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.InvalidKeyException;
 import java.security.interfaces.RSAPrivateKey;
 import java.security.interfaces.RSAPublicKey;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.*;
 
 
 public class Node implements INode {
 
     protected final static Logger logger = LoggerFactory.getLogger(Node.class);
 
+    /**
+     * The maximum number of file chunks which are sent
+     * concurrently, i.e. held in memory, while sending a file
+     */
+    public static final int MAX_CHUNKS_IN_FLIGHT = 8;
+
+    /**
+     * The time to wait before asking a node again for the response to a request
+     * which it is still processing, see {@link ReplyPending} (in milliseconds)
+     */
+    public static final long REPLY_POLL_INTERVAL = 250L;
+
+    /**
+     * The maximum time to wait for the response to a request which the receiving node is still processing (in milliseconds)
+     */
+    public static final long MAX_REPLY_WAITING_TIME = 30000L;
+
     protected ConnectionConfiguration config;
 
     protected Connection connection;
@@ -44,6 +80,8 @@ public class Node implements INode {
 
     protected ObjectDataReplyHandler objectDataReplyHandler;
 
+    protected EncryptedDataReplyHandler encryptedDataReplyHandler;
+
     protected NodeManager nodeManager;
 
     protected IUserManager userManager;
@@ -54,6 +92,52 @@ public class Node implements INode {
     protected AesEncryption aesEncryption;
     protected RsaSign       rsaSign;
 
+    /**
+     * Compresses messages before they are encrypted
+     */
+    protected AdaptiveCompressor compressor;
+
+    /**
+     * Limits the messages in flight towards each peer, one per priority lane
+     */
+    protected Map<Priority, FlowController> flowControllers;
+
+    /**
+     * Collects outgoing messages per receiver, if enabled
+     */
+    protected volatile Outbox outbox;
+
+    /**
+     * Estimates the round trip times to other peers from the delivered messages
+     */
+    protected RttEstimator rttEstimator;
+
+    /**
+     * Hedges synchronous requests to alternative nodes
+     */
+    protected volatile RequestHedger requestHedger;
+
+    /**
+     * Schedules asking nodes again for responses which they are still processing
+     */
+    protected volatile ScheduledExecutorService replyPollScheduler;
+
+    /**
+     * Sends the polls for pending responses, so that waiting for
+     * a free credit does not hold up the scheduler
+     */
+    protected volatile ExecutorService replyPollExecutor;
+
+    /**
+     * Skips peers which are known to be unreachable
+     */
+    protected CircuitBreaker circuitBreaker;
+
+    /**
+     * Keeps the location of this node alive while it is running
+     */
+    protected LocationLeaseRenewer locationLeaseRenewer;
+
     public Node(ConnectionConfiguration config, IUser user, UUID uuid) {
         this.config = config;
         this.user = user;
@@ -61,6 +145,13 @@ public class Node implements INode {
         this.rsaEncryption = new RsaEncryption();
         this.aesEncryption = new AesEncryption();
         this.rsaSign = new RsaSign();
+        this.compressor = new AdaptiveCompressor();
+        this.flowControllers = new EnumMap<>(Priority.class);
+        for (Priority priority : Priority.values()) {
+            this.flowControllers.put(priority, new FlowController());
+        }
+        this.rttEstimator = new RttEstimator();
+        this.circuitBreaker = new CircuitBreaker();
     }
 
     @Override
@@ -87,13 +178,16 @@ public class Node implements INode {
                 Config.DEFAULT.getDomainKey()
         );
 
+        this.encryptedDataReplyHandler = new EncryptedDataReplyHandler(
+                this.objectDataReplyHandler,
+                this.nodeManager,
+                (RSAPrivateKey) this.user.getPrivateKey(),
+                this.compressor
+        );
+
         this.connection = new Connection(
                 this.config,
-                new EncryptedDataReplyHandler(
-                        this.objectDataReplyHandler,
-                        this.nodeManager,
-                        (RSAPrivateKey) this.user.getPrivateKey()
-                )
+                this.encryptedDataReplyHandler
         );
 
         this.connection.open(this.user.getKeyPair());
@@ -128,9 +222,40 @@ public class Node implements INode {
         if (! this.userManager.login(this.user, nodeLocation)) {
             logger.error("Failed to login the user " + this.user.getUserName());
             this.connection.close();
+            this.encryptedDataReplyHandler.shutdown();
             return false;
         }
 
+        // created only once logged in, so that a failed start does not leave their threads behind
+        this.requestHedger = new RequestHedger(this);
+        this.replyPollScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName("ReplyPollScheduler");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        this.replyPollExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName("ReplyPoll");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        this.locationLeaseRenewer = new LocationLeaseRenewer(this.nodeManager, nodeLocation);
+        this.locationLeaseRenewer.start();
+
+        this.connection.startLivenessMonitor(this.nodeManager, this.user.getUserName());
+
+        try {
+            this.nodeManager.watchNodeLocations(this.user.getUserName(), this.connection.getLivenessMonitor());
+        } catch (InputOutputException e) {
+            logger.warn("Failed to watch the node locations of user " + this.user.getUserName() + ". Message: " + e.getMessage());
+        }
+
+        this.announceNodeLocation(nodeLocation, true);
+
         logger.debug("Bootstrap peer succeeded to bootstrap at " + this.getPeerAddress().inetAddress().getHostAddress() + ":" + this.getPeerAddress().tcpPort());
 
         return true;
@@ -154,6 +279,28 @@ public class Node implements INode {
                 this.connection.getPeerDHT().peerAddress()
         );
 
+        this.disableOutbox();
+
+        if (null != this.requestHedger) {
+            this.requestHedger.close();
+            this.requestHedger = null;
+        }
+
+        if (null != this.replyPollScheduler) {
+            // scheduled polls still run, failing their requests since the executor rejects them
+            this.replyPollScheduler.shutdown();
+            this.replyPollExecutor.shutdown();
+            this.replyPollScheduler = null;
+            this.replyPollExecutor = null;
+        }
+
+        if (null != this.locationLeaseRenewer) {
+            this.locationLeaseRenewer.stop();
+        }
+
+        this.nodeManager.unwatchNodeLocations(this.user.getUserName(), this.connection.getLivenessMonitor());
+        this.announceNodeLocation(nodeLocation, false);
+
         this.userManager.logout(this.user, nodeLocation);
         // friendly announce the shutdown of this node
         try {
@@ -163,12 +310,57 @@ public class Node implements INode {
             return false;
         }
 
+        this.encryptedDataReplyHandler.shutdown();
+
         // reset the connection
         this.connection = null;
 
         return true;
     }
 
+    /**
+     * Tells the other nodes of the user that this node logged in resp. out,
+     * so that they do not have to read the node locations from the DHT again.
+     * Waits at most the send timeout of each node for the notice to be delivered
+     *
+     * @param nodeLocation The location of this node
+     * @param isLogin      True, if this node logged in, false if it logs out
+     */
+    protected void announceNodeLocation(NodeLocation nodeLocation, boolean isLogin) {
+        List<NodeLocation> nodeLocations;
+        try {
+            nodeLocations = this.nodeManager.getNodeLocations(this.user.getUserName());
+        } catch (InputOutputException e) {
+            logger.debug("Failed to fetch the node locations to announce the " + (isLogin ? "login" : "logout") + " to. Message: " + e.getMessage());
+            return;
+        }
+
+        ClientDevice clientDevice = new ClientDevice(this.user.getUserName(), this.clientDeviceId, nodeLocation.getPeerAddress());
+        Map<NodeLocation, FutureDirect> futures = new HashMap<>();
+
+        for (NodeLocation receiverAddress : nodeLocations) {
+            if (receiverAddress.getPeerAddress().equals(nodeLocation.getPeerAddress())) {
+                continue;
+            }
+
+            try {
+                futures.put(receiverAddress, this.sendDirect(
+                        receiverAddress,
+                        new NodeLocationAnnouncement(UUID.randomUUID(), clientDevice, Collections.singletonList(receiverAddress), nodeLocation, isLogin)
+                ));
+            } catch (ObjectSendFailedException e) {
+                // the other node learns about the change once it reconciles its locations
+                logger.debug("Failed to announce the " + (isLogin ? "login" : "logout") + " to node " + receiverAddress.getClientDeviceId() + ". Message: " + e.getMessage());
+            }
+        }
+
+        for (Map.Entry<NodeLocation, FutureDirect> entry : futures.entrySet()) {
+            if (! entry.getValue().awaitUninterruptibly(this.rttEstimator.getSendTimeout(entry.getKey().getPeerAddress())) || entry.getValue().isFailed()) {
+                logger.debug("Announcing the " + (isLogin ? "login" : "logout") + " to node " + entry.getKey().getClientDeviceId() + " failed");
+            }
+        }
+    }
+
     @Override
     public boolean isConnected() {
         return null != this.connection && ! this.connection.isClosed();
@@ -214,13 +406,370 @@ public class Node implements INode {
         return this.identifierManager;
     }
 
+    /**
+     * Returns the metrics of all stages of the receive pipeline
+     *
+     * @return The metrics of the stages, or an empty list if the node has not been started yet
+     */
+    public List<StageMetrics> getReceiveStageMetrics() {
+        if (null == this.encryptedDataReplyHandler) {
+            return new ArrayList<>();
+        }
+
+        return this.encryptedDataReplyHandler.getStageMetrics();
+    }
+
+    /**
+     * Returns the compressor used for outgoing and incoming messages
+     * along with its statistics
+     *
+     * @return The compressor
+     */
+    public AdaptiveCompressor getCompressor() {
+        return this.compressor;
+    }
+
     @Override
     public PeerAddress getPeerAddress() {
         return this.connection.getPeerDHT().peerAddress();
     }
 
+    @Override
+    public CompletableFuture<IResponse> sendRequest(NodeLocation receiverAddress, IRequest request)
+            throws ObjectSendFailedException {
+        CompletableFuture<IResponse> futureResponse = new CompletableFuture<>();
+
+        this.sendRequest(receiverAddress, request, futureResponse, System.currentTimeMillis() + MAX_REPLY_WAITING_TIME);
+
+        return futureResponse;
+    }
+
+    /**
+     * Sends the given request and completes the given future with its response.
+     * If the receiver is still processing the request, it is sent again after
+     * {@link Node#REPLY_POLL_INTERVAL}, which the receiver answers with the response once available
+     *
+     * @param receiverAddress The location of the node to which the request is sent
+     * @param request         The request to send
+     * @param futureResponse  The future to complete with the response
+     * @param deadline        The time until which the request is sent again (in milliseconds since the epoch)
+     *
+     * @throws ObjectSendFailedException If sending the request failed
+     */
+    protected void sendRequest(NodeLocation receiverAddress, IRequest request, CompletableFuture<IResponse> futureResponse, long deadline)
+            throws ObjectSendFailedException {
+        FutureDirect futureDirect = this.sendDirect(receiverAddress, request);
+        futureDirect.addListener(new BaseFutureAdapter<FutureDirect>() {
+            @Override
+            public void operationComplete(FutureDirect future)
+                    throws Exception {
+                if (future.isFailed()) {
+                    futureResponse.completeExceptionally(new ObjectSendFailedException(
+                            "Failed to send request " + request.getExchangeId() + " to " + receiverAddress.getUsername() + ": " + future.failedReason()
+                    ));
+                    return;
+                }
+
+                Object reply = future.object();
+                if (reply instanceof ReplyPending) {
+                    pollReply(receiverAddress, request, futureResponse, deadline);
+                    return;
+                }
+
+                if (! (reply instanceof EncryptedData)) {
+                    futureResponse.completeExceptionally(new ObjectSendFailedException(
+                            "No response received for request " + request.getExchangeId() + ". Is a synchronous request callback registered on the receiver?"
+                    ));
+                    return;
+                }
+
+                encryptedDataReplyHandler.decryptReply(receiverAddress, request.getExchangeId(), (EncryptedData) reply)
+                        .whenComplete((response, throwable) -> {
+                            if (null != throwable) {
+                                futureResponse.completeExceptionally(throwable);
+                            } else {
+                                futureResponse.complete(response);
+                            }
+                        });
+            }
+
+            @Override
+            public void exceptionCaught(Throwable t)
+                    throws Exception {
+                futureResponse.completeExceptionally(t);
+            }
+        });
+    }
+
+    /**
+     * Sends the given request again after {@link Node#REPLY_POLL_INTERVAL}, since its receiver is still processing it.
+     * The request is sent off the network thread delivering the reply, since it may have to wait for a free credit
+     *
+     * @param receiverAddress The location of the node to which the request has been sent
+     * @param request         The request which is still being processed
+     * @param futureResponse  The future to complete with the response
+     * @param deadline        The time until which the request is sent again (in milliseconds since the epoch)
+     */
+    protected void pollReply(NodeLocation receiverAddress, IRequest request, CompletableFuture<IResponse> futureResponse, long deadline) {
+        ScheduledExecutorService replyPollScheduler = this.replyPollScheduler;
+        ExecutorService replyPollExecutor = this.replyPollExecutor;
+
+        if (System.currentTimeMillis() + REPLY_POLL_INTERVAL > deadline) {
+            futureResponse.completeExceptionally(new ObjectSendFailedException(
+                    "Request " + request.getExchangeId() + " has not been answered by " + receiverAddress.getUsername() + " within " + MAX_REPLY_WAITING_TIME + " ms"
+            ));
+            return;
+        }
+
+        if (null == replyPollScheduler || null == replyPollExecutor) {
+            futureResponse.completeExceptionally(new ObjectSendFailedException("The node is not started"));
+            return;
+        }
+
+        Runnable poll = () -> {
+            try {
+                this.sendRequest(receiverAddress, request, futureResponse, deadline);
+            } catch (RuntimeException e) {
+                futureResponse.completeExceptionally(e);
+            }
+        };
+
+        try {
+            replyPollScheduler.schedule(() -> {
+                try {
+                    replyPollExecutor.execute(poll);
+                } catch (RejectedExecutionException e) {
+                    futureResponse.completeExceptionally(new ObjectSendFailedException("The node has been shut down while waiting for the response to request " + request.getExchangeId()));
+                }
+            }, REPLY_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            futureResponse.completeExceptionally(new ObjectSendFailedException("The node has been shut down while waiting for the response to request " + request.getExchangeId()));
+        }
+    }
+
+    @Override
+    public CompletableFuture<IResponse> sendHedgedRequest(List<NodeLocation> receiverAddresses, IRequest request) {
+        RequestHedger requestHedger = this.requestHedger;
+        if (null == requestHedger) {
+            CompletableFuture<IResponse> futureResponse = new CompletableFuture<>();
+            futureResponse.completeExceptionally(new ObjectSendFailedException("The node is not started"));
+
+            return futureResponse;
+        }
+
+        return requestHedger.send(receiverAddresses, request);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendBatched(NodeLocation receiverAddress, Object data) {
+        Outbox outbox = this.outbox;
+        if (null != outbox) {
+            return outbox.send(receiverAddress, data);
+        }
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            this.sendDirect(receiverAddress, data).addListener(new BaseFutureAdapter<FutureDirect>() {
+                @Override
+                public void operationComplete(FutureDirect futureDirect)
+                        throws Exception {
+                    if (futureDirect.isFailed()) {
+                        future.completeExceptionally(new ObjectSendFailedException("Failed to send data to " + receiverAddress.getUsername() + ": " + futureDirect.failedReason()));
+                    } else {
+                        future.complete(null);
+                    }
+                }
+
+                @Override
+                public void exceptionCaught(Throwable t)
+                        throws Exception {
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (ObjectSendFailedException e) {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+    /**
+     * Sends the given encrypted data once the window of the receiver has a free credit.
+     * Each priority has its own window, so that control messages do not queue behind bulk transfers.
+     * The credit is released as soon as the receiver replied.
+     * If no credit becomes available in time, the data is not sent at all.
+     *
+     * @param receiverAddress The address of the receiver
+     * @param encryptedData   The data to send
+     *
+     * @return The future of the message
+     *
+     * @throws ObjectSendFailedException If no free credit became available in time or the thread got interrupted while waiting
+     * @throws CircuitOpenException      If the receiver is known to be unreachable
+     */
+    protected FutureDirect sendWithinWindow(PeerAddress receiverAddress, EncryptedData encryptedData)
+            throws ObjectSendFailedException {
+        if (! this.circuitBreaker.allowRequest(receiverAddress)) {
+            throw new CircuitOpenException("Not sending message to " + receiverAddress + " since it is known to be unreachable");
+        }
+        long sendTime = System.currentTimeMillis();
+
+        FlowController flowController = this.getFlowController(encryptedData.getHeader().getPriority());
+
+        boolean isAcquired;
+        try {
+            isAcquired = flowController.acquire(receiverAddress);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ObjectSendFailedException("Interrupted while waiting for a free credit of receiver " + receiverAddress, e);
+        }
+
+        if (! isAcquired) {
+            throw new ObjectSendFailedException("No free credit of receiver " + receiverAddress + " became available in time (" + flowController.getWindow(receiverAddress) + ")");
+        }
+
+        long start = System.nanoTime();
+
+        FutureDirect futureDirect;
+        try {
+            futureDirect = this.connection.sendDirect(receiverAddress, encryptedData);
+        } catch (RuntimeException e) {
+            flowController.release(receiverAddress, null);
+            this.circuitBreaker.recordFailure(receiverAddress, sendTime);
+            throw e;
+        }
+
+        futureDirect.addListener(new BaseFutureAdapter<FutureDirect>() {
+            @Override
+            public void operationComplete(FutureDirect future)
+                    throws Exception {
+                CreditGrant creditGrant = null;
+                if (future.isSuccess()) {
+                    circuitBreaker.recordSuccess(receiverAddress, sendTime);
+
+                    try {
+                        Object reply = future.object();
+                        if (reply instanceof CreditGrant) {
+                            creditGrant = (CreditGrant) reply;
+                            // credit grants are replied before the message is processed, therefore they measure the round trip time only
+                            rttEstimator.addSample(receiverAddress, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                        }
+                    } catch (ClassNotFoundException | IOException e) {
+                        logger.debug("Could not read reply of " + receiverAddress + ": " + e.getMessage());
+                    }
+                } else {
+                    circuitBreaker.recordFailure(receiverAddress, sendTime);
+                }
+
+                flowController.release(receiverAddress, creditGrant);
+            }
+
+            @Override
+            public void exceptionCaught(Throwable t)
+                    throws Exception {
+                flowController.release(receiverAddress, null);
+                circuitBreaker.recordFailure(receiverAddress, sendTime);
+            }
+        });
+
+        return futureDirect;
+    }
+
+    /**
+     * Returns the flow controller limiting the messages of the given priority in flight towards each peer
+     *
+     * @param priority The priority of the messages
+     *
+     * @return The flow controller
+     */
+    public FlowController getFlowController(Priority priority) {
+        return this.flowControllers.get(priority);
+    }
+
+    @Override
+    public RttEstimator getRttEstimator() {
+        return this.rttEstimator;
+    }
+
+    @Override
+    public CircuitBreaker getCircuitBreaker() {
+        return this.circuitBreaker;
+    }
+
+    @Override
+    public LivenessMonitor getLivenessMonitor() {
+        if (null == this.connection) {
+            return null;
+        }
+
+        return this.connection.getLivenessMonitor();
+    }
+
+    /**
+     * Replaces the circuit breaker, e.g. to use other thresholds
+     *
+     * @param circuitBreaker The circuit breaker to use
+     */
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * Replaces the estimator of the round trip times, e.g.
+     * to use other floors and ceilings for the timeouts
+     *
+     * @param rttEstimator The round trip time estimator to use
+     */
+    public void setRttEstimator(RttEstimator rttEstimator) {
+        this.rttEstimator = rttEstimator;
+    }
+
+    /**
+     * Returns the histogram of the receive latencies of messages with the given priority
+     *
+     * @param priority The priority of the messages
+     *
+     * @return The latency histogram, or null if the node has not been started yet
+     */
+    public LatencyHistogram getReceiveLatencyHistogram(Priority priority) {
+        if (null == this.encryptedDataReplyHandler) {
+            return null;
+        }
+
+        return this.encryptedDataReplyHandler.getLane(priority).getLatencyHistogram();
+    }
+
+    /**
+     * Enables collecting messages sent using {@link Node#sendBatched(NodeLocation, Object)}
+     * per receiver, so that they are encrypted and sent as one single message
+     *
+     * @param lingerTime   The time to wait for further messages to the same receiver (in milliseconds)
+     * @param maxBatchSize The maximum number of messages in a single batch
+     */
+    public void enableOutbox(long lingerTime, int maxBatchSize) {
+        this.disableOutbox();
+        this.outbox = new Outbox(this, lingerTime, maxBatchSize);
+    }
+
+    /**
+     * Sends all pending batches and disables collecting messages per receiver
+     */
+    public void disableOutbox() {
+        Outbox outbox = this.outbox;
+        this.outbox = null;
+
+        if (null != outbox) {
+            outbox.close();
+        }
+    }
+
     @Override
     public FutureDirect sendDirect(NodeLocation receiverAddress, Object data) {
+        return this.sendDirect(receiverAddress, data, 0L);
+    }
+
+    @Override
+    public FutureDirect sendDirect(NodeLocation receiverAddress, Object data, long deadline) {
         logger.info("Sending request to "
                 + receiverAddress.getUsername()
                 + " ("
@@ -250,11 +799,15 @@ public class Node implements INode {
         try {
             byte[] plainData = ByteSerializer.toBytes(data);
 
+            // compress the data before encrypting it, if it is worth to do so
+            byte[] compressedData = this.compressor.compress(plainData);
+            boolean isCompressed = null != compressedData;
+
             // encrypt the actual data using the AES key
             byte[] initVector = AesEncryption.generateInitializationVector();
             SecretKey aesKey = AesKeyFactory.generateSecretKey();
 
-            byte[] aesEncryptedData = this.aesEncryption.encrypt(aesKey, initVector, plainData);
+            byte[] aesEncryptedData = this.aesEncryption.encrypt(aesKey, initVector, isCompressed ? compressedData : plainData);
 
             // encrypt the AES key with RSA
             byte[] encodedAesKey = aesKey.getEncoded();
@@ -265,16 +818,20 @@ public class Node implements INode {
 
             byte[] rsaEncryptedData = this.rsaEncryption.encrypt(publicKey, symmetricKey);
 
-            byte[] signature = this.rsaSign.sign((RSAPrivateKey) this.user.getPrivateKey(), plainData);
-
-            return this.connection.sendDirect(
-                    receiverAddress.getPeerAddress(),
-                    new EncryptedData(
-                            signature,
-                            rsaEncryptedData,
-                            aesEncryptedData
-                    )
+            // the header is sent in clear, but covered by the signature
+            MessageHeader header = MessageHeader.create(data, plainData, this.user.getUserName(), this.clientDeviceId, deadline);
+            // the signature covers the payload as sent, so that receivers verify it before decompressing
+            byte[] signature = this.rsaSign.sign((RSAPrivateKey) this.user.getPrivateKey(), header.prependTo(isCompressed ? compressedData : plainData));
+
+            EncryptedData encryptedData = new EncryptedData(
+                    signature,
+                    rsaEncryptedData,
+                    aesEncryptedData,
+                    isCompressed,
+                    header
             );
+
+            return this.sendWithinWindow(receiverAddress.getPeerAddress(), encryptedData);
         } catch (IOException | SecurityException e) {
             throw new ObjectSendFailedException(
                     "Failed to encrypt data for receiver "
@@ -289,4 +846,132 @@ public class Node implements INode {
             );
         }
     }
+
+    @Override
+    public void sendFile(NodeLocation receiverAddress, UUID exchangeId, Path path)
+            throws ObjectSendFailedException {
+        try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            this.sendFile(receiverAddress, exchangeId, fileChannel, 0, fileChannel.size());
+        } catch (IOException e) {
+            throw new ObjectSendFailedException("Failed to read file " + path + ". Message: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void sendFile(NodeLocation receiverAddress, UUID exchangeId, FileChannel fileChannel, long position, long length)
+            throws ObjectSendFailedException {
+        long totalNrOfChunks = this.getTotalNrOfChunks(length);
+
+        List<Long> chunkCounters = new ArrayList<>();
+        for (long i = 0; i < totalNrOfChunks; i++) {
+            chunkCounters.add(i);
+        }
+
+        this.sendFile(receiverAddress, exchangeId, fileChannel, position, length, chunkCounters);
+    }
+
+    @Override
+    public void sendFile(NodeLocation receiverAddress, UUID exchangeId, FileChannel fileChannel, long position, long length, Collection<Long> chunkCounters)
+            throws ObjectSendFailedException {
+        long chunkSize = Config.DEFAULT.getChunkSize();
+        long totalNrOfChunks = this.getTotalNrOfChunks(length);
+
+        ClientDevice clientDevice = new ClientDevice(
+                this.user.getUserName(),
+                this.clientDeviceId,
+                this.getPeerAddress()
+        );
+
+        List<NodeLocation> receiverAddresses = Collections.singletonList(receiverAddress);
+
+        Deque<FutureDirect> futuresInFlight = new ArrayDeque<>();
+
+        try {
+            for (Long chunkCounter : chunkCounters) {
+                if (chunkCounter < 0 || chunkCounter >= totalNrOfChunks) {
+                    throw new ObjectSendFailedException("Chunk " + chunkCounter + " is out of bounds. Exchange " + exchangeId + " has " + totalNrOfChunks + " chunks");
+                }
+
+                long chunkOffset = chunkCounter * chunkSize;
+                int chunkLength = (int) Math.min(chunkSize, length - chunkOffset);
+
+                // each chunk is serialized as a whole anyway, therefore it is read straight into its own array
+                byte[] data = new byte[chunkLength];
+                this.readFully(fileChannel, ByteBuffer.wrap(data), position + chunkOffset);
+
+                // limit the number of chunks held in memory
+                if (futuresInFlight.size() >= MAX_CHUNKS_IN_FLIGHT) {
+                    this.awaitFileChunk(futuresInFlight.poll(), exchangeId);
+                }
+
+                futuresInFlight.add(this.sendDirect(
+                        receiverAddress,
+                        new FileChunk(exchangeId, clientDevice, receiverAddresses, chunkCounter, totalNrOfChunks, chunkOffset, length, data)
+                ));
+            }
+
+            while (! futuresInFlight.isEmpty()) {
+                this.awaitFileChunk(futuresInFlight.poll(), exchangeId);
+            }
+        } catch (IOException e) {
+            throw new ObjectSendFailedException("Failed to read file region for exchange " + exchangeId + ". Message: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            throw new ObjectSendFailedException("Got interrupted while sending file chunks of exchange " + exchangeId, e);
+        }
+    }
+
+    /**
+     * Reads from the given channel at the given position until the buffer is full,
+     * without changing the position of the channel
+     *
+     * @param fileChannel The channel to read from
+     * @param buffer      The buffer to fill
+     * @param position    The position in the channel to start reading at
+     *
+     * @throws IOException If reading failed or the channel ended before the buffer has been filled
+     */
+    protected void readFully(FileChannel fileChannel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = fileChannel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("File ended at " + position + " before the chunk has been read");
+            }
+
+            position += read;
+        }
+    }
+
+    /**
+     * Returns the number of chunks a file region of the given length is split into
+     *
+     * @param length The length of the file region in bytes
+     *
+     * @return The number of chunks
+     */
+    protected long getTotalNrOfChunks(long length) {
+        long chunkSize = Config.DEFAULT.getChunkSize();
+
+        return (length + chunkSize - 1) / chunkSize;
+    }
+
+    /**
+     * Waits until the given future of a sent file chunk is completed
+     *
+     * @param futureDirect The future of the sent file chunk
+     * @param exchangeId   The id of the file exchange
+     *
+     * @throws InterruptedException      If the thread got interrupted while waiting
+     * @throws ObjectSendFailedException If sending the chunk failed
+     */
+    protected void awaitFileChunk(FutureDirect futureDirect, UUID exchangeId)
+            throws InterruptedException, ObjectSendFailedException {
+        FutureDirectListener futureDirectListener = new FutureDirectListener();
+        futureDirect.addListener(futureDirectListener);
+        futureDirectListener.await();
+
+        if (! futureDirect.isSuccess()) {
+            throw new ObjectSendFailedException("Failed to send file chunk of exchange " + exchangeId + ". Message: " + futureDirect.failedReason());
+        }
+    }
 }
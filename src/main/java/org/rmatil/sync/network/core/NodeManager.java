@@ -2,6 +2,7 @@ package org.rmatil.sync.network.core;
 
 import org.rmatil.sync.commons.hashing.Hash;
 import org.rmatil.sync.commons.hashing.HashingAlgorithm;
+import org.rmatil.sync.network.api.INodeLocationListener;
 import org.rmatil.sync.network.api.INodeManager;
 import org.rmatil.sync.network.api.IUser;
 import org.rmatil.sync.network.core.model.NodeLocation;
@@ -19,18 +20,40 @@ import java.io.IOException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * An independent manager which administers node locations
  * from various users.
  * Note, that to add or remove a node location to an user, write permission is
  * ensured by using the public key of the given user.
+ * <p>
+ * The locations of watched users are cached locally and reconciled
+ * with the DHT every {@link NodeManager#RECONCILE_INTERVAL} milliseconds.
  */
 public class NodeManager implements INodeManager {
 
     protected final static Logger logger = LoggerFactory.getLogger(NodeManager.class);
 
+    /**
+     * The default time after which a location expires if its lease is not renewed (in milliseconds)
+     */
+    public static final long DEFAULT_LEASE_DURATION = 90000L;
+
+    /**
+     * The interval in which the cached locations of watched users are reconciled with the DHT (in milliseconds)
+     */
+    public static final long RECONCILE_INTERVAL = 30000L;
+
     /**
      * A storage adapter giving access to persisted locations
      */
@@ -63,8 +86,28 @@ public class NodeManager implements INodeManager {
 
     protected ISymmetricEncryption aesEncryption;
 
+    /**
+     * The time after which a location expires if its lease is not renewed (in milliseconds)
+     */
+    protected long leaseDuration;
+
+    /**
+     * The cached locations of all watched users. Key is the name of the user
+     */
+    protected final Map<String, WatchedLocations> watchedLocations = new ConcurrentHashMap<>();
+
+    /**
+     * Reconciles the cached locations with the DHT while users are watched.
+     * Only accessed while holding the lock on {@link NodeManager#watchedLocations}
+     */
+    protected ScheduledExecutorService reconcileScheduler;
+
 
     public NodeManager(ISecuredDhtStorageAdapter storageAdapter, String locationContentKey, String privateKeyContentKey, String publicKeyContentKey, String saltContentKey, String domainKey) {
+        this(storageAdapter, locationContentKey, privateKeyContentKey, publicKeyContentKey, saltContentKey, domainKey, DEFAULT_LEASE_DURATION);
+    }
+
+    public NodeManager(ISecuredDhtStorageAdapter storageAdapter, String locationContentKey, String privateKeyContentKey, String publicKeyContentKey, String saltContentKey, String domainKey, long leaseDuration) {
         this.storageAdapter = storageAdapter;
         this.locationContentKey = locationContentKey;
         this.privateKeyContentKey = privateKeyContentKey;
@@ -72,6 +115,7 @@ public class NodeManager implements INodeManager {
         this.saltContentKey = saltContentKey;
         this.domainKey = domainKey;
         this.aesEncryption = new AesEncryption();
+        this.leaseDuration = leaseDuration;
     }
 
     public void setStorageAdapter(ISecuredDhtStorageAdapter securedDhtStorageAdapter) {
@@ -89,20 +133,33 @@ public class NodeManager implements INodeManager {
 
         logger.trace("Adding location on location key " + dhtPathElement.getLocationKey() + ", using content key " + dhtPathElement.getContentKey() + " and domain key " + dhtPathElement.getDomainKey());
 
-        List<NodeLocation> locations = this.getNodeLocations(location.getUsername());
-
-        // only add the location if not yet contained
-        if (! locations.contains(location)) {
-            locations.add(location);
+        NodeLocation leasedLocation = new NodeLocation(
+                location.getUsername(),
+                location.getClientDeviceId(),
+                location.getPeerAddress(),
+                System.currentTimeMillis() + this.leaseDuration
+        );
 
-            byte[] bytes;
-            try {
-                bytes = ByteSerializer.toBytes(locations);
-            } catch (IOException e) {
-                throw new InputOutputException(e);
-            }
+        new OptimisticDhtUpdater(this.storageAdapter).update(
+                dhtPathElement,
+                stored -> {
+                    List<NodeLocation> locations = this.toNodeLocations(stored);
+
+                    // replace a contained location to renew its lease
+                    locations.remove(leasedLocation);
+                    locations.add(leasedLocation);
+
+                    return this.toBytes(locations);
+                },
+                // a concurrent writer may have renewed the lease even further
+                stored -> this.toNodeLocations(stored).stream().anyMatch(
+                        storedLocation -> storedLocation.equals(leasedLocation) && storedLocation.getLeaseExpiration() >= leasedLocation.getLeaseExpiration()
+                )
+        );
 
-            this.storageAdapter.persist(StorageType.FILE, dhtPathElement, bytes);
+        WatchedLocations watched = this.watchedLocations.get(location.getUsername());
+        if (null != watched) {
+            watched.add(leasedLocation);
         }
     }
 
@@ -116,30 +173,70 @@ public class NodeManager implements INodeManager {
                 this.domainKey
         );
 
-        List<NodeLocation> locations = this.getNodeLocations(location.getUsername());
-        locations.remove(location);
+        new OptimisticDhtUpdater(this.storageAdapter).update(
+                dhtPathElement,
+                stored -> {
+                    List<NodeLocation> locations = this.toNodeLocations(stored);
 
-        byte[] bytes;
-        try {
-            bytes = ByteSerializer.toBytes(locations);
-        } catch (IOException e) {
-            throw new InputOutputException(e);
-        }
+                    if (! locations.remove(location)) {
+                        // already removed by someone else
+                        return null;
+                    }
 
-        this.storageAdapter.persist(StorageType.FILE, dhtPathElement, bytes);
+                    return this.toBytes(locations);
+                },
+                stored -> ! this.toNodeLocations(stored).contains(location)
+        );
+
+        WatchedLocations watched = this.watchedLocations.get(location.getUsername());
+        if (null != watched) {
+            watched.remove(location);
+        }
     }
 
     @Override
     public List<NodeLocation> getNodeLocations(String username)
             throws InputOutputException {
+        WatchedLocations watched = this.watchedLocations.get(username);
+
+        if (null != watched) {
+            return watched.get(System.currentTimeMillis());
+        }
+
+        return this.readNodeLocations(username);
+    }
+
+    /**
+     * Reads the locations of the given user from the DHT, bypassing the cache
+     *
+     * @param username The username from which to get its node locations
+     *
+     * @return The list of node locations with a valid lease
+     *
+     * @throws InputOutputException If getting the locations failed
+     */
+    protected List<NodeLocation> readNodeLocations(String username)
+            throws InputOutputException {
         SecuredDhtPathElement dhtPathElement = new SecuredDhtPathElement(
                 username,
                 this.locationContentKey,
                 this.domainKey
         );
 
-        byte[] bytes = this.storageAdapter.read(dhtPathElement);
+        return this.toNodeLocations(this.storageAdapter.read(dhtPathElement));
+    }
 
+    /**
+     * Deserializes the stored locations of a user, omitting the ones with an expired lease
+     *
+     * @param bytes The stored locations, empty if no locations are stored
+     *
+     * @return The list of node locations with a valid lease
+     *
+     * @throws InputOutputException If deserializing the locations failed
+     */
+    protected List<NodeLocation> toNodeLocations(byte[] bytes)
+            throws InputOutputException {
         if (0 == bytes.length) {
             // there was no element stored in the dht
             return new ArrayList<>();
@@ -152,9 +249,131 @@ public class NodeManager implements INodeManager {
             throw new InputOutputException(e);
         }
 
+        // nodes which did not renew their lease are gone, the next write drops them from the dht
+        long now = System.currentTimeMillis();
+        locations.removeIf(location -> location.isExpired(now));
+
         return locations;
     }
 
+    protected byte[] toBytes(List<NodeLocation> locations)
+            throws InputOutputException {
+        try {
+            return ByteSerializer.toBytes(locations);
+        } catch (IOException e) {
+            throw new InputOutputException(e);
+        }
+    }
+
+    @Override
+    public CompletionStage<Void> addNodeLocationAsync(NodeLocation location) {
+        return AsyncStorageExecutor.run(() -> this.addNodeLocation(location));
+    }
+
+    @Override
+    public CompletionStage<Void> removeNodeLocationAsync(NodeLocation location) {
+        return AsyncStorageExecutor.run(() -> this.removeNodeLocation(location));
+    }
+
+    @Override
+    public CompletionStage<List<NodeLocation>> getNodeLocationsAsync(String username) {
+        WatchedLocations watched = this.watchedLocations.get(username);
+
+        if (null != watched) {
+            // no need to hand cached locations over to another thread
+            return CompletableFuture.completedFuture(watched.get(System.currentTimeMillis()));
+        }
+
+        return AsyncStorageExecutor.supply(() -> this.readNodeLocations(username));
+    }
+
+    @Override
+    public long getLeaseDuration() {
+        return this.leaseDuration;
+    }
+
+    @Override
+    public void watchNodeLocations(String username, INodeLocationListener listener)
+            throws InputOutputException {
+        synchronized (this.watchedLocations) {
+            WatchedLocations watched = this.watchedLocations.get(username);
+
+            if (null == watched) {
+                watched = new WatchedLocations();
+                watched.reconcile(this.readNodeLocations(username));
+                this.watchedLocations.put(username, watched);
+            }
+
+            watched.listeners.add(listener);
+
+            if (null == this.reconcileScheduler) {
+                this.reconcileScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable);
+                    thread.setName("NodeLocationReconciler");
+                    thread.setDaemon(true);
+
+                    return thread;
+                });
+
+                this.reconcileScheduler.scheduleWithFixedDelay(this::reconcile, RECONCILE_INTERVAL, RECONCILE_INTERVAL, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    @Override
+    public void unwatchNodeLocations(String username, INodeLocationListener listener) {
+        synchronized (this.watchedLocations) {
+            WatchedLocations watched = this.watchedLocations.get(username);
+
+            if (null == watched) {
+                return;
+            }
+
+            watched.listeners.remove(listener);
+
+            if (watched.listeners.isEmpty()) {
+                this.watchedLocations.remove(username);
+            }
+
+            if (this.watchedLocations.isEmpty() && null != this.reconcileScheduler) {
+                this.reconcileScheduler.shutdownNow();
+                this.reconcileScheduler = null;
+            }
+        }
+    }
+
+    @Override
+    public void applyNodeLocationChange(NodeLocation nodeLocation, boolean isAdded) {
+        WatchedLocations watched = this.watchedLocations.get(nodeLocation.getUsername());
+
+        if (null == watched) {
+            return;
+        }
+
+        if (isAdded) {
+            watched.add(nodeLocation);
+        } else {
+            watched.remove(nodeLocation);
+        }
+    }
+
+    /**
+     * Replaces the cached locations of all watched users with the ones
+     * stored in the DHT, catching up on changes which have not been announced
+     */
+    protected void reconcile() {
+        for (Map.Entry<String, WatchedLocations> entry : this.watchedLocations.entrySet()) {
+            try {
+                entry.getValue().reconcile(this.readNodeLocations(entry.getKey()));
+            } catch (InputOutputException e) {
+                logger.debug("Failed to reconcile the locations of user " + entry.getKey() + ". Message: " + e.getMessage());
+            } catch (RuntimeException e) {
+                // an exception would stop the periodic execution
+                logger.error("Failed to reconcile the locations of user " + entry.getKey() + ". Message: " + e.getMessage(), e);
+            }
+        }
+    }
+
     @Override
     public void addPrivateKey(IUser user)
             throws InputOutputException {
@@ -262,6 +481,11 @@ public class NodeManager implements INodeManager {
         return publicKey;
     }
 
+    @Override
+    public CompletionStage<PublicKey> getPublicKeyAsync(String username) {
+        return AsyncStorageExecutor.supply(() -> this.getPublicKey(username));
+    }
+
     @Override
     public void addSalt(IUser user)
             throws InputOutputException {
@@ -312,4 +536,98 @@ public class NodeManager implements INodeManager {
         return this.storageAdapter;
     }
 
+    /**
+     * The cached locations of a single watched user along with the listeners to notify about changes
+     */
+    protected static class WatchedLocations {
+
+        /**
+         * The cached locations. Key and value are equal, but the value holds the most recent lease.
+         * Only accessed while holding the lock on this map
+         */
+        protected final Map<NodeLocation, NodeLocation> locations = new LinkedHashMap<>();
+
+        protected final List<INodeLocationListener> listeners = new CopyOnWriteArrayList<>();
+
+        protected List<NodeLocation> get(long now) {
+            List<NodeLocation> result = new ArrayList<>();
+
+            synchronized (this.locations) {
+                for (NodeLocation location : this.locations.values()) {
+                    if (! location.isExpired(now)) {
+                        result.add(location);
+                    }
+                }
+            }
+
+            return result;
+        }
+
+        protected void add(NodeLocation location) {
+            NodeLocation previous;
+            synchronized (this.locations) {
+                previous = this.locations.remove(location);
+                this.locations.put(location, location);
+            }
+
+            if (null == previous) {
+                this.notifyAdded(location);
+            }
+        }
+
+        protected void remove(NodeLocation location) {
+            NodeLocation previous;
+            synchronized (this.locations) {
+                previous = this.locations.remove(location);
+            }
+
+            if (null != previous) {
+                this.notifyRemoved(previous);
+            }
+        }
+
+        protected void reconcile(List<NodeLocation> storedLocations) {
+            List<NodeLocation> added = new ArrayList<>();
+            List<NodeLocation> removed;
+
+            synchronized (this.locations) {
+                Map<NodeLocation, NodeLocation> previous = new LinkedHashMap<>(this.locations);
+                this.locations.clear();
+
+                for (NodeLocation location : storedLocations) {
+                    this.locations.put(location, location);
+
+                    if (null == previous.remove(location)) {
+                        added.add(location);
+                    }
+                }
+
+                removed = new ArrayList<>(previous.values());
+            }
+
+            removed.forEach(this::notifyRemoved);
+            added.forEach(this::notifyAdded);
+        }
+
+        protected void notifyAdded(NodeLocation location) {
+            for (INodeLocationListener listener : this.listeners) {
+                try {
+                    listener.onNodeLocationAdded(location);
+                } catch (RuntimeException e) {
+                    logger.error("Node location listener failed to handle added location " + location + ". Message: " + e.getMessage(), e);
+                }
+            }
+        }
+
+        protected void notifyRemoved(NodeLocation location) {
+            for (INodeLocationListener listener : this.listeners) {
+                try {
+                    listener.onNodeLocationRemoved(location);
+                } catch (RuntimeException e) {
+                    logger.error("Node location listener failed to handle removed location " + location + ". Message: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
 }
@@ -0,0 +1,158 @@
+package org.rmatil.sync.network.core;
+
+import org.rmatil.sync.persistence.api.StorageType;
+import org.rmatil.sync.persistence.core.dht.secured.ISecuredDhtStorageAdapter;
+import org.rmatil.sync.persistence.core.dht.secured.SecuredDhtPathElement;
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Updates a value in the DHT on a best-effort basis by reading it, merging the own change into it,
+ * writing the result back and verifying afterwards that the change is still present.
+ * If a concurrent writer has overwritten the change before it has been verified, the update is
+ * retried on top of the other writer's value after a random back off.
+ * <p>
+ * This is not a compare-and-set: It only detects overwrites that land
+ * before verification. A writer which read the value before and writes it after the
+ * verification still overwrites the change unnoticed, therefore lost updates are
+ * less likely, but not ruled out. Versioned puts of the DHT are not used, since values
+ * are written through the secured storage adapter, which protects and signs them but offers no versioned put.
+ * <p>
+ * Writes which are rejected by the storage layer, e.g. since the value is protected
+ * by the key of another user, are not retried and not reported, just like plain writes.
+ */
+public class OptimisticDhtUpdater {
+
+    private static final Logger logger = LoggerFactory.getLogger(OptimisticDhtUpdater.class);
+
+    /**
+     * The default number of times an update is attempted before giving up
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+    /**
+     * The maximum time to wait before retrying a conflicting update (in milliseconds)
+     */
+    public static final long MAX_BACKOFF = 200L;
+
+    /**
+     * Computes the new value from the currently stored one
+     */
+    @FunctionalInterface
+    public interface Merge {
+
+        /**
+         * @param stored The currently stored value, empty if no value is stored
+         *
+         * @return The value to write, or null if the change is already contained in the stored value
+         *
+         * @throws InputOutputException If the change can not be applied to the stored value
+         */
+        byte[] apply(byte[] stored)
+                throws InputOutputException;
+    }
+
+    /**
+     * Checks whether a stored value contains the own change
+     */
+    @FunctionalInterface
+    public interface Verification {
+
+        /**
+         * @param stored The value stored after writing, empty if no value is stored
+         *
+         * @return True, if the stored value contains the change
+         *
+         * @throws InputOutputException If the stored value can not be read
+         */
+        boolean isApplied(byte[] stored)
+                throws InputOutputException;
+    }
+
+    protected ISecuredDhtStorageAdapter storageAdapter;
+
+    protected int maxAttempts;
+
+    /**
+     * @param storageAdapter The storage adapter to read and write the values
+     */
+    public OptimisticDhtUpdater(ISecuredDhtStorageAdapter storageAdapter) {
+        this(storageAdapter, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    /**
+     * @param storageAdapter The storage adapter to read and write the values
+     * @param maxAttempts    The number of times an update is attempted before giving up
+     */
+    public OptimisticDhtUpdater(ISecuredDhtStorageAdapter storageAdapter, int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("At least one attempt is required, got " + maxAttempts);
+        }
+
+        this.storageAdapter = storageAdapter;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Applies the change described by the given merge function to the value at the given path
+     *
+     * @param pathElement  The path of the value to update
+     * @param merge        Computes the value to write from the stored one
+     * @param verification Checks whether the value stored after writing still contains the change
+     *
+     * @return The stored value containing the change
+     *
+     * @throws InputOutputException If accessing the storage layer failed, the change could not be merged or
+     *                              concurrent writers overwrote it on each attempt
+     */
+    public byte[] update(SecuredDhtPathElement pathElement, Merge merge, Verification verification)
+            throws InputOutputException {
+        for (int attempt = 1; attempt <= this.maxAttempts; attempt++) {
+            byte[] stored = this.read(pathElement);
+            byte[] merged = merge.apply(stored);
+
+            if (null == merged) {
+                return stored;
+            }
+
+            this.write(pathElement, merged);
+
+            byte[] written = this.read(pathElement);
+            if (verification.isApplied(written)) {
+                return written;
+            }
+
+            if (Arrays.equals(stored, written)) {
+                // nobody else wrote, but the write did not take effect either, e.g. since the value
+                // is protected by the key of another user. Like a plain write, this is not reported
+                logger.debug("Update of " + pathElement.getContentKey() + " has been rejected by the storage layer");
+                return written;
+            }
+
+            logger.debug("Update of " + pathElement.getContentKey() + " conflicted with a concurrent writer (attempt " + attempt + " of " + this.maxAttempts + ")");
+
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextLong(MAX_BACKOFF + 1L));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InputOutputException("Interrupted while retrying update of " + pathElement.getContentKey(), e);
+            }
+        }
+
+        throw new InputOutputException("Failed to update " + pathElement.getContentKey() + ": Concurrent writers overwrote the change " + this.maxAttempts + " times");
+    }
+
+    protected byte[] read(SecuredDhtPathElement pathElement)
+            throws InputOutputException {
+        return this.storageAdapter.read(pathElement);
+    }
+
+    protected void write(SecuredDhtPathElement pathElement, byte[] bytes)
+            throws InputOutputException {
+        this.storageAdapter.persist(StorageType.FILE, pathElement, bytes);
+    }
+}
@@ -0,0 +1,273 @@
+package org.rmatil.sync.network.core;
+
+import net.tomp2p.futures.BaseFutureAdapter;
+import net.tomp2p.futures.FutureDirect;
+import org.rmatil.sync.network.api.INode;
+import org.rmatil.sync.network.core.exception.ObjectSendFailedException;
+import org.rmatil.sync.network.core.model.MessageBatch;
+import org.rmatil.sync.network.core.model.NodeLocation;
+import org.rmatil.sync.network.core.model.Priority;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects outgoing messages per receiver and priority and sends them as one
+ * encrypted {@link MessageBatch}, once the linger time of the first
+ * message elapsed or the maximum batch size is reached.
+ * The receiver unbatches the messages and dispatches each of them in order.
+ */
+public class Outbox {
+
+    private static final Logger logger = LoggerFactory.getLogger(Outbox.class);
+
+    /**
+     * The default time to wait for further messages to the same receiver (in milliseconds)
+     */
+    public static final long DEFAULT_LINGER_TIME = 5L;
+
+    /**
+     * The default maximum number of messages in a single batch
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+
+    /**
+     * The node used to send the batches
+     */
+    protected INode node;
+
+    protected long lingerTime;
+
+    protected int maxBatchSize;
+
+    /**
+     * The pending batches per priority and receiver, so that control messages are
+     * not batched with bulk messages. Only accessed while holding the lock on this map
+     */
+    protected final Map<Priority, Map<NodeLocation, PendingBatch>> pendingBatches;
+
+    /**
+     * Whether the outbox stopped accepting messages. Only accessed while holding the lock on {@link Outbox#pendingBatches}
+     */
+    protected boolean isClosed = false;
+
+    /**
+     * Flushes batches once their linger time elapsed
+     */
+    protected final ScheduledExecutorService scheduler;
+
+    /**
+     * @param node         The node used to send the batches
+     * @param lingerTime   The time to wait for further messages to the same receiver (in milliseconds)
+     * @param maxBatchSize The maximum number of messages in a single batch
+     */
+    public Outbox(INode node, long lingerTime, int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("The maximum batch size must be at least 1");
+        }
+
+        this.node = node;
+        this.lingerTime = lingerTime;
+        this.maxBatchSize = maxBatchSize;
+        this.pendingBatches = new EnumMap<>(Priority.class);
+        for (Priority priority : Priority.values()) {
+            this.pendingBatches.put(priority, new HashMap<>());
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName("Outbox");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    /**
+     * Adds the given message to the batch of its receiver
+     *
+     * @param receiverAddress The location of the node to which the message should be sent
+     * @param data            The message to send
+     *
+     * @return A future completed once the batch containing the message has been delivered
+     *
+     * @throws IllegalStateException If the outbox has been closed
+     */
+    public CompletableFuture<Void> send(NodeLocation receiverAddress, Object data) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        PendingBatch fullBatch = null;
+
+        synchronized (this.pendingBatches) {
+            // checked while holding the lock, so that the scheduler is still running when scheduling the flush
+            if (this.isClosed) {
+                throw new IllegalStateException("The outbox has been closed");
+            }
+
+            Map<NodeLocation, PendingBatch> batches = this.pendingBatches.get(Priority.of(data));
+            PendingBatch pendingBatch = batches.get(receiverAddress);
+
+            if (null == pendingBatch) {
+                pendingBatch = new PendingBatch(receiverAddress, Priority.of(data));
+                batches.put(receiverAddress, pendingBatch);
+
+                PendingBatch scheduledBatch = pendingBatch;
+                this.scheduler.schedule(() -> this.flush(scheduledBatch), this.lingerTime, TimeUnit.MILLISECONDS);
+            }
+
+            pendingBatch.messages.add(data);
+            pendingBatch.futures.add(future);
+
+            if (pendingBatch.messages.size() >= this.maxBatchSize) {
+                batches.remove(receiverAddress);
+                fullBatch = pendingBatch;
+            }
+        }
+
+        if (null != fullBatch) {
+            this.send(fullBatch);
+        }
+
+        return future;
+    }
+
+    /**
+     * Sends all pending batches immediately
+     */
+    public void flush() {
+        List<PendingBatch> batches = new ArrayList<>();
+        synchronized (this.pendingBatches) {
+            // most urgent batches first
+            for (Map<NodeLocation, PendingBatch> pendingBatches : this.pendingBatches.values()) {
+                batches.addAll(pendingBatches.values());
+                pendingBatches.clear();
+            }
+        }
+
+        for (PendingBatch batch : batches) {
+            this.send(batch);
+        }
+    }
+
+    /**
+     * Sends all pending batches and stops accepting new messages
+     */
+    public void close() {
+        synchronized (this.pendingBatches) {
+            this.isClosed = true;
+        }
+
+        this.scheduler.shutdown();
+        this.flush();
+    }
+
+    /**
+     * Sends the given batch, if it has not been sent yet because it was full
+     *
+     * @param pendingBatch The batch of which the linger time elapsed
+     */
+    protected void flush(PendingBatch pendingBatch) {
+        synchronized (this.pendingBatches) {
+            Map<NodeLocation, PendingBatch> batches = this.pendingBatches.get(pendingBatch.priority);
+            if (batches.get(pendingBatch.receiverAddress) != pendingBatch) {
+                return;
+            }
+
+            batches.remove(pendingBatch.receiverAddress);
+        }
+
+        this.send(pendingBatch);
+    }
+
+    /**
+     * Sends the given batch. A single message is sent as is
+     *
+     * @param pendingBatch The batch to send
+     */
+    protected void send(PendingBatch pendingBatch) {
+        Object data = 1 == pendingBatch.messages.size() ? pendingBatch.messages.get(0) : new MessageBatch(pendingBatch.messages);
+
+        CompletableFuture<Void> delivery;
+        try {
+            delivery = this.deliver(pendingBatch.receiverAddress, data);
+        } catch (ObjectSendFailedException e) {
+            logger.error("Failed to send batch of " + pendingBatch.messages.size() + " messages to " + pendingBatch.receiverAddress.getUsername() + ": " + e.getMessage());
+            pendingBatch.completeExceptionally(e);
+            return;
+        }
+
+        delivery.whenComplete((ignored, throwable) -> {
+            if (null != throwable) {
+                pendingBatch.completeExceptionally(throwable);
+            } else {
+                for (CompletableFuture<Void> messageFuture : pendingBatch.futures) {
+                    messageFuture.complete(null);
+                }
+            }
+        });
+    }
+
+    /**
+     * Sends the given data to the given receiver using the node
+     *
+     * @param receiverAddress The location of the receiver
+     * @param data            The single message or batch to send
+     *
+     * @return A future completed once the data has been delivered
+     *
+     * @throws ObjectSendFailedException If the data could not be sent
+     */
+    protected CompletableFuture<Void> deliver(NodeLocation receiverAddress, Object data) {
+        CompletableFuture<Void> delivery = new CompletableFuture<>();
+
+        this.node.sendDirect(receiverAddress, data).addListener(new BaseFutureAdapter<FutureDirect>() {
+            @Override
+            public void operationComplete(FutureDirect future)
+                    throws Exception {
+                if (future.isFailed()) {
+                    delivery.completeExceptionally(new ObjectSendFailedException(
+                            "Failed to send " + data.getClass().getSimpleName() + " to " + receiverAddress.getUsername() + ": " + future.failedReason()
+                    ));
+                } else {
+                    delivery.complete(null);
+                }
+            }
+
+            @Override
+            public void exceptionCaught(Throwable t)
+                    throws Exception {
+                delivery.completeExceptionally(t);
+            }
+        });
+
+        return delivery;
+    }
+
+    /**
+     * The messages collected for a single receiver
+     */
+    protected static class PendingBatch {
+
+        protected final NodeLocation receiverAddress;
+
+        protected final Priority priority;
+
+        protected final List<Object> messages = new ArrayList<>();
+
+        protected final List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        protected PendingBatch(NodeLocation receiverAddress, Priority priority) {
+            this.receiverAddress = receiverAddress;
+            this.priority = priority;
+        }
+
+        protected void completeExceptionally(Throwable t) {
+            for (CompletableFuture<Void> future : this.futures) {
+                future.completeExceptionally(t);
+            }
+        }
+    }
+}
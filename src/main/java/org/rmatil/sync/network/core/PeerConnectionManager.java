@@ -0,0 +1,370 @@
+package org.rmatil.sync.network.core;
+
+import net.tomp2p.futures.FuturePeerConnection;
+import net.tomp2p.p2p.Peer;
+import net.tomp2p.peers.PeerAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps TomP2P peer connections open to frequently used peers,
+ * so that repeated direct messages to the same peer do not have to
+ * open a new TCP channel each time.
+ * <p>
+ * A peer is considered as frequently used, if another message is sent
+ * to it within the idle timeout. Open connections are kept alive using heart beats
+ * and are closed again, once they have not been used for longer than the idle timeout
+ * or once the maximum number of open connections is exceeded (least recently used first).
+ * Connections with messages still in flight are never closed for being idle or least recently used,
+ * therefore senders report each completed message using {@link PeerConnectionManager#onSendCompleted(PeerAddress, FuturePeerConnection)}.
+ * A released connection is not used for new messages anymore and is closed once its messages in flight completed.
+ */
+public class PeerConnectionManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(PeerConnectionManager.class);
+
+    /**
+     * The default maximum number of simultaneously open connections
+     */
+    public static final int DEFAULT_MAX_OPEN_CONNECTIONS = 32;
+
+    /**
+     * The default time after which unused connections are closed (in milliseconds)
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 60000L;
+
+    /**
+     * The interval in which heart beats are sent to keep connections alive (in milliseconds)
+     */
+    public static final int HEART_BEAT_MILLIS = 5000;
+
+    /**
+     * The number of messages which have to be sent to a peer within the idle timeout
+     * before a connection is kept open to it
+     */
+    public static final int MIN_USAGES = 2;
+
+    /**
+     * The default maximum number of peers whose usage is tracked
+     */
+    public static final int DEFAULT_MAX_TRACKED_PEERS = 1024;
+
+    protected Peer peer;
+
+    protected int maxOpenConnections;
+
+    protected long idleTimeout;
+
+    protected int maxTrackedPeers;
+
+    /**
+     * All peers to which messages have been sent recently, in the order of their last usage.
+     * Entries are re-inserted on each usage to keep this order.
+     * Only accessed while holding the lock on this map
+     */
+    protected final LinkedHashMap<PeerAddress, Usage> usages;
+
+    /**
+     * @param peer The peer from which connections are opened
+     */
+    public PeerConnectionManager(Peer peer) {
+        this(peer, DEFAULT_MAX_OPEN_CONNECTIONS, DEFAULT_IDLE_TIMEOUT, DEFAULT_MAX_TRACKED_PEERS);
+    }
+
+    /**
+     * @param peer               The peer from which connections are opened
+     * @param maxOpenConnections The maximum number of simultaneously open connections
+     * @param idleTimeout        The time after which unused connections are closed (in milliseconds)
+     * @param maxTrackedPeers    The maximum number of peers whose usage is tracked. Peers without open connection are forgotten first
+     */
+    public PeerConnectionManager(Peer peer, int maxOpenConnections, long idleTimeout, int maxTrackedPeers) {
+        this.peer = peer;
+        this.maxOpenConnections = maxOpenConnections;
+        this.idleTimeout = idleTimeout;
+        this.maxTrackedPeers = maxTrackedPeers;
+        // insertion order: least recently used peers come first, since
+        // only acquiring a connection re-inserts the peer and updates its last usage
+        this.usages = new LinkedHashMap<>();
+    }
+
+    /**
+     * Returns the open connection to the given peer. If the peer is used frequently
+     * but no connection is open yet, a new connection is opened.
+     *
+     * @param receiverAddress The address of the peer to connect to
+     *
+     * @return The connection to the peer or null, if the message should be sent without a persistent connection
+     */
+    public FuturePeerConnection acquire(PeerAddress receiverAddress) {
+        return this.acquire(receiverAddress, System.currentTimeMillis());
+    }
+
+    /**
+     * Returns the open connection to the given peer. If the peer is used frequently
+     * but no connection is open yet, a new connection is opened.
+     * Each returned connection counts as in flight until {@link PeerConnectionManager#onSendCompleted(PeerAddress, FuturePeerConnection)}
+     * is called for it.
+     *
+     * @param receiverAddress The address of the peer to connect to
+     * @param now             The current time in milliseconds
+     *
+     * @return The connection to the peer or null, if the message should be sent without a persistent connection
+     */
+    protected FuturePeerConnection acquire(PeerAddress receiverAddress, long now) {
+        synchronized (this.usages) {
+            this.closeIdleConnections(now);
+
+            Usage usage = this.usages.remove(receiverAddress);
+            if (null == usage) {
+                usage = new Usage();
+                this.forgetUnconnectedPeers(this.maxTrackedPeers - 1);
+            }
+
+            // move the peer to the end of the usage order
+            this.usages.put(receiverAddress, usage);
+
+            usage.lastUsed = now;
+            usage.nrOfUsages++;
+
+            if (usage.isReleased) {
+                // wait until the messages in flight over the released connection completed
+                return null;
+            }
+
+            if (null != usage.connection && usage.connection.isFailed()) {
+                logger.debug("Connection to " + receiverAddress + " failed: " + usage.connection.failedReason() + ". Reopening it");
+                usage.connection = null;
+                usage.nrOfPendingSends = 0;
+            }
+
+            if (null == usage.connection && usage.nrOfUsages >= MIN_USAGES) {
+                if (! this.closeLeastRecentlyUsedConnections(this.maxOpenConnections - 1)) {
+                    // all open connections are busy, try again with the next message
+                    logger.trace("No idle connection to close for " + receiverAddress + ". Sending without persistent connection");
+                    return null;
+                }
+
+                logger.trace("Opening persistent connection to " + receiverAddress);
+                usage.connection = this.openConnection(receiverAddress);
+            }
+
+            if (null != usage.connection) {
+                usage.nrOfPendingSends++;
+            }
+
+            return usage.connection;
+        }
+    }
+
+    /**
+     * Marks a message sent over the given connection as completed
+     *
+     * @param receiverAddress The address of the peer
+     * @param connection      The connection returned by {@link PeerConnectionManager#acquire(PeerAddress)}
+     */
+    public void onSendCompleted(PeerAddress receiverAddress, FuturePeerConnection connection) {
+        synchronized (this.usages) {
+            Usage usage = this.usages.get(receiverAddress);
+
+            // a reopened connection has its own count
+            if (null != usage && usage.connection == connection && usage.nrOfPendingSends > 0) {
+                usage.nrOfPendingSends--;
+
+                if (usage.isReleased && 0 == usage.nrOfPendingSends) {
+                    logger.trace("Closing released connection to " + receiverAddress);
+                    usage.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases the current connection to the given peer, e.g. after sending
+     * a message over it failed
+     *
+     * @param receiverAddress The address of the peer
+     */
+    public void release(PeerAddress receiverAddress) {
+        synchronized (this.usages) {
+            Usage usage = this.usages.get(receiverAddress);
+
+            if (null != usage) {
+                this.release(receiverAddress, usage.connection);
+            }
+        }
+    }
+
+    /**
+     * Releases the given connection to the peer, e.g. after sending a message over it failed.
+     * The connection is not used for new messages anymore and is closed as soon as
+     * no other messages are in flight over it. If the connection has already been replaced
+     * by a new one, nothing happens.
+     *
+     * @param receiverAddress The address of the peer
+     * @param connection      The connection returned by {@link PeerConnectionManager#acquire(PeerAddress)}
+     */
+    public void release(PeerAddress receiverAddress, FuturePeerConnection connection) {
+        synchronized (this.usages) {
+            Usage usage = this.usages.get(receiverAddress);
+
+            if (null == usage || null == usage.connection || usage.connection != connection) {
+                return;
+            }
+
+            if (usage.nrOfPendingSends > 0) {
+                logger.trace("Closing connection to " + receiverAddress + " once " + usage.nrOfPendingSends + " messages in flight completed");
+                usage.isReleased = true;
+                return;
+            }
+
+            usage.close();
+        }
+    }
+
+    /**
+     * Returns the number of currently open connections
+     *
+     * @return The number of open connections
+     */
+    public int getNrOfOpenConnections() {
+        synchronized (this.usages) {
+            int nrOfOpenConnections = 0;
+            for (Usage usage : this.usages.values()) {
+                if (null != usage.connection) {
+                    nrOfOpenConnections++;
+                }
+            }
+
+            return nrOfOpenConnections;
+        }
+    }
+
+    /**
+     * Closes all open connections
+     */
+    public void close() {
+        synchronized (this.usages) {
+            for (Usage usage : this.usages.values()) {
+                usage.close();
+            }
+
+            this.usages.clear();
+        }
+    }
+
+    /**
+     * Opens a new persistent connection to the given peer
+     *
+     * @param receiverAddress The address of the peer
+     *
+     * @return The future of the connection
+     */
+    protected FuturePeerConnection openConnection(PeerAddress receiverAddress) {
+        return this.peer.createPeerConnection(receiverAddress, HEART_BEAT_MILLIS);
+    }
+
+    /**
+     * Removes all peers which have not been used within the idle timeout
+     * and closes their connections, unless messages are still in flight over them
+     *
+     * @param now The current time in milliseconds
+     */
+    protected void closeIdleConnections(long now) {
+        Iterator<Map.Entry<PeerAddress, Usage>> itr = this.usages.entrySet().iterator();
+        while (itr.hasNext()) {
+            Map.Entry<PeerAddress, Usage> entry = itr.next();
+
+            if (now - entry.getValue().lastUsed <= this.idleTimeout) {
+                // all following peers have been used more recently
+                break;
+            }
+
+            if (entry.getValue().nrOfPendingSends > 0) {
+                continue;
+            }
+
+            logger.trace("Closing idle connection to " + entry.getKey());
+            entry.getValue().close();
+            itr.remove();
+        }
+    }
+
+    /**
+     * Removes the least recently used peers without open connection
+     * until at most the given number of peers remain tracked
+     *
+     * @param maxTrackedPeers The number of peers which may remain tracked
+     */
+    protected void forgetUnconnectedPeers(int maxTrackedPeers) {
+        int nrOfPeersToForget = this.usages.size() - maxTrackedPeers;
+
+        Iterator<Usage> itr = this.usages.values().iterator();
+        while (nrOfPeersToForget > 0 && itr.hasNext()) {
+            if (null == itr.next().connection) {
+                itr.remove();
+                nrOfPeersToForget--;
+            }
+        }
+    }
+
+    /**
+     * Closes the least recently used connections until at most the given number of connections is open.
+     * Connections with messages in flight are skipped.
+     *
+     * @param maxOpenConnections The number of connections which may remain open
+     *
+     * @return True, if at most the given number of connections remain open
+     */
+    protected boolean closeLeastRecentlyUsedConnections(int maxOpenConnections) {
+        int nrOfOpenConnections = this.getNrOfOpenConnections();
+
+        Iterator<Usage> itr = this.usages.values().iterator();
+        while (nrOfOpenConnections > maxOpenConnections && itr.hasNext()) {
+            Usage usage = itr.next();
+
+            if (null != usage.connection && 0 == usage.nrOfPendingSends) {
+                usage.close();
+                nrOfOpenConnections--;
+            }
+        }
+
+        return nrOfOpenConnections <= maxOpenConnections;
+    }
+
+    /**
+     * The usage of a single peer
+     */
+    protected static class Usage {
+
+        protected long lastUsed;
+
+        protected int nrOfUsages;
+
+        protected FuturePeerConnection connection;
+
+        /**
+         * The number of messages sent over the connection which have not completed yet
+         */
+        protected int nrOfPendingSends;
+
+        /**
+         * Whether the connection is closed once the messages in flight completed
+         */
+        protected boolean isReleased;
+
+        protected void close() {
+            if (null != this.connection) {
+                this.connection.close();
+                this.connection = null;
+            }
+
+            this.nrOfUsages = 0;
+            this.nrOfPendingSends = 0;
+            this.isReleased = false;
+        }
+    }
+}
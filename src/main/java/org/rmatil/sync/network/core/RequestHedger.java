@@ -0,0 +1,243 @@
+package org.rmatil.sync.network.core;
+
+import net.tomp2p.peers.PeerAddress;
+import org.rmatil.sync.network.api.INode;
+import org.rmatil.sync.network.api.IRequest;
+import org.rmatil.sync.network.api.IResponse;
+import org.rmatil.sync.network.core.exception.ObjectSendFailedException;
+import org.rmatil.sync.network.core.model.NodeLocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends a synchronous request to one of several equivalent nodes,
+ * e.g. the devices of the same user, to cut the tail latency of slow nodes.
+ * <p>
+ * The request is sent to the node with the lowest round trip time first.
+ * If it does not respond within its hedge delay (see {@link RttEstimator#getHedgeDelay(PeerAddress)}),
+ * the same request is sent to the next best node as well, and so on.
+ * The first response wins. Since all copies share the same exchange id,
+ * later responses to the exchange are discarded.
+ * <p>
+ * Hedges are only timed on the scheduler. Sending a copy may block while waiting
+ * for a credit of the receiver (see {@link FlowController}), therefore copies are sent
+ * on a separate pool, so that a receiver without credits does not delay the hedges of other requests.
+ */
+public class RequestHedger {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestHedger.class);
+
+    /**
+     * The node used to send the requests
+     */
+    protected INode node;
+
+    /**
+     * Schedules sending a request to the next node
+     */
+    protected final ScheduledExecutorService scheduler;
+
+    /**
+     * Sends the copies of a request after the first one
+     */
+    protected final ExecutorService sendExecutor;
+
+    /**
+     * @param node The node used to send the requests
+     */
+    public RequestHedger(INode node) {
+        this.node = node;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName("RequestHedger");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.sendExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName("RequestHedgerSend-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    /**
+     * Sends the given request to the best of the given nodes, hedging it to the next best ones if they are slow
+     *
+     * @param receiverAddresses The locations of the nodes which are able to answer the request
+     * @param request           The request to send
+     *
+     * @return A future completed with the first response, or completed exceptionally if no node responded
+     *
+     * @throws IllegalStateException If the hedger has been closed
+     */
+    public CompletableFuture<IResponse> send(List<NodeLocation> receiverAddresses, IRequest request) {
+        if (this.scheduler.isShutdown()) {
+            throw new IllegalStateException("The request hedger has been closed");
+        }
+
+        RttEstimator rttEstimator = this.node.getRttEstimator();
+
+        List<NodeLocation> candidates = new ArrayList<>();
+        for (NodeLocation receiverAddress : receiverAddresses) {
+            if (! receiverAddress.getPeerAddress().equals(this.node.getPeerAddress())) {
+                candidates.add(receiverAddress);
+            }
+        }
+        // nodes without any measurement come last
+        candidates.sort(Comparator.comparingLong(location -> {
+            long smoothedRtt = rttEstimator.getSmoothedRtt(location.getPeerAddress());
+            return smoothedRtt < 0 ? Long.MAX_VALUE : smoothedRtt;
+        }));
+
+        Exchange exchange = new Exchange(candidates, request);
+
+        if (candidates.isEmpty()) {
+            exchange.futureResponse.completeExceptionally(new ObjectSendFailedException("No node to send request " + request.getExchangeId() + " to"));
+        } else {
+            exchange.sendNext();
+        }
+
+        return exchange.futureResponse;
+    }
+
+    /**
+     * Stops hedging requests. Requests already sent are still answered
+     */
+    public void close() {
+        this.scheduler.shutdown();
+        this.sendExecutor.shutdown();
+    }
+
+    /**
+     * The state of a single hedged request
+     */
+    protected class Exchange {
+
+        protected final List<NodeLocation> candidates;
+
+        protected final IRequest request;
+
+        protected final CompletableFuture<IResponse> futureResponse = new CompletableFuture<>();
+
+        /**
+         * The index of the next node to send the request to
+         */
+        protected final AtomicInteger nextCandidate = new AtomicInteger();
+
+        /**
+         * The number of copies which have been sent but did neither respond nor fail yet
+         */
+        protected final AtomicInteger nrOfPendingCopies = new AtomicInteger();
+
+        protected Exchange(List<NodeLocation> candidates, IRequest request) {
+            this.candidates = candidates;
+            this.request = request;
+        }
+
+        /**
+         * Sends the request to the next node and schedules the next hedge
+         *
+         * @return False, if no node is left to send the request to
+         */
+        protected boolean sendNext() {
+            if (this.futureResponse.isDone()) {
+                return true;
+            }
+
+            int index = this.nextCandidate.getAndIncrement();
+
+            if (index >= this.candidates.size()) {
+                return false;
+            }
+
+            NodeLocation receiverAddress = this.candidates.get(index);
+            long start = System.nanoTime();
+
+            this.nrOfPendingCopies.incrementAndGet();
+
+            if (index > 0) {
+                logger.debug("Hedging request " + this.request.getExchangeId() + " to " + receiverAddress.getClientDeviceId());
+            }
+
+            try {
+                node.sendRequest(receiverAddress, this.request).whenComplete((response, throwable) -> {
+                    this.nrOfPendingCopies.decrementAndGet();
+
+                    if (null != throwable) {
+                        this.onFailure(throwable);
+                        return;
+                    }
+
+                    node.getRttEstimator().addResponseSample(receiverAddress.getPeerAddress(), System.nanoTime() - start);
+
+                    if (! this.futureResponse.complete(response)) {
+                        logger.trace("Discarding duplicate response of " + receiverAddress.getClientDeviceId() + " to request " + this.request.getExchangeId());
+                    }
+                });
+            } catch (ObjectSendFailedException e) {
+                this.nrOfPendingCopies.decrementAndGet();
+                this.onFailure(e);
+                return true;
+            }
+
+            if (index + 1 < this.candidates.size()) {
+                try {
+                    scheduler.schedule(this::hedge, node.getRttEstimator().getHedgeDelay(receiverAddress.getPeerAddress()), TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    logger.debug("Not hedging request " + this.request.getExchangeId() + " since the hedger has been closed");
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Sends the request to the next node once the hedge delay elapsed.
+         * Runs on the scheduler, therefore the copy is sent on the send pool
+         */
+        protected void hedge() {
+            try {
+                sendExecutor.execute(this::sendNext);
+            } catch (RejectedExecutionException e) {
+                logger.debug("Not hedging request " + this.request.getExchangeId() + " since the hedger has been closed");
+            }
+        }
+
+        /**
+         * Sends the request to the next node right away, or fails the exchange
+         * if no node is left and no copy is pending anymore.
+         * The next copy is sent on the send pool, since failures are reported
+         * on the threads completing the responses, which must not block on sending
+         *
+         * @param throwable The cause of the failed copy
+         */
+        protected void onFailure(Throwable throwable) {
+            logger.debug("Copy of request " + this.request.getExchangeId() + " failed. Message: " + throwable.getMessage());
+
+            try {
+                sendExecutor.execute(() -> {
+                    if (! this.sendNext() && 0 == this.nrOfPendingCopies.get()) {
+                        this.futureResponse.completeExceptionally(throwable);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                logger.debug("Not sending request " + this.request.getExchangeId() + " to the next node since the hedger has been closed");
+
+                if (0 == this.nrOfPendingCopies.get()) {
+                    this.futureResponse.completeExceptionally(throwable);
+                }
+            }
+        }
+    }
+}
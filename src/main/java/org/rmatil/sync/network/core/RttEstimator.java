@@ -0,0 +1,303 @@
+package org.rmatil.sync.network.core;
+
+import net.tomp2p.peers.PeerAddress;
+import org.rmatil.sync.network.core.messaging.LatencyHistogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Estimates the round trip time to each peer from the completion times
+ * of direct messages and derives the timeouts to wait for them.
+ * <p>
+ * Like the retransmission timeout of TCP (RFC 6298), the estimator keeps
+ * a smoothed round trip time and its variance per peer. The send timeout
+ * is the smoothed round trip time plus four times its variance, the response
+ * timeout a multiple of it, both bounded by configurable floors and ceilings.
+ * Peers without any measurement get the ceilings. Each timeout doubles the
+ * timeouts of the peer until the next measurement.
+ * <p>
+ * Additionally, the latencies of the responses to synchronous requests are kept
+ * per peer, telling after which time a request should be hedged to another peer.
+ */
+public class RttEstimator {
+
+    /**
+     * The default minimum time to wait for a message to be delivered (in milliseconds)
+     */
+    public static final long DEFAULT_MIN_SEND_TIMEOUT = 250L;
+
+    /**
+     * The default maximum time to wait for a message to be delivered (in milliseconds)
+     */
+    public static final long DEFAULT_MAX_SEND_TIMEOUT = 30000L;
+
+    /**
+     * The default minimum time to wait for the response to a request (in milliseconds)
+     */
+    public static final long DEFAULT_MIN_RESPONSE_TIMEOUT = 5000L;
+
+    /**
+     * The default maximum time to wait for the response to a request (in milliseconds)
+     */
+    public static final long DEFAULT_MAX_RESPONSE_TIMEOUT = 30000L;
+
+    /**
+     * The multiple of the send timeout to wait for a response,
+     * since a response requires the request to be processed by the receiver
+     */
+    public static final int RESPONSE_TIMEOUT_FACTOR = 4;
+
+    /**
+     * The maximum number of peers for which estimates are kept
+     */
+    public static final int MAX_NR_OF_PEERS = 1024;
+
+    /**
+     * The maximum number of times the timeouts of a peer are doubled
+     */
+    protected static final int MAX_BACKOFF = 6;
+
+    /**
+     * The percentile of the response latencies of a peer after which a request is hedged
+     */
+    public static final double HEDGE_PERCENTILE = 95d;
+
+    /**
+     * The number of response latencies of a peer required before its percentile is used as hedge delay
+     */
+    public static final int MIN_NR_OF_RESPONSE_SAMPLES = 20;
+
+    /**
+     * The weight of a new measurement in the smoothed round trip time
+     */
+    protected static final double ALPHA = 1d / 8d;
+
+    /**
+     * The weight of a new measurement in the round trip time variance
+     */
+    protected static final double BETA = 1d / 4d;
+
+    protected long minSendTimeout;
+
+    protected long maxSendTimeout;
+
+    protected long minResponseTimeout;
+
+    protected long maxResponseTimeout;
+
+    /**
+     * The estimates per peer, least recently updated first.
+     * Only accessed while holding the lock on this map
+     */
+    protected final LinkedHashMap<PeerAddress, Estimate> estimates;
+
+    /**
+     * The latencies of the responses to synchronous requests per peer.
+     * Only accessed while holding the lock on {@link RttEstimator#estimates}
+     */
+    protected final LinkedHashMap<PeerAddress, LatencyHistogram> responseLatencies;
+
+    public RttEstimator() {
+        this(DEFAULT_MIN_SEND_TIMEOUT, DEFAULT_MAX_SEND_TIMEOUT, DEFAULT_MIN_RESPONSE_TIMEOUT, DEFAULT_MAX_RESPONSE_TIMEOUT);
+    }
+
+    /**
+     * @param minSendTimeout     The minimum time to wait for a message to be delivered (in milliseconds)
+     * @param maxSendTimeout     The maximum time to wait for a message to be delivered (in milliseconds)
+     * @param minResponseTimeout The minimum time to wait for the response to a request (in milliseconds)
+     * @param maxResponseTimeout The maximum time to wait for the response to a request (in milliseconds)
+     */
+    public RttEstimator(long minSendTimeout, long maxSendTimeout, long minResponseTimeout, long maxResponseTimeout) {
+        if (minSendTimeout > maxSendTimeout || minResponseTimeout > maxResponseTimeout) {
+            throw new IllegalArgumentException("The floor of a timeout must not be greater than its ceiling");
+        }
+
+        this.minSendTimeout = minSendTimeout;
+        this.maxSendTimeout = maxSendTimeout;
+        this.minResponseTimeout = minResponseTimeout;
+        this.maxResponseTimeout = maxResponseTimeout;
+        this.estimates = new LinkedHashMap<PeerAddress, Estimate>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PeerAddress, Estimate> eldest) {
+                return this.size() > MAX_NR_OF_PEERS;
+            }
+        };
+        this.responseLatencies = new LinkedHashMap<PeerAddress, LatencyHistogram>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PeerAddress, LatencyHistogram> eldest) {
+                return this.size() > MAX_NR_OF_PEERS;
+            }
+        };
+    }
+
+    /**
+     * Adds the measured round trip time of a message delivered to the given peer
+     *
+     * @param peerAddress The address of the peer
+     * @param rttMillis   The time between sending the message and receiving its reply (in milliseconds)
+     */
+    public void addSample(PeerAddress peerAddress, long rttMillis) {
+        double rtt = Math.max(0L, rttMillis);
+
+        synchronized (this.estimates) {
+            Estimate estimate = this.estimates.get(peerAddress);
+
+            if (null == estimate) {
+                estimate = new Estimate();
+                estimate.smoothedRtt = rtt;
+                estimate.rttVariance = rtt / 2d;
+                this.estimates.put(peerAddress, estimate);
+            } else {
+                estimate.rttVariance = (1d - BETA) * estimate.rttVariance + BETA * Math.abs(estimate.smoothedRtt - rtt);
+                estimate.smoothedRtt = (1d - ALPHA) * estimate.smoothedRtt + ALPHA * rtt;
+            }
+
+            estimate.backoff = 0;
+        }
+    }
+
+    /**
+     * Adds the measured latency of the response to a synchronous request sent to the given peer
+     *
+     * @param peerAddress The address of the peer
+     * @param nanos       The time between sending the request and receiving its response (in nanoseconds)
+     */
+    public void addResponseSample(PeerAddress peerAddress, long nanos) {
+        synchronized (this.estimates) {
+            LatencyHistogram histogram = this.responseLatencies.get(peerAddress);
+
+            if (null == histogram) {
+                histogram = new LatencyHistogram();
+                this.responseLatencies.put(peerAddress, histogram);
+            }
+
+            histogram.record(nanos);
+        }
+    }
+
+    /**
+     * Returns the time after which a synchronous request to the given peer should be sent
+     * to another peer as well, i.e. the {@link RttEstimator#HEDGE_PERCENTILE} of its response latencies.
+     * If not enough responses have been measured yet, the send timeout of the peer is used.
+     *
+     * @param peerAddress The address of the peer
+     *
+     * @return The hedge delay in milliseconds
+     */
+    public long getHedgeDelay(PeerAddress peerAddress) {
+        synchronized (this.estimates) {
+            LatencyHistogram histogram = this.responseLatencies.get(peerAddress);
+
+            if (null == histogram || histogram.getCount() < MIN_NR_OF_RESPONSE_SAMPLES) {
+                return this.getSendTimeout(peerAddress);
+            }
+
+            return this.bound(histogram.getPercentile(HEDGE_PERCENTILE), this.minSendTimeout, this.maxResponseTimeout);
+        }
+    }
+
+    /**
+     * Notes that waiting for a message to the given peer timed out.
+     * Doubles the timeouts of the peer until the next measurement
+     *
+     * @param peerAddress The address of the peer
+     */
+    public void onTimeout(PeerAddress peerAddress) {
+        synchronized (this.estimates) {
+            Estimate estimate = this.estimates.get(peerAddress);
+
+            if (null != estimate) {
+                estimate.backoff = Math.min(MAX_BACKOFF, estimate.backoff + 1);
+            }
+        }
+    }
+
+    /**
+     * Returns the smoothed round trip time to the given peer
+     *
+     * @param peerAddress The address of the peer
+     *
+     * @return The smoothed round trip time in milliseconds, or -1 if no message has been delivered to the peer yet
+     */
+    public long getSmoothedRtt(PeerAddress peerAddress) {
+        synchronized (this.estimates) {
+            Estimate estimate = this.estimates.get(peerAddress);
+
+            return null != estimate ? Math.round(estimate.smoothedRtt) : - 1L;
+        }
+    }
+
+    /**
+     * Returns the variance of the round trip time to the given peer
+     *
+     * @param peerAddress The address of the peer
+     *
+     * @return The round trip time variance in milliseconds, or -1 if no message has been delivered to the peer yet
+     */
+    public long getRttVariance(PeerAddress peerAddress) {
+        synchronized (this.estimates) {
+            Estimate estimate = this.estimates.get(peerAddress);
+
+            return null != estimate ? Math.round(estimate.rttVariance) : - 1L;
+        }
+    }
+
+    /**
+     * Returns the time to wait for a message to the given peer to be delivered
+     *
+     * @param peerAddress The address of the peer
+     *
+     * @return The send timeout in milliseconds
+     */
+    public long getSendTimeout(PeerAddress peerAddress) {
+        synchronized (this.estimates) {
+            Estimate estimate = this.estimates.get(peerAddress);
+
+            if (null == estimate) {
+                return this.maxSendTimeout;
+            }
+
+            // at least one millisecond of variance to account for the clock granularity
+            double timeout = estimate.smoothedRtt + Math.max(1d, 4d * estimate.rttVariance);
+
+            return this.bound((long) Math.ceil(timeout) << estimate.backoff, this.minSendTimeout, this.maxSendTimeout);
+        }
+    }
+
+    /**
+     * Returns the time to wait for the response to a request sent to the given peer
+     *
+     * @param peerAddress The address of the peer
+     *
+     * @return The response timeout in milliseconds
+     */
+    public long getResponseTimeout(PeerAddress peerAddress) {
+        synchronized (this.estimates) {
+            if (! this.estimates.containsKey(peerAddress)) {
+                return this.maxResponseTimeout;
+            }
+
+            return this.bound(RESPONSE_TIMEOUT_FACTOR * this.getSendTimeout(peerAddress), this.minResponseTimeout, this.maxResponseTimeout);
+        }
+    }
+
+    protected long bound(long timeout, long floor, long ceiling) {
+        return Math.max(floor, Math.min(ceiling, timeout));
+    }
+
+    /**
+     * The round trip time estimate of a single peer (in milliseconds)
+     */
+    protected static class Estimate {
+
+        protected double smoothedRtt;
+
+        protected double rttVariance;
+
+        /**
+         * The number of timeouts since the last measurement
+         */
+        protected int backoff;
+    }
+}
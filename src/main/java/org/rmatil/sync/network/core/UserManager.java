@@ -9,9 +9,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.security.PublicKey;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Manages user's data in the DHT one he logs in
+ * Manages user's data in the DHT one he logs in.
+ * <p>
+ * The independent steps of a login are run concurrently on the pool shared by
+ * all managers (see {@link AsyncStorageExecutor}). The keys and the salt of the user are
+ * uploaded without reading the stored copies first, since comparing them would
+ * take a round trip as well and decrypting the stored private key on top.
  */
 public class UserManager implements IUserManager {
 
@@ -19,6 +30,11 @@ public class UserManager implements IUserManager {
 
     protected INodeManager nodeManager;
 
+    /**
+     * The duration of each step of the last login (in milliseconds)
+     */
+    protected volatile Map<String, Long> lastLoginTimings = Collections.emptyMap();
+
     public UserManager(INodeManager nodeManager) {
         this.nodeManager = nodeManager;
     }
@@ -36,19 +52,52 @@ public class UserManager implements IUserManager {
 
     @Override
     public boolean login(IUser user, NodeLocation nodeLocation) {
+        long start = System.currentTimeMillis();
+        Map<String, Long> timings = new ConcurrentHashMap<>();
+
+        CompletableFuture<?>[] steps = new CompletableFuture<?>[]{
+                this.runStep("addNodeLocation", timings, () -> this.nodeManager.addNodeLocation(nodeLocation)),
+                this.runStep("addPrivateKey", timings, () -> this.nodeManager.addPrivateKey(user)),
+                this.runStep("addPublicKey", timings, () -> this.nodeManager.addPublicKey(user)),
+                this.runStep("addSalt", timings, () -> this.nodeManager.addSalt(user))
+        };
+
         try {
-            this.nodeManager.addNodeLocation(nodeLocation);
-            this.nodeManager.addPrivateKey(user);
-            this.nodeManager.addPublicKey(user);
-            this.nodeManager.addSalt(user);
-        } catch (InputOutputException e) {
-            logger.error("Failed to add node location during login. Message: " + e.getMessage());
+            CompletableFuture.allOf(steps).join();
+        } catch (CompletionException e) {
+            logger.error("Failed to login user " + user.getUserName() + ". Message: " + e.getCause().getMessage());
             return false;
+        } finally {
+            this.lastLoginTimings = Collections.unmodifiableMap(new LinkedHashMap<>(timings));
         }
 
+        logger.debug("Login of user " + user.getUserName() + " took " + (System.currentTimeMillis() - start) + " ms. Steps: " + this.lastLoginTimings);
+
         return true;
     }
 
+    /**
+     * Returns the duration of each step of the last login,
+     * which steps have been run concurrently
+     *
+     * @return The duration of the steps in milliseconds, keyed by the name of the step
+     */
+    public Map<String, Long> getLastLoginTimings() {
+        return this.lastLoginTimings;
+    }
+
+    protected CompletableFuture<Void> runStep(String name, Map<String, Long> timings, AsyncStorageExecutor.StorageAction step) {
+        return AsyncStorageExecutor.run(() -> {
+            long start = System.currentTimeMillis();
+
+            try {
+                step.run();
+            } finally {
+                timings.put(name, System.currentTimeMillis() - start);
+            }
+        });
+    }
+
     @Override
     public boolean logout(IUser user, NodeLocation nodeLocation) {
         try {
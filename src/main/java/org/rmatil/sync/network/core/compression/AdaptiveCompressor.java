@@ -0,0 +1,223 @@
+package org.rmatil.sync.network.core.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses messages with Deflate before they are encrypted,
+ * but only if they are likely to shrink: Messages smaller than
+ * {@link AdaptiveCompressor#MIN_SIZE} are never compressed and
+ * for all others, the entropy of a sample of the message is
+ * estimated to skip data which is already compressed or encrypted.
+ * <p>
+ * Compressed data is prefixed with the length of the original data.
+ * Since decompression may run before the sender has been authenticated,
+ * the decompressed size is limited to {@link AdaptiveCompressor#DEFAULT_MAX_DECOMPRESSED_SIZE}
+ * unless configured otherwise.
+ */
+public class AdaptiveCompressor {
+
+    /**
+     * The minimal size of a message to be considered for compression (in bytes)
+     */
+    public static final int MIN_SIZE = 512;
+
+    /**
+     * The maximal number of bytes sampled to estimate the entropy of a message
+     */
+    public static final int SAMPLE_SIZE = 4096;
+
+    /**
+     * The maximal estimated entropy (in bits per byte) of a message to be compressed
+     */
+    public static final double MAX_ENTROPY = 7.5d;
+
+    /**
+     * The default maximal size of decompressed data (in bytes). Messages are split into
+     * chunks well below this size, so larger data is rejected as corrupt or malicious
+     */
+    public static final int DEFAULT_MAX_DECOMPRESSED_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * The size of the buffer decompressed data is inflated into first (in bytes)
+     */
+    protected static final int INITIAL_BUFFER_SIZE = 8192;
+
+    /**
+     * The length of the prefix holding the original size of compressed data
+     */
+    protected static final int LENGTH_PREFIX_SIZE = 4;
+
+    protected final CompressionStatistics statistics;
+
+    /**
+     * The maximal size of decompressed data (in bytes)
+     */
+    protected final int maxDecompressedSize;
+
+    public AdaptiveCompressor() {
+        this(DEFAULT_MAX_DECOMPRESSED_SIZE);
+    }
+
+    /**
+     * @param maxDecompressedSize The maximal size of decompressed data (in bytes)
+     */
+    public AdaptiveCompressor(int maxDecompressedSize) {
+        if (maxDecompressedSize < 1) {
+            throw new IllegalArgumentException("The maximal decompressed size must be positive, got " + maxDecompressedSize);
+        }
+
+        this.statistics = new CompressionStatistics();
+        this.maxDecompressedSize = maxDecompressedSize;
+    }
+
+    /**
+     * Compresses the given data, if it is worth to do so.
+     *
+     * @param data The data to compress
+     *
+     * @return The compressed data, or null if the data should be sent uncompressed
+     */
+    public byte[] compress(byte[] data) {
+        this.statistics.recordMessage();
+
+        // data larger than the receiver accepts to decompress is sent as is
+        if (data.length < MIN_SIZE || data.length > this.maxDecompressedSize || estimateEntropy(data) > MAX_ENTROPY) {
+            return null;
+        }
+
+        long start = System.nanoTime();
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + LENGTH_PREFIX_SIZE);
+        byte[] buffer = new byte[8192];
+
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+
+            out.write(ByteBuffer.allocate(LENGTH_PREFIX_SIZE).putInt(data.length).array(), 0, LENGTH_PREFIX_SIZE);
+            while (! deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+
+                if (out.size() >= data.length) {
+                    // compression does not pay off
+                    this.statistics.recordDiscardedCompression(System.nanoTime() - start);
+                    return null;
+                }
+            }
+        } finally {
+            deflater.end();
+        }
+
+        byte[] compressed = out.toByteArray();
+        this.statistics.recordCompression(data.length, compressed.length, System.nanoTime() - start);
+
+        return compressed;
+    }
+
+    /**
+     * Decompresses data previously compressed by {@link AdaptiveCompressor#compress(byte[])}.
+     * The output grows with the inflated data instead of being allocated from the length prefix,
+     * so that a forged prefix can not force large allocations.
+     *
+     * @param compressed The compressed data
+     *
+     * @return The original data
+     *
+     * @throws IOException If the compressed data is corrupt or exceeds the maximal decompressed size
+     */
+    public byte[] decompress(byte[] compressed)
+            throws IOException {
+        if (compressed.length < LENGTH_PREFIX_SIZE) {
+            throw new IOException("Compressed data is too short");
+        }
+
+        long start = System.nanoTime();
+
+        int originalLength = ByteBuffer.wrap(compressed, 0, LENGTH_PREFIX_SIZE).getInt();
+        if (originalLength < 0 || originalLength > this.maxDecompressedSize) {
+            throw new IOException("Invalid length of compressed data: " + originalLength + " (maximum is " + this.maxDecompressedSize + ")");
+        }
+
+        Inflater inflater = new Inflater();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(originalLength, INITIAL_BUFFER_SIZE));
+        byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+
+        try {
+            inflater.setInput(compressed, LENGTH_PREFIX_SIZE, compressed.length - LENGTH_PREFIX_SIZE);
+
+            while (! inflater.finished()) {
+                int length = inflater.inflate(buffer, 0, Math.min(buffer.length, originalLength - out.size() + 1));
+                if (0 == length && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+
+                out.write(buffer, 0, length);
+
+                if (out.size() > originalLength) {
+                    throw new IOException("Compressed data is corrupt: Expected " + originalLength + " bytes but got more");
+                }
+            }
+
+            if (out.size() != originalLength || ! inflater.finished()) {
+                throw new IOException("Compressed data is corrupt: Expected " + originalLength + " bytes but got " + out.size());
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Compressed data is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+
+        this.statistics.recordDecompression(System.nanoTime() - start);
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the metrics about the processed messages
+     *
+     * @return The compression statistics
+     */
+    public CompressionStatistics getStatistics() {
+        return this.statistics;
+    }
+
+    /**
+     * Estimates the Shannon entropy of the given data in bits per byte
+     * by sampling at most {@link AdaptiveCompressor#SAMPLE_SIZE} bytes evenly spread over the data.
+     *
+     * @param data The data to estimate its entropy
+     *
+     * @return The entropy between 0 and 8 bits per byte
+     */
+    public static double estimateEntropy(byte[] data) {
+        if (0 == data.length) {
+            return 0d;
+        }
+
+        int stride = Math.max(1, data.length / SAMPLE_SIZE);
+        int[] counts = new int[256];
+        int nrOfSamples = 0;
+
+        for (int i = 0; i < data.length && nrOfSamples < SAMPLE_SIZE; i += stride) {
+            counts[data[i] & 0xFF]++;
+            nrOfSamples++;
+        }
+
+        double entropy = 0d;
+        for (int count : counts) {
+            if (0 != count) {
+                double probability = (double) count / nrOfSamples;
+                entropy -= probability * (Math.log(probability) / Math.log(2));
+            }
+        }
+
+        return entropy;
+    }
+}
@@ -0,0 +1,144 @@
+package org.rmatil.sync.network.core.compression;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects metrics about the messages processed by an {@link AdaptiveCompressor}
+ */
+public class CompressionStatistics {
+
+    /**
+     * The number of messages offered for compression
+     */
+    protected final AtomicLong nrOfMessages = new AtomicLong();
+
+    /**
+     * The number of messages which have been sent compressed
+     */
+    protected final AtomicLong nrOfCompressedMessages = new AtomicLong();
+
+    /**
+     * The size of all compressed messages before compression (in bytes)
+     */
+    protected final AtomicLong uncompressedBytes = new AtomicLong();
+
+    /**
+     * The size of all compressed messages after compression (in bytes)
+     */
+    protected final AtomicLong compressedBytes = new AtomicLong();
+
+    /**
+     * The time spent compressing (in nanoseconds), including attempts which have been discarded
+     */
+    protected final AtomicLong compressionTime = new AtomicLong();
+
+    /**
+     * The number of decompressed messages
+     */
+    protected final AtomicLong nrOfDecompressedMessages = new AtomicLong();
+
+    /**
+     * The time spent decompressing (in nanoseconds)
+     */
+    protected final AtomicLong decompressionTime = new AtomicLong();
+
+    protected void recordMessage() {
+        this.nrOfMessages.incrementAndGet();
+    }
+
+    protected void recordCompression(long uncompressedSize, long compressedSize, long nanos) {
+        this.nrOfCompressedMessages.incrementAndGet();
+        this.uncompressedBytes.addAndGet(uncompressedSize);
+        this.compressedBytes.addAndGet(compressedSize);
+        this.compressionTime.addAndGet(nanos);
+    }
+
+    protected void recordDiscardedCompression(long nanos) {
+        this.compressionTime.addAndGet(nanos);
+    }
+
+    protected void recordDecompression(long nanos) {
+        this.nrOfDecompressedMessages.incrementAndGet();
+        this.decompressionTime.addAndGet(nanos);
+    }
+
+    /**
+     * Returns the number of messages offered for compression
+     *
+     * @return The number of messages
+     */
+    public long getNrOfMessages() {
+        return this.nrOfMessages.get();
+    }
+
+    /**
+     * Returns the number of messages which have been sent compressed
+     *
+     * @return The number of compressed messages
+     */
+    public long getNrOfCompressedMessages() {
+        return this.nrOfCompressedMessages.get();
+    }
+
+    /**
+     * Returns the number of received messages which have been decompressed
+     *
+     * @return The number of decompressed messages
+     */
+    public long getNrOfDecompressedMessages() {
+        return this.nrOfDecompressedMessages.get();
+    }
+
+    /**
+     * Returns the ratio of the compressed size to the original size
+     * over all compressed messages, e.g. 0.25 if messages shrank to a quarter.
+     *
+     * @return The compression ratio, or 1 if no message has been compressed yet
+     */
+    public double getCompressionRatio() {
+        long uncompressed = this.uncompressedBytes.get();
+
+        if (0 == uncompressed) {
+            return 1d;
+        }
+
+        return (double) this.compressedBytes.get() / uncompressed;
+    }
+
+    /**
+     * Returns the number of bytes saved by compression
+     *
+     * @return The saved bytes
+     */
+    public long getSavedBytes() {
+        return this.uncompressedBytes.get() - this.compressedBytes.get();
+    }
+
+    /**
+     * Returns the total time spent compressing, including attempts which have been discarded
+     *
+     * @return The compression time in nanoseconds
+     */
+    public long getCompressionTime() {
+        return this.compressionTime.get();
+    }
+
+    /**
+     * Returns the total time spent decompressing
+     *
+     * @return The decompression time in nanoseconds
+     */
+    public long getDecompressionTime() {
+        return this.decompressionTime.get();
+    }
+
+    @Override
+    public String toString() {
+        return "messages: " + this.getNrOfMessages()
+                + ", compressed: " + this.getNrOfCompressedMessages()
+                + ", ratio: " + String.format("%.3f", this.getCompressionRatio())
+                + ", saved bytes: " + this.getSavedBytes()
+                + ", compression time: " + (this.getCompressionTime() / 1000000L) + "ms"
+                + ", decompression time: " + (this.getDecompressionTime() / 1000000L) + "ms";
+    }
+}
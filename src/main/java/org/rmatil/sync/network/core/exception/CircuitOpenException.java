@@ -0,0 +1,24 @@
+package org.rmatil.sync.network.core.exception;
+
+/**
+ * Thrown if a message is not sent, since the circuit breaker
+ * of its receiver considers the receiver to be unreachable
+ */
+public class CircuitOpenException extends ObjectSendFailedException {
+
+    public CircuitOpenException() {
+        super();
+    }
+
+    public CircuitOpenException(String message) {
+        super(message);
+    }
+
+    public CircuitOpenException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public CircuitOpenException(Throwable cause) {
+        super(cause);
+    }
+}
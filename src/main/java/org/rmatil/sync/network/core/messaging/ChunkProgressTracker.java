@@ -0,0 +1,124 @@
+package org.rmatil.sync.network.core.messaging;
+
+import org.rmatil.sync.network.api.IChunkedRequest;
+import org.rmatil.sync.network.core.model.ChunkBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the chunks received per exchange, so that
+ * a sender is able to resume an interrupted transfer by
+ * sending only the missing chunks.
+ * <p>
+ * Progress of exchanges which did not receive any chunk
+ * for {@link ChunkProgressTracker#MAX_IDLE_TIME} is discarded.
+ */
+public class ChunkProgressTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkProgressTracker.class);
+
+    /**
+     * The time after which the progress of an idle exchange is discarded (in milliseconds)
+     */
+    public static final long MAX_IDLE_TIME = 600000L;
+
+    /**
+     * The progress of an exchange along with the time it was last updated
+     */
+    protected static class Progress {
+        protected final ChunkBitmap chunkBitmap;
+        protected volatile long lastUpdate;
+
+        protected Progress(ChunkBitmap chunkBitmap) {
+            this.chunkBitmap = chunkBitmap;
+            this.lastUpdate = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * The progress of all known exchanges
+     */
+    protected final Map<UUID, Progress> progresses;
+
+    public ChunkProgressTracker() {
+        this.progresses = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Marks the chunk of the given request as received
+     *
+     * @param request The chunked request which has been received
+     *
+     * @return True, if the chunk has not been received before, false otherwise
+     */
+    public boolean markReceived(IChunkedRequest request) {
+        this.removeIdleProgresses();
+
+        Progress progress = this.progresses.compute(request.getExchangeId(), (exchangeId, existing) -> {
+            if (null == existing || existing.chunkBitmap.getTotalNrOfChunks() != request.getTotalNrOfChunks()) {
+                // the sender started a new transfer for this exchange
+                return new Progress(new ChunkBitmap(request.getTotalNrOfChunks()));
+            }
+
+            return existing;
+        });
+
+        progress.lastUpdate = System.currentTimeMillis();
+
+        boolean isNew = progress.chunkBitmap.set(request.getChunkCounter());
+
+        if (! isNew) {
+            logger.debug("Chunk " + request.getChunkCounter() + " of exchange " + request.getExchangeId() + " has already been received");
+        }
+
+        return isNew;
+    }
+
+    /**
+     * Returns a copy of the progress of the given exchange
+     *
+     * @param exchangeId The id of the exchange
+     *
+     * @return The bitmap of received chunks, or null if no chunk has been received for the exchange
+     */
+    public ChunkBitmap getProgress(UUID exchangeId) {
+        Progress progress = this.progresses.get(exchangeId);
+
+        if (null == progress) {
+            return null;
+        }
+
+        return progress.chunkBitmap.copy();
+    }
+
+    /**
+     * Discards the progress of the given exchange
+     *
+     * @param exchangeId The id of the exchange
+     */
+    public void remove(UUID exchangeId) {
+        this.progresses.remove(exchangeId);
+    }
+
+    /**
+     * Removes the progress of all exchanges which have been idle
+     * for longer than {@link ChunkProgressTracker#MAX_IDLE_TIME}
+     */
+    protected void removeIdleProgresses() {
+        long now = System.currentTimeMillis();
+
+        Iterator<Map.Entry<UUID, Progress>> itr = this.progresses.entrySet().iterator();
+        while (itr.hasNext()) {
+            Map.Entry<UUID, Progress> entry = itr.next();
+            if (entry.getValue().lastUpdate + MAX_IDLE_TIME < now) {
+                logger.trace("Discarding progress of idle exchange " + entry.getKey());
+                itr.remove();
+            }
+        }
+    }
+}
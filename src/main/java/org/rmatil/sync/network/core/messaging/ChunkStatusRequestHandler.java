@@ -0,0 +1,63 @@
+package org.rmatil.sync.network.core.messaging;
+
+import org.rmatil.sync.network.api.INode;
+import org.rmatil.sync.network.api.IRequest;
+import org.rmatil.sync.network.api.IRequestCallback;
+import org.rmatil.sync.network.core.model.ChunkStatusRequest;
+import org.rmatil.sync.network.core.model.ChunkStatusResponse;
+import org.rmatil.sync.network.core.model.ClientDevice;
+import org.rmatil.sync.network.core.model.NodeLocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Answers a {@link ChunkStatusRequest} with the chunks received
+ * so far by the object data reply handler of the node.
+ */
+public class ChunkStatusRequestHandler implements IRequestCallback {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkStatusRequestHandler.class);
+
+    protected INode node;
+
+    protected ChunkStatusRequest request;
+
+    @Override
+    public void setNode(INode node) {
+        this.node = node;
+    }
+
+    @Override
+    public void setRequest(IRequest request) {
+        if (! (request instanceof ChunkStatusRequest)) {
+            throw new IllegalArgumentException("Expected request of type " + ChunkStatusRequest.class.getName() + " but got " + request.getClass().getName());
+        }
+
+        this.request = (ChunkStatusRequest) request;
+    }
+
+    @Override
+    public void run() {
+        try {
+            ChunkStatusResponse response = new ChunkStatusResponse(
+                    this.request.getExchangeId(),
+                    new ClientDevice(
+                            this.node.getUser().getUserName(),
+                            this.node.getClientDeviceId(),
+                            this.node.getPeerAddress()
+                    ),
+                    new NodeLocation(
+                            this.request.getClientDevice().getUserName(),
+                            this.request.getClientDevice().getClientDeviceId(),
+                            this.request.getClientDevice().getPeerAddress()
+                    ),
+                    this.request.getTransferExchangeId(),
+                    this.node.getObjectDataReplyHandler().getChunkProgressTracker().getProgress(this.request.getTransferExchangeId())
+            );
+
+            this.node.sendDirect(response.getReceiverAddress(), response);
+        } catch (Exception e) {
+            logger.error("Failed to send chunk status of exchange " + this.request.getTransferExchangeId() + ". Message: " + e.getMessage(), e);
+        }
+    }
+}
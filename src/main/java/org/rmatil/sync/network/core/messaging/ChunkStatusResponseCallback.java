@@ -0,0 +1,54 @@
+package org.rmatil.sync.network.core.messaging;
+
+import org.rmatil.sync.network.api.IResponse;
+import org.rmatil.sync.network.api.IResponseCallback;
+import org.rmatil.sync.network.core.model.ChunkStatusResponse;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waits for the {@link ChunkStatusResponse} of a previously sent
+ * {@link org.rmatil.sync.network.core.model.ChunkStatusRequest}.
+ */
+public class ChunkStatusResponseCallback implements IResponseCallback {
+
+    /**
+     * The countdown latch which is completed once the response is received
+     */
+    protected final CountDownLatch countDownLatch;
+
+    /**
+     * The received response
+     */
+    protected volatile ChunkStatusResponse response;
+
+    public ChunkStatusResponseCallback() {
+        this.countDownLatch = new CountDownLatch(1);
+    }
+
+    @Override
+    public void onResponse(IResponse response) {
+        if (response instanceof ChunkStatusResponse) {
+            this.response = (ChunkStatusResponse) response;
+            this.countDownLatch.countDown();
+        }
+    }
+
+    /**
+     * Waits for the given timeout until the response is received
+     *
+     * @param timeout  The timeout to wait
+     * @param timeUnit The time unit which qualifies the timeout
+     *
+     * @return The received response, or null if none has been received within the timeout
+     *
+     * @throws InterruptedException If the thread got interrupted while waiting
+     */
+    public ChunkStatusResponse await(long timeout, TimeUnit timeUnit)
+            throws InterruptedException {
+        this.countDownLatch.await(timeout, timeUnit);
+
+        return this.response;
+    }
+}
@@ -0,0 +1,162 @@
+package org.rmatil.sync.network.core.messaging;
+
+import java.util.UUID;
+
+/**
+ * A bounded, time-windowed set of (sender device, exchange id) pairs
+ * of already processed messages, used to detect retries and duplicate deliveries.
+ * <p>
+ * The pairs are stored in an open-addressed table of primitive longs (two per UUID).
+ * Entries older than the time window are considered free. Each lookup probes a
+ * bounded number of slots: If none of them is free, the oldest entry is evicted,
+ * so that the cache never grows beyond its capacity.
+ */
+public class DeduplicationCache {
+
+    /**
+     * The default number of entries of the cache
+     */
+    public static final int DEFAULT_CAPACITY = 16384;
+
+    /**
+     * The default time after which an entry expires (in milliseconds)
+     */
+    public static final long DEFAULT_TIME_WINDOW = 300000L;
+
+    /**
+     * The maximum number of slots probed for a single pair
+     */
+    protected static final int MAX_PROBES = 16;
+
+    /**
+     * Sender device msb, sender device lsb, exchange msb, exchange lsb and insertion time per slot
+     */
+    protected static final int SLOT_SIZE = 5;
+
+    protected final long[] table;
+
+    protected final int mask;
+
+    protected final long timeWindow;
+
+    public DeduplicationCache() {
+        this(DEFAULT_CAPACITY, DEFAULT_TIME_WINDOW);
+    }
+
+    /**
+     * @param capacity   The number of entries of the cache, rounded up to the next power of two
+     * @param timeWindow The time after which an entry expires (in milliseconds)
+     */
+    public DeduplicationCache(int capacity, long timeWindow) {
+        if (capacity < 1 || capacity > (1 << 26)) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+
+        int slots = Integer.highestOneBit(capacity - 1) << 1;
+        slots = Math.max(slots, MAX_PROBES);
+
+        this.table = new long[slots * SLOT_SIZE];
+        this.mask = slots - 1;
+        this.timeWindow = timeWindow;
+    }
+
+    /**
+     * Returns true, if the given pair has been added within the time window
+     *
+     * @param senderDeviceId The id of the sending client device
+     * @param exchangeId     The id of the exchange
+     *
+     * @return True, if the pair is present
+     */
+    public synchronized boolean contains(UUID senderDeviceId, UUID exchangeId) {
+        return this.find(senderDeviceId, exchangeId, System.currentTimeMillis()) >= 0;
+    }
+
+    /**
+     * Adds the given pair, if it is not present yet
+     *
+     * @param senderDeviceId The id of the sending client device
+     * @param exchangeId     The id of the exchange
+     *
+     * @return True, if the pair has been added, false if it was already present, i.e. the message is a duplicate
+     */
+    public synchronized boolean add(UUID senderDeviceId, UUID exchangeId) {
+        long now = System.currentTimeMillis();
+
+        if (this.find(senderDeviceId, exchangeId, now) >= 0) {
+            return false;
+        }
+
+        int start = this.hash(senderDeviceId, exchangeId);
+        int victim = - 1;
+        long victimTime = Long.MAX_VALUE;
+
+        for (int i = 0; i < MAX_PROBES; i++) {
+            int offset = ((start + i) & this.mask) * SLOT_SIZE;
+            long time = this.table[offset + 4];
+
+            if (this.isExpired(time, now)) {
+                victim = offset;
+                break;
+            }
+
+            if (time < victimTime) {
+                victim = offset;
+                victimTime = time;
+            }
+        }
+
+        this.table[victim] = senderDeviceId.getMostSignificantBits();
+        this.table[victim + 1] = senderDeviceId.getLeastSignificantBits();
+        this.table[victim + 2] = exchangeId.getMostSignificantBits();
+        this.table[victim + 3] = exchangeId.getLeastSignificantBits();
+        this.table[victim + 4] = now;
+
+        return true;
+    }
+
+    /**
+     * Returns the number of entries which can be held by the cache
+     *
+     * @return The capacity
+     */
+    public int getCapacity() {
+        return this.mask + 1;
+    }
+
+    /**
+     * Returns the offset of the slot holding the given pair
+     *
+     * @return The offset in the table, or -1 if the pair is not present
+     */
+    protected int find(UUID senderDeviceId, UUID exchangeId, long now) {
+        int start = this.hash(senderDeviceId, exchangeId);
+
+        for (int i = 0; i < MAX_PROBES; i++) {
+            int offset = ((start + i) & this.mask) * SLOT_SIZE;
+
+            if (! this.isExpired(this.table[offset + 4], now)
+                    && this.table[offset] == senderDeviceId.getMostSignificantBits()
+                    && this.table[offset + 1] == senderDeviceId.getLeastSignificantBits()
+                    && this.table[offset + 2] == exchangeId.getMostSignificantBits()
+                    && this.table[offset + 3] == exchangeId.getLeastSignificantBits()) {
+                return offset;
+            }
+        }
+
+        return - 1;
+    }
+
+    protected boolean isExpired(long time, long now) {
+        return 0L == time || now - time > this.timeWindow;
+    }
+
+    protected int hash(UUID senderDeviceId, UUID exchangeId) {
+        long h = senderDeviceId.getMostSignificantBits() * 31L + senderDeviceId.getLeastSignificantBits();
+        h = h * 31L + exchangeId.getMostSignificantBits();
+        h = h * 31L + exchangeId.getLeastSignificantBits();
+        h *= 0x9E3779B97F4A7C15L;
+
+        return (int) (h ^ (h >>> 32)) & this.mask;
+    }
+}
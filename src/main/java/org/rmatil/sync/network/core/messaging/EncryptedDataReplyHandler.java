@@ -2,25 +2,45 @@ package org.rmatil.sync.network.core.messaging;
 
 import net.tomp2p.peers.PeerAddress;
 import net.tomp2p.rpc.ObjectDataReply;
+import org.rmatil.sync.network.api.IHeaderFilter;
 import org.rmatil.sync.network.api.INodeManager;
 import org.rmatil.sync.network.api.IRequest;
 import org.rmatil.sync.network.api.IResponse;
+import org.rmatil.sync.network.core.compression.AdaptiveCompressor;
 import org.rmatil.sync.network.core.exception.ObjectSendFailedException;
 import org.rmatil.sync.network.core.exception.SecurityException;
+import org.rmatil.sync.network.core.model.CreditGrant;
 import org.rmatil.sync.network.core.model.EncryptedData;
+import org.rmatil.sync.network.core.model.MessageHeader;
+import org.rmatil.sync.network.core.model.MessageKind;
+import org.rmatil.sync.network.core.model.NodeLocation;
+import org.rmatil.sync.network.core.model.Priority;
+import org.rmatil.sync.network.core.model.ReplyPending;
 import org.rmatil.sync.network.core.security.encryption.asymmetric.rsa.RsaEncryption;
 import org.rmatil.sync.network.core.security.encryption.symmetric.aes.AesEncryption;
 import org.rmatil.sync.network.core.security.encryption.symmetric.aes.AesKeyFactory;
 import org.rmatil.sync.network.core.security.sign.rsa.RsaSign;
 import org.rmatil.sync.network.core.serialize.ByteSerializer;
 import org.rmatil.sync.persistence.exceptions.InputOutputException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 import java.io.IOException;
 import java.security.interfaces.RSAPrivateKey;
 import java.security.interfaces.RSAPublicKey;
-import java.util.Arrays;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Decrypts incoming data and passes the plain data
@@ -28,9 +48,54 @@ import java.util.Arrays;
  * this object.
  * Furthermore, if the object data reply handler returns data directly,
  * it will be encrypted and then sent back to the originating client.
+ * <p>
+ * Before any data is decrypted, the unencrypted header of the message is passed
+ * to the object data reply handler and all registered {@link IHeaderFilter}s,
+ * so that unwanted messages can be dropped without spending work on decrypting them.
+ * Messages carrying a header are passed on as {@link LazyMessage}, i.e. they are only
+ * deserialized once a handler has been found for them.
+ * <p>
+ * Receiving is split into stages: The header is decoded on the calling I/O thread,
+ * decryption and verification run on a pool sized to the number of cores and
+ * dispatching to the object data reply handler runs on its own pool.
+ * Each {@link Priority} has its own crypto and dispatch stage, so that control messages are
+ * not blocked by bulk transfers. Within a lane, messages of the same sender keep their order,
+ * while different senders are processed in parallel.
+ * Retries and duplicate deliveries of a message are dropped using a {@link DeduplicationCache}.
+ * Messages whose deadline has passed are dropped before they are decrypted.
+ * Asynchronously processed messages are answered with a {@link CreditGrant}, limiting
+ * the number of messages the sender may have in flight.
+ * Synchronous request callbacks run on their own pool instead of the dispatch stage.
+ * The I/O thread waits at most {@link EncryptedDataReplyHandler#SYNC_REPLY_TIMEOUT} for their response
+ * and replies with a {@link ReplyPending} otherwise, so that the sender asks again later.
+ * Retries of a request which is still being answered wait for the reply of the original the same way.
  */
 public class EncryptedDataReplyHandler implements ObjectDataReply {
 
+    private static final Logger logger = LoggerFactory.getLogger(EncryptedDataReplyHandler.class);
+
+    /**
+     * The maximum time to wait for received messages to be decrypted on shutdown (in milliseconds)
+     */
+    public static final long SHUTDOWN_TIMEOUT = 5000L;
+
+    /**
+     * The maximum number of replies to synchronous requests which are kept for retries
+     */
+    public static final int MAX_CACHED_REPLIES = 256;
+
+    /**
+     * The maximum number of synchronous request callbacks running concurrently. Further requests are queued
+     */
+    public static final int MAX_SYNC_CALLBACKS = 16;
+
+    /**
+     * The maximum time the I/O thread waits for the reply of a synchronous request callback (in milliseconds).
+     * A callback which takes longer keeps running, and the sender is told with a {@link ReplyPending}
+     * to send the request again, which then gets the reply once available
+     */
+    public static final long SYNC_REPLY_TIMEOUT = 250L;
+
     protected ObjectDataReplyHandler objectDataReplyHandler;
 
     protected INodeManager nodeManager;
@@ -41,19 +106,221 @@ public class EncryptedDataReplyHandler implements ObjectDataReply {
     protected AesEncryption aesEncryption;
     protected RsaSign       rsaSign;
 
+    protected AdaptiveCompressor compressor;
+
+    /**
+     * Filters consulted with the header of each message before decrypting it
+     */
+    protected List<IHeaderFilter> headerFilters;
+
+    /**
+     * The metrics of the decode stage, which runs on the calling I/O thread
+     */
+    protected StageMetrics decodeMetrics;
+
+    /**
+     * The messages which have already been processed, to drop retries and duplicate deliveries
+     */
+    protected DeduplicationCache deduplicationCache;
+
+    /**
+     * The encrypted replies to recently answered synchronous requests,
+     * returned again to retries of the same request
+     */
+    protected Map<List<UUID>, EncryptedData> cachedReplies;
+
+    /**
+     * The replies to synchronous requests which are still being answered,
+     * awaited by retries of the same request
+     */
+    protected Map<List<UUID>, CompletableFuture<EncryptedData>> pendingReplies;
+
+    /**
+     * Runs synchronous request callbacks outside of the lanes, so that a slow
+     * callback does not hold up later messages of the same sender
+     */
+    protected ExecutorService syncCallbackExecutor;
+
+    /**
+     * One lane per priority, each decrypting and verifying messages on a pool
+     * sized to the number of cores and passing them to the object data reply handler
+     */
+    protected Map<Priority, ReceiveLane> lanes;
+
     /**
      * @param objectDataReplyHandler The object data reply handler to which the decrypted data should be passed
      * @param nodeManager            The node manager to fetch the public key of the receiver to encrypt the data
      * @param rsaPrivateKey          The private key of the user to decrypt incoming data
      */
     public EncryptedDataReplyHandler(ObjectDataReplyHandler objectDataReplyHandler, INodeManager nodeManager, RSAPrivateKey rsaPrivateKey) {
+        this(objectDataReplyHandler, nodeManager, rsaPrivateKey, new AdaptiveCompressor());
+    }
+
+    /**
+     * @param objectDataReplyHandler The object data reply handler to which the decrypted data should be passed
+     * @param nodeManager            The node manager to fetch the public key of the receiver to encrypt the data
+     * @param rsaPrivateKey          The private key of the user to decrypt incoming data
+     * @param compressor             The compressor to decompress incoming and compress outgoing data
+     */
+    public EncryptedDataReplyHandler(ObjectDataReplyHandler objectDataReplyHandler, INodeManager nodeManager, RSAPrivateKey rsaPrivateKey, AdaptiveCompressor compressor) {
         this.objectDataReplyHandler = objectDataReplyHandler;
         this.nodeManager = nodeManager;
         this.privateKey = rsaPrivateKey;
         this.rsaEncryption = new RsaEncryption();
         this.aesEncryption = new AesEncryption();
         this.rsaSign = new RsaSign();
+        this.compressor = compressor;
+        this.headerFilters = new CopyOnWriteArrayList<>();
+        this.decodeMetrics = new StageMetrics("decode");
+        this.deduplicationCache = new DeduplicationCache();
+        this.cachedReplies = Collections.synchronizedMap(new LinkedHashMap<List<UUID>, EncryptedData>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<UUID>, EncryptedData> eldest) {
+                return this.size() > MAX_CACHED_REPLIES;
+            }
+        });
+        this.pendingReplies = new ConcurrentHashMap<>();
+        this.lanes = new EnumMap<>(Priority.class);
+        for (Priority priority : Priority.values()) {
+            this.lanes.put(priority, new ReceiveLane(priority, Runtime.getRuntime().availableProcessors()));
+        }
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        ThreadPoolExecutor syncCallbackExecutor = new ThreadPoolExecutor(MAX_SYNC_CALLBACKS, MAX_SYNC_CALLBACKS, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName("SyncRequestCallback-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        syncCallbackExecutor.allowCoreThreadTimeOut(true);
+        this.syncCallbackExecutor = syncCallbackExecutor;
+    }
+
+    /**
+     * Adds a filter which is consulted with the unencrypted header
+     * of each incoming message before decrypting it
+     *
+     * @param headerFilter The filter to add
+     */
+    public void addHeaderFilter(IHeaderFilter headerFilter) {
+        this.headerFilters.add(headerFilter);
+    }
 
+    /**
+     * Removes the given header filter (if present)
+     *
+     * @param headerFilter The filter to remove
+     */
+    public void removeHeaderFilter(IHeaderFilter headerFilter) {
+        this.headerFilters.remove(headerFilter);
+    }
+
+    /**
+     * Returns all registered header filters
+     *
+     * @return The header filters
+     */
+    public List<IHeaderFilter> getHeaderFilters() {
+        return this.headerFilters;
+    }
+
+    /**
+     * Returns the metrics of all stages of the receive pipeline, i.e.
+     * decode followed by crypto and dispatch of each lane in the order of their priority
+     *
+     * @return The metrics of the stages
+     */
+    public List<StageMetrics> getStageMetrics() {
+        List<StageMetrics> stageMetrics = new ArrayList<>();
+        stageMetrics.add(this.decodeMetrics);
+
+        for (ReceiveLane lane : this.lanes.values()) {
+            stageMetrics.add(lane.getCryptoStage().getMetrics());
+            stageMetrics.add(lane.getDispatchStage().getMetrics());
+        }
+
+        return stageMetrics;
+    }
+
+    /**
+     * Returns the lane processing messages of the given priority
+     *
+     * @param priority The priority
+     *
+     * @return The lane
+     */
+    public ReceiveLane getLane(Priority priority) {
+        return this.lanes.get(priority);
+    }
+
+    /**
+     * Stops accepting messages. Already received messages are still processed
+     */
+    public void shutdown() {
+        this.syncCallbackExecutor.shutdown();
+
+        for (ReceiveLane lane : this.lanes.values()) {
+            try {
+                // decrypted messages are still dispatched
+                lane.shutdown(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IllegalStateException e) {
+                logger.warn(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns true, if the message with the given header should be decrypted and processed
+     *
+     * @param sender The address of the peer which has sent the message
+     * @param header The unencrypted header of the message
+     *
+     * @return True, if the message is accepted, false if it should be dropped
+     */
+    protected boolean accept(PeerAddress sender, MessageHeader header) {
+        if (null != this.objectDataReplyHandler && ! this.objectDataReplyHandler.accept(sender, header)) {
+            return false;
+        }
+
+        for (IHeaderFilter headerFilter : this.headerFilters) {
+            if (! headerFilter.accept(sender, header)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Verifies the signature of the given data using the public key of the given user
+     *
+     * @param username   The name of the user who has signed the data
+     * @param signature  The signature to verify
+     * @param signedData The data which has been signed
+     *
+     * @throws SecurityException If the signature is invalid or the public key of the user could not have been fetched
+     */
+    protected void verifySignature(String username, byte[] signature, byte[] signedData) {
+        RSAPublicKey senderPublicKey;
+        try {
+            senderPublicKey = (RSAPublicKey) this.nodeManager.getPublicKey(username);
+        } catch (InputOutputException e) {
+            throw new SecurityException(
+                    "Could not use public key of user "
+                            + username
+                            + " to verify the signature. Aborting forwarding of request. Message: "
+                            + e.getMessage()
+            );
+        }
+
+        boolean isValidSignature = this.rsaSign.verify(senderPublicKey, signature, signedData);
+
+        if (! isValidSignature) {
+            throw new SecurityException("Invalid signature found for for message. Aborting forwarding of request");
+        }
     }
 
     @Override
@@ -66,45 +333,391 @@ public class EncryptedDataReplyHandler implements ObjectDataReply {
         }
 
         EncryptedData encryptedData = (EncryptedData) request;
+        MessageHeader header = encryptedData.getHeader();
 
-        byte[] decryptedKey = this.rsaEncryption.decrypt(this.privateKey, encryptedData.getEncryptedKey());
-        // init vector is prepended to data
-        byte[] initVector = Arrays.copyOfRange(decryptedKey, 0, AesEncryption.INIT_VECTOR_LENGTH);
-        byte[] encodedAesKey = Arrays.copyOfRange(decryptedKey, AesEncryption.INIT_VECTOR_LENGTH, decryptedKey.length);
+        if (null == header) {
+            // messages without header may expect a direct response, therefore they are processed inline
+            return this.encryptResponse(this.process(sender, encryptedData, null));
+        }
 
-        SecretKey aesKey = new SecretKeySpec(encodedAesKey, 0, encodedAesKey.length, "AES");
+        // messages of the same sender are processed in order, whereas different senders are processed in parallel
+        Object orderingKey = null != header.getSenderClientDeviceId() ? header.getSenderClientDeviceId() : sender;
 
-        byte[] decryptedData = this.aesEncryption.decrypt(aesKey, initVector, encryptedData.getEncryptedData());
+        // decode stage: decide on the unencrypted header, whether the message is processed at all
+        long start = System.nanoTime();
+        boolean isAccepted = this.accept(sender, header);
+        this.decodeMetrics.recordSubmission();
+        this.decodeMetrics.recordCompletion(0L, System.nanoTime() - start, false);
 
-        Object object = ByteSerializer.fromBytes(decryptedData);
+        if (! isAccepted) {
+            logger.debug("Dropping message " + header + " without decrypting it");
+            return this.createCreditGrant(orderingKey);
+        }
 
-        if (object instanceof IRequest) {
-            RSAPublicKey senderPublicKey;
+        if (header.isExpired()) {
+            logger.debug("Dropping message " + header + " since its deadline " + header.getDeadline() + " has passed");
+            return this.createCreditGrant(orderingKey);
+        }
+
+        if (this.isDeduplicated(header) && this.deduplicationCache.contains(header.getSenderClientDeviceId(), header.getMessageId())) {
+            logger.debug("Dropping duplicate message " + header + " without decrypting it");
+
+            if (null != this.objectDataReplyHandler.getSyncRequestCallbackHandler(header)) {
+                // answer the retry with the reply to the original request, if it is available by now
+                return this.awaitReply(this.getReplyOfDuplicate(header), header);
+            }
+
+            return this.createCreditGrant(orderingKey);
+        }
+
+        ReceiveLane lane = this.lanes.get(header.getPriority());
+
+        if (null != this.objectDataReplyHandler.getSyncRequestCallbackHandler(header)) {
+            // the response is sent back as reply, therefore we have to wait for it
+            return this.processSync(sender, encryptedData, header, orderingKey);
+        }
+
+        lane.getCryptoStage().submit(orderingKey, () -> {
+            if (header.isExpired()) {
+                logger.debug("Dropping message " + header + " since its deadline has passed while waiting to be decrypted");
+                return;
+            }
+
+            LazyMessage message;
             try {
-                senderPublicKey = (RSAPublicKey) this.nodeManager.getPublicKey(((IRequest) object).getClientDevice().getUserName());
-            } catch (InputOutputException e) {
-                throw new SecurityException(
-                        "Could not use public key of user "
-                                + ((IRequest) object).getClientDevice().getUserName()
-                                + " to verify the signature. Aborting forwarding of request. Message: "
-                                + e.getMessage()
-                );
+                message = new LazyMessage(header, this.decrypt(encryptedData, header));
+            } catch (Exception e) {
+                throw new SecurityException("Failed to decrypt message " + header + ". Message: " + e.getMessage(), e);
+            }
+
+            if (! this.markProcessed(header)) {
+                logger.debug("Dropping duplicate message " + header);
+                return;
+            }
+
+            lane.getDispatchStage().submit(orderingKey, () -> {
+                try {
+                    IResponse response = this.objectDataReplyHandler.reply(sender, message);
+
+                    if (null != response) {
+                        logger.warn("Discarding direct response to message " + header + " since it has been processed asynchronously");
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException("Failed to dispatch message " + header + ". Message: " + e.getMessage(), e);
+                } finally {
+                    lane.getLatencyHistogram().record(System.nanoTime() - start);
+                }
+            });
+        });
+
+        return this.createCreditGrant(orderingKey);
+    }
+
+    /**
+     * Returns true, if duplicates of the message with the given header are detected,
+     * i.e. if it belongs to an exchange of a known client device
+     *
+     * @param header The header of the message
+     *
+     * @return True, if duplicates are dropped
+     */
+    protected boolean isDeduplicated(MessageHeader header) {
+        return (MessageKind.REQUEST == header.getMessageKind() || MessageKind.RESPONSE == header.getMessageKind())
+                && null != header.getSenderClientDeviceId()
+                && null != header.getMessageId();
+    }
+
+    /**
+     * Marks the message with the given verified header as processed
+     *
+     * @param header The header of the message
+     *
+     * @return True, if the message should be processed, false if it is a duplicate
+     */
+    protected boolean markProcessed(MessageHeader header) {
+        return ! this.isDeduplicated(header) || this.deduplicationCache.add(header.getSenderClientDeviceId(), header.getMessageId());
+    }
+
+    protected List<UUID> getReplyCacheKey(MessageHeader header) {
+        return Arrays.asList(header.getSenderClientDeviceId(), header.getMessageId());
+    }
+
+    /**
+     * Creates the grant telling the sender how many messages it may have in flight.
+     * The free request callback slots are shared equally among all senders with messages
+     * in the pipeline, and the messages of the sender which have not been processed yet are deducted
+     * from its share. Therefore, the grant may be zero while the sender's messages are still waiting
+     *
+     * @param orderingKey The key by which messages of the sender are ordered
+     *
+     * @return The credit grant
+     */
+    protected CreditGrant createCreditGrant(Object orderingKey) {
+        Set<Object> activeSenders = new HashSet<>();
+        activeSenders.add(orderingKey);
+
+        long pendingOfSender = 0L;
+        for (ReceiveLane lane : this.lanes.values()) {
+            activeSenders.addAll(lane.getActiveSenders());
+            pendingOfSender += lane.getQueueLength(orderingKey);
+        }
+
+        long share = this.objectDataReplyHandler.getAvailableCapacity() / activeSenders.size();
+
+        return new CreditGrant((int) Math.max(0L, share - pendingOfSender));
+    }
+
+    /**
+     * Decrypts the given request in the crypto stage and runs its synchronous request callback
+     * outside of the lane, so that later messages of the same sender are not held up.
+     * Waits at most {@link EncryptedDataReplyHandler#SYNC_REPLY_TIMEOUT} for the encrypted response
+     *
+     * @param sender        The address of the peer which has sent the request
+     * @param encryptedData The request to process
+     * @param header        The header of the request
+     * @param orderingKey   The key by which messages of the sender are ordered
+     *
+     * @return The encrypted response, a {@link ReplyPending} if it is not available in time, or null if the callback did not return a response
+     *
+     * @throws Exception If processing the request failed
+     */
+    protected Object processSync(PeerAddress sender, EncryptedData encryptedData, MessageHeader header, Object orderingKey)
+            throws Exception {
+        CompletableFuture<EncryptedData> futureReply = new CompletableFuture<>();
+        ReceiveLane lane = this.lanes.get(header.getPriority());
+        List<UUID> replyCacheKey = this.getReplyCacheKey(header);
+        long start = System.nanoTime();
+
+        lane.getCryptoStage().submit(orderingKey, () -> {
+            if (header.isExpired()) {
+                logger.debug("Dropping request " + header + " since its deadline has passed while waiting to be decrypted");
+                futureReply.complete(null);
+                return;
+            }
+
+            LazyMessage message;
+            try {
+                message = new LazyMessage(header, this.decrypt(encryptedData, header));
+            } catch (Exception e) {
+                futureReply.completeExceptionally(e);
+                return;
+            }
+
+            boolean isOriginal;
+            synchronized (this.pendingReplies) {
+                // retries must either find the pending or the cached reply
+                isOriginal = this.markProcessed(header);
+                if (isOriginal && this.isDeduplicated(header)) {
+                    this.pendingReplies.put(replyCacheKey, futureReply);
+                }
+            }
+
+            if (! isOriginal) {
+                logger.debug("Dropping duplicate request " + header);
+                this.getReplyOfDuplicate(header).whenComplete((reply, throwable) -> {
+                    if (null == throwable) {
+                        futureReply.complete(reply);
+                    } else {
+                        futureReply.completeExceptionally(throwable);
+                    }
+                });
+                return;
+            }
+
+            this.syncCallbackExecutor.execute(() -> {
+                try {
+                    EncryptedData reply = this.encryptResponse(this.objectDataReplyHandler.reply(sender, message));
+
+                    if (null != reply && this.isDeduplicated(header)) {
+                        this.cachedReplies.put(replyCacheKey, reply);
+                    }
+
+                    futureReply.complete(reply);
+                } catch (Exception e) {
+                    futureReply.completeExceptionally(e);
+                } finally {
+                    // the reply has been cached before, so retries find either of them
+                    this.pendingReplies.remove(replyCacheKey, futureReply);
+                    lane.getLatencyHistogram().record(System.nanoTime() - start);
+                }
+            });
+        });
+
+        return this.awaitReply(futureReply, header);
+    }
+
+    /**
+     * Returns the reply to the original of the given duplicate request:
+     * The cached reply if the original has been answered already, or the pending
+     * reply if the original is still being answered
+     *
+     * @param header The header of the duplicate request
+     *
+     * @return A future completed with the reply, resp. with null if no reply is known
+     */
+    protected CompletableFuture<EncryptedData> getReplyOfDuplicate(MessageHeader header) {
+        List<UUID> replyCacheKey = this.getReplyCacheKey(header);
+
+        synchronized (this.pendingReplies) {
+            CompletableFuture<EncryptedData> pendingReply = this.pendingReplies.get(replyCacheKey);
+
+            if (null != pendingReply) {
+                return pendingReply;
             }
 
-            // verify signature of plain data
-            boolean isValidSignature = this.rsaSign.verify(senderPublicKey, encryptedData.getSignature(), decryptedData);
+            return CompletableFuture.completedFuture(this.cachedReplies.get(replyCacheKey));
+        }
+    }
+
+    /**
+     * Waits at most {@link EncryptedDataReplyHandler#SYNC_REPLY_TIMEOUT} for the given reply
+     *
+     * @param futureReply The future of the reply
+     * @param header      The header of the request which is answered
+     *
+     * @return The encrypted reply, a {@link ReplyPending} if it is not available in time, or null if the callback did not return a response
+     *
+     * @throws Exception If answering the request failed
+     */
+    protected Object awaitReply(CompletableFuture<EncryptedData> futureReply, MessageHeader header)
+            throws Exception {
+        try {
+            return futureReply.get(SYNC_REPLY_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            logger.error("Failed to answer request " + header + ". Message: " + e.getCause().getMessage());
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } catch (TimeoutException e) {
+            logger.debug("Request " + header + " has not been answered within " + SYNC_REPLY_TIMEOUT + " ms. A retry will get the reply once available");
+            return new ReplyPending();
+        }
+    }
+
+    /**
+     * Decrypts the direct reply to a request sent to the given receiver and verifies,
+     * that it is a response to the request signed by the receiver.
+     * Decryption is done on the crypto stage.
+     *
+     * @param receiverAddress The location of the node to which the request has been sent
+     * @param exchangeId      The exchange id of the request
+     * @param encryptedData   The encrypted reply
+     *
+     * @return A future completed with the response, or completed exceptionally if the reply is not a valid response
+     */
+    public CompletableFuture<IResponse> decryptReply(NodeLocation receiverAddress, UUID exchangeId, EncryptedData encryptedData) {
+        CompletableFuture<IResponse> futureResponse = new CompletableFuture<>();
+        MessageHeader header = encryptedData.getHeader();
+
+        if (null == header
+                || MessageKind.RESPONSE != header.getMessageKind()
+                || ! exchangeId.equals(header.getExchangeId())
+                || ! receiverAddress.getUsername().equals(header.getSenderUsername())) {
+            futureResponse.completeExceptionally(new SecurityException("Reply with header " + header + " is not a response of " + receiverAddress.getUsername() + " to request " + exchangeId));
+            return futureResponse;
+        }
+
+        Object orderingKey = null != header.getSenderClientDeviceId() ? header.getSenderClientDeviceId() : receiverAddress;
+
+        this.lanes.get(header.getPriority()).getCryptoStage().submit(orderingKey, () -> {
+            try {
+                byte[] decryptedData = this.decrypt(encryptedData, header);
 
-            if (! isValidSignature) {
-                throw new SecurityException("Invalid signature found for for message. Aborting forwarding of request");
+                futureResponse.complete((IResponse) new LazyMessage(header, decryptedData).get());
+            } catch (Exception e) {
+                futureResponse.completeExceptionally(e);
             }
+        });
+
+        return futureResponse;
+    }
+
+    /**
+     * Decrypts the given message, verifies its signature and passes it to the object data reply handler
+     *
+     * @param sender        The address of the peer which has sent the message
+     * @param encryptedData The message to process
+     * @param header        The header of the message. May be null
+     *
+     * @return The direct response of the object data reply handler
+     *
+     * @throws Exception If processing the message failed
+     */
+    protected IResponse process(PeerAddress sender, EncryptedData encryptedData, MessageHeader header)
+            throws Exception {
+        byte[] decryptedData = this.decrypt(encryptedData, header);
+
+        if (null != header) {
+            return this.objectDataReplyHandler.reply(sender, new LazyMessage(header, decryptedData));
+        }
+
+        Object object = ByteSerializer.fromBytes(decryptedData);
+
+        if (object instanceof IRequest) {
+            this.verifySignature(((IRequest) object).getClientDevice().getUserName(), encryptedData.getSignature(), decryptedData);
         }
 
         // -> invoke object data reply
-        IResponse response = this.objectDataReplyHandler.reply(sender, object);
+        return this.objectDataReplyHandler.reply(sender, object);
+    }
+
+    /**
+     * Decrypts and decompresses the data of the given message.
+     * If the message carries a header, its signature is verified as well, whatever the kind of the message,
+     * since the signed header tells the type and sender of the message and decides on deduplication.
+     * The signature covers the payload as sent, therefore it is verified before decompressing the payload
+     *
+     * @param encryptedData The message to decrypt
+     * @param header        The header of the message. May be null
+     *
+     * @return The plain data
+     *
+     * @throws Exception If decrypting the message failed or its signature is invalid
+     */
+    protected byte[] decrypt(EncryptedData encryptedData, MessageHeader header)
+            throws Exception {
+        byte[] payload = this.decryptPayload(encryptedData);
 
+        if (null != header) {
+            this.verifySignature(header.getSenderUsername(), encryptedData.getSignature(), header.prependTo(payload));
+        }
+
+        return encryptedData.isCompressed() ? this.compressor.decompress(payload) : payload;
+    }
+
+    /**
+     * Decrypts the payload of the given message without decompressing it
+     *
+     * @param encryptedData The message to decrypt
+     *
+     * @return The payload as sent, i.e. compressed if {@link EncryptedData#isCompressed()}
+     *
+     * @throws Exception If decrypting the message failed
+     */
+    protected byte[] decryptPayload(EncryptedData encryptedData)
+            throws Exception {
+        byte[] decryptedKey = this.rsaEncryption.decrypt(this.privateKey, encryptedData.getEncryptedKey());
+        // init vector is prepended to data
+        byte[] initVector = Arrays.copyOfRange(decryptedKey, 0, AesEncryption.INIT_VECTOR_LENGTH);
+        byte[] encodedAesKey = Arrays.copyOfRange(decryptedKey, AesEncryption.INIT_VECTOR_LENGTH, decryptedKey.length);
+
+        SecretKey aesKey = new SecretKeySpec(encodedAesKey, 0, encodedAesKey.length, "AES");
+
+        return this.aesEncryption.decrypt(aesKey, initVector, encryptedData.getEncryptedData());
+    }
+
+    /**
+     * Encrypts the given response for its receiver
+     *
+     * @param response The response to encrypt. May be null
+     *
+     * @return The encrypted response or null, if the response is null
+     *
+     * @throws ObjectSendFailedException If encrypting the response failed
+     */
+    protected EncryptedData encryptResponse(IResponse response)
+            throws ObjectSendFailedException {
         // no need to encrypt something, if the direct response is null
         if (null == response) {
-            return response;
+            return null;
         }
 
         // encrypt the returned data
@@ -124,13 +737,17 @@ public class EncryptedDataReplyHandler implements ObjectDataReply {
         try {
             byte[] plainData = ByteSerializer.toBytes(response);
 
+            // compress the data before encrypting it, if it is worth to do so
+            byte[] compressedData = this.compressor.compress(plainData);
+            boolean isCompressed = null != compressedData;
+
             // encrypt the actual data using the AES key
-            initVector = AesEncryption.generateInitializationVector();
-            aesKey = AesKeyFactory.generateSecretKey();
-            byte[] aesEncryptedData = this.aesEncryption.encrypt(aesKey, initVector, plainData);
+            byte[] initVector = AesEncryption.generateInitializationVector();
+            SecretKey aesKey = AesKeyFactory.generateSecretKey();
+            byte[] aesEncryptedData = this.aesEncryption.encrypt(aesKey, initVector, isCompressed ? compressedData : plainData);
 
             // encrypt the AES key with RSA
-            encodedAesKey = aesKey.getEncoded();
+            byte[] encodedAesKey = aesKey.getEncoded();
             byte[] symmetricKey = new byte[AesEncryption.INIT_VECTOR_LENGTH + encodedAesKey.length];
 
             System.arraycopy(initVector, 0, symmetricKey, 0, initVector.length);
@@ -138,9 +755,16 @@ public class EncryptedDataReplyHandler implements ObjectDataReply {
 
             byte[] rsaEncryptedData = this.rsaEncryption.encrypt(receiverPublicKey, symmetricKey);
 
-            byte[] signature = this.rsaSign.sign(this.privateKey, plainData);
+            MessageHeader responseHeader = MessageHeader.create(
+                    response,
+                    plainData,
+                    response.getClientDevice().getUserName(),
+                    response.getClientDevice().getClientDeviceId(),
+                    0L
+            );
+            byte[] signature = this.rsaSign.sign(this.privateKey, responseHeader.prependTo(isCompressed ? compressedData : plainData));
 
-            return new EncryptedData(signature, rsaEncryptedData, aesEncryptedData);
+            return new EncryptedData(signature, rsaEncryptedData, aesEncryptedData, isCompressed, responseHeader);
         } catch (IOException | SecurityException e) {
             throw new ObjectSendFailedException(
                     "Failed to encrypt data for receiver "
@@ -0,0 +1,100 @@
+package org.rmatil.sync.network.core.messaging;
+
+import org.rmatil.sync.network.api.IFileChunkCallback;
+import org.rmatil.sync.network.core.model.ChunkBitmap;
+import org.rmatil.sync.network.core.model.FileChunk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes received file chunks straight to their position in a file channel,
+ * without assembling the whole file in memory.
+ */
+public class FileChannelChunkWriter implements IFileChunkCallback {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileChannelChunkWriter.class);
+
+    /**
+     * The file channel to write to
+     */
+    protected final FileChannel fileChannel;
+
+    /**
+     * The position in the file channel at which the file region starts
+     */
+    protected final long position;
+
+    /**
+     * The countdown latch which is completed once all chunks have been written
+     */
+    protected final CountDownLatch countDownLatch;
+
+    /**
+     * The chunks written so far
+     */
+    protected ChunkBitmap chunkBitmap;
+
+    /**
+     * @param fileChannel The file channel to write to. Must be opened for writing
+     * @param position    The position in the file channel at which the received file region should start
+     */
+    public FileChannelChunkWriter(FileChannel fileChannel, long position) {
+        this.fileChannel = fileChannel;
+        this.position = position;
+        this.countDownLatch = new CountDownLatch(1);
+    }
+
+    @Override
+    public void onFileChunk(FileChunk fileChunk)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(fileChunk.getData());
+        long writePosition = this.position + fileChunk.getOffset();
+
+        while (buffer.hasRemaining()) {
+            writePosition += this.fileChannel.write(buffer, writePosition);
+        }
+
+        synchronized (this) {
+            if (null == this.chunkBitmap) {
+                this.chunkBitmap = new ChunkBitmap(fileChunk.getTotalNrOfChunks());
+            }
+
+            this.chunkBitmap.set(fileChunk.getChunkCounter());
+
+            if (this.chunkBitmap.isComplete()) {
+                logger.debug("Received all " + fileChunk.getTotalNrOfChunks() + " chunks of exchange " + fileChunk.getExchangeId());
+                this.countDownLatch.countDown();
+            }
+        }
+    }
+
+    /**
+     * Returns true once all chunks of the file region have been written
+     *
+     * @return True, if all chunks have been written, false otherwise
+     */
+    public boolean isCompleted() {
+        return 0 == this.countDownLatch.getCount();
+    }
+
+    /**
+     * Blocks for the given timeout until all chunks of the file region have been written
+     *
+     * @param timeout  The timeout to wait
+     * @param timeUnit The time unit which qualifies the timeout
+     *
+     * @return True, if all chunks have been written, false if the timeout elapsed before
+     *
+     * @throws InterruptedException If the thread got interrupted while waiting
+     */
+    public boolean await(long timeout, TimeUnit timeUnit)
+            throws InterruptedException {
+        return this.countDownLatch.await(timeout, timeUnit);
+    }
+}
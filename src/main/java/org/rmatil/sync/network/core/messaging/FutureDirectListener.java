@@ -40,6 +40,21 @@ public class FutureDirectListener extends BaseFutureAdapter<FutureDirect> {
         this.countDownLatch.await(MAX_TIMEOUT, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * Waits at most the given timeout for the future to complete,
+     * e.g. the send timeout of the receiver estimated by the {@link org.rmatil.sync.network.core.RttEstimator}
+     *
+     * @param timeout The maximum time to wait (in milliseconds)
+     *
+     * @return True, if the future completed, false if the timeout elapsed before
+     *
+     * @throws InterruptedException If the thread got interrupted while waiting
+     */
+    public boolean await(long timeout)
+            throws InterruptedException {
+        return this.countDownLatch.await(timeout, TimeUnit.MILLISECONDS);
+    }
+
     @Override
     public void operationComplete(FutureDirect future)
             throws Exception {
@@ -0,0 +1,121 @@
+package org.rmatil.sync.network.core.messaging;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies with exponentially growing buckets:
+ * Bucket 0 holds latencies below 1ms, bucket i latencies in [2^(i-1)ms, 2^i ms)
+ * and the last bucket all latencies above.
+ */
+public class LatencyHistogram {
+
+    /**
+     * The number of buckets, the last one holding all latencies of 2^(NR_OF_BUCKETS - 2)ms and above
+     */
+    public static final int NR_OF_BUCKETS = 18;
+
+    protected final AtomicLongArray buckets;
+
+    public LatencyHistogram() {
+        this.buckets = new AtomicLongArray(NR_OF_BUCKETS);
+    }
+
+    /**
+     * Records the given latency
+     *
+     * @param nanos The latency in nanoseconds
+     */
+    public void record(long nanos) {
+        this.buckets.incrementAndGet(getBucket(TimeUnit.NANOSECONDS.toMillis(nanos)));
+    }
+
+    /**
+     * Returns the bucket of the given latency
+     *
+     * @param millis The latency in milliseconds
+     *
+     * @return The index of the bucket
+     */
+    public static int getBucket(long millis) {
+        if (millis <= 0) {
+            return 0;
+        }
+
+        return Math.min(NR_OF_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis));
+    }
+
+    /**
+     * Returns the upper bound of latencies in the given bucket
+     *
+     * @param bucket The index of the bucket
+     *
+     * @return The exclusive upper bound in milliseconds, {@link Long#MAX_VALUE} for the last bucket
+     */
+    public static long getUpperBound(int bucket) {
+        return bucket >= NR_OF_BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    /**
+     * Returns the number of recorded latencies
+     *
+     * @return The number of recorded latencies
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < NR_OF_BUCKETS; i++) {
+            count += this.buckets.get(i);
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the number of recorded latencies per bucket
+     *
+     * @return The counts of all buckets
+     */
+    public long[] getCounts() {
+        long[] counts = new long[NR_OF_BUCKETS];
+        for (int i = 0; i < NR_OF_BUCKETS; i++) {
+            counts[i] = this.buckets.get(i);
+        }
+
+        return counts;
+    }
+
+    /**
+     * Returns the upper bound of the bucket containing the given percentile
+     *
+     * @param percentile The percentile, between 0 and 100
+     *
+     * @return The upper bound of the latency at the given percentile in milliseconds, 0 if nothing has been recorded
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = this.getCounts();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+
+        if (0 == total) {
+            return 0L;
+        }
+
+        long threshold = (long) Math.ceil(total * percentile / 100d);
+        long seen = 0;
+        for (int i = 0; i < NR_OF_BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= threshold && counts[i] > 0) {
+                return getUpperBound(i);
+            }
+        }
+
+        return getUpperBound(NR_OF_BUCKETS - 1);
+    }
+
+    @Override
+    public String toString() {
+        return this.getCount() + " samples, p50 < " + this.getPercentile(50) + "ms, p99 < " + this.getPercentile(99) + "ms";
+    }
+}
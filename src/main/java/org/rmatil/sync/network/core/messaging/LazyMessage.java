@@ -0,0 +1,85 @@
+package org.rmatil.sync.network.core.messaging;
+
+import org.rmatil.sync.network.core.exception.SecurityException;
+import org.rmatil.sync.network.core.model.MessageHeader;
+import org.rmatil.sync.network.core.serialize.ByteSerializer;
+
+import java.io.IOException;
+
+/**
+ * An envelope around the decrypted bytes of a message.
+ * The header of the message is available immediately, whereas the
+ * message itself is only deserialized on the first call to {@link LazyMessage#get()}.
+ * This allows to look up the handler of a message based on its header
+ * and to skip deserializing messages which are not handled at all.
+ */
+public class LazyMessage {
+
+    /**
+     * The header of the message
+     */
+    protected MessageHeader header;
+
+    /**
+     * The serialized message. Released once deserialized
+     */
+    protected byte[] plainData;
+
+    /**
+     * The deserialized message
+     */
+    protected Object object;
+
+    /**
+     * @param header    The verified header of the message
+     * @param plainData The serialized message
+     */
+    public LazyMessage(MessageHeader header, byte[] plainData) {
+        this.header = header;
+        this.plainData = plainData;
+    }
+
+    /**
+     * Returns the header of the message
+     *
+     * @return The header
+     */
+    public MessageHeader getHeader() {
+        return header;
+    }
+
+    /**
+     * Returns the message, deserializing it on the first invocation.
+     * The deserialized message is checked to match its header.
+     *
+     * @return The deserialized message
+     *
+     * @throws IOException            If deserializing the message failed
+     * @throws ClassNotFoundException If the class of the message is not known
+     * @throws SecurityException      If the message does not match its header
+     */
+    public synchronized Object get()
+            throws IOException, ClassNotFoundException {
+        if (null == this.object) {
+            Object object = ByteSerializer.fromBytes(this.plainData);
+
+            if (! this.header.matches(object)) {
+                throw new SecurityException("Header " + this.header + " does not match the encrypted message");
+            }
+
+            this.object = object;
+            this.plainData = null;
+        }
+
+        return this.object;
+    }
+
+    /**
+     * Returns true, if the message has already been deserialized
+     *
+     * @return True, if deserialized, false otherwise
+     */
+    public synchronized boolean isDecoded() {
+        return null != this.object;
+    }
+}
@@ -4,14 +4,27 @@ import net.tomp2p.peers.PeerAddress;
 import net.tomp2p.rpc.ObjectDataReply;
 import org.rmatil.sync.network.api.*;
 import org.rmatil.sync.network.core.ANetworkHandler;
+import org.rmatil.sync.network.core.exception.SecurityException;
+import org.rmatil.sync.network.core.model.CancelRequest;
+import org.rmatil.sync.network.core.model.ChunkStatusRequest;
+import org.rmatil.sync.network.core.model.FileChunk;
+import org.rmatil.sync.network.core.model.MessageBatch;
+import org.rmatil.sync.network.core.model.MessageHeader;
+import org.rmatil.sync.network.core.model.MessageKind;
+import org.rmatil.sync.network.core.model.NodeLocation;
+import org.rmatil.sync.network.core.model.NodeLocationAnnouncement;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Use this handler to register multiple implementations of ObjectDataReply
@@ -21,6 +34,12 @@ public class ObjectDataReplyHandler implements ObjectDataReply {
 
     protected final static Logger logger = LoggerFactory.getLogger(ObjectDataReplyHandler.class);
 
+    /**
+     * The number of request callbacks this handler is willing to run concurrently.
+     * Used to compute the credits granted to senders
+     */
+    public static final int MAX_CONCURRENT_REQUEST_CALLBACKS = 64;
+
     /**
      * A map of all registered responseCallbackHandlers.
      * Key is the class to which the corresponding objectDataReply should be applied to
@@ -35,17 +54,51 @@ public class ObjectDataReplyHandler implements ObjectDataReply {
      */
     protected Map<Class<? extends IRequest>, Class<? extends IRequestCallback>> requestCallbackHandlers;
 
+    /**
+     * A map of all registered synchronous request callbacks.
+     * Key is the class of the request for which the corresponding callback should be invoked.
+     * The response of the callback is sent back as reply of the original message.
+     */
+    protected Map<Class<? extends IRequest>, Class<? extends ISyncRequestCallback>> syncRequestCallbackHandlers;
+
+    /**
+     * A map of all registered file chunk callbacks.
+     * Key is the exchange id of the file exchange to which the callback should be applied to
+     */
+    protected Map<UUID, IFileChunkCallback> fileChunkCallbacks;
+
     /**
      * A map of all currently running request callback handlers along
      * with their start time
      */
     protected final Map<Long, UUID> runningRequestCallbacks;
 
+    /**
+     * The number of request callbacks which are currently running
+     */
+    protected final AtomicInteger nrOfActiveRequestCallbacks = new AtomicInteger();
+
+    /**
+     * The threads of all currently running request callbacks.
+     * Key is the pair of the id of the requesting client device and the exchange id
+     */
+    protected final Map<List<UUID>, Thread> requestCallbackThreads = new ConcurrentHashMap<>();
+
+    /**
+     * The exchanges which have been cancelled by their requesting client device recently
+     */
+    protected final DeduplicationCache cancelledExchanges = new DeduplicationCache();
+
     /**
      * The node to use for sending back responses
      */
     protected INode node;
 
+    /**
+     * Tracks the received chunks of all incoming chunked requests
+     */
+    protected ChunkProgressTracker chunkProgressTracker;
+
     /**
      * @param node                     The node used for sending back the responses of a request
      * @param responseCallbackHandlers A map of all registered responseCallbackHandlers. Specify as key the exchange id of the request
@@ -56,7 +109,10 @@ public class ObjectDataReplyHandler implements ObjectDataReply {
         this.node = node;
         this.responseCallbackHandlers = responseCallbackHandlers;
         this.requestCallbackHandlers = requestCallbackHandlers;
+        this.syncRequestCallbackHandlers = new ConcurrentHashMap<>();
+        this.fileChunkCallbacks = new ConcurrentHashMap<>();
         this.runningRequestCallbacks = new ConcurrentHashMap<>();
+        this.chunkProgressTracker = new ChunkProgressTracker();
     }
 
     /**
@@ -66,7 +122,10 @@ public class ObjectDataReplyHandler implements ObjectDataReply {
         this.node = node;
         this.responseCallbackHandlers = new HashMap<>();
         this.requestCallbackHandlers = new HashMap<>();
+        this.syncRequestCallbackHandlers = new ConcurrentHashMap<>();
+        this.fileChunkCallbacks = new ConcurrentHashMap<>();
         this.runningRequestCallbacks = new ConcurrentHashMap<>();
+        this.chunkProgressTracker = new ChunkProgressTracker();
     }
 
     /**
@@ -126,6 +185,73 @@ public class ObjectDataReplyHandler implements ObjectDataReply {
         return this.requestCallbackHandlers;
     }
 
+    /**
+     * Add a synchronous request callback which will be called if a request
+     * is incoming matching the given class. Its response is sent back as reply
+     * of the original message.
+     *
+     * @param clazz               The request class to register the callback (Any implementation of {@link IRequest})
+     * @param syncRequestCallback The callback which should be called if the specified request gets to the node (Any implementation of {@link ISyncRequestCallback})
+     */
+    public void addSyncRequestCallbackHandler(Class<? extends IRequest> clazz, Class<? extends ISyncRequestCallback> syncRequestCallback) {
+        this.syncRequestCallbackHandlers.put(clazz, syncRequestCallback);
+    }
+
+    /**
+     * Remove the synchronous request callback for the given request class
+     *
+     * @param clazz The request class for which to remove the callback
+     */
+    public void removeSyncRequestCallbackHandler(Class<? extends IRequest> clazz) {
+        this.syncRequestCallbackHandlers.remove(clazz);
+    }
+
+    /**
+     * Returns all registered synchronous request callbacks
+     *
+     * @return All registered synchronous request callbacks
+     */
+    public Map<Class<? extends IRequest>, Class<? extends ISyncRequestCallback>> getSyncRequestCallbackHandlers() {
+        return this.syncRequestCallbackHandlers;
+    }
+
+    /**
+     * Adds a callback which receives all file chunks of the given exchange
+     *
+     * @param exchangeId        The exchange id of the file exchange
+     * @param fileChunkCallback The callback to which the received chunks are passed
+     */
+    public void addFileChunkCallback(UUID exchangeId, IFileChunkCallback fileChunkCallback) {
+        this.fileChunkCallbacks.put(exchangeId, fileChunkCallback);
+    }
+
+    /**
+     * Removes the file chunk callback of the given exchange (if present)
+     *
+     * @param exchangeId The exchange id of the file exchange
+     */
+    public void removeFileChunkCallback(UUID exchangeId) {
+        this.fileChunkCallbacks.remove(exchangeId);
+    }
+
+    /**
+     * Returns all registered file chunk callbacks
+     *
+     * @return All registered file chunk callbacks
+     */
+    public Map<UUID, IFileChunkCallback> getFileChunkCallbacks() {
+        return this.fileChunkCallbacks;
+    }
+
+    /**
+     * Returns the tracker holding the received chunks of all incoming chunked requests
+     *
+     * @return The chunk progress tracker
+     */
+    public ChunkProgressTracker getChunkProgressTracker() {
+        return this.chunkProgressTracker;
+    }
+
     /**
      * Returns true if request callback are running.
      * False otherwise.
@@ -151,31 +277,277 @@ public class ObjectDataReplyHandler implements ObjectDataReply {
         }
     }
 
+    /**
+     * Returns the number of request callbacks which are currently running
+     *
+     * @return The number of running request callbacks
+     */
+    public int getNrOfActiveRequestCallbacks() {
+        return this.nrOfActiveRequestCallbacks.get();
+    }
+
+    /**
+     * Returns the number of further request callbacks this handler
+     * is willing to run concurrently
+     *
+     * @return The number of free request callback slots
+     */
+    public int getAvailableCapacity() {
+        return Math.max(0, MAX_CONCURRENT_REQUEST_CALLBACKS - this.nrOfActiveRequestCallbacks.get());
+    }
+
+    /**
+     * Returns true, if the given exchange has been cancelled by the requesting client device
+     *
+     * @param senderClientDeviceId The id of the client device which has started the exchange. May be null
+     * @param exchangeId           The id of the exchange. May be null
+     *
+     * @return True, if the exchange has been cancelled
+     */
+    public boolean isCancelled(UUID senderClientDeviceId, UUID exchangeId) {
+        return null != senderClientDeviceId && null != exchangeId && this.cancelledExchanges.contains(senderClientDeviceId, exchangeId);
+    }
+
+    /**
+     * Decides based on the unencrypted header of a message, whether
+     * the message would be handled at all: Responses are only accepted
+     * if a callback is registered for their exchange. Requests of
+     * cancelled exchanges are dropped.
+     *
+     * @param sender The address of the peer which has sent the message
+     * @param header The unencrypted header of the message
+     *
+     * @return True, if the message should be decrypted and passed to this handler, false if it can be dropped
+     */
+    public boolean accept(PeerAddress sender, MessageHeader header) {
+        if (MessageKind.RESPONSE == header.getMessageKind()) {
+            return null != header.getExchangeId() && this.responseCallbackHandlers.containsKey(header.getExchangeId());
+        }
+
+        if (MessageKind.REQUEST == header.getMessageKind()) {
+            if (this.isCancelRequest(header) || this.isNodeLocationAnnouncement(header)) {
+                return true;
+            }
+
+            if (this.isCancelled(header.getSenderClientDeviceId(), header.getExchangeId())) {
+                return false;
+            }
+
+            return this.isFileChunkOfRegisteredExchange(header)
+                    || null != this.getSyncRequestCallbackHandler(header)
+                    || null != this.getRequestCallbackHandler(header);
+        }
+
+        return true;
+    }
+
+    /**
+     * Looks up the request callback which handles the request with the given header,
+     * without having to deserialize the request itself
+     *
+     * @param header The header of the request
+     *
+     * @return The class of the request callback, or null if the request is not handled by this node
+     */
+    protected Class<? extends IRequestCallback> getRequestCallbackHandler(MessageHeader header) {
+        String payloadType = header.getPayloadType();
+
+        if (null == payloadType) {
+            return null;
+        }
+
+        if (ChunkStatusRequest.class.getName().equals(payloadType)) {
+            return ChunkStatusRequestHandler.class;
+        }
+
+        for (Map.Entry<Class<? extends IRequest>, Class<? extends IRequestCallback>> entry : this.requestCallbackHandlers.entrySet()) {
+            if (entry.getKey().getName().equals(payloadType)) {
+                return entry.getValue();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Looks up the synchronous request callback which handles the request with the given header,
+     * without having to deserialize the request itself
+     *
+     * @param header The header of the request
+     *
+     * @return The class of the synchronous request callback, or null if the request is not answered synchronously
+     */
+    public Class<? extends ISyncRequestCallback> getSyncRequestCallbackHandler(MessageHeader header) {
+        if (MessageKind.REQUEST != header.getMessageKind() || null == header.getPayloadType()) {
+            return null;
+        }
+
+        for (Map.Entry<Class<? extends IRequest>, Class<? extends ISyncRequestCallback>> entry : this.syncRequestCallbackHandlers.entrySet()) {
+            if (entry.getKey().getName().equals(header.getPayloadType())) {
+                return entry.getValue();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns true, if the message with the given header is a file chunk
+     * of an exchange for which a file chunk callback is registered
+     *
+     * @param header The header of the message
+     *
+     * @return True, if the file chunk is handled by a file chunk callback
+     */
+    protected boolean isFileChunkOfRegisteredExchange(MessageHeader header) {
+        return FileChunk.class.getName().equals(header.getPayloadType())
+                && null != header.getExchangeId()
+                && this.fileChunkCallbacks.containsKey(header.getExchangeId());
+    }
+
+    /**
+     * Returns true, if the message with the given header is a cancellation notice
+     *
+     * @param header The header of the message
+     *
+     * @return True, if the message is a {@link CancelRequest}
+     */
+    protected boolean isCancelRequest(MessageHeader header) {
+        return CancelRequest.class.getName().equals(header.getPayloadType());
+    }
+
+    /**
+     * Applies a login resp. logout notice to the cached locations of the user.
+     * Only nodes of the same user may announce their own location
+     *
+     * @param sender       The address of the peer which has sent the notice
+     * @param announcement The notice
+     */
+    protected void applyNodeLocationAnnouncement(PeerAddress sender, NodeLocationAnnouncement announcement) {
+        NodeLocation nodeLocation = announcement.getNodeLocation();
+
+        if (null == nodeLocation || null == nodeLocation.getPeerAddress() || ! nodeLocation.getPeerAddress().equals(sender)) {
+            logger.warn("Ignoring node location announcement of " + sender + " since it does not announce its own location");
+            return;
+        }
+
+        if (null == this.node.getUser() || ! this.node.getUser().getUserName().equals(nodeLocation.getUsername())) {
+            logger.warn("Ignoring node location announcement of " + sender + " since it belongs to another user");
+            return;
+        }
+
+        logger.debug("Node " + nodeLocation.getClientDeviceId() + " announced to have logged " + (announcement.isLogin() ? "in" : "out"));
+        this.node.getNodeManager().applyNodeLocationChange(nodeLocation, announcement.isLogin());
+    }
+
+    /**
+     * Returns true, if the message with the given header is a login resp. logout notice of another node
+     *
+     * @param header The header of the message
+     *
+     * @return True, if the message is a {@link NodeLocationAnnouncement}
+     */
+    protected boolean isNodeLocationAnnouncement(MessageHeader header) {
+        return NodeLocationAnnouncement.class.getName().equals(header.getPayloadType());
+    }
+
+    /**
+     * Handles a message of which only the header has been decoded so far.
+     * Requests are deserialized only if a callback is registered for their type,
+     * and then on the thread of the request callback instead of the calling I/O thread.
+     *
+     * @param sender  The address of the peer which has sent the message
+     * @param message The message to handle
+     *
+     * @return The response to send back directly, or null
+     *
+     * @throws Exception If handling the message failed
+     */
+    public IResponse reply(PeerAddress sender, LazyMessage message)
+            throws Exception {
+        MessageHeader header = message.getHeader();
+
+        if (MessageKind.BATCH == header.getMessageKind()) {
+            this.replyBatch(sender, header, (MessageBatch) message.get());
+
+            return null;
+        }
+
+        // file chunks are written inline by their callback, cancellation and login notices are handled inline as well
+        if (MessageKind.REQUEST != header.getMessageKind() || this.isFileChunkOfRegisteredExchange(header) || this.isCancelRequest(header) || this.isNodeLocationAnnouncement(header)) {
+            return this.reply(sender, message.get());
+        }
+
+        if (header.isExpired()) {
+            logger.debug("Dropping request " + header + " since its deadline has passed");
+            return null;
+        }
+
+        Class<? extends ISyncRequestCallback> syncRequestCallbackClass = this.getSyncRequestCallbackHandler(header);
+
+        if (null != syncRequestCallbackClass) {
+            return this.runSyncRequestCallback(syncRequestCallbackClass, (IRequest) message.get());
+        }
+
+        Class<? extends IRequestCallback> requestCallbackClass = this.getRequestCallbackHandler(header);
+
+        if (null == requestCallbackClass) {
+            logger.debug("No appropriate request callback found for request " + header + ". Dropping it without decoding");
+            return null;
+        }
+
+        logger.debug("Using " + requestCallbackClass.getName() + " as handler for request " + header.getExchangeId());
+        this.startRequestCallback(requestCallbackClass, message);
+
+        return null;
+    }
+
     @Override
     public IResponse reply(PeerAddress sender, Object request)
             throws Exception {
 
-        // forward the request to the correct data reply instance
-        if (request instanceof IRequest) {
-            if (this.requestCallbackHandlers.containsKey(request.getClass())) {
-                logger.debug("Using " + this.requestCallbackHandlers.get(request.getClass()).getName() + " as handler for request " + ((IRequest) request).getExchangeId());
-                Class<? extends IRequestCallback> requestCallbackClass = this.requestCallbackHandlers.get(request.getClass());
+        // cancellation notices abort the request callbacks of their exchange
+        if (request instanceof CancelRequest) {
+            if (null != ((CancelRequest) request).getClientDevice()) {
+                this.cancelRequestCallback(((CancelRequest) request).getClientDevice().getClientDeviceId(), ((CancelRequest) request).getExchangeId());
+            }
 
-                // create a new instance running in its own thread
-                IRequestCallback requestCallback = requestCallbackClass.newInstance();
-                requestCallback.setNode(this.node);
+            return null;
+        }
+
+        // login resp. logout notices update the cached locations of the user
+        if (request instanceof NodeLocationAnnouncement) {
+            this.applyNodeLocationAnnouncement(sender, (NodeLocationAnnouncement) request);
 
-                requestCallback.setRequest((IRequest) request);
+            return null;
+        }
 
-                Thread thread = new Thread(requestCallback);
-                thread.setName("RequestCallback for request " + ((IRequest) request).getExchangeId());
-                thread.start();
+        // status requests of chunked exchanges are answered by the node itself
+        if (request instanceof ChunkStatusRequest) {
+            this.startRequestCallback(ChunkStatusRequestHandler.class, (IRequest) request);
 
-                this.runningRequestCallbacks.put(
-                        System.currentTimeMillis() + ANetworkHandler.MAX_WAITING_TIME,
-                        ((IRequest) request).getExchangeId()
-                );
+            return null;
+        }
 
+        // file chunks are written directly by the callback of the file exchange
+        if (request instanceof FileChunk && this.fileChunkCallbacks.containsKey(((FileChunk) request).getExchangeId())) {
+            this.fileChunkCallbacks.get(((FileChunk) request).getExchangeId()).onFileChunk((FileChunk) request);
+            // only count chunks which have been written, so that a resumed transfer sends failed ones again
+            this.chunkProgressTracker.markReceived((FileChunk) request);
+
+            return null;
+        }
+
+        // answer the request directly, if a synchronous callback is registered
+        if (request instanceof IRequest && this.syncRequestCallbackHandlers.containsKey(request.getClass())) {
+            return this.runSyncRequestCallback(this.syncRequestCallbackHandlers.get(request.getClass()), (IRequest) request);
+        }
+
+        // forward the request to the correct data reply instance
+        if (request instanceof IRequest) {
+            if (this.requestCallbackHandlers.containsKey(request.getClass())) {
+                logger.debug("Using " + this.requestCallbackHandlers.get(request.getClass()).getName() + " as handler for request " + ((IRequest) request).getExchangeId());
+                this.startRequestCallback(this.requestCallbackHandlers.get(request.getClass()), (IRequest) request);
 
                 return null;
             }
@@ -196,4 +568,191 @@ public class ObjectDataReplyHandler implements ObjectDataReply {
         logger.warn("No appropriate object data reply instance found for request " + request.getClass().getName() + ". Sending NULL as response!");
         return null;
     }
+
+    /**
+     * Dispatches all messages of the given batch in order. Each message
+     * must have been sent by the same client as the batch itself.
+     * Direct responses to the messages are discarded, since a batch does not have a reply.
+     *
+     * @param sender The address of the peer which has sent the batch
+     * @param header The verified header of the batch
+     * @param batch  The batch to dispatch
+     *
+     * @throws Exception If dispatching one of the messages failed
+     */
+    protected void replyBatch(PeerAddress sender, MessageHeader header, MessageBatch batch)
+            throws Exception {
+        for (Object message : batch.getMessages()) {
+            MessageHeader messageHeader = MessageHeader.create(message, header.getSenderUsername(), header.getSenderClientDeviceId());
+
+            if (! messageHeader.matches(message) || MessageKind.BATCH == messageHeader.getMessageKind()) {
+                throw new SecurityException("Message " + messageHeader + " in batch " + header + " has not been sent by the sender of the batch");
+            }
+
+            if (! this.accept(sender, messageHeader)) {
+                logger.debug("Dropping message " + messageHeader + " of batch since it is not handled");
+                continue;
+            }
+
+            if (null != this.reply(sender, message)) {
+                logger.warn("Discarding direct response to message " + messageHeader + " since it has been sent in a batch");
+            }
+        }
+    }
+
+    /**
+     * Creates a new instance of the given synchronous request callback
+     * and returns its response to the given request
+     *
+     * @param syncRequestCallbackClass The class of the synchronous request callback
+     * @param request                  The request to handle
+     *
+     * @return The response of the callback
+     *
+     * @throws Exception If the callback could not have been instantiated or handling the request failed
+     */
+    protected IResponse runSyncRequestCallback(Class<? extends ISyncRequestCallback> syncRequestCallbackClass, IRequest request)
+            throws Exception {
+        ISyncRequestCallback syncRequestCallback = syncRequestCallbackClass.newInstance();
+        syncRequestCallback.setNode(this.node);
+
+        logger.debug("Using " + syncRequestCallbackClass.getName() + " to answer request " + request.getExchangeId());
+
+        IResponse response = syncRequestCallback.handle(request);
+
+        // only count chunks which have been handled, so that a resumed transfer sends failed ones again
+        if (request instanceof IChunkedRequest) {
+            this.chunkProgressTracker.markReceived((IChunkedRequest) request);
+        }
+
+        return response;
+    }
+
+    /**
+     * Cancels the given exchange: A running request callback of the exchange
+     * gets interrupted and requests of the exchange which arrive later on are dropped
+     *
+     * @param senderClientDeviceId The id of the client device which has started the exchange
+     * @param exchangeId           The id of the exchange to cancel
+     */
+    protected void cancelRequestCallback(UUID senderClientDeviceId, UUID exchangeId) {
+        if (null == senderClientDeviceId || null == exchangeId) {
+            return;
+        }
+
+        this.cancelledExchanges.add(senderClientDeviceId, exchangeId);
+
+        Thread thread = this.requestCallbackThreads.get(Arrays.asList(senderClientDeviceId, exchangeId));
+        if (null != thread) {
+            logger.debug("Interrupting request callback of cancelled exchange " + exchangeId);
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Creates a new instance of the given request callback class
+     * and runs it in its own thread
+     *
+     * @param requestCallbackClass The class of the request callback to start
+     * @param request              The request to handle
+     *
+     * @throws IllegalAccessException If the request callback does not have an accessible nullary constructor
+     * @throws InstantiationException If the request callback could not have been instantiated
+     */
+    protected void startRequestCallback(Class<? extends IRequestCallback> requestCallbackClass, IRequest request)
+            throws IllegalAccessException, InstantiationException {
+        UUID senderClientDeviceId = null != request.getClientDevice() ? request.getClientDevice().getClientDeviceId() : null;
+
+        this.startRequestCallback(requestCallbackClass, senderClientDeviceId, request.getExchangeId(), 0L, () -> request);
+    }
+
+    /**
+     * Creates a new instance of the given request callback class
+     * and runs it in its own thread. The request is decoded on that thread.
+     *
+     * @param requestCallbackClass The class of the request callback to start
+     * @param message              The not yet decoded request
+     *
+     * @throws IllegalAccessException If the request callback does not have an accessible nullary constructor
+     * @throws InstantiationException If the request callback could not have been instantiated
+     */
+    protected void startRequestCallback(Class<? extends IRequestCallback> requestCallbackClass, LazyMessage message)
+            throws IllegalAccessException, InstantiationException {
+        MessageHeader header = message.getHeader();
+
+        this.startRequestCallback(
+                requestCallbackClass,
+                header.getSenderClientDeviceId(),
+                header.getExchangeId(),
+                header.getDeadline(),
+                () -> (IRequest) message.get()
+        );
+    }
+
+    /**
+     * Creates a new instance of the given request callback class
+     * and runs it in its own thread, after having decoded the request using the given decoder.
+     * The callback is not run, if the exchange has been cancelled or its deadline has passed
+     * in the meantime. A cancellation of a running callback interrupts its thread.
+     *
+     * @param requestCallbackClass The class of the request callback to start
+     * @param senderClientDeviceId The id of the client device which has sent the request. May be null
+     * @param exchangeId           The exchange id of the request
+     * @param deadline             The absolute time after which the request should not be processed anymore. 0 for none
+     * @param decoder              The decoder returning the request
+     *
+     * @throws IllegalAccessException If the request callback does not have an accessible nullary constructor
+     * @throws InstantiationException If the request callback could not have been instantiated
+     */
+    protected void startRequestCallback(Class<? extends IRequestCallback> requestCallbackClass, UUID senderClientDeviceId, UUID exchangeId, long deadline, Callable<IRequest> decoder)
+            throws IllegalAccessException, InstantiationException {
+        // create a new instance running in its own thread
+        IRequestCallback requestCallback = requestCallbackClass.newInstance();
+        requestCallback.setNode(this.node);
+
+        List<UUID> threadKey = Arrays.asList(senderClientDeviceId, exchangeId);
+
+        Thread thread = new Thread(() -> {
+            try {
+                if (this.isCancelled(senderClientDeviceId, exchangeId) || MessageHeader.isExpired(deadline)) {
+                    logger.debug("Dropping request " + exchangeId + " since it has been cancelled or its deadline has passed");
+                    this.runningRequestCallbacks.values().remove(exchangeId);
+                    return;
+                }
+
+                IRequest request;
+                try {
+                    request = decoder.call();
+                } catch (Exception e) {
+                    logger.error("Failed to decode request " + exchangeId + ". Message: " + e.getMessage(), e);
+                    this.runningRequestCallbacks.values().remove(exchangeId);
+                    return;
+                }
+
+                requestCallback.setRequest(request);
+                requestCallback.run();
+
+                // only count chunks which have been handled, so that a resumed transfer sends failed ones again
+                if (request instanceof IChunkedRequest) {
+                    this.chunkProgressTracker.markReceived((IChunkedRequest) request);
+                }
+            } finally {
+                this.requestCallbackThreads.remove(threadKey, Thread.currentThread());
+                this.nrOfActiveRequestCallbacks.decrementAndGet();
+            }
+        });
+        thread.setName("RequestCallback for request " + exchangeId);
+
+        if (null != senderClientDeviceId && null != exchangeId) {
+            this.requestCallbackThreads.put(threadKey, thread);
+        }
+
+        this.runningRequestCallbacks.put(
+                System.currentTimeMillis() + ANetworkHandler.MAX_WAITING_TIME,
+                exchangeId
+        );
+
+        this.nrOfActiveRequestCallbacks.incrementAndGet();
+        thread.start();
+    }
 }
@@ -0,0 +1,222 @@
+package org.rmatil.sync.network.core.messaging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A stage of the receive pipeline backed by a fixed size thread pool.
+ * Tasks submitted with the same key are run one after another in the order
+ * of their submission, whereas tasks of different keys run in parallel.
+ * <p>
+ * After each task, the queue of a key is rescheduled at the end of the pool's queue,
+ * so that a single busy key can not starve the others.
+ */
+public class OrderedStage {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderedStage.class);
+
+    /**
+     * The pool running the tasks
+     */
+    protected final ExecutorService executorService;
+
+    /**
+     * The pending tasks per key. A key is only present while it has pending tasks
+     */
+    protected final ConcurrentMap<Object, KeyQueue> keyQueues;
+
+    /**
+     * The metrics of this stage
+     */
+    protected final StageMetrics metrics;
+
+    /**
+     * @param name        The name of the stage, also used for naming its threads
+     * @param nrOfThreads The number of threads of the stage
+     */
+    public OrderedStage(String name, int nrOfThreads) {
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executorService = Executors.newFixedThreadPool(nrOfThreads, runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName(name + "-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        this.keyQueues = new ConcurrentHashMap<>();
+        this.metrics = new StageMetrics(name);
+    }
+
+    /**
+     * Submits the given task. It is run after all tasks previously submitted with the same key.
+     *
+     * @param key  The key by which tasks are ordered, e.g. the sender of a message
+     * @param task The task to run
+     *
+     * @throws RejectedExecutionException If the stage has been shut down
+     */
+    public void submit(Object key, Runnable task) {
+        if (this.executorService.isShutdown()) {
+            throw new RejectedExecutionException("Stage " + this.metrics.getName() + " has been shut down");
+        }
+
+        Task timedTask = new Task(task);
+
+        this.keyQueues.compute(key, (k, keyQueue) -> {
+            if (null == keyQueue) {
+                keyQueue = new KeyQueue(k);
+                // no task of this key is pending, therefore we have to schedule it
+                this.executorService.execute(keyQueue);
+            }
+
+            keyQueue.tasks.add(timedTask);
+
+            return keyQueue;
+        });
+
+        this.metrics.recordSubmission();
+    }
+
+    /**
+     * Returns the number of tasks of the given key which have not been started yet
+     *
+     * @param key The key by which tasks are ordered
+     *
+     * @return The number of pending tasks of the key
+     */
+    public int getQueueLength(Object key) {
+        int[] queueLength = new int[1];
+        this.keyQueues.computeIfPresent(key, (k, keyQueue) -> {
+            queueLength[0] = keyQueue.tasks.size();
+            return keyQueue;
+        });
+
+        return queueLength[0];
+    }
+
+    /**
+     * Returns the keys which currently have pending or running tasks
+     *
+     * @return The active keys
+     */
+    public Set<Object> getActiveKeys() {
+        return new HashSet<>(this.keyQueues.keySet());
+    }
+
+    /**
+     * Returns the metrics of this stage
+     *
+     * @return The metrics
+     */
+    public StageMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Shuts the stage down. Already submitted tasks are still processed
+     */
+    public void shutdown() {
+        this.executorService.shutdown();
+    }
+
+    /**
+     * Waits until all submitted tasks have been processed after a shutdown
+     *
+     * @param timeout The maximum time to wait
+     * @param unit    The unit of the timeout
+     *
+     * @return True, if the stage has terminated, false if the timeout elapsed before
+     *
+     * @throws InterruptedException If the thread got interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        return this.executorService.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * A task along with the time of its submission
+     */
+    protected class Task {
+
+        protected final Runnable runnable;
+
+        protected final long submissionTime;
+
+        protected Task(Runnable runnable) {
+            this.runnable = runnable;
+            this.submissionTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * The pending tasks of a single key
+     */
+    protected class KeyQueue implements Runnable {
+
+        protected final Object key;
+
+        /**
+         * Only accessed while holding the lock of the map entry of the key
+         */
+        protected final Queue<Task> tasks = new ArrayDeque<>();
+
+        protected KeyQueue(Object key) {
+            this.key = key;
+        }
+
+        @Override
+        public void run() {
+            boolean[] continueInline = new boolean[1];
+
+            do {
+                Task[] next = new Task[1];
+                keyQueues.computeIfPresent(this.key, (k, keyQueue) -> {
+                    next[0] = keyQueue.tasks.poll();
+                    return keyQueue;
+                });
+
+                if (null != next[0]) {
+                    this.runTask(next[0]);
+                }
+
+                continueInline[0] = false;
+                keyQueues.computeIfPresent(this.key, (k, keyQueue) -> {
+                    if (keyQueue.tasks.isEmpty()) {
+                        // the next task of this key will schedule a new queue
+                        return null;
+                    }
+
+                    try {
+                        executorService.execute(keyQueue);
+                    } catch (RejectedExecutionException e) {
+                        // no new tasks are accepted by the pool after a shutdown, therefore we drain the queue ourselves
+                        continueInline[0] = true;
+                    }
+
+                    return keyQueue;
+                });
+            } while (continueInline[0]);
+        }
+
+        protected void runTask(Task task) {
+            long start = System.nanoTime();
+            boolean failed = false;
+            try {
+                task.runnable.run();
+            } catch (RuntimeException e) {
+                failed = true;
+                logger.error("Task of stage " + metrics.getName() + " failed. Message: " + e.getMessage(), e);
+            } finally {
+                metrics.recordCompletion(start - task.submissionTime, System.nanoTime() - start, failed);
+            }
+        }
+    }
+}
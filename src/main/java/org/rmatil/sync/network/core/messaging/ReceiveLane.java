@@ -0,0 +1,129 @@
+package org.rmatil.sync.network.core.messaging;
+
+import org.rmatil.sync.network.core.model.Priority;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The crypto and dispatch stage processing all received
+ * messages of a single {@link Priority}, along with the
+ * end-to-end latency of the messages processed in this lane
+ */
+public class ReceiveLane {
+
+    protected final Priority priority;
+
+    protected final OrderedStage cryptoStage;
+
+    protected final OrderedStage dispatchStage;
+
+    protected final LatencyHistogram latencyHistogram;
+
+    /**
+     * @param priority    The priority of the messages processed in this lane
+     * @param nrOfThreads The number of threads of each stage
+     */
+    public ReceiveLane(Priority priority, int nrOfThreads) {
+        String name = priority.name().toLowerCase();
+
+        this.priority = priority;
+        this.cryptoStage = new OrderedStage("crypto-" + name, nrOfThreads);
+        this.dispatchStage = new OrderedStage("dispatch-" + name, nrOfThreads);
+        this.latencyHistogram = new LatencyHistogram();
+    }
+
+    /**
+     * Returns the priority of the messages processed in this lane
+     *
+     * @return The priority
+     */
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Returns the stage decrypting and verifying messages
+     *
+     * @return The crypto stage
+     */
+    public OrderedStage getCryptoStage() {
+        return cryptoStage;
+    }
+
+    /**
+     * Returns the stage passing messages to the object data reply handler
+     *
+     * @return The dispatch stage
+     */
+    public OrderedStage getDispatchStage() {
+        return dispatchStage;
+    }
+
+    /**
+     * Returns the histogram of the time from receiving a message until it has been dispatched
+     *
+     * @return The latency histogram
+     */
+    public LatencyHistogram getLatencyHistogram() {
+        return latencyHistogram;
+    }
+
+    /**
+     * Returns the number of messages waiting in or being processed by this lane
+     *
+     * @return The number of pending messages
+     */
+    public long getQueueLength() {
+        return this.cryptoStage.getMetrics().getQueueLength() + this.dispatchStage.getMetrics().getQueueLength();
+    }
+
+    /**
+     * Returns the number of messages of the given sender waiting in this lane
+     *
+     * @param orderingKey The key by which messages of the sender are ordered
+     *
+     * @return The number of pending messages of the sender
+     */
+    public long getQueueLength(Object orderingKey) {
+        return this.cryptoStage.getQueueLength(orderingKey) + this.dispatchStage.getQueueLength(orderingKey);
+    }
+
+    /**
+     * Returns the keys of the senders which currently have messages in this lane
+     *
+     * @return The active senders
+     */
+    public Set<Object> getActiveSenders() {
+        Set<Object> activeSenders = this.cryptoStage.getActiveKeys();
+        activeSenders.addAll(this.dispatchStage.getActiveKeys());
+
+        return activeSenders;
+    }
+
+    /**
+     * Stops accepting messages. Already decrypted messages are still dispatched
+     *
+     * @param timeout The maximum time to wait for received messages to be decrypted
+     * @param unit    The unit of the timeout
+     *
+     * @throws InterruptedException If the thread got interrupted while waiting
+     */
+    public void shutdown(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        this.cryptoStage.shutdown();
+
+        try {
+            if (! this.cryptoStage.awaitTermination(timeout, unit)) {
+                throw new IllegalStateException("Crypto stage of lane " + this.priority + " did not terminate in time");
+            }
+        } finally {
+            this.dispatchStage.shutdown();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.priority + ": " + this.latencyHistogram;
+    }
+}
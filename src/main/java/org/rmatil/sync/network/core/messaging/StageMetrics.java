@@ -0,0 +1,172 @@
+package org.rmatil.sync.network.core.messaging;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects queue and latency metrics of a single stage
+ * of the receive pipeline
+ */
+public class StageMetrics {
+
+    /**
+     * The name of the stage
+     */
+    protected final String name;
+
+    /**
+     * The number of tasks submitted to the stage
+     */
+    protected final AtomicLong nrOfSubmittedTasks = new AtomicLong();
+
+    /**
+     * The number of tasks which have been processed by the stage
+     */
+    protected final AtomicLong nrOfCompletedTasks = new AtomicLong();
+
+    /**
+     * The number of tasks which failed
+     */
+    protected final AtomicLong nrOfFailedTasks = new AtomicLong();
+
+    /**
+     * The time all tasks spent waiting in the queue of the stage (in nanoseconds)
+     */
+    protected final AtomicLong queueTime = new AtomicLong();
+
+    /**
+     * The time spent processing all tasks (in nanoseconds)
+     */
+    protected final AtomicLong processingTime = new AtomicLong();
+
+    /**
+     * The longest time a single task spent in the stage, i.e. waiting and processing (in nanoseconds)
+     */
+    protected final AtomicLong maxLatency = new AtomicLong();
+
+    /**
+     * @param name The name of the stage
+     */
+    public StageMetrics(String name) {
+        this.name = name;
+    }
+
+    protected void recordSubmission() {
+        this.nrOfSubmittedTasks.incrementAndGet();
+    }
+
+    protected void recordCompletion(long queueNanos, long processingNanos, boolean failed) {
+        this.nrOfCompletedTasks.incrementAndGet();
+        if (failed) {
+            this.nrOfFailedTasks.incrementAndGet();
+        }
+
+        this.queueTime.addAndGet(queueNanos);
+        this.processingTime.addAndGet(processingNanos);
+
+        long latency = queueNanos + processingNanos;
+        long max;
+        while (latency > (max = this.maxLatency.get())) {
+            if (this.maxLatency.compareAndSet(max, latency)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns the name of the stage
+     *
+     * @return The name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of tasks submitted to the stage
+     *
+     * @return The number of submitted tasks
+     */
+    public long getNrOfSubmittedTasks() {
+        return this.nrOfSubmittedTasks.get();
+    }
+
+    /**
+     * Returns the number of tasks which have been processed by the stage
+     *
+     * @return The number of completed tasks
+     */
+    public long getNrOfCompletedTasks() {
+        return this.nrOfCompletedTasks.get();
+    }
+
+    /**
+     * Returns the number of tasks which failed
+     *
+     * @return The number of failed tasks
+     */
+    public long getNrOfFailedTasks() {
+        return this.nrOfFailedTasks.get();
+    }
+
+    /**
+     * Returns the number of tasks currently waiting in or being processed by the stage
+     *
+     * @return The current queue length
+     */
+    public long getQueueLength() {
+        return this.nrOfSubmittedTasks.get() - this.nrOfCompletedTasks.get();
+    }
+
+    /**
+     * Returns the average time a task waited in the queue of the stage
+     *
+     * @return The average queue time in milliseconds
+     */
+    public double getAverageQueueTime() {
+        return this.average(this.queueTime.get());
+    }
+
+    /**
+     * Returns the average time spent processing a task
+     *
+     * @return The average processing time in milliseconds
+     */
+    public double getAverageProcessingTime() {
+        return this.average(this.processingTime.get());
+    }
+
+    /**
+     * Returns the longest time a single task spent in the stage
+     *
+     * @return The maximum latency in milliseconds
+     */
+    public double getMaxLatency() {
+        return (double) this.maxLatency.get() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    protected double average(long totalNanos) {
+        long completed = this.nrOfCompletedTasks.get();
+
+        if (0 == completed) {
+            return 0d;
+        }
+
+        return (double) totalNanos / completed / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "%s: %d submitted, %d completed, %d failed, %d queued, %.3f ms avg queue time, %.3f ms avg processing time, %.3f ms max latency",
+                this.name,
+                this.getNrOfSubmittedTasks(),
+                this.getNrOfCompletedTasks(),
+                this.getNrOfFailedTasks(),
+                this.getQueueLength(),
+                this.getAverageQueueTime(),
+                this.getAverageProcessingTime(),
+                this.getMaxLatency()
+        );
+    }
+}
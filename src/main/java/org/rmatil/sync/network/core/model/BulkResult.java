@@ -0,0 +1,76 @@
+package org.rmatil.sync.network.core.model;
+
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The outcome of an operation applied to many items at once.
+ * Items for which the operation failed do not affect the others,
+ * but are reported along with the cause of their failure.
+ *
+ * @param <K> The type of the items
+ * @param <V> The type of the result of a single item
+ */
+public class BulkResult<K, V> {
+
+    /**
+     * The results of the items for which the operation succeeded.
+     * Only accessed while holding the lock on this result
+     */
+    protected final Map<K, V> results = new LinkedHashMap<>();
+
+    /**
+     * The causes of the items for which the operation failed.
+     * Only accessed while holding the lock on this result
+     */
+    protected final Map<K, InputOutputException> failures = new LinkedHashMap<>();
+
+    /**
+     * Records that the operation succeeded for the given item
+     *
+     * @param item   The item
+     * @param result The result of the item, may be null
+     */
+    public synchronized void addResult(K item, V result) {
+        this.results.put(item, result);
+    }
+
+    /**
+     * Records that the operation failed for the given item
+     *
+     * @param item  The item
+     * @param cause The cause of the failure
+     */
+    public synchronized void addFailure(K item, InputOutputException cause) {
+        this.failures.put(item, cause);
+    }
+
+    /**
+     * Returns the results of the items for which the operation succeeded.
+     * Lookups of items which have not been found map to null
+     *
+     * @return The results, keyed by item
+     */
+    public synchronized Map<K, V> getResults() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(this.results));
+    }
+
+    /**
+     * Returns the items for which the operation failed along with the cause
+     *
+     * @return The failures, keyed by item
+     */
+    public synchronized Map<K, InputOutputException> getFailures() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(this.failures));
+    }
+
+    /**
+     * @return True, if the operation succeeded for all items
+     */
+    public synchronized boolean isSuccessful() {
+        return this.failures.isEmpty();
+    }
+}
@@ -0,0 +1,63 @@
+package org.rmatil.sync.network.core.model;
+
+import org.rmatil.sync.network.api.IRequest;
+import org.rmatil.sync.network.api.MessagePriority;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A notice telling the receivers that the sender is no longer
+ * interested in the result of the given exchange. Request callbacks
+ * of the exchange which are still running get interrupted, requests
+ * of the exchange which did not start yet are dropped.
+ * <p>
+ * The exchange id of this request is the id of the exchange to cancel.
+ * No response is sent back.
+ */
+@MessagePriority(Priority.CONTROL)
+public class CancelRequest implements IRequest {
+
+    private static final long serialVersionUID = 2958411862906349155L;
+
+    /**
+     * The id of the exchange to cancel
+     */
+    protected UUID exchangeId;
+
+    /**
+     * The client device which has started the exchange
+     */
+    protected ClientDevice clientDevice;
+
+    /**
+     * The receivers of this request
+     */
+    protected List<NodeLocation> receiverAddresses;
+
+    /**
+     * @param exchangeId        The id of the exchange to cancel
+     * @param clientDevice      The client device which has started the exchange
+     * @param receiverAddresses The receivers of this request
+     */
+    public CancelRequest(UUID exchangeId, ClientDevice clientDevice, List<NodeLocation> receiverAddresses) {
+        this.exchangeId = exchangeId;
+        this.clientDevice = clientDevice;
+        this.receiverAddresses = receiverAddresses;
+    }
+
+    @Override
+    public List<NodeLocation> getReceiverAddresses() {
+        return this.receiverAddresses;
+    }
+
+    @Override
+    public UUID getExchangeId() {
+        return this.exchangeId;
+    }
+
+    @Override
+    public ClientDevice getClientDevice() {
+        return this.clientDevice;
+    }
+}
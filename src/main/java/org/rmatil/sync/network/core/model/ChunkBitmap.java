@@ -0,0 +1,144 @@
+package org.rmatil.sync.network.core.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact bitmap holding one bit per chunk of an exchange.
+ * A set bit indicates, that the corresponding chunk has been received.
+ */
+public class ChunkBitmap implements Serializable {
+
+    private static final long serialVersionUID = 3196426158745873516L;
+
+    /**
+     * The total number of chunks of the exchange
+     */
+    protected long totalNrOfChunks;
+
+    /**
+     * The bits of the bitmap, 64 chunks per word
+     */
+    protected long[] words;
+
+    /**
+     * @param totalNrOfChunks The total number of chunks of the exchange
+     */
+    public ChunkBitmap(long totalNrOfChunks) {
+        if (totalNrOfChunks < 0 || ((totalNrOfChunks + 63) >>> 6) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid number of chunks " + totalNrOfChunks);
+        }
+
+        this.totalNrOfChunks = totalNrOfChunks;
+        this.words = new long[(int) ((totalNrOfChunks + 63) >>> 6)];
+    }
+
+    /**
+     * Returns the total number of chunks of the exchange
+     *
+     * @return The total number of chunks
+     */
+    public long getTotalNrOfChunks() {
+        return totalNrOfChunks;
+    }
+
+    /**
+     * Marks the given chunk as received
+     *
+     * @param chunkCounter The zero-based number of the chunk
+     *
+     * @return True, if the chunk was not marked as received before, false otherwise
+     */
+    public synchronized boolean set(long chunkCounter) {
+        this.checkBounds(chunkCounter);
+
+        int wordIndex = (int) (chunkCounter >>> 6);
+        long mask = 1L << chunkCounter;
+
+        boolean isNew = 0 == (this.words[wordIndex] & mask);
+        this.words[wordIndex] |= mask;
+
+        return isNew;
+    }
+
+    /**
+     * Returns true, if the given chunk is marked as received
+     *
+     * @param chunkCounter The zero-based number of the chunk
+     *
+     * @return True, if received, false otherwise
+     */
+    public synchronized boolean isSet(long chunkCounter) {
+        this.checkBounds(chunkCounter);
+
+        return 0 != (this.words[(int) (chunkCounter >>> 6)] & (1L << chunkCounter));
+    }
+
+    /**
+     * Returns the number of chunks marked as received
+     *
+     * @return The number of received chunks
+     */
+    public synchronized long getNrOfReceivedChunks() {
+        long count = 0;
+        for (long word : this.words) {
+            count += Long.bitCount(word);
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns true, if all chunks are marked as received
+     *
+     * @return True, if all chunks have been received, false otherwise
+     */
+    public boolean isComplete() {
+        return this.getNrOfReceivedChunks() == this.totalNrOfChunks;
+    }
+
+    /**
+     * Returns the numbers of all chunks which have not been received yet,
+     * in ascending order
+     *
+     * @return The missing chunk numbers
+     */
+    public synchronized List<Long> getMissingChunks() {
+        List<Long> missingChunks = new ArrayList<>();
+
+        for (int i = 0; i < this.words.length; i++) {
+            // invert the word to iterate over the unset bits only
+            long missing = ~ this.words[i];
+            while (0 != missing) {
+                long chunkCounter = ((long) i << 6) + Long.numberOfTrailingZeros(missing);
+                if (chunkCounter >= this.totalNrOfChunks) {
+                    break;
+                }
+
+                missingChunks.add(chunkCounter);
+                missing &= missing - 1;
+            }
+        }
+
+        return missingChunks;
+    }
+
+    /**
+     * Returns a copy of this bitmap
+     *
+     * @return The copied bitmap
+     */
+    public synchronized ChunkBitmap copy() {
+        ChunkBitmap copy = new ChunkBitmap(this.totalNrOfChunks);
+        System.arraycopy(this.words, 0, copy.words, 0, this.words.length);
+
+        return copy;
+    }
+
+    protected void checkBounds(long chunkCounter) {
+        if (chunkCounter < 0 || chunkCounter >= this.totalNrOfChunks) {
+            throw new IndexOutOfBoundsException("Chunk " + chunkCounter + " is out of bounds. Exchange has " + this.totalNrOfChunks + " chunks");
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.rmatil.sync.network.core.model;
+
+import org.rmatil.sync.network.api.IRequest;
+import org.rmatil.sync.network.api.MessagePriority;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A request asking the receiver which chunks of a
+ * particular chunked exchange it has received so far.
+ *
+ * @see ChunkStatusResponse
+ */
+@MessagePriority(Priority.CONTROL)
+public class ChunkStatusRequest implements IRequest {
+
+    private static final long serialVersionUID = - 3406578046738395167L;
+
+    /**
+     * The id of this status exchange
+     */
+    protected UUID exchangeId;
+
+    /**
+     * The client device sending this request
+     */
+    protected ClientDevice clientDevice;
+
+    /**
+     * The receivers of this request
+     */
+    protected List<NodeLocation> receiverAddresses;
+
+    /**
+     * The id of the chunked exchange of which the progress is requested
+     */
+    protected UUID transferExchangeId;
+
+    /**
+     * @param exchangeId         The id of this status exchange
+     * @param clientDevice       The client device sending this request
+     * @param receiverAddresses  The receivers of this request
+     * @param transferExchangeId The id of the chunked exchange of which the progress is requested
+     */
+    public ChunkStatusRequest(UUID exchangeId, ClientDevice clientDevice, List<NodeLocation> receiverAddresses, UUID transferExchangeId) {
+        this.exchangeId = exchangeId;
+        this.clientDevice = clientDevice;
+        this.receiverAddresses = receiverAddresses;
+        this.transferExchangeId = transferExchangeId;
+    }
+
+    @Override
+    public List<NodeLocation> getReceiverAddresses() {
+        return this.receiverAddresses;
+    }
+
+    @Override
+    public UUID getExchangeId() {
+        return this.exchangeId;
+    }
+
+    @Override
+    public ClientDevice getClientDevice() {
+        return this.clientDevice;
+    }
+
+    /**
+     * Returns the id of the chunked exchange of which the progress is requested
+     *
+     * @return The id of the chunked exchange
+     */
+    public UUID getTransferExchangeId() {
+        return transferExchangeId;
+    }
+}
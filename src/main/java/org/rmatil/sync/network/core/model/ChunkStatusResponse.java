@@ -0,0 +1,89 @@
+package org.rmatil.sync.network.core.model;
+
+import org.rmatil.sync.network.api.IResponse;
+import org.rmatil.sync.network.api.MessagePriority;
+
+import java.util.UUID;
+
+/**
+ * The response to a {@link ChunkStatusRequest}, holding
+ * the bitmap of all chunks received so far.
+ */
+@MessagePriority(Priority.CONTROL)
+public class ChunkStatusResponse implements IResponse {
+
+    private static final long serialVersionUID = 4622838693461839185L;
+
+    /**
+     * The id of the status exchange
+     */
+    protected UUID exchangeId;
+
+    /**
+     * The client device sending this response
+     */
+    protected ClientDevice clientDevice;
+
+    /**
+     * The receiver of this response
+     */
+    protected NodeLocation receiverAddress;
+
+    /**
+     * The id of the chunked exchange
+     */
+    protected UUID transferExchangeId;
+
+    /**
+     * The received chunks. Null, if the exchange is unknown
+     */
+    protected ChunkBitmap chunkBitmap;
+
+    /**
+     * @param exchangeId         The id of the status exchange
+     * @param clientDevice       The client device sending this response
+     * @param receiverAddress    The receiver of this response
+     * @param transferExchangeId The id of the chunked exchange
+     * @param chunkBitmap        The received chunks, or null if the exchange is unknown to the sending client
+     */
+    public ChunkStatusResponse(UUID exchangeId, ClientDevice clientDevice, NodeLocation receiverAddress, UUID transferExchangeId, ChunkBitmap chunkBitmap) {
+        this.exchangeId = exchangeId;
+        this.clientDevice = clientDevice;
+        this.receiverAddress = receiverAddress;
+        this.transferExchangeId = transferExchangeId;
+        this.chunkBitmap = chunkBitmap;
+    }
+
+    @Override
+    public UUID getExchangeId() {
+        return this.exchangeId;
+    }
+
+    @Override
+    public ClientDevice getClientDevice() {
+        return this.clientDevice;
+    }
+
+    @Override
+    public NodeLocation getReceiverAddress() {
+        return this.receiverAddress;
+    }
+
+    /**
+     * Returns the id of the chunked exchange
+     *
+     * @return The id of the chunked exchange
+     */
+    public UUID getTransferExchangeId() {
+        return transferExchangeId;
+    }
+
+    /**
+     * Returns the bitmap of all received chunks
+     *
+     * @return The bitmap, or null if the exchange is unknown to the sending client
+     */
+    public ChunkBitmap getChunkBitmap() {
+        return chunkBitmap;
+    }
+}
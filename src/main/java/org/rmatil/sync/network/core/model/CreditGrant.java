@@ -0,0 +1,35 @@
+package org.rmatil.sync.network.core.model;
+
+import java.io.Serializable;
+
+/**
+ * Returned by a node as direct reply to an asynchronously processed message.
+ * Tells the sender how many messages it may have in flight towards the node,
+ * based on its free capacity shared among all senders and the messages of the sender
+ * it has not processed yet. A grant of zero credits tells the sender to wait for a fresh grant.
+ */
+public class CreditGrant implements Serializable {
+
+    private static final long serialVersionUID = 6126043816262470318L;
+
+    /**
+     * The number of messages the sender may have in flight
+     */
+    protected int credits;
+
+    /**
+     * @param credits The number of messages the sender may have in flight
+     */
+    public CreditGrant(int credits) {
+        this.credits = credits;
+    }
+
+    /**
+     * Returns the number of messages the sender may have in flight
+     *
+     * @return The number of credits
+     */
+    public int getCredits() {
+        return credits;
+    }
+}
@@ -25,21 +25,58 @@ public class EncryptedData implements Serializable {
      */
     protected byte[] encryptedData;
 
+    /**
+     * Whether the plain data has been compressed before encryption
+     */
+    protected boolean isCompressed;
+
+    /**
+     * The unencrypted routing information of the message
+     */
+    protected MessageHeader header;
+
     /**
      * @param signature     The signature
      * @param encryptedKey  The RSA encrypted symmetric key
      * @param encryptedData The symmetrically encrypted data
      */
     public EncryptedData(byte[] signature, byte[] encryptedKey, byte[] encryptedData) {
+        this(signature, encryptedKey, encryptedData, false);
+    }
+
+    /**
+     * @param signature     The signature
+     * @param encryptedKey  The RSA encrypted symmetric key
+     * @param encryptedData The symmetrically encrypted data
+     * @param isCompressed  Whether the plain data has been compressed before encryption
+     */
+    public EncryptedData(byte[] signature, byte[] encryptedKey, byte[] encryptedData, boolean isCompressed) {
+        this(signature, encryptedKey, encryptedData, isCompressed, null);
+    }
+
+    /**
+     * @param signature     The signature over the header bytes followed by the data as sent, i.e. compressed if compressed
+     * @param encryptedKey  The RSA encrypted symmetric key
+     * @param encryptedData The symmetrically encrypted data
+     * @param isCompressed  Whether the plain data has been compressed before encryption
+     * @param header        The unencrypted routing information of the message
+     */
+    public EncryptedData(byte[] signature, byte[] encryptedKey, byte[] encryptedData, boolean isCompressed, MessageHeader header) {
         this.signature = signature;
         this.encryptedKey = encryptedKey;
         this.encryptedData = encryptedData;
+        this.isCompressed = isCompressed;
+        this.header = header;
     }
 
     /**
-     * Returns the signature of the plain text
+     * Returns the signature of the plain text.
+     * If a header is present, the signature covers the header bytes followed by the
+     * data as sent, i.e. the compressed data if {@link EncryptedData#isCompressed()}.
      *
      * @return The signature of the plain text message
+     *
+     * @see MessageHeader#prependTo(byte[])
      */
     public byte[] getSignature() {
         return signature;
@@ -62,4 +99,23 @@ public class EncryptedData implements Serializable {
     public byte[] getEncryptedData() {
         return encryptedData;
     }
+
+    /**
+     * Returns true, if the plain data has been compressed before encryption.
+     * Only messages without header are signed over the uncompressed plain data.
+     *
+     * @return True, if the decrypted data has to be decompressed
+     */
+    public boolean isCompressed() {
+        return isCompressed;
+    }
+
+    /**
+     * Returns the unencrypted routing information of the message
+     *
+     * @return The header, or null if the sender did not attach one
+     */
+    public MessageHeader getHeader() {
+        return header;
+    }
 }
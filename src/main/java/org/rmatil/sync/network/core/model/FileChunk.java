@@ -0,0 +1,130 @@
+package org.rmatil.sync.network.core.model;
+
+import org.rmatil.sync.network.api.IChunkedRequest;
+import org.rmatil.sync.network.api.MessagePriority;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A single chunk of a file region sent by
+ * {@link org.rmatil.sync.network.api.INode#sendFile(NodeLocation, UUID, java.nio.channels.FileChannel, long, long)}.
+ */
+@MessagePriority(Priority.BULK)
+public class FileChunk implements IChunkedRequest {
+
+    private static final long serialVersionUID = 1938206317735329512L;
+
+    /**
+     * The id of the file exchange
+     */
+    protected UUID exchangeId;
+
+    /**
+     * The client device sending this chunk
+     */
+    protected ClientDevice clientDevice;
+
+    /**
+     * The receivers of this chunk
+     */
+    protected List<NodeLocation> receiverAddresses;
+
+    /**
+     * The zero-based number of this chunk
+     */
+    protected long chunkCounter;
+
+    /**
+     * The total number of chunks of the file region
+     */
+    protected long totalNrOfChunks;
+
+    /**
+     * The offset of this chunk relative to the start of the file region (in bytes)
+     */
+    protected long offset;
+
+    /**
+     * The total length of the file region (in bytes)
+     */
+    protected long totalLength;
+
+    /**
+     * The content of this chunk
+     */
+    protected byte[] data;
+
+    /**
+     * @param exchangeId        The id of the file exchange
+     * @param clientDevice      The client device sending this chunk
+     * @param receiverAddresses The receivers of this chunk
+     * @param chunkCounter      The zero-based number of this chunk
+     * @param totalNrOfChunks   The total number of chunks of the file region
+     * @param offset            The offset of this chunk relative to the start of the file region (in bytes)
+     * @param totalLength       The total length of the file region (in bytes)
+     * @param data              The content of this chunk
+     */
+    public FileChunk(UUID exchangeId, ClientDevice clientDevice, List<NodeLocation> receiverAddresses, long chunkCounter, long totalNrOfChunks, long offset, long totalLength, byte[] data) {
+        this.exchangeId = exchangeId;
+        this.clientDevice = clientDevice;
+        this.receiverAddresses = receiverAddresses;
+        this.chunkCounter = chunkCounter;
+        this.totalNrOfChunks = totalNrOfChunks;
+        this.offset = offset;
+        this.totalLength = totalLength;
+        this.data = data;
+    }
+
+    @Override
+    public List<NodeLocation> getReceiverAddresses() {
+        return this.receiverAddresses;
+    }
+
+    @Override
+    public UUID getExchangeId() {
+        return this.exchangeId;
+    }
+
+    @Override
+    public ClientDevice getClientDevice() {
+        return this.clientDevice;
+    }
+
+    @Override
+    public long getChunkCounter() {
+        return this.chunkCounter;
+    }
+
+    @Override
+    public long getTotalNrOfChunks() {
+        return this.totalNrOfChunks;
+    }
+
+    /**
+     * Returns the offset of this chunk relative to the start of the file region
+     *
+     * @return The offset in bytes
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the total length of the file region
+     *
+     * @return The total length in bytes
+     */
+    public long getTotalLength() {
+        return totalLength;
+    }
+
+    /**
+     * Returns the content of this chunk
+     *
+     * @return The content
+     */
+    public byte[] getData() {
+        return data;
+    }
+}
@@ -0,0 +1,35 @@
+package org.rmatil.sync.network.core.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Several messages to the same node which are
+ * encrypted and sent as one single message
+ */
+public class MessageBatch implements Serializable {
+
+    private static final long serialVersionUID = - 2419573620137751083L;
+
+    /**
+     * The messages in the order in which they have been sent
+     */
+    protected List<Object> messages;
+
+    /**
+     * @param messages The messages in the order in which they have been sent
+     */
+    public MessageBatch(List<Object> messages) {
+        this.messages = new ArrayList<>(messages);
+    }
+
+    /**
+     * Returns the messages in the order in which they have been sent
+     *
+     * @return The messages
+     */
+    public List<Object> getMessages() {
+        return messages;
+    }
+}
@@ -0,0 +1,414 @@
+package org.rmatil.sync.network.core.model;
+
+import org.rmatil.sync.network.api.IChunkedRequest;
+import org.rmatil.sync.network.api.IRequest;
+import org.rmatil.sync.network.api.IResponse;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Routing information of a message which is sent unencrypted
+ * along with the {@link EncryptedData}, so that a receiver is able
+ * to reject unwanted messages before decrypting them.
+ * <p>
+ * The header is authenticated by the signature of the message,
+ * which is computed over the {@link MessageHeader#toBytes() header bytes}
+ * followed by the data as sent, i.e. compressed if the message has been compressed.
+ * Receivers are thus able to verify a message before decompressing it.
+ */
+public class MessageHeader implements Serializable {
+
+    private static final long serialVersionUID = 7261488317591826305L;
+
+    /**
+     * The time by which the clock of a receiver may be ahead of the clock
+     * of the sender before a message is considered expired (in milliseconds)
+     */
+    public static final long CLOCK_SKEW_TOLERANCE = 5000L;
+
+    /**
+     * The id of the exchange the message belongs to. May be null
+     */
+    protected UUID exchangeId;
+
+    /**
+     * The kind of the message
+     */
+    protected MessageKind messageKind;
+
+    /**
+     * The fully qualified class name of the message
+     */
+    protected String payloadType;
+
+    /**
+     * The priority of the message, deciding on the lane it is processed in
+     */
+    protected Priority priority;
+
+    /**
+     * The number of the message within its exchange, e.g. the chunk counter
+     * of a chunked request. -1 for messages which are the only one of their exchange
+     */
+    protected long sequenceNumber = - 1L;
+
+    /**
+     * The absolute time after which the sender is no longer interested
+     * in the message being processed (in milliseconds since the epoch). 0 if there is none
+     */
+    protected long deadline = 0L;
+
+    /**
+     * Distinguishes messages of the same type and sequence number within an exchange.
+     * Derived by the sender from the serialized message, so that retries of a message keep it.
+     * 0 if none has been set
+     */
+    protected long nonce = 0L;
+
+    /**
+     * The name of the user sending the message
+     */
+    protected String senderUsername;
+
+    /**
+     * The id of the client device sending the message
+     */
+    protected UUID senderClientDeviceId;
+
+    /**
+     * @param exchangeId           The id of the exchange the message belongs to. May be null
+     * @param messageKind          The kind of the message
+     * @param payloadType          The fully qualified class name of the message
+     * @param senderUsername       The name of the user sending the message
+     * @param senderClientDeviceId The id of the client device sending the message
+     */
+    public MessageHeader(UUID exchangeId, MessageKind messageKind, String payloadType, String senderUsername, UUID senderClientDeviceId) {
+        this(exchangeId, messageKind, payloadType, Priority.NORMAL, senderUsername, senderClientDeviceId);
+    }
+
+    /**
+     * @param exchangeId           The id of the exchange the message belongs to. May be null
+     * @param messageKind          The kind of the message
+     * @param payloadType          The fully qualified class name of the message
+     * @param priority             The priority of the message
+     * @param senderUsername       The name of the user sending the message
+     * @param senderClientDeviceId The id of the client device sending the message
+     */
+    public MessageHeader(UUID exchangeId, MessageKind messageKind, String payloadType, Priority priority, String senderUsername, UUID senderClientDeviceId) {
+        this.exchangeId = exchangeId;
+        this.messageKind = messageKind;
+        this.payloadType = payloadType;
+        this.priority = priority;
+        this.senderUsername = senderUsername;
+        this.senderClientDeviceId = senderClientDeviceId;
+    }
+
+    /**
+     * Creates the header for the given message
+     *
+     * @param data                 The message to send
+     * @param senderUsername       The name of the user sending the message
+     * @param senderClientDeviceId The id of the client device sending the message
+     *
+     * @return The header of the message
+     */
+    public static MessageHeader create(Object data, String senderUsername, UUID senderClientDeviceId) {
+        String payloadType = data.getClass().getName();
+        Priority priority = Priority.of(data);
+
+        if (data instanceof IRequest) {
+            MessageHeader header = new MessageHeader(((IRequest) data).getExchangeId(), MessageKind.REQUEST, payloadType, priority, senderUsername, senderClientDeviceId);
+
+            if (data instanceof IChunkedRequest) {
+                header.sequenceNumber = ((IChunkedRequest) data).getChunkCounter();
+            }
+
+            return header;
+        }
+
+        if (data instanceof IResponse) {
+            return new MessageHeader(((IResponse) data).getExchangeId(), MessageKind.RESPONSE, payloadType, priority, senderUsername, senderClientDeviceId);
+        }
+
+        if (data instanceof MessageBatch) {
+            return new MessageHeader(null, MessageKind.BATCH, payloadType, priority, senderUsername, senderClientDeviceId);
+        }
+
+        return new MessageHeader(null, MessageKind.OTHER, payloadType, priority, senderUsername, senderClientDeviceId);
+    }
+
+    /**
+     * Creates the header for the given message
+     *
+     * @param data                 The message to send
+     * @param senderUsername       The name of the user sending the message
+     * @param senderClientDeviceId The id of the client device sending the message
+     * @param deadline             The absolute time after which the message should not be processed anymore (in milliseconds since the epoch). 0 for none
+     *
+     * @return The header of the message
+     */
+    public static MessageHeader create(Object data, String senderUsername, UUID senderClientDeviceId, long deadline) {
+        MessageHeader header = create(data, senderUsername, senderClientDeviceId);
+        header.deadline = deadline;
+
+        return header;
+    }
+
+    /**
+     * Creates the header for the given message, setting its {@link MessageHeader#getNonce() nonce}
+     * from the serialized message
+     *
+     * @param data                 The message to send
+     * @param plainData            The serialized message
+     * @param senderUsername       The name of the user sending the message
+     * @param senderClientDeviceId The id of the client device sending the message
+     * @param deadline             The absolute time after which the message should not be processed anymore (in milliseconds since the epoch). 0 for none
+     *
+     * @return The header of the message
+     */
+    public static MessageHeader create(Object data, byte[] plainData, String senderUsername, UUID senderClientDeviceId, long deadline) {
+        MessageHeader header = create(data, senderUsername, senderClientDeviceId, deadline);
+        header.nonce = computeNonce(plainData);
+
+        return header;
+    }
+
+    /**
+     * Computes the nonce of a message from its serialized data
+     *
+     * @param plainData The serialized message
+     *
+     * @return The nonce
+     */
+    public static long computeNonce(byte[] plainData) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(plainData)).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Returns true, if the given decrypted message matches the routing information of this header
+     *
+     * @param data The decrypted message
+     *
+     * @return True, if the header describes the given message, false otherwise
+     */
+    public boolean matches(Object data) {
+        MessageHeader expected = MessageHeader.create(data, this.senderUsername, this.senderClientDeviceId);
+
+        ClientDevice clientDevice = null;
+        if (data instanceof IRequest) {
+            clientDevice = ((IRequest) data).getClientDevice();
+        } else if (data instanceof IResponse) {
+            clientDevice = ((IResponse) data).getClientDevice();
+        }
+
+        // messages are verified using the public key of the sender in the header, and the
+        // device in the header decides on deduplication and cancellation, therefore both
+        // have to be the ones of the signed message
+        if (null != clientDevice
+                && (! clientDevice.getUserName().equals(this.senderUsername) || ! Objects.equals(clientDevice.getClientDeviceId(), this.senderClientDeviceId))) {
+            return false;
+        }
+
+        return this.messageKind == expected.messageKind
+                && expected.payloadType.equals(this.payloadType)
+                && expected.getPriority() == this.getPriority()
+                && expected.sequenceNumber == this.sequenceNumber
+                && (null == this.exchangeId ? null == expected.exchangeId : this.exchangeId.equals(expected.exchangeId));
+    }
+
+    /**
+     * Returns a canonical byte representation of this header
+     * which is covered by the signature of the message
+     *
+     * @return The bytes of this header
+     *
+     * @throws IOException If writing the header failed
+     */
+    public byte[] toBytes()
+            throws IOException {
+        try (ByteArrayOutputStream bos = new ByteArrayOutputStream(); DataOutputStream out = new DataOutputStream(bos)) {
+            out.writeByte(this.messageKind.ordinal());
+            writeUuid(out, this.exchangeId);
+            writeUuid(out, this.senderClientDeviceId);
+            out.writeUTF(null != this.payloadType ? this.payloadType : "");
+            out.writeByte(this.getPriority().ordinal());
+            out.writeLong(this.sequenceNumber);
+            out.writeLong(this.deadline);
+            out.writeLong(this.nonce);
+            out.writeUTF(null != this.senderUsername ? this.senderUsername : "");
+            out.flush();
+
+            return bos.toByteArray();
+        }
+    }
+
+    /**
+     * Returns the data which is signed by the sender of a message:
+     * The bytes of this header followed by the data of the message.
+     *
+     * @param plainData The serialized data of the message as sent, i.e. compressed if it has been compressed
+     *
+     * @return The data to sign resp. to verify
+     *
+     * @throws IOException If writing the header failed
+     */
+    public byte[] prependTo(byte[] plainData)
+            throws IOException {
+        byte[] headerBytes = this.toBytes();
+        byte[] signedData = new byte[headerBytes.length + plainData.length];
+
+        System.arraycopy(headerBytes, 0, signedData, 0, headerBytes.length);
+        System.arraycopy(plainData, 0, signedData, headerBytes.length, plainData.length);
+
+        return signedData;
+    }
+
+    protected static void writeUuid(DataOutputStream out, UUID uuid)
+            throws IOException {
+        out.writeBoolean(null != uuid);
+        if (null != uuid) {
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        }
+    }
+
+    /**
+     * Returns the id of the exchange the message belongs to
+     *
+     * @return The exchange id, or null if the message does not belong to an exchange
+     */
+    public UUID getExchangeId() {
+        return exchangeId;
+    }
+
+    /**
+     * Returns the kind of the message
+     *
+     * @return The message kind
+     */
+    public MessageKind getMessageKind() {
+        return messageKind;
+    }
+
+    /**
+     * Returns the fully qualified class name of the message,
+     * which allows to look up a handler before decoding the message
+     *
+     * @return The class name of the message
+     */
+    public String getPayloadType() {
+        return payloadType;
+    }
+
+    /**
+     * Returns the priority of the message
+     *
+     * @return The priority, {@link Priority#NORMAL} if none is set
+     */
+    public Priority getPriority() {
+        return null != priority ? priority : Priority.NORMAL;
+    }
+
+    /**
+     * Returns the number of the message within its exchange, e.g. the chunk counter of a chunked request
+     *
+     * @return The sequence number, -1 if the message is the only one of its exchange
+     */
+    public long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    /**
+     * Returns the absolute time after which the sender is no longer interested in the message
+     *
+     * @return The deadline in milliseconds since the epoch, 0 if there is none
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Returns true, if the deadline of the message has passed, allowing
+     * for {@link MessageHeader#CLOCK_SKEW_TOLERANCE} between the clocks of sender and receiver
+     *
+     * @return True, if the message should not be processed anymore
+     */
+    public boolean isExpired() {
+        return isExpired(this.deadline);
+    }
+
+    /**
+     * Returns true, if the given deadline has passed, allowing
+     * for {@link MessageHeader#CLOCK_SKEW_TOLERANCE} between the clocks of sender and receiver
+     *
+     * @param deadline The deadline in milliseconds since the epoch, 0 if there is none
+     *
+     * @return True, if the deadline has passed
+     */
+    public static boolean isExpired(long deadline) {
+        return 0L != deadline && System.currentTimeMillis() - CLOCK_SKEW_TOLERANCE > deadline;
+    }
+
+    /**
+     * Returns the nonce distinguishing messages of the same type and sequence number within an exchange
+     *
+     * @return The nonce, 0 if none has been set
+     */
+    public long getNonce() {
+        return nonce;
+    }
+
+    /**
+     * Returns the id identifying this single message among all messages of the sender, i.e.
+     * the exchange id combined with the type, the sequence number and the nonce of the message.
+     * Retries of a message carry the same nonce and thus the same id, whereas messages
+     * of the same type with different content sent within an exchange are kept apart.
+     *
+     * @return The message id, or null if the message does not belong to an exchange
+     */
+    public UUID getMessageId() {
+        if (null == this.exchangeId) {
+            return null;
+        }
+
+        long typeHash = null != this.payloadType ? this.payloadType.hashCode() : 0L;
+
+        return new UUID(
+                this.exchangeId.getMostSignificantBits() ^ (typeHash * 0xC2B2AE3D27D4EB4FL),
+                this.exchangeId.getLeastSignificantBits() ^ ((this.sequenceNumber + 1) * 0x9E3779B97F4A7C15L) ^ (this.nonce * 0x165667B19E3779F9L)
+        );
+    }
+
+    /**
+     * Returns the name of the user sending the message
+     *
+     * @return The username of the sender
+     */
+    public String getSenderUsername() {
+        return senderUsername;
+    }
+
+    /**
+     * Returns the id of the client device sending the message
+     *
+     * @return The client device id of the sender
+     */
+    public UUID getSenderClientDeviceId() {
+        return senderClientDeviceId;
+    }
+
+    @Override
+    public String toString() {
+        return this.messageKind + " " + this.payloadType + " " + this.exchangeId + " from " + this.senderUsername + " (" + this.senderClientDeviceId + ")";
+    }
+}
@@ -0,0 +1,27 @@
+package org.rmatil.sync.network.core.model;
+
+/**
+ * The kind of a message sent between nodes
+ */
+public enum MessageKind {
+
+    /**
+     * An implementation of {@link org.rmatil.sync.network.api.IRequest}
+     */
+    REQUEST,
+
+    /**
+     * An implementation of {@link org.rmatil.sync.network.api.IResponse}
+     */
+    RESPONSE,
+
+    /**
+     * Any other object
+     */
+    OTHER,
+
+    /**
+     * A {@link MessageBatch} of several messages sent at once
+     */
+    BATCH
+}
@@ -15,6 +15,12 @@ public class NodeLocation implements Serializable {
 
     private static final long serialVersionUID = - 4153216571589758601L;
 
+    /**
+     * The time by which the clock of a reader may be ahead of the clock
+     * of the node which wrote the lease before the lease is considered expired (in milliseconds)
+     */
+    public static final long CLOCK_SKEW_TOLERANCE = 5000L;
+
     /**
      * The user to which this node belongs to
      */
@@ -30,6 +36,12 @@ public class NodeLocation implements Serializable {
      */
     protected UUID clientDeviceId;
 
+    /**
+     * The time at which the lease of this location expires (in milliseconds).
+     * Zero for locations without a lease, which never expire
+     */
+    protected long leaseExpiration = 0L;
+
     /**
      * @param username       The username to which this location belongs
      * @param clientDeviceId The device id of this node
@@ -41,6 +53,17 @@ public class NodeLocation implements Serializable {
         this.peerAddress = peerAddress;
     }
 
+    /**
+     * @param username        The username to which this location belongs
+     * @param clientDeviceId  The device id of this node
+     * @param peerAddress     The actual address of this node
+     * @param leaseExpiration The time at which the lease of this location expires (in milliseconds)
+     */
+    public NodeLocation(String username, UUID clientDeviceId, PeerAddress peerAddress, long leaseExpiration) {
+        this(username, clientDeviceId, peerAddress);
+        this.leaseExpiration = leaseExpiration;
+    }
+
     /**
      * Returns true if the IP address is using
      * the v4-naming scheme. False otherwise
@@ -113,6 +136,30 @@ public class NodeLocation implements Serializable {
         return peerAddress;
     }
 
+    /**
+     * Returns the time at which the lease of this location expires.
+     * The lease is not part of the equality of locations
+     *
+     * @return The expiration time in milliseconds, or 0 if the location has no lease
+     */
+    public long getLeaseExpiration() {
+        return leaseExpiration;
+    }
+
+    /**
+     * Returns true, if the lease of this location expired,
+     * i.e. the node did not renew it, e.g. since it crashed.
+     * The expiration time is set using the clock of the leasing node, therefore
+     * the lease is kept for another {@link NodeLocation#CLOCK_SKEW_TOLERANCE}
+     *
+     * @param now The current time (in milliseconds)
+     *
+     * @return True, if the lease expired, false otherwise or if the location has no lease
+     */
+    public boolean isExpired(long now) {
+        return 0L != this.leaseExpiration && now - CLOCK_SKEW_TOLERANCE >= this.leaseExpiration;
+    }
+
     @Override
     public String toString() {
         if (null != this.peerAddress) {
@@ -0,0 +1,86 @@
+package org.rmatil.sync.network.core.model;
+
+import org.rmatil.sync.network.api.IRequest;
+import org.rmatil.sync.network.api.MessagePriority;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A notice sent by a node to the other nodes of its user once it logs in resp. out,
+ * so that they can update their cached node locations without reading them from the DHT.
+ * No response is sent back.
+ */
+@MessagePriority(Priority.CONTROL)
+public class NodeLocationAnnouncement implements IRequest {
+
+    private static final long serialVersionUID = - 6350186219766410325L;
+
+    protected UUID exchangeId;
+
+    /**
+     * The client device which logged in resp. out
+     */
+    protected ClientDevice clientDevice;
+
+    /**
+     * The receivers of this request
+     */
+    protected List<NodeLocation> receiverAddresses;
+
+    /**
+     * The location of the node which logged in resp. out
+     */
+    protected NodeLocation nodeLocation;
+
+    /**
+     * True, if the node logged in, false if it logged out
+     */
+    protected boolean isLogin;
+
+    /**
+     * @param exchangeId        The id of the exchange
+     * @param clientDevice      The client device which logged in resp. out
+     * @param receiverAddresses The receivers of this request
+     * @param nodeLocation      The location of the node which logged in resp. out
+     * @param isLogin           True, if the node logged in, false if it logged out
+     */
+    public NodeLocationAnnouncement(UUID exchangeId, ClientDevice clientDevice, List<NodeLocation> receiverAddresses, NodeLocation nodeLocation, boolean isLogin) {
+        this.exchangeId = exchangeId;
+        this.clientDevice = clientDevice;
+        this.receiverAddresses = receiverAddresses;
+        this.nodeLocation = nodeLocation;
+        this.isLogin = isLogin;
+    }
+
+    @Override
+    public List<NodeLocation> getReceiverAddresses() {
+        return this.receiverAddresses;
+    }
+
+    @Override
+    public UUID getExchangeId() {
+        return this.exchangeId;
+    }
+
+    @Override
+    public ClientDevice getClientDevice() {
+        return this.clientDevice;
+    }
+
+    /**
+     * Returns the location of the node which logged in resp. out
+     *
+     * @return The node location
+     */
+    public NodeLocation getNodeLocation() {
+        return this.nodeLocation;
+    }
+
+    /**
+     * @return True, if the node logged in, false if it logged out
+     */
+    public boolean isLogin() {
+        return this.isLogin;
+    }
+}
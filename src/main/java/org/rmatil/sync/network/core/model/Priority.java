@@ -0,0 +1,64 @@
+package org.rmatil.sync.network.core.model;
+
+import org.rmatil.sync.network.api.MessagePriority;
+
+/**
+ * The priority class of a message. Each priority has its own
+ * lane for sending and receiving messages, so that latency sensitive
+ * messages are not blocked by bulk transfers.
+ */
+public enum Priority {
+
+    /**
+     * Small, latency sensitive messages like locks, acknowledgements or location updates
+     */
+    CONTROL,
+
+    /**
+     * Messages without a declared priority
+     */
+    NORMAL,
+
+    /**
+     * Large payloads like file contents
+     */
+    BULK;
+
+    /**
+     * Returns the priority declared by the class of the given message
+     * using {@link MessagePriority}. For batches, the most urgent priority
+     * of the contained messages is returned.
+     *
+     * @param message The message
+     *
+     * @return The priority of the message, {@link Priority#NORMAL} if none is declared
+     */
+    public static Priority of(Object message) {
+        if (message instanceof MessageBatch) {
+            Priority priority = BULK;
+            for (Object batchedMessage : ((MessageBatch) message).getMessages()) {
+                Priority batchedPriority = Priority.of(batchedMessage);
+                if (batchedPriority.ordinal() < priority.ordinal()) {
+                    priority = batchedPriority;
+                }
+            }
+
+            return priority;
+        }
+
+        return null == message ? NORMAL : Priority.of(message.getClass());
+    }
+
+    /**
+     * Returns the priority declared by the given message class using {@link MessagePriority}
+     *
+     * @param clazz The class of the message
+     *
+     * @return The priority of the message class, {@link Priority#NORMAL} if none is declared
+     */
+    public static Priority of(Class<?> clazz) {
+        MessagePriority messagePriority = clazz.getAnnotation(MessagePriority.class);
+
+        return null == messagePriority ? NORMAL : messagePriority.value();
+    }
+}
@@ -0,0 +1,14 @@
+package org.rmatil.sync.network.core.model;
+
+import java.io.Serializable;
+
+/**
+ * Returned by a node as direct reply to a synchronous request whose response
+ * is not available yet, so that the I/O thread of the node does not have to wait for it.
+ * The sender sends the same request again later, which the node recognizes as a retry
+ * and answers with the response of the original request once available.
+ */
+public class ReplyPending implements Serializable {
+
+    private static final long serialVersionUID = - 2719836488231459734L;
+}
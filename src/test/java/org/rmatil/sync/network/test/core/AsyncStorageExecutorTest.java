@@ -0,0 +1,51 @@
+package org.rmatil.sync.network.test.core;
+
+import org.junit.After;
+import org.junit.Test;
+import org.rmatil.sync.network.core.AsyncStorageExecutor;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AsyncStorageExecutorTest {
+
+    @After
+    public void after() {
+        AsyncStorageExecutor.setMaxConcurrentOperations(AsyncStorageExecutor.DEFAULT_MAX_CONCURRENT_OPERATIONS);
+    }
+
+    @Test
+    public void testMaxConcurrentOperations()
+            throws Exception {
+        AsyncStorageExecutor.setMaxConcurrentOperations(2);
+        assertEquals("Limit should be applied", 2, AsyncStorageExecutor.getMaxConcurrentOperations());
+
+        AtomicInteger nrOfRunningOperations = new AtomicInteger();
+        AtomicInteger maxNrOfRunningOperations = new AtomicInteger();
+
+        CompletableFuture<?>[] operations = new CompletableFuture<?>[6];
+        for (int i = 0; i < operations.length; i++) {
+            operations[i] = AsyncStorageExecutor.run(() -> {
+                maxNrOfRunningOperations.accumulateAndGet(nrOfRunningOperations.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(50L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    nrOfRunningOperations.decrementAndGet();
+                }
+            });
+        }
+
+        CompletableFuture.allOf(operations).get(5L, TimeUnit.SECONDS);
+        assertTrue("At most two operations should run at once", maxNrOfRunningOperations.get() <= 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxConcurrentOperations() {
+        AsyncStorageExecutor.setMaxConcurrentOperations(0);
+    }
+}
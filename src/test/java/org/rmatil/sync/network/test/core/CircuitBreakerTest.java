@@ -0,0 +1,84 @@
+package org.rmatil.sync.network.test.core;
+
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.PeerAddress;
+import org.junit.Test;
+import org.rmatil.sync.network.core.CircuitBreaker;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+
+    protected static final PeerAddress PEER_ADDRESS = new PeerAddress(Number160.createHash("CircuitBreakerTest"));
+
+    @Test
+    public void testOpen() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(0.5d, 3, 60000L);
+
+        assertEquals("Unknown peer should have a closed circuit", CircuitBreaker.State.CLOSED, circuitBreaker.getState(PEER_ADDRESS));
+        assertTrue("Message to unknown peer should be allowed", circuitBreaker.allowRequest(PEER_ADDRESS));
+
+        circuitBreaker.recordFailure(PEER_ADDRESS);
+        circuitBreaker.recordSuccess(PEER_ADDRESS);
+        assertEquals("Circuit should stay closed below the minimum number of calls", CircuitBreaker.State.CLOSED, circuitBreaker.getState(PEER_ADDRESS));
+
+        circuitBreaker.recordFailure(PEER_ADDRESS);
+        assertEquals("Circuit should open once the failure rate is exceeded", CircuitBreaker.State.OPEN, circuitBreaker.getState(PEER_ADDRESS));
+        assertTrue("Circuit should be open", circuitBreaker.isOpen(PEER_ADDRESS));
+        assertFalse("Messages should not be allowed", circuitBreaker.allowRequest(PEER_ADDRESS));
+    }
+
+    @Test
+    public void testProbe()
+            throws InterruptedException {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(0.5d, 1, 50L);
+
+        circuitBreaker.recordFailure(PEER_ADDRESS);
+        assertFalse("Messages should not be allowed", circuitBreaker.allowRequest(PEER_ADDRESS));
+
+        Thread.sleep(100L);
+        assertFalse("Circuit should not be open once a probe is due", circuitBreaker.isOpen(PEER_ADDRESS));
+        assertTrue("Probe should be allowed", circuitBreaker.allowRequest(PEER_ADDRESS));
+        assertEquals("Circuit should be half-open", CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState(PEER_ADDRESS));
+        assertFalse("Only a single probe should be allowed", circuitBreaker.allowRequest(PEER_ADDRESS));
+
+        circuitBreaker.recordFailure(PEER_ADDRESS);
+        assertEquals("Failed probe should open the circuit again", CircuitBreaker.State.OPEN, circuitBreaker.getState(PEER_ADDRESS));
+
+        Thread.sleep(50L);
+        assertFalse("Open duration should have been doubled", circuitBreaker.allowRequest(PEER_ADDRESS));
+
+        Thread.sleep(100L);
+        assertTrue("Probe should be allowed", circuitBreaker.allowRequest(PEER_ADDRESS));
+        circuitBreaker.recordSuccess(PEER_ADDRESS);
+        assertEquals("Successful probe should close the circuit", CircuitBreaker.State.CLOSED, circuitBreaker.getState(PEER_ADDRESS));
+        assertTrue("Messages should be allowed", circuitBreaker.allowRequest(PEER_ADDRESS));
+    }
+
+    @Test
+    public void testIgnoreOutcomesOfOtherMessages()
+            throws InterruptedException {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(0.5d, 1, 50L);
+
+        long sendTime = System.currentTimeMillis();
+        circuitBreaker.recordFailure(PEER_ADDRESS, sendTime);
+
+        // further messages sent before the circuit opened fail while it is open
+        circuitBreaker.recordFailure(PEER_ADDRESS, sendTime);
+        circuitBreaker.recordFailure(PEER_ADDRESS, sendTime);
+
+        Thread.sleep(100L);
+        assertTrue("Open duration should not have been extended", circuitBreaker.allowRequest(PEER_ADDRESS));
+
+        circuitBreaker.recordFailure(PEER_ADDRESS, sendTime);
+        assertEquals("Outcome of a message sent before the probe should be ignored", CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState(PEER_ADDRESS));
+
+        circuitBreaker.recordSuccess(PEER_ADDRESS);
+        assertEquals("Successful probe should close the circuit", CircuitBreaker.State.CLOSED, circuitBreaker.getState(PEER_ADDRESS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidThreshold() {
+        new CircuitBreaker(0d, 3, 5000L);
+    }
+}
@@ -0,0 +1,160 @@
+package org.rmatil.sync.network.test.core;
+
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.PeerAddress;
+import org.junit.Test;
+import org.rmatil.sync.network.core.ANetworkHandler;
+import org.rmatil.sync.network.core.CompletionPolicy;
+import org.rmatil.sync.network.core.model.ClientDevice;
+
+import java.net.InetAddress;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompletionPolicyTest {
+
+    protected static final ClientDevice CLIENT_DEVICE = new ClientDevice(
+            "Norman Gordon",
+            UUID.randomUUID(),
+            new PeerAddress(Number160.createHash("CompletionPolicyTest"), InetAddress.getLoopbackAddress(), 4004, 4004)
+    );
+
+    @Test
+    public void testNrOfRequiredResponses() {
+        assertEquals("All clients should be required", 5, CompletionPolicy.ALL.getNrOfRequiredResponses(5));
+        assertEquals("One client should be required", 1, CompletionPolicy.ANY.getNrOfRequiredResponses(5));
+        assertEquals("No response should be required without notified clients", 0, CompletionPolicy.ANY.getNrOfRequiredResponses(0));
+        assertEquals("Quorum should be required", 3, CompletionPolicy.quorum(3).getNrOfRequiredResponses(5));
+        assertEquals("Quorum should be bounded by the notified clients", 2, CompletionPolicy.quorum(3).getNrOfRequiredResponses(2));
+        assertEquals("All clients should be awaited until the deadline", 5, CompletionPolicy.DEADLINE_BEST_EFFORT.getNrOfRequiredResponses(5));
+    }
+
+    @Test
+    public void testCompletesAtDeadline() {
+        assertTrue("Best effort should complete at the deadline", CompletionPolicy.DEADLINE_BEST_EFFORT.completesAtDeadline());
+        assertFalse("All should not complete at the deadline", CompletionPolicy.ALL.completesAtDeadline());
+        assertEquals("Quorum should be printed with its size", "QUORUM(3)", CompletionPolicy.quorum(3).toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidQuorum() {
+        CompletionPolicy.quorum(0);
+    }
+
+    @Test
+    public void testAny()
+            throws InterruptedException {
+        ExchangeHandler handler = new ExchangeHandler(CompletionPolicy.ANY);
+        handler.start(3, 10000L);
+
+        handler.onResponse(handler.createResponse());
+        assertTrue("First response should complete the exchange", handler.isCompleted());
+        assertEquals("Remaining responses should not be accepted anymore", 1, handler.nrOfStopCalls);
+
+        long start = System.currentTimeMillis();
+        handler.await();
+        assertTrue("Await should not wait for the deadline once completed", System.currentTimeMillis() - start < 5000L);
+
+        handler.onResponse(handler.createResponse());
+        assertEquals("Late response should be ignored", 100, handler.getProgress());
+        assertEquals("Late response should be ignored", 1, handler.nrOfStopCalls);
+    }
+
+    @Test
+    public void testQuorum() {
+        ExchangeHandler handler = new ExchangeHandler(CompletionPolicy.quorum(2));
+        handler.start(3, 10000L);
+
+        handler.onResponse(handler.createResponse());
+        assertFalse("One response should not complete a quorum of two", handler.isCompleted());
+        assertEquals("Half of the quorum should have responded", 50, handler.getProgress());
+
+        handler.onResponse(handler.createResponse());
+        assertTrue("Second response should complete the quorum", handler.isCompleted());
+        assertEquals("Remaining response should not be accepted anymore", 1, handler.nrOfStopCalls);
+
+        handler.onResponse(handler.createResponse());
+        assertEquals("Late response should be ignored", 1, handler.nrOfStopCalls);
+        assertEquals("Late response should be ignored", 100, handler.getProgress());
+    }
+
+    @Test
+    public void testAllResponded() {
+        ExchangeHandler handler = new ExchangeHandler(CompletionPolicy.ALL);
+        handler.start(2, 10000L);
+
+        handler.onResponse(handler.createResponse());
+        assertFalse("All clients should be required", handler.isCompleted());
+
+        handler.onResponse(handler.createResponse());
+        assertTrue("Exchange should be completed once all clients responded", handler.isCompleted());
+        assertEquals("No responses are remaining", 0, handler.nrOfStopCalls);
+    }
+
+    @Test
+    public void testDeadlineBestEffort()
+            throws InterruptedException {
+        ExchangeHandler bestEffortHandler = new ExchangeHandler(CompletionPolicy.DEADLINE_BEST_EFFORT);
+        ExchangeHandler allHandler = new ExchangeHandler(CompletionPolicy.ALL);
+        bestEffortHandler.start(3, 200L);
+        allHandler.start(3, 200L);
+
+        bestEffortHandler.onResponse(bestEffortHandler.createResponse());
+        allHandler.onResponse(allHandler.createResponse());
+        assertFalse("Best effort should wait for all clients before the deadline", bestEffortHandler.isCompleted());
+
+        // both stop waiting at the deadline
+        bestEffortHandler.await();
+        allHandler.await();
+        assertTrue("Deadline should have passed", System.currentTimeMillis() >= bestEffortHandler.getDeadline());
+
+        assertTrue("Best effort should be completed with the responses received until the deadline", bestEffortHandler.isCompleted());
+        assertFalse("All should not be completed without all responses, even after the deadline", allHandler.isCompleted());
+        assertEquals("One of three clients should have responded", 33, bestEffortHandler.getProgress());
+    }
+
+    /**
+     * A network handler which pretends to have sent its request,
+     * recording when it stops accepting responses
+     */
+    protected static class ExchangeHandler extends ANetworkHandler<Boolean> {
+
+        protected int nrOfStopCalls = 0;
+
+        protected ExchangeHandler(CompletionPolicy completionPolicy) {
+            super(null, completionPolicy);
+        }
+
+        protected void start(int nrOfNotifiedClients, long responseTimeout) {
+            super.hasStartedToNotify = true;
+            super.exchangeId = UUID.randomUUID();
+            super.deadline = System.currentTimeMillis() + responseTimeout;
+            super.awaitResponses(nrOfNotifiedClients);
+        }
+
+        protected DummyResponse createResponse() {
+            return new DummyResponse(super.exchangeId, CLIENT_DEVICE, null);
+        }
+
+        protected long getDeadline() {
+            return super.deadline;
+        }
+
+        @Override
+        protected void stopAcceptingResponses(UUID exchangeId) {
+            this.nrOfStopCalls++;
+        }
+
+        @Override
+        public void run() {
+        }
+
+        @Override
+        public Boolean getResult() {
+            return super.isCompleted();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.rmatil.sync.network.test.core;
+
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.PeerAddress;
+import org.junit.Test;
+import org.rmatil.sync.network.core.FlowController;
+import org.rmatil.sync.network.core.model.CreditGrant;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FlowControllerTest {
+
+    protected static final PeerAddress PEER_ADDRESS = new PeerAddress(Number160.createHash("FlowControllerTest"));
+
+    @Test
+    public void testWindow()
+            throws InterruptedException {
+        FlowController flowController = new FlowController(2);
+
+        flowController.acquire(PEER_ADDRESS);
+        flowController.acquire(PEER_ADDRESS);
+        assertEquals("Two messages should be in flight", 2, flowController.getWindow(PEER_ADDRESS).getInFlight());
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread sender = new Thread(() -> {
+            try {
+                flowController.acquire(PEER_ADDRESS);
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                // test fails below
+            }
+        });
+        sender.start();
+
+        assertFalse("Third message should wait for a free credit", acquired.await(200L, TimeUnit.MILLISECONDS));
+        assertEquals("Sender should be waiting", 1, flowController.getWindow(PEER_ADDRESS).getNrOfWaitingSenders());
+
+        flowController.release(PEER_ADDRESS, new CreditGrant(4));
+        assertTrue("Third message should be sent after a release", acquired.await(5L, TimeUnit.SECONDS));
+
+        assertEquals("Credits should be granted by the receiver", 4, flowController.getWindow(PEER_ADDRESS).getCredits());
+        assertEquals("Two messages should be in flight", 2, flowController.getWindow(PEER_ADDRESS).getInFlight());
+        assertEquals("One message should have been delayed", 1, flowController.getWindow(PEER_ADDRESS).getNrOfDelayedMessages());
+    }
+
+    @Test
+    public void testReject()
+            throws InterruptedException {
+        FlowController flowController = new FlowController(1, 100L);
+
+        assertTrue("First message should be sent", flowController.acquire(PEER_ADDRESS));
+        assertFalse("Second message should be rejected if no credit becomes available", flowController.acquire(PEER_ADDRESS));
+
+        assertEquals("Rejected message should not be in flight", 1, flowController.getWindow(PEER_ADDRESS).getInFlight());
+        assertEquals("One message should have been rejected", 1, flowController.getWindow(PEER_ADDRESS).getNrOfRejectedMessages());
+
+        flowController.release(PEER_ADDRESS, null);
+        assertTrue("Message should be sent after a release", flowController.acquire(PEER_ADDRESS));
+    }
+
+    @Test
+    public void testZeroCreditsProbe()
+            throws InterruptedException {
+        FlowController flowController = new FlowController(2, 300L, 100L);
+
+        flowController.acquire(PEER_ADDRESS);
+        flowController.release(PEER_ADDRESS, new CreditGrant(0));
+        assertEquals("Receiver should be able to grant no credits", 0, flowController.getWindow(PEER_ADDRESS).getCredits());
+
+        long start = System.currentTimeMillis();
+        assertTrue("Probe should be sent once the probe interval elapsed", flowController.acquire(PEER_ADDRESS));
+        assertTrue("Probe should not be sent before the probe interval elapsed", System.currentTimeMillis() - start >= 50L);
+
+        assertFalse("Only a single probe should be in flight", flowController.acquire(PEER_ADDRESS));
+
+        flowController.release(PEER_ADDRESS, new CreditGrant(2));
+        assertTrue("Message should be sent after a fresh grant", flowController.acquire(PEER_ADDRESS));
+        assertTrue("Message should be sent after a fresh grant", flowController.acquire(PEER_ADDRESS));
+    }
+}
@@ -8,6 +8,7 @@ import org.rmatil.sync.network.api.IUser;
 import org.rmatil.sync.network.config.Config;
 import org.rmatil.sync.network.core.Connection;
 import org.rmatil.sync.network.core.IdentifierManager;
+import org.rmatil.sync.network.core.model.BulkResult;
 import org.rmatil.sync.network.core.model.NodeLocation;
 import org.rmatil.sync.network.core.model.User;
 import org.rmatil.sync.network.test.core.base.BaseTest;
@@ -21,8 +22,14 @@ import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletionException;
 
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.*;
 
 public class IdentifierManagerTest {
@@ -249,6 +256,67 @@ public class IdentifierManagerTest {
         assertEquals("Result should be equal", KEY_2, key2);
     }
 
+    @Test
+    public void testMoveToSameKey()
+            throws InputOutputException {
+        identifierManager.addIdentifier(KEY_1, VALUE_1);
+
+        identifierManager.moveKey(KEY_1, KEY_1);
+
+        assertEquals("Value should still be attached to the key", VALUE_1, identifierManager.getValue(KEY_1));
+        assertEquals("Key should still be attached to the value", KEY_1, identifierManager.getKey(VALUE_1));
+        assertEquals("Value should still be attached to the key on other nodes", VALUE_1, identifierManager2.getValue(KEY_1));
+    }
+
+    @Test
+    public void testAsync() {
+        identifierManager.addIdentifierAsync(KEY_1, VALUE_1).toCompletableFuture().join();
+
+        assertEquals("Value should be equal", VALUE_1, identifierManager2.getValueAsync(KEY_1).toCompletableFuture().join());
+        assertEquals("Key should be equal", KEY_1, identifierManager2.getKeyAsync(VALUE_1).toCompletableFuture().join());
+
+        identifierManager.moveKeyAsync(KEY_1, KEY_2).toCompletableFuture().join();
+        assertNull("Old key should not have a value anymore", identifierManager.getValueAsync(KEY_1).toCompletableFuture().join());
+        assertEquals("Value should be moved", VALUE_1, identifierManager.getValueAsync(KEY_2).toCompletableFuture().join());
+
+        identifierManager.removeIdentifierAsync(KEY_2).toCompletableFuture().join();
+        assertNull("Value should be removed", identifierManager.getValueAsync(KEY_2).toCompletableFuture().join());
+
+        try {
+            identifierManager.moveKeyAsync(NON_EXISTING_KEY, KEY_3).toCompletableFuture().join();
+            fail("Moving a non existing key should fail");
+        } catch (CompletionException e) {
+            assertThat("Failure should be reported as InputOutputException", e.getCause(), instanceOf(InputOutputException.class));
+        }
+    }
+
+    @Test
+    public void testBulk() {
+        Map<String, UUID> identifiers = new HashMap<>();
+        identifiers.put(KEY_1, VALUE_1);
+        identifiers.put(KEY_2, VALUE_2);
+
+        BulkResult<String, UUID> added = identifierManager.addIdentifiers(identifiers);
+        assertTrue("All identifiers should be added", added.isSuccessful());
+        assertEquals("Added identifiers should be reported", identifiers, added.getResults());
+
+        BulkResult<String, UUID> values = identifierManager2.getValues(Arrays.asList(KEY_1, KEY_2, NON_EXISTING_KEY));
+        assertTrue("All lookups should succeed", values.isSuccessful());
+        assertEquals("Value should be equal", VALUE_1, values.getResults().get(KEY_1));
+        assertEquals("Value should be equal", VALUE_2, values.getResults().get(KEY_2));
+        assertTrue("Non existing key should be reported", values.getResults().containsKey(NON_EXISTING_KEY));
+        assertNull("Non existing key should not have a value", values.getResults().get(NON_EXISTING_KEY));
+
+        BulkResult<UUID, String> keys = identifierManager2.getKeys(Arrays.asList(VALUE_1, VALUE_2));
+        assertEquals("Key should be equal", KEY_1, keys.getResults().get(VALUE_1));
+        assertEquals("Key should be equal", KEY_2, keys.getResults().get(VALUE_2));
+
+        BulkResult<String, Void> removed = identifierManager.removeIdentifiers(identifiers.keySet());
+        assertTrue("All identifiers should be removed", removed.isSuccessful());
+        assertNull("Value should be removed", identifierManager.getValueAsync(KEY_1).toCompletableFuture().join());
+        assertNull("Value should be removed", identifierManager.getValueAsync(KEY_2).toCompletableFuture().join());
+    }
+
     @Test
     public void testMoveNonExistingValue()
             throws InputOutputException {
@@ -0,0 +1,126 @@
+package org.rmatil.sync.network.test.core;
+
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.PeerAddress;
+import org.junit.Test;
+import org.rmatil.sync.network.core.LivenessMonitor;
+import org.rmatil.sync.network.core.model.NodeLocation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class LivenessMonitorTest {
+
+    protected static final PeerAddress OWN_PEER_ADDRESS = new PeerAddress(Number160.createHash("LivenessMonitorTest1"));
+
+    protected static final PeerAddress PEER_ADDRESS = new PeerAddress(Number160.createHash("LivenessMonitorTest2"));
+
+    protected static final NodeLocation OWN_LOCATION = new NodeLocation("Piff Jenkins", UUID.randomUUID(), OWN_PEER_ADDRESS);
+
+    protected static final NodeLocation LOCATION = new NodeLocation("Piff Jenkins", UUID.randomUUID(), PEER_ADDRESS);
+
+    @Test
+    public void testAdaptiveInterval() {
+        ScriptedLivenessMonitor monitor = new ScriptedLivenessMonitor();
+
+        assertTrue("Unknown peer should be assumed reachable", monitor.isReachable(PEER_ADDRESS));
+        assertEquals("Unknown peer should not have an rtt", - 1L, monitor.getRtt(PEER_ADDRESS));
+
+        monitor.tick(0L);
+        assertNull("Own node should not be monitored", monitor.getReachability(OWN_PEER_ADDRESS));
+        assertEquals("Node should have been pinged", 1, monitor.nrOfPings);
+        assertEquals("Rtt should be the first sample", 10L, monitor.getRtt(PEER_ADDRESS));
+        assertEquals("Interval should double after a successful ping", 200L, monitor.getReachability(PEER_ADDRESS).getNextPingTime());
+
+        monitor.tick(100L);
+        assertEquals("Node should not be pinged before its interval elapsed", 1, monitor.nrOfPings);
+
+        monitor.tick(200L);
+        assertEquals("Node should be pinged once its interval elapsed", 2, monitor.nrOfPings);
+        assertEquals("Interval should not exceed the maximum", 200L + 300L, monitor.getReachability(PEER_ADDRESS).getNextPingTime());
+
+        monitor.isAnswering = false;
+        monitor.tick(500L);
+        assertTrue("Single lost ping should not make the node unreachable", monitor.isReachable(PEER_ADDRESS));
+        assertEquals("Interval should fall back to the minimum after a failed ping", 600L, monitor.getReachability(PEER_ADDRESS).getNextPingTime());
+
+        monitor.tick(600L);
+        assertFalse("Node should be unreachable", monitor.isReachable(PEER_ADDRESS));
+        assertEquals("Rtt should be kept", 10L, monitor.getRtt(PEER_ADDRESS));
+    }
+
+    @Test
+    public void testPrune() {
+        ScriptedLivenessMonitor monitor = new ScriptedLivenessMonitor();
+        monitor.isAnswering = false;
+
+        monitor.tick(0L);
+        monitor.tick(100L);
+        assertFalse("Node should be unreachable", monitor.isReachable(PEER_ADDRESS));
+        assertTrue("Node should not be pruned before it is stale", monitor.prunedLocations.isEmpty());
+
+        monitor.tick(1000L);
+        assertEquals("Stale node should be pruned", 1, monitor.prunedLocations.size());
+        assertEquals("Location of the stale node should be pruned", LOCATION, monitor.prunedLocations.get(0));
+        assertNull("Pruned node should not be monitored anymore", monitor.getReachability(PEER_ADDRESS));
+        assertTrue("Pruned node should be assumed reachable again", monitor.isReachable(PEER_ADDRESS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidInterval() {
+        new LivenessMonitor(null, null, "Piff Jenkins", 1000L, 100L, 1000L);
+    }
+
+    /**
+     * Answers pings synchronously with a fixed round trip time instead of sending them
+     */
+    protected static class ScriptedLivenessMonitor extends LivenessMonitor {
+
+        protected boolean isAnswering = true;
+
+        protected int nrOfPings = 0;
+
+        protected List<NodeLocation> prunedLocations = new ArrayList<>();
+
+        protected long currentTime;
+
+        protected ScriptedLivenessMonitor() {
+            super(null, null, "Piff Jenkins", 100L, 300L, 1000L);
+        }
+
+        @Override
+        protected void tick(long now) {
+            this.currentTime = now;
+            super.tick(now);
+        }
+
+        @Override
+        protected void ping(Reachability reachability) {
+            this.nrOfPings++;
+            this.onPingCompleted(reachability, this.isAnswering, 10L, this.currentTime);
+        }
+
+        @Override
+        protected void prune(Reachability reachability) {
+            this.prunedLocations.add(reachability.getNodeLocation());
+            this.reachabilities.remove(reachability.getNodeLocation().getPeerAddress());
+        }
+
+        @Override
+        protected List<NodeLocation> fetchNodeLocations() {
+            List<NodeLocation> nodeLocations = new ArrayList<>();
+            nodeLocations.add(OWN_LOCATION);
+            nodeLocations.add(LOCATION);
+
+            return nodeLocations;
+        }
+
+        @Override
+        protected PeerAddress getOwnPeerAddress() {
+            return OWN_PEER_ADDRESS;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package org.rmatil.sync.network.test.core;
 import net.tomp2p.dht.PeerDHT;
 import org.junit.*;
 import org.junit.rules.ExpectedException;
+import org.rmatil.sync.network.api.INodeLocationListener;
 import org.rmatil.sync.network.api.INodeManager;
 import org.rmatil.sync.network.api.IUser;
 import org.rmatil.sync.network.config.Config;
@@ -188,6 +189,79 @@ public class NodeManagerTest {
         assertThat("Result3 does not contain both locations", result3, hasItems(l1, l2));
     }
 
+    @Test
+    public void testLeaseExpiry()
+            throws InputOutputException, InterruptedException {
+        INodeManager shortLeaseManager = new NodeManager(
+                dhtStorageAdapter1,
+                Config.DEFAULT.getLocationsContentKey(),
+                Config.DEFAULT.getPrivateKeyContentKey(),
+                Config.DEFAULT.getPublicKeyContentKey(),
+                Config.DEFAULT.getSaltContentKey(),
+                Config.DEFAULT.getDomainKey(),
+                500L
+        );
+
+        shortLeaseManager.addNodeLocation(l1);
+        List<NodeLocation> result = clientManager2.getNodeLocations(user1.getUserName());
+        assertEquals("Result has different amount of locations saved", 1, result.size());
+        assertThat("result does not contain location", result, hasItem(l1));
+
+        Thread.sleep(1000L + NodeLocation.CLOCK_SKEW_TOLERANCE);
+
+        List<NodeLocation> result2 = clientManager2.getNodeLocations(user1.getUserName());
+        assertEquals("Expired location should not be returned", 0, result2.size());
+
+        // renewing the lease makes the location available again
+        shortLeaseManager.addNodeLocation(l1);
+        shortLeaseManager.addNodeLocation(l1);
+        List<NodeLocation> result3 = clientManager2.getNodeLocations(user1.getUserName());
+        assertEquals("Renewed location should be contained once", 1, result3.size());
+        assertTrue("Renewed location should not be expired", result3.get(0).getLeaseExpiration() > System.currentTimeMillis());
+    }
+
+    @Test
+    public void testWatchLocations()
+            throws InputOutputException {
+        List<NodeLocation> addedLocations = new ArrayList<>();
+        List<NodeLocation> removedLocations = new ArrayList<>();
+        INodeLocationListener listener = new INodeLocationListener() {
+            @Override
+            public void onNodeLocationAdded(NodeLocation nodeLocation) {
+                addedLocations.add(nodeLocation);
+            }
+
+            @Override
+            public void onNodeLocationRemoved(NodeLocation nodeLocation) {
+                removedLocations.add(nodeLocation);
+            }
+        };
+
+        clientManager2.watchNodeLocations(user1.getUserName(), listener);
+
+        try {
+            // changes of other nodes are only visible once announced or reconciled
+            clientManager1.addNodeLocation(l1);
+            assertEquals("Cached locations should not contain unannounced location", 0, clientManager2.getNodeLocations(user1.getUserName()).size());
+
+            clientManager2.applyNodeLocationChange(l1, true);
+            assertThat("Cached locations should contain announced location", clientManager2.getNodeLocations(user1.getUserName()), hasItem(l1));
+            assertThat("Listener should be notified about announced location", addedLocations, hasItem(l1));
+
+            // own changes are applied eagerly
+            clientManager2.addNodeLocation(l2);
+            List<NodeLocation> result = clientManager2.getNodeLocations(user1.getUserName());
+            assertEquals("Cached locations should contain both locations", 2, result.size());
+            assertThat("Listener should be notified about added location", addedLocations, hasItem(l2));
+
+            clientManager2.removeNodeLocation(l2);
+            assertThat("Cached locations should not contain removed location", clientManager2.getNodeLocations(user1.getUserName()), not(hasItem(l2)));
+            assertThat("Listener should be notified about removed location", removedLocations, hasItem(l2));
+        } finally {
+            clientManager2.unwatchNodeLocations(user1.getUserName(), listener);
+        }
+    }
+
     @Test
     public void testAccessForOtherUsers()
             throws InputOutputException {
@@ -0,0 +1,108 @@
+package org.rmatil.sync.network.test.core;
+
+import org.junit.Test;
+import org.rmatil.sync.network.core.OptimisticDhtUpdater;
+import org.rmatil.sync.persistence.core.dht.secured.SecuredDhtPathElement;
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class OptimisticDhtUpdaterTest {
+
+    protected static final SecuredDhtPathElement PATH_ELEMENT = new SecuredDhtPathElement("Piff Jenkins", "contentKey", "domainKey");
+
+    protected static final OptimisticDhtUpdater.Merge APPEND_A = stored -> {
+        String value = new String(stored, StandardCharsets.UTF_8);
+
+        return value.contains("a") ? null : (value + "a").getBytes(StandardCharsets.UTF_8);
+    };
+
+    protected static final OptimisticDhtUpdater.Verification CONTAINS_A = stored -> new String(stored, StandardCharsets.UTF_8).contains("a");
+
+    @Test
+    public void testUpdate()
+            throws InputOutputException {
+        InMemoryUpdater updater = new InMemoryUpdater(OptimisticDhtUpdater.DEFAULT_MAX_ATTEMPTS);
+
+        assertEquals("Change should be written", "a", new String(updater.update(PATH_ELEMENT, APPEND_A, CONTAINS_A), StandardCharsets.UTF_8));
+        assertEquals("Change should be written once", 1, updater.nrOfWrites);
+
+        updater.update(PATH_ELEMENT, APPEND_A, CONTAINS_A);
+        assertEquals("Contained change should not be written again", 1, updater.nrOfWrites);
+    }
+
+    @Test
+    public void testConflict()
+            throws InputOutputException {
+        InMemoryUpdater updater = new InMemoryUpdater(OptimisticDhtUpdater.DEFAULT_MAX_ATTEMPTS);
+        // a concurrent writer overwrites the first write
+        updater.concurrentValues = new String[]{"b"};
+
+        byte[] result = updater.update(PATH_ELEMENT, APPEND_A, CONTAINS_A);
+
+        assertEquals("Change should be merged into the concurrently written value", "ba", new String(result, StandardCharsets.UTF_8));
+        assertEquals("Stored value should contain both changes", "ba", new String(updater.value, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testRejected()
+            throws InputOutputException {
+        InMemoryUpdater updater = new InMemoryUpdater(OptimisticDhtUpdater.DEFAULT_MAX_ATTEMPTS);
+        updater.isRejecting = true;
+
+        byte[] result = updater.update(PATH_ELEMENT, APPEND_A, CONTAINS_A);
+
+        assertEquals("Rejected write should not be retried", 1, updater.nrOfWrites);
+        assertEquals("Stored value should be returned", 0, result.length);
+    }
+
+    @Test(expected = InputOutputException.class)
+    public void testExhausted()
+            throws InputOutputException {
+        InMemoryUpdater updater = new InMemoryUpdater(2);
+        updater.concurrentValues = new String[]{"b", "c"};
+
+        updater.update(PATH_ELEMENT, APPEND_A, CONTAINS_A);
+    }
+
+    /**
+     * Stores a single value in memory instead of the DHT and optionally simulates concurrent writers
+     */
+    protected static class InMemoryUpdater extends OptimisticDhtUpdater {
+
+        protected byte[] value = new byte[0];
+
+        protected int nrOfWrites = 0;
+
+        protected boolean isRejecting = false;
+
+        /**
+         * The values written by a concurrent writer right after each write
+         */
+        protected String[] concurrentValues = new String[0];
+
+        protected InMemoryUpdater(int maxAttempts) {
+            super(null, maxAttempts);
+        }
+
+        @Override
+        protected void write(SecuredDhtPathElement pathElement, byte[] bytes) {
+            if (! this.isRejecting) {
+                this.value = bytes;
+            }
+
+            if (this.nrOfWrites < this.concurrentValues.length) {
+                this.value = this.concurrentValues[this.nrOfWrites].getBytes(StandardCharsets.UTF_8);
+            }
+
+            this.nrOfWrites++;
+        }
+
+        @Override
+        protected byte[] read(SecuredDhtPathElement pathElement) {
+            return this.value;
+        }
+    }
+}
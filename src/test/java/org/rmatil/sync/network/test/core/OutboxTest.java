@@ -0,0 +1,148 @@
+package org.rmatil.sync.network.test.core;
+
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.PeerAddress;
+import org.junit.Test;
+import org.rmatil.sync.network.core.Outbox;
+import org.rmatil.sync.network.core.exception.ObjectSendFailedException;
+import org.rmatil.sync.network.core.model.ChunkStatusRequest;
+import org.rmatil.sync.network.core.model.MessageBatch;
+import org.rmatil.sync.network.core.model.NodeLocation;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class OutboxTest {
+
+    protected static final NodeLocation RECEIVER = new NodeLocation(
+            "Piff Jenkins",
+            UUID.randomUUID(),
+            new PeerAddress(Number160.createHash("OutboxTest"), InetAddress.getLoopbackAddress(), 4003, 4003)
+    );
+
+    @Test
+    public void testLingerFlush()
+            throws Exception {
+        RecordingOutbox outbox = new RecordingOutbox(20L, 10);
+
+        CompletableFuture<Void> future1 = outbox.send(RECEIVER, this.createRequest());
+        CompletableFuture<Void> future2 = outbox.send(RECEIVER, this.createRequest());
+        assertTrue("Messages should not be sent before the linger time elapsed", outbox.deliveries.isEmpty());
+
+        future1.get(5, TimeUnit.SECONDS);
+        future2.get(5, TimeUnit.SECONDS);
+
+        assertEquals("Messages should be sent in a single batch", 1, outbox.deliveries.size());
+        assertEquals("Batch should contain both messages", 2, ((MessageBatch) outbox.deliveries.get(0)).getMessages().size());
+
+        outbox.close();
+    }
+
+    @Test
+    public void testMaxSizeFlush() {
+        RecordingOutbox outbox = new RecordingOutbox(60000L, 2);
+
+        outbox.send(RECEIVER, this.createRequest());
+        CompletableFuture<Void> future = outbox.send(RECEIVER, this.createRequest());
+
+        assertTrue("Full batch should be sent without waiting for the linger time", future.isDone());
+        assertEquals("Full batch should be sent", 1, outbox.deliveries.size());
+
+        CompletableFuture<Void> pendingFuture = outbox.send(RECEIVER, this.createRequest());
+        assertFalse("Message of the next batch should be pending", pendingFuture.isDone());
+
+        outbox.close();
+    }
+
+    @Test
+    public void testPrioritySeparation() {
+        RecordingOutbox outbox = new RecordingOutbox(60000L, 10);
+
+        DummyRequest request = this.createRequest();
+        ChunkStatusRequest controlRequest = new ChunkStatusRequest(UUID.randomUUID(), null, new ArrayList<>(), UUID.randomUUID());
+
+        outbox.send(RECEIVER, request);
+        outbox.send(RECEIVER, controlRequest);
+        outbox.flush();
+
+        assertEquals("Messages of different priorities should be sent separately", 2, outbox.deliveries.size());
+        assertTrue("Control message should be sent as is", outbox.deliveries.contains(controlRequest));
+        assertTrue("Normal message should be sent as is", outbox.deliveries.contains(request));
+
+        outbox.close();
+    }
+
+    @Test
+    public void testClose() {
+        RecordingOutbox outbox = new RecordingOutbox(60000L, 10);
+
+        CompletableFuture<Void> future = outbox.send(RECEIVER, this.createRequest());
+        outbox.close();
+
+        assertTrue("Pending messages should be sent on close", future.isDone());
+        assertEquals("Pending message should be sent", 1, outbox.deliveries.size());
+
+        try {
+            outbox.send(RECEIVER, this.createRequest());
+            fail("Closed outbox should not accept messages");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testFailedDelivery()
+            throws InterruptedException {
+        RecordingOutbox outbox = new RecordingOutbox(60000L, 10);
+        outbox.isFailing = true;
+
+        CompletableFuture<Void> future = outbox.send(RECEIVER, this.createRequest());
+        outbox.flush();
+
+        try {
+            future.get();
+            fail("Failed delivery should be reported");
+        } catch (ExecutionException e) {
+            assertTrue("Failure should be an ObjectSendFailedException", e.getCause() instanceof ObjectSendFailedException);
+        }
+
+        outbox.close();
+    }
+
+    protected DummyRequest createRequest() {
+        return new DummyRequest(UUID.randomUUID(), null, new ArrayList<>());
+    }
+
+    /**
+     * Records the delivered messages instead of sending them
+     */
+    protected static class RecordingOutbox extends Outbox {
+
+        protected final List<Object> deliveries = Collections.synchronizedList(new ArrayList<>());
+
+        protected volatile boolean isFailing = false;
+
+        protected RecordingOutbox(long lingerTime, int maxBatchSize) {
+            super(null, lingerTime, maxBatchSize);
+        }
+
+        @Override
+        protected CompletableFuture<Void> deliver(NodeLocation receiverAddress, Object data) {
+            if (this.isFailing) {
+                throw new ObjectSendFailedException("Receiver " + receiverAddress.getUsername() + " is not reachable");
+            }
+
+            this.deliveries.add(data);
+
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package org.rmatil.sync.network.test.core;
+
+import net.tomp2p.futures.FuturePeerConnection;
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.PeerAddress;
+import org.junit.Before;
+import org.junit.Test;
+import org.rmatil.sync.network.core.PeerConnectionManager;
+
+import static org.junit.Assert.*;
+
+public class PeerConnectionManagerTest {
+
+    protected static final long IDLE_TIMEOUT = 1000L;
+
+    protected static final PeerAddress PEER_1 = new PeerAddress(Number160.createHash("Piff Jenkins"));
+    protected static final PeerAddress PEER_2 = new PeerAddress(Number160.createHash("Cecil Hipplington-Shoreditch"));
+    protected static final PeerAddress PEER_3 = new PeerAddress(Number160.createHash("Norman Gordon"));
+
+    protected TestPeerConnectionManager peerConnectionManager;
+
+    @Before
+    public void before() {
+        this.peerConnectionManager = new TestPeerConnectionManager(2, IDLE_TIMEOUT);
+    }
+
+    @Test
+    public void testOpenFrequentlyUsed() {
+        assertNull("First message should not open a connection", this.send(PEER_1, 0L));
+
+        FuturePeerConnection connection = this.send(PEER_1, 1L);
+        assertNotNull("Second message should open a connection", connection);
+        assertSame("Open connection should be reused", connection, this.send(PEER_1, 2L));
+        assertEquals("One connection should be open", 1, this.peerConnectionManager.getNrOfOpenConnections());
+    }
+
+    @Test
+    public void testCloseIdle() {
+        this.send(PEER_1, 0L);
+        this.send(PEER_1, 1L);
+        assertEquals("One connection should be open", 1, this.peerConnectionManager.getNrOfOpenConnections());
+
+        this.send(PEER_2, 2L + IDLE_TIMEOUT);
+        assertEquals("Idle connection should be closed", 0, this.peerConnectionManager.getNrOfOpenConnections());
+        assertNull("Usage of idle peer should be reset", this.send(PEER_1, 3L + IDLE_TIMEOUT));
+    }
+
+    @Test
+    public void testKeepIdleWithPendingSends() {
+        this.send(PEER_1, 0L);
+        // the message is still in flight
+        this.peerConnectionManager.acquire(PEER_1, 1L);
+
+        this.send(PEER_2, 2L + IDLE_TIMEOUT);
+        assertEquals("Connection with messages in flight should not be closed", 1, this.peerConnectionManager.getNrOfOpenConnections());
+    }
+
+    @Test
+    public void testCloseLeastRecentlyUsed() {
+        FuturePeerConnection connection1 = this.open(PEER_1, 0L);
+        this.open(PEER_2, 2L);
+        this.open(PEER_3, 4L);
+
+        assertEquals("At most two connections should be open", 2, this.peerConnectionManager.getNrOfOpenConnections());
+        assertNull("Least recently used connection should be closed", this.send(PEER_1, 6L));
+        assertNotSame("Closed connection should not be reused", connection1, this.send(PEER_1, 7L));
+    }
+
+    @Test
+    public void testSkipPendingSendsOnEviction() {
+        // the second message to the first peer is still in flight
+        this.send(PEER_1, 0L);
+        FuturePeerConnection connection1 = this.peerConnectionManager.acquire(PEER_1, 1L);
+        this.open(PEER_2, 2L);
+
+        this.open(PEER_3, 4L);
+
+        assertEquals("At most two connections should be open", 2, this.peerConnectionManager.getNrOfOpenConnections());
+        assertSame("Connection with messages in flight should be kept", connection1, this.send(PEER_1, 6L));
+        assertNull("Idle connection should be closed instead", this.send(PEER_2, 7L));
+    }
+
+    @Test
+    public void testAllConnectionsBusy() {
+        this.send(PEER_1, 0L);
+        this.peerConnectionManager.acquire(PEER_1, 1L);
+        this.send(PEER_2, 2L);
+        this.peerConnectionManager.acquire(PEER_2, 3L);
+
+        this.send(PEER_3, 4L);
+        assertNull("No connection should be opened while all others are busy", this.send(PEER_3, 5L));
+        assertEquals("At most two connections should be open", 2, this.peerConnectionManager.getNrOfOpenConnections());
+    }
+
+    @Test
+    public void testReopenFailed() {
+        FuturePeerConnection connection = this.open(PEER_1, 0L);
+        connection.failed("Connection reset");
+
+        FuturePeerConnection reopened = this.send(PEER_1, 2L);
+        assertNotNull("Failed connection should be reopened", reopened);
+        assertNotSame("Failed connection should not be reused", connection, reopened);
+
+        this.peerConnectionManager.release(PEER_1);
+        assertEquals("Released connection should be closed", 0, this.peerConnectionManager.getNrOfOpenConnections());
+    }
+
+    @Test
+    public void testCloseIdleAfterLateCompletion() {
+        this.send(PEER_1, 0L);
+        FuturePeerConnection connection = this.peerConnectionManager.acquire(PEER_1, 1L);
+        this.send(PEER_2, 500L);
+
+        // completing a message must not change the order of usage
+        this.peerConnectionManager.onSendCompleted(PEER_1, connection);
+
+        this.send(PEER_3, 100L + IDLE_TIMEOUT);
+        assertEquals("Idle connection should be closed", 0, this.peerConnectionManager.getNrOfOpenConnections());
+    }
+
+    @Test
+    public void testReleaseWithPendingSends() {
+        this.send(PEER_1, 0L);
+        FuturePeerConnection connection = this.peerConnectionManager.acquire(PEER_1, 1L);
+        this.peerConnectionManager.acquire(PEER_1, 2L);
+
+        // the first message failed while the second one is still in flight
+        this.peerConnectionManager.onSendCompleted(PEER_1, connection);
+        this.peerConnectionManager.release(PEER_1, connection);
+
+        assertEquals("Connection with messages in flight should not be closed", 1, this.peerConnectionManager.getNrOfOpenConnections());
+        assertNull("Released connection should not be used for new messages", this.send(PEER_1, 3L));
+
+        this.peerConnectionManager.onSendCompleted(PEER_1, connection);
+        assertEquals("Released connection should be closed once all messages completed", 0, this.peerConnectionManager.getNrOfOpenConnections());
+    }
+
+    @Test
+    public void testReleaseReplacedConnection() {
+        FuturePeerConnection connection = this.open(PEER_1, 0L);
+        connection.failed("Connection reset");
+        FuturePeerConnection reopened = this.send(PEER_1, 2L);
+
+        this.peerConnectionManager.release(PEER_1, connection);
+        assertSame("Replaced connection should not release the new one", reopened, this.send(PEER_1, 3L));
+    }
+
+    @Test
+    public void testForgetUnconnectedPeers() {
+        this.peerConnectionManager = new TestPeerConnectionManager(2, IDLE_TIMEOUT, 2);
+
+        FuturePeerConnection connection = this.open(PEER_1, 0L);
+        this.send(PEER_2, 2L);
+        this.send(PEER_3, 3L);
+
+        assertSame("Peer with open connection should be kept", connection, this.send(PEER_1, 4L));
+        assertNull("Least recently used peer without connection should be forgotten", this.send(PEER_2, 5L));
+    }
+
+    /**
+     * Sends two completed messages to the given peer, opening a connection to it
+     */
+    protected FuturePeerConnection open(PeerAddress peerAddress, long now) {
+        this.send(peerAddress, now);
+
+        return this.send(peerAddress, now + 1L);
+    }
+
+    /**
+     * Sends a single message to the given peer which completes immediately
+     */
+    protected FuturePeerConnection send(PeerAddress peerAddress, long now) {
+        FuturePeerConnection connection = this.peerConnectionManager.acquire(peerAddress, now);
+        this.peerConnectionManager.onSendCompleted(peerAddress, connection);
+
+        return connection;
+    }
+
+    /**
+     * Creates unconnected connection futures instead of connecting to real peers
+     */
+    protected static class TestPeerConnectionManager extends PeerConnectionManager {
+
+        protected TestPeerConnectionManager(int maxOpenConnections, long idleTimeout) {
+            this(maxOpenConnections, idleTimeout, DEFAULT_MAX_TRACKED_PEERS);
+        }
+
+        protected TestPeerConnectionManager(int maxOpenConnections, long idleTimeout, int maxTrackedPeers) {
+            super(null, maxOpenConnections, idleTimeout, maxTrackedPeers);
+        }
+
+        @Override
+        protected FuturePeerConnection acquire(PeerAddress receiverAddress, long now) {
+            return super.acquire(receiverAddress, now);
+        }
+
+        @Override
+        protected FuturePeerConnection openConnection(PeerAddress receiverAddress) {
+            return new FuturePeerConnection(receiverAddress);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.rmatil.sync.network.test.core;
+
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.PeerAddress;
+import org.junit.Test;
+import org.rmatil.sync.network.core.RttEstimator;
+import org.rmatil.sync.network.core.messaging.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RttEstimatorTest {
+
+    protected static final PeerAddress PEER_ADDRESS = new PeerAddress(Number160.createHash("RttEstimatorTest"));
+
+    @Test
+    public void testUnknownPeer() {
+        RttEstimator rttEstimator = new RttEstimator();
+
+        assertEquals("Unknown peer should not have an rtt", - 1L, rttEstimator.getSmoothedRtt(PEER_ADDRESS));
+        assertEquals("Unknown peer should get the maximum send timeout", RttEstimator.DEFAULT_MAX_SEND_TIMEOUT, rttEstimator.getSendTimeout(PEER_ADDRESS));
+        assertEquals("Unknown peer should get the maximum response timeout", RttEstimator.DEFAULT_MAX_RESPONSE_TIMEOUT, rttEstimator.getResponseTimeout(PEER_ADDRESS));
+    }
+
+    @Test
+    public void testTimeouts() {
+        RttEstimator rttEstimator = new RttEstimator(10L, 1000L, 50L, 2000L);
+
+        rttEstimator.addSample(PEER_ADDRESS, 10L);
+        assertEquals("First sample should be the rtt", 10L, rttEstimator.getSmoothedRtt(PEER_ADDRESS));
+        assertEquals("Variance should be half of the first sample", 5L, rttEstimator.getRttVariance(PEER_ADDRESS));
+        assertEquals("Send timeout should be rtt plus four times the variance", 30L, rttEstimator.getSendTimeout(PEER_ADDRESS));
+        assertEquals("Response timeout should be a multiple of the send timeout", RttEstimator.RESPONSE_TIMEOUT_FACTOR * 30L, rttEstimator.getResponseTimeout(PEER_ADDRESS));
+
+        rttEstimator.onTimeout(PEER_ADDRESS);
+        assertEquals("Timeout should double the send timeout", 60L, rttEstimator.getSendTimeout(PEER_ADDRESS));
+
+        for (int i = 0; i < 100; i++) {
+            rttEstimator.onTimeout(PEER_ADDRESS);
+        }
+        assertEquals("Send timeout should not exceed its ceiling", 1000L, rttEstimator.getSendTimeout(PEER_ADDRESS));
+        assertEquals("Response timeout should not exceed its ceiling", 2000L, rttEstimator.getResponseTimeout(PEER_ADDRESS));
+
+        rttEstimator.addSample(PEER_ADDRESS, 10L);
+        assertTrue("Sample should reset the back off", rttEstimator.getSendTimeout(PEER_ADDRESS) < 30L);
+
+        for (int i = 0; i < 100; i++) {
+            rttEstimator.addSample(PEER_ADDRESS, 1L);
+        }
+        assertEquals("Send timeout should not fall below its floor", 10L, rttEstimator.getSendTimeout(PEER_ADDRESS));
+        assertEquals("Response timeout should not fall below its floor", 50L, rttEstimator.getResponseTimeout(PEER_ADDRESS));
+    }
+
+    @Test
+    public void testHedgeDelay() {
+        RttEstimator rttEstimator = new RttEstimator(10L, 1000L, 50L, 2000L);
+        rttEstimator.addSample(PEER_ADDRESS, 10L);
+
+        rttEstimator.addResponseSample(PEER_ADDRESS, TimeUnit.MILLISECONDS.toNanos(100L));
+        assertEquals("Hedge delay should be the send timeout without enough responses", 30L, rttEstimator.getHedgeDelay(PEER_ADDRESS));
+
+        for (int i = 1; i < RttEstimator.MIN_NR_OF_RESPONSE_SAMPLES; i++) {
+            rttEstimator.addResponseSample(PEER_ADDRESS, TimeUnit.MILLISECONDS.toNanos(100L));
+        }
+        assertEquals("Hedge delay should be the upper bound of the percentile bucket", LatencyHistogram.getUpperBound(LatencyHistogram.getBucket(100L)), rttEstimator.getHedgeDelay(PEER_ADDRESS));
+
+        for (int i = 0; i < 100; i++) {
+            rttEstimator.addResponseSample(PEER_ADDRESS, TimeUnit.SECONDS.toNanos(60L));
+        }
+        assertEquals("Hedge delay should not exceed the response timeout ceiling", 2000L, rttEstimator.getHedgeDelay(PEER_ADDRESS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBounds() {
+        new RttEstimator(1000L, 10L, 50L, 2000L);
+    }
+}
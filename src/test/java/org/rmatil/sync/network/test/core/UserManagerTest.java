@@ -25,6 +25,8 @@ import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.UUID;
 
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.*;
 
 public class UserManagerTest {
@@ -173,7 +175,8 @@ public class UserManagerTest {
         assertFalse("User2 should not yet be registered", userManager3.isRegistered(user2.getUserName()));
 
         // add the 2nd client location to user1 too
-        userManager2.login(user1, l2);
+        assertTrue("Login of the 2nd client should succeed", userManager2.login(user1, l2));
+        assertThat("All login steps should be timed", userManager2.getLastLoginTimings().keySet(), hasItems("addNodeLocation", "addPrivateKey", "addPublicKey", "addSalt"));
 
         assertTrue("User1 should be registered", userManager1.isRegistered(user1.getUserName()));
         assertTrue("User1 should be registered", userManager2.isRegistered(user1.getUserName()));
@@ -0,0 +1,105 @@
+package org.rmatil.sync.network.test.core.compression;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.rmatil.sync.network.core.compression.AdaptiveCompressor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveCompressorTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    protected static AdaptiveCompressor compressor;
+
+    protected static byte[] repetitiveData;
+
+    protected static byte[] randomData;
+
+    @BeforeClass
+    public static void setUp() {
+        compressor = new AdaptiveCompressor();
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            sb.append("org.rmatil.sync.network.core.model.NodeLocation ").append(i).append("\n");
+        }
+        repetitiveData = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        randomData = new byte[4096];
+        new Random(42).nextBytes(randomData);
+    }
+
+    @Test
+    public void testCompressRepetitiveData()
+            throws IOException {
+        byte[] compressed = compressor.compress(repetitiveData);
+
+        assertNotNull("Repetitive data should be compressed", compressed);
+        assertTrue("Compressed data should be smaller", compressed.length < repetitiveData.length);
+        assertArrayEquals("Decompressed data is not the same", repetitiveData, compressor.decompress(compressed));
+
+        assertTrue("Statistics should report compression", compressor.getStatistics().getNrOfCompressedMessages() > 0);
+        assertTrue("Compression ratio should be below 1", compressor.getStatistics().getCompressionRatio() < 1d);
+    }
+
+    @Test
+    public void testSkipIncompressibleData() {
+        assertTrue("Random data should have a high entropy", AdaptiveCompressor.estimateEntropy(randomData) > AdaptiveCompressor.MAX_ENTROPY);
+        assertNull("Random data should not be compressed", compressor.compress(randomData));
+        assertNull("Small data should not be compressed", compressor.compress(new byte[AdaptiveCompressor.MIN_SIZE - 1]));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptData()
+            throws IOException {
+        byte[] compressed = compressor.compress(repetitiveData);
+        compressed[compressed.length / 2] ^= 0x5A;
+        compressed[compressed.length / 2 + 1] ^= 0x5A;
+
+        compressor.decompress(compressed);
+    }
+
+    @Test
+    public void testForgedLength() {
+        byte[] compressed = compressor.compress(repetitiveData);
+
+        // a prefix beyond the maximal size must be rejected without inflating anything
+        byte[] forged = compressed.clone();
+        ByteBuffer.wrap(forged).putInt(Integer.MAX_VALUE - 8);
+        try {
+            compressor.decompress(forged);
+            fail("Length beyond the maximal decompressed size should be rejected");
+        } catch (IOException e) {
+            // expected
+        }
+
+        // a prefix smaller than the inflated data must be rejected as well
+        ByteBuffer.wrap(forged).putInt(repetitiveData.length / 2);
+        try {
+            compressor.decompress(forged);
+            fail("Data inflating beyond its length prefix should be rejected");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testMaxDecompressedSize()
+            throws IOException {
+        AdaptiveCompressor limitedCompressor = new AdaptiveCompressor(repetitiveData.length - 1);
+
+        assertNull("Data larger than the maximal decompressed size should not be compressed", limitedCompressor.compress(repetitiveData));
+
+        thrown.expect(IOException.class);
+        limitedCompressor.decompress(compressor.compress(repetitiveData));
+    }
+}
@@ -0,0 +1,55 @@
+package org.rmatil.sync.network.test.core.messaging;
+
+import org.junit.Test;
+import org.rmatil.sync.network.core.messaging.DeduplicationCache;
+
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class DeduplicationCacheTest {
+
+    @Test
+    public void testAdd() {
+        DeduplicationCache deduplicationCache = new DeduplicationCache();
+        UUID deviceId = UUID.randomUUID();
+        UUID exchangeId = UUID.randomUUID();
+
+        assertFalse("Pair should not be present", deduplicationCache.contains(deviceId, exchangeId));
+        assertTrue("Pair should be added", deduplicationCache.add(deviceId, exchangeId));
+        assertTrue("Pair should be present", deduplicationCache.contains(deviceId, exchangeId));
+        assertFalse("Duplicate should not be added", deduplicationCache.add(deviceId, exchangeId));
+
+        assertFalse("Other device should not be present", deduplicationCache.contains(UUID.randomUUID(), exchangeId));
+        assertFalse("Other exchange should not be present", deduplicationCache.contains(deviceId, UUID.randomUUID()));
+    }
+
+    @Test
+    public void testTimeWindow()
+            throws InterruptedException {
+        DeduplicationCache deduplicationCache = new DeduplicationCache(16, 50L);
+        UUID deviceId = UUID.randomUUID();
+        UUID exchangeId = UUID.randomUUID();
+
+        deduplicationCache.add(deviceId, exchangeId);
+        Thread.sleep(100L);
+
+        assertFalse("Pair should be expired", deduplicationCache.contains(deviceId, exchangeId));
+        assertTrue("Expired pair should be added again", deduplicationCache.add(deviceId, exchangeId));
+    }
+
+    @Test
+    public void testCapacity() {
+        DeduplicationCache deduplicationCache = new DeduplicationCache(100, 60000L);
+        assertEquals("Capacity should be rounded to a power of two", 128, deduplicationCache.getCapacity());
+
+        UUID deviceId = UUID.randomUUID();
+        for (int i = 0; i < 10000; i++) {
+            assertTrue("New pair should always be added", deduplicationCache.add(deviceId, UUID.randomUUID()));
+        }
+
+        UUID exchangeId = UUID.randomUUID();
+        deduplicationCache.add(deviceId, exchangeId);
+        assertTrue("Most recent pair should be present", deduplicationCache.contains(deviceId, exchangeId));
+    }
+}
@@ -0,0 +1,133 @@
+package org.rmatil.sync.network.test.core.messaging;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.rmatil.sync.network.core.messaging.EncryptedDataReplyHandler;
+import org.rmatil.sync.network.core.messaging.ObjectDataReplyHandler;
+import org.rmatil.sync.network.core.messaging.OrderedStage;
+import org.rmatil.sync.network.core.model.CreditGrant;
+import org.rmatil.sync.network.core.model.EncryptedData;
+import org.rmatil.sync.network.core.model.MessageHeader;
+import org.rmatil.sync.network.core.model.Priority;
+import org.rmatil.sync.network.core.model.ReplyPending;
+import org.rmatil.sync.network.test.core.DummyRequest;
+
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class EncryptedDataReplyHandlerTest {
+
+    protected static final MessageHeader HEADER = MessageHeader.create(
+            new DummyRequest(UUID.randomUUID(), null, new ArrayList<>()),
+            "Norman Gordon",
+            UUID.randomUUID()
+    );
+
+    protected TestEncryptedDataReplyHandler encryptedDataReplyHandler;
+
+    @Before
+    public void before() {
+        this.encryptedDataReplyHandler = new TestEncryptedDataReplyHandler();
+    }
+
+    @After
+    public void after() {
+        this.encryptedDataReplyHandler.shutdown();
+    }
+
+    @Test
+    public void testPendingReply()
+            throws Exception {
+        long start = System.currentTimeMillis();
+        Object reply = this.encryptedDataReplyHandler.awaitReply(new CompletableFuture<>(), HEADER);
+
+        assertTrue("Pending reply should be signalled", reply instanceof ReplyPending);
+        assertTrue("I/O thread should not wait much longer than the sync reply timeout", System.currentTimeMillis() - start < EncryptedDataReplyHandler.SYNC_REPLY_TIMEOUT + 1000L);
+    }
+
+    @Test
+    public void testAvailableReply()
+            throws Exception {
+        EncryptedData encryptedData = new EncryptedData(new byte[0], new byte[0], new byte[0], false, HEADER);
+
+        assertSame("Available reply should be returned", encryptedData, this.encryptedDataReplyHandler.awaitReply(CompletableFuture.completedFuture(encryptedData), HEADER));
+        assertNull("Missing response should be returned as null", this.encryptedDataReplyHandler.awaitReply(CompletableFuture.completedFuture(null), HEADER));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFailedReply()
+            throws Exception {
+        CompletableFuture<EncryptedData> futureReply = new CompletableFuture<>();
+        futureReply.completeExceptionally(new IllegalStateException("Callback failed"));
+
+        this.encryptedDataReplyHandler.awaitReply(futureReply, HEADER);
+    }
+
+    @Test
+    public void testCreditGrantPerSender()
+            throws Exception {
+        TestEncryptedDataReplyHandler encryptedDataReplyHandler = new TestEncryptedDataReplyHandler(new ObjectDataReplyHandler(null));
+        OrderedStage cryptoStage = encryptedDataReplyHandler.getLane(Priority.NORMAL).getCryptoStage();
+
+        // keep all threads of the stage busy, so that further messages wait
+        int nrOfThreads = Runtime.getRuntime().availableProcessors();
+        CountDownLatch started = new CountDownLatch(nrOfThreads);
+        CountDownLatch blocked = new CountDownLatch(1);
+        for (int i = 0; i < nrOfThreads; i++) {
+            cryptoStage.submit("busySender" + i, () -> {
+                started.countDown();
+                try {
+                    blocked.await(5L, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        assertTrue("Messages should be processed", started.await(5L, TimeUnit.SECONDS));
+
+        cryptoStage.submit("sender", () -> {
+        });
+        cryptoStage.submit("sender", () -> {
+        });
+
+        int nrOfSenders = nrOfThreads + 1;
+        int share = ObjectDataReplyHandler.MAX_CONCURRENT_REQUEST_CALLBACKS / nrOfSenders;
+        assertEquals("Waiting messages should be deducted from the share of the sender", Math.max(0, share - 2), encryptedDataReplyHandler.createCreditGrant("sender").getCredits());
+        assertEquals("Capacity should be shared among the senders", share, encryptedDataReplyHandler.createCreditGrant("busySender0").getCredits());
+        assertEquals("New sender should get its share as well", ObjectDataReplyHandler.MAX_CONCURRENT_REQUEST_CALLBACKS / (nrOfSenders + 1), encryptedDataReplyHandler.createCreditGrant("newSender").getCredits());
+
+        blocked.countDown();
+        encryptedDataReplyHandler.shutdown();
+    }
+
+    /**
+     * Exposes waiting for the reply of a synchronous request
+     */
+    protected static class TestEncryptedDataReplyHandler extends EncryptedDataReplyHandler {
+
+        protected TestEncryptedDataReplyHandler() {
+            this(null);
+        }
+
+        protected TestEncryptedDataReplyHandler(ObjectDataReplyHandler objectDataReplyHandler) {
+            super(objectDataReplyHandler, null, null);
+        }
+
+        @Override
+        protected CreditGrant createCreditGrant(Object orderingKey) {
+            return super.createCreditGrant(orderingKey);
+        }
+
+        @Override
+        protected Object awaitReply(CompletableFuture<EncryptedData> futureReply, MessageHeader header)
+                throws Exception {
+            return super.awaitReply(futureReply, header);
+        }
+    }
+}
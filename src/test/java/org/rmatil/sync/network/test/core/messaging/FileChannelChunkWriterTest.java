@@ -0,0 +1,66 @@
+package org.rmatil.sync.network.test.core.messaging;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.rmatil.sync.network.core.messaging.FileChannelChunkWriter;
+import org.rmatil.sync.network.core.model.FileChunk;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FileChannelChunkWriterTest {
+
+    protected static Path file;
+
+    @BeforeClass
+    public static void setUp()
+            throws IOException {
+        file = Files.createTempFile("FileChannelChunkWriterTest", ".txt");
+    }
+
+    @AfterClass
+    public static void tearDown()
+            throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testWriteChunks()
+            throws IOException, InterruptedException {
+        UUID exchangeId = UUID.randomUUID();
+        byte[] content = "Cecil Hipplington-Shoreditch".getBytes(StandardCharsets.UTF_8);
+
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            FileChannelChunkWriter writer = new FileChannelChunkWriter(fileChannel, 0);
+
+            // write the chunks in reverse order
+            writer.onFileChunk(this.createChunk(exchangeId, content, 1, 16));
+            assertFalse("Writer should not be completed before all chunks are written", writer.isCompleted());
+
+            writer.onFileChunk(this.createChunk(exchangeId, content, 0, 16));
+            assertTrue("Writer should be completed once all chunks are written", writer.await(1, TimeUnit.SECONDS));
+        }
+
+        assertArrayEquals("Written content is not the same", content, Files.readAllBytes(file));
+    }
+
+    protected FileChunk createChunk(UUID exchangeId, byte[] content, int chunkCounter, int chunkSize) {
+        int offset = chunkCounter * chunkSize;
+        int length = Math.min(chunkSize, content.length - offset);
+
+        byte[] data = new byte[length];
+        System.arraycopy(content, offset, data, 0, length);
+
+        return new FileChunk(exchangeId, null, new ArrayList<>(), chunkCounter, 2, offset, content.length, data);
+    }
+}
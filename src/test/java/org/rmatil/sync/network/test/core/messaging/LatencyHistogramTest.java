@@ -0,0 +1,36 @@
+package org.rmatil.sync.network.test.core.messaging;
+
+import org.junit.Test;
+import org.rmatil.sync.network.core.messaging.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        assertEquals("Latencies below 1ms should be in the first bucket", 0, LatencyHistogram.getBucket(0));
+        assertEquals("1ms should be in the second bucket", 1, LatencyHistogram.getBucket(1));
+        assertEquals("3ms should be in the bucket [2ms, 4ms)", 2, LatencyHistogram.getBucket(3));
+        assertEquals("4ms should be in the bucket [4ms, 8ms)", 3, LatencyHistogram.getBucket(4));
+        assertEquals("Huge latencies should be in the last bucket", LatencyHistogram.NR_OF_BUCKETS - 1, LatencyHistogram.getBucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentile() {
+        LatencyHistogram latencyHistogram = new LatencyHistogram();
+        assertEquals("Empty histogram should not have a percentile", 0L, latencyHistogram.getPercentile(50));
+
+        for (int i = 0; i < 99; i++) {
+            latencyHistogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+        }
+        latencyHistogram.record(TimeUnit.MILLISECONDS.toNanos(100));
+
+        assertEquals("All latencies should be recorded", 100L, latencyHistogram.getCount());
+        assertEquals("Median should be below 4ms", 4L, latencyHistogram.getPercentile(50));
+        assertEquals("99th percentile should be below 4ms", 4L, latencyHistogram.getPercentile(99));
+        assertEquals("Maximum should be below 128ms", 128L, latencyHistogram.getPercentile(100));
+    }
+}
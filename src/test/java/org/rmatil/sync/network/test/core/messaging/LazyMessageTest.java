@@ -0,0 +1,61 @@
+package org.rmatil.sync.network.test.core.messaging;
+
+import org.junit.Test;
+import org.rmatil.sync.network.core.exception.SecurityException;
+import org.rmatil.sync.network.core.messaging.LazyMessage;
+import org.rmatil.sync.network.core.messaging.ObjectDataReplyHandler;
+import org.rmatil.sync.network.core.model.MessageHeader;
+import org.rmatil.sync.network.core.serialize.ByteSerializer;
+import org.rmatil.sync.network.test.core.DummyRequest;
+import org.rmatil.sync.network.test.core.DummyRequestHandler;
+import org.rmatil.sync.network.test.core.DummyResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class LazyMessageTest {
+
+    protected static final String USERNAME = "Norman Gordon";
+
+    protected static final UUID CLIENT_DEVICE_ID = UUID.randomUUID();
+
+    @Test
+    public void testGet()
+            throws IOException, ClassNotFoundException {
+        DummyRequest request = new DummyRequest(UUID.randomUUID(), null, new ArrayList<>());
+        MessageHeader header = MessageHeader.create(request, USERNAME, CLIENT_DEVICE_ID);
+
+        LazyMessage lazyMessage = new LazyMessage(header, ByteSerializer.toBytes(request));
+        assertFalse("Message should not be decoded yet", lazyMessage.isDecoded());
+        assertEquals("Header should be available", header, lazyMessage.getHeader());
+
+        Object object = lazyMessage.get();
+        assertTrue("Message should be decoded", lazyMessage.isDecoded());
+        assertTrue("Message should be a request", object instanceof DummyRequest);
+        assertEquals("Exchange id is not the same", request.getExchangeId(), ((DummyRequest) object).getExchangeId());
+        assertSame("Message should only be decoded once", object, lazyMessage.get());
+    }
+
+    @Test(expected = SecurityException.class)
+    public void testHeaderMismatch()
+            throws IOException, ClassNotFoundException {
+        DummyRequest request = new DummyRequest(UUID.randomUUID(), null, new ArrayList<>());
+        MessageHeader header = MessageHeader.create(new DummyResponse(request.getExchangeId(), null, null), USERNAME, CLIENT_DEVICE_ID);
+
+        new LazyMessage(header, ByteSerializer.toBytes(request)).get();
+    }
+
+    @Test
+    public void testAccept() {
+        ObjectDataReplyHandler objectDataReplyHandler = new ObjectDataReplyHandler(null);
+        MessageHeader header = MessageHeader.create(new DummyRequest(UUID.randomUUID(), null, new ArrayList<>()), USERNAME, CLIENT_DEVICE_ID);
+
+        assertFalse("Request without handler should be dropped", objectDataReplyHandler.accept(null, header));
+
+        objectDataReplyHandler.addRequestCallbackHandler(DummyRequest.class, DummyRequestHandler.class);
+        assertTrue("Request with handler should be accepted", objectDataReplyHandler.accept(null, header));
+    }
+}
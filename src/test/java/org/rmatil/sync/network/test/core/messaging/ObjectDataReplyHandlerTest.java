@@ -2,20 +2,35 @@ package org.rmatil.sync.network.test.core.messaging;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.rmatil.sync.network.api.INode;
 import org.rmatil.sync.network.api.IRequest;
 import org.rmatil.sync.network.api.IRequestCallback;
+import org.rmatil.sync.network.api.IResponse;
 import org.rmatil.sync.network.api.IResponseCallback;
+import org.rmatil.sync.network.api.ISyncRequestCallback;
 import org.rmatil.sync.network.core.messaging.ObjectDataReplyHandler;
+import org.rmatil.sync.network.core.model.CancelRequest;
+import org.rmatil.sync.network.core.model.ChunkBitmap;
+import org.rmatil.sync.network.core.model.ClientDevice;
+import org.rmatil.sync.network.core.model.FileChunk;
 import org.rmatil.sync.network.test.core.DummyNetworkHandler;
 import org.rmatil.sync.network.test.core.DummyRequest;
 import org.rmatil.sync.network.test.core.DummyRequestHandler;
+import org.rmatil.sync.network.test.core.DummyResponse;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 
 public class ObjectDataReplyHandlerTest {
@@ -61,4 +76,108 @@ public class ObjectDataReplyHandlerTest {
         assertEquals("Response Callbacks are not equal", responseCallbackHandlers, objectDataReplyHandler.getResponseCallbackHandlers());
         assertEquals("Request Callbacks are not equal", requestCallbackHandlers, objectDataReplyHandler.getRequestCallbackHandlers());
     }
+
+    @Test
+    public void testSyncRequestCallback()
+            throws Exception {
+        ObjectDataReplyHandler syncReplyHandler = new ObjectDataReplyHandler(null);
+        syncReplyHandler.addSyncRequestCallbackHandler(DummyRequest.class, DummySyncRequestCallback.class);
+        assertEquals("DummySyncRequestCallback should be registered", DummySyncRequestCallback.class, syncReplyHandler.getSyncRequestCallbackHandlers().get(DummyRequest.class));
+
+        UUID exchangeId = UUID.randomUUID();
+        IResponse response = syncReplyHandler.reply(null, new DummyRequest(exchangeId, null, new ArrayList<>()));
+
+        assertNotNull("Response should be returned directly", response);
+        assertEquals("Response should belong to the request", exchangeId, response.getExchangeId());
+
+        syncReplyHandler.removeSyncRequestCallbackHandler(DummyRequest.class);
+        assertTrue("DummySyncRequestCallback should be unregistered", syncReplyHandler.getSyncRequestCallbackHandlers().isEmpty());
+    }
+
+    @Test
+    public void testCancel()
+            throws Exception {
+        ObjectDataReplyHandler cancelReplyHandler = new ObjectDataReplyHandler(null);
+        cancelReplyHandler.addRequestCallbackHandler(DummyRequest.class, BlockingRequestCallback.class);
+
+        ClientDevice clientDevice = new ClientDevice("Norman Gordon", UUID.randomUUID(), null);
+        UUID exchangeId = UUID.randomUUID();
+
+        BlockingRequestCallback.started = new CountDownLatch(1);
+        BlockingRequestCallback.interrupted = new CountDownLatch(1);
+
+        cancelReplyHandler.reply(null, new DummyRequest(exchangeId, clientDevice, new ArrayList<>()));
+        assertTrue("Request callback should have been started", BlockingRequestCallback.started.await(10, TimeUnit.SECONDS));
+
+        // only the requesting client may cancel its exchange
+        cancelReplyHandler.reply(null, new CancelRequest(exchangeId, new ClientDevice("Norman Gordon", UUID.randomUUID(), null), new ArrayList<>()));
+        assertFalse("Exchange should not be cancelled by another client", cancelReplyHandler.isCancelled(clientDevice.getClientDeviceId(), exchangeId));
+
+        cancelReplyHandler.reply(null, new CancelRequest(exchangeId, clientDevice, new ArrayList<>()));
+        assertTrue("Exchange should be cancelled", cancelReplyHandler.isCancelled(clientDevice.getClientDeviceId(), exchangeId));
+        assertTrue("Running request callback should have been interrupted", BlockingRequestCallback.interrupted.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFailedFileChunkIsNotMarked()
+            throws Exception {
+        ObjectDataReplyHandler chunkReplyHandler = new ObjectDataReplyHandler(null);
+        UUID exchangeId = UUID.randomUUID();
+
+        chunkReplyHandler.addFileChunkCallback(exchangeId, fileChunk -> {
+            if (0 == fileChunk.getChunkCounter()) {
+                throw new IOException("Disk full");
+            }
+        });
+
+        try {
+            chunkReplyHandler.reply(null, new FileChunk(exchangeId, null, new ArrayList<>(), 0, 2, 0, 2, new byte[]{0}));
+            fail("Failure of the chunk callback should be propagated");
+        } catch (IOException e) {
+            // expected
+        }
+
+        chunkReplyHandler.reply(null, new FileChunk(exchangeId, null, new ArrayList<>(), 1, 2, 1, 2, new byte[]{1}));
+
+        ChunkBitmap progress = chunkReplyHandler.getChunkProgressTracker().getProgress(exchangeId);
+        assertFalse("Chunk which failed to be written should not be marked as received", progress.isSet(0));
+        assertTrue("Written chunk should be marked as received", progress.isSet(1));
+    }
+
+    public static class BlockingRequestCallback implements IRequestCallback {
+
+        protected static CountDownLatch started;
+
+        protected static CountDownLatch interrupted;
+
+        @Override
+        public void setNode(INode node) {
+        }
+
+        @Override
+        public void setRequest(IRequest request) {
+        }
+
+        @Override
+        public void run() {
+            started.countDown();
+            try {
+                Thread.sleep(60000L);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        }
+    }
+
+    public static class DummySyncRequestCallback implements ISyncRequestCallback {
+
+        @Override
+        public void setNode(INode node) {
+        }
+
+        @Override
+        public IResponse handle(IRequest request) {
+            return new DummyResponse(request.getExchangeId(), null, null);
+        }
+    }
 }
@@ -0,0 +1,68 @@
+package org.rmatil.sync.network.test.core.messaging;
+
+import org.junit.Test;
+import org.rmatil.sync.network.core.messaging.OrderedStage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class OrderedStageTest {
+
+    protected static final int NR_OF_KEYS = 4;
+
+    protected static final int NR_OF_TASKS = 500;
+
+    @Test
+    public void testOrderPerKey()
+            throws InterruptedException {
+        OrderedStage orderedStage = new OrderedStage("test", 4);
+
+        List<List<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < NR_OF_KEYS; i++) {
+            results.add(Collections.synchronizedList(new ArrayList<>()));
+        }
+
+        for (int i = 0; i < NR_OF_TASKS; i++) {
+            for (int key = 0; key < NR_OF_KEYS; key++) {
+                int task = i;
+                List<Integer> result = results.get(key);
+                orderedStage.submit(key, () -> result.add(task));
+            }
+        }
+
+        orderedStage.shutdown();
+        assertTrue("Stage should terminate", orderedStage.awaitTermination(10, TimeUnit.SECONDS));
+
+        for (List<Integer> result : results) {
+            assertEquals("All tasks should have been run", NR_OF_TASKS, result.size());
+            for (int i = 0; i < NR_OF_TASKS; i++) {
+                assertEquals("Tasks of the same key should be run in order", i, (int) result.get(i));
+            }
+        }
+
+        assertEquals("All tasks should be completed", NR_OF_KEYS * NR_OF_TASKS, orderedStage.getMetrics().getNrOfCompletedTasks());
+        assertEquals("No task should be queued", 0, orderedStage.getMetrics().getQueueLength());
+    }
+
+    @Test
+    public void testFailingTask()
+            throws InterruptedException {
+        OrderedStage orderedStage = new OrderedStage("test", 1);
+        List<Integer> result = Collections.synchronizedList(new ArrayList<>());
+
+        orderedStage.submit("key", () -> {
+            throw new IllegalStateException("Expected failure");
+        });
+        orderedStage.submit("key", () -> result.add(1));
+
+        orderedStage.shutdown();
+        assertTrue("Stage should terminate", orderedStage.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals("Task after failing task should be run", 1, result.size());
+        assertEquals("Failed task should be counted", 1, orderedStage.getMetrics().getNrOfFailedTasks());
+    }
+}
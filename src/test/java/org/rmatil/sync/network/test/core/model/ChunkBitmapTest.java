@@ -0,0 +1,56 @@
+package org.rmatil.sync.network.test.core.model;
+
+import org.junit.Test;
+import org.rmatil.sync.network.core.model.ChunkBitmap;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ChunkBitmapTest {
+
+    @Test
+    public void testBitmap() {
+        ChunkBitmap chunkBitmap = new ChunkBitmap(130);
+
+        assertEquals("Total number of chunks is not the same", 130, chunkBitmap.getTotalNrOfChunks());
+        assertEquals("No chunk should be received", 0, chunkBitmap.getNrOfReceivedChunks());
+        assertFalse("Bitmap should not be complete", chunkBitmap.isComplete());
+
+        assertTrue("Chunk should be new", chunkBitmap.set(0));
+        assertTrue("Chunk should be new", chunkBitmap.set(64));
+        assertTrue("Chunk should be new", chunkBitmap.set(129));
+        assertFalse("Chunk should already be received", chunkBitmap.set(64));
+
+        assertTrue("Chunk should be received", chunkBitmap.isSet(129));
+        assertFalse("Chunk should not be received", chunkBitmap.isSet(1));
+        assertEquals("Three chunks should be received", 3, chunkBitmap.getNrOfReceivedChunks());
+        assertEquals("Missing chunks should not contain received chunks", 127, chunkBitmap.getMissingChunks().size());
+        assertFalse("Received chunk should not be missing", chunkBitmap.getMissingChunks().contains(64L));
+
+        ChunkBitmap copy = chunkBitmap.copy();
+        copy.set(1);
+        assertFalse("Copy should not modify the original", chunkBitmap.isSet(1));
+    }
+
+    @Test
+    public void testMissingChunks() {
+        ChunkBitmap chunkBitmap = new ChunkBitmap(5);
+        chunkBitmap.set(1);
+        chunkBitmap.set(3);
+
+        assertEquals("Missing chunks are not the same", Arrays.asList(0L, 2L, 4L), chunkBitmap.getMissingChunks());
+
+        chunkBitmap.set(0);
+        chunkBitmap.set(2);
+        chunkBitmap.set(4);
+
+        assertTrue("Bitmap should be complete", chunkBitmap.isComplete());
+        assertTrue("No chunk should be missing", chunkBitmap.getMissingChunks().isEmpty());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testOutOfBounds() {
+        new ChunkBitmap(5).set(5);
+    }
+}
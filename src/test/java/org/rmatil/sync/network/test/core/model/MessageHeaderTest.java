@@ -0,0 +1,120 @@
+package org.rmatil.sync.network.test.core.model;
+
+import org.junit.Test;
+import org.rmatil.sync.network.core.model.ChunkStatusRequest;
+import org.rmatil.sync.network.core.model.ClientDevice;
+import org.rmatil.sync.network.core.model.MessageBatch;
+import org.rmatil.sync.network.core.model.MessageHeader;
+import org.rmatil.sync.network.core.model.MessageKind;
+import org.rmatil.sync.network.core.model.Priority;
+import org.rmatil.sync.network.test.core.DummyRequest;
+import org.rmatil.sync.network.test.core.DummyResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class MessageHeaderTest {
+
+    protected static final String USERNAME = "Norman Gordon";
+
+    protected static final UUID CLIENT_DEVICE_ID = UUID.randomUUID();
+
+    @Test
+    public void testCreate() {
+        UUID exchangeId = UUID.randomUUID();
+
+        MessageHeader requestHeader = MessageHeader.create(new DummyRequest(exchangeId, null, new ArrayList<>()), USERNAME, CLIENT_DEVICE_ID);
+        assertEquals("Kind should be request", MessageKind.REQUEST, requestHeader.getMessageKind());
+        assertEquals("Exchange id is not the same", exchangeId, requestHeader.getExchangeId());
+        assertEquals("Username is not the same", USERNAME, requestHeader.getSenderUsername());
+        assertEquals("Client device id is not the same", CLIENT_DEVICE_ID, requestHeader.getSenderClientDeviceId());
+
+        MessageHeader responseHeader = MessageHeader.create(new DummyResponse(exchangeId, null, null), USERNAME, CLIENT_DEVICE_ID);
+        assertEquals("Kind should be response", MessageKind.RESPONSE, responseHeader.getMessageKind());
+
+        MessageHeader otherHeader = MessageHeader.create("Some object", USERNAME, CLIENT_DEVICE_ID);
+        assertEquals("Kind should be other", MessageKind.OTHER, otherHeader.getMessageKind());
+        assertNull("Exchange id should be null", otherHeader.getExchangeId());
+
+        MessageHeader batchHeader = MessageHeader.create(new MessageBatch(new ArrayList<>()), USERNAME, CLIENT_DEVICE_ID);
+        assertEquals("Kind should be batch", MessageKind.BATCH, batchHeader.getMessageKind());
+        assertEquals("Payload type should be the batch", MessageBatch.class.getName(), batchHeader.getPayloadType());
+
+        assertEquals("Undeclared priority should be normal", Priority.NORMAL, requestHeader.getPriority());
+        MessageHeader chunkStatusHeader = MessageHeader.create(new ChunkStatusRequest(exchangeId, null, new ArrayList<>(), exchangeId), USERNAME, CLIENT_DEVICE_ID);
+        assertEquals("Chunk status requests should be control messages", Priority.CONTROL, chunkStatusHeader.getPriority());
+    }
+
+    @Test
+    public void testMatches() {
+        UUID exchangeId = UUID.randomUUID();
+        MessageHeader header = MessageHeader.create(new DummyRequest(exchangeId, null, new ArrayList<>()), USERNAME, CLIENT_DEVICE_ID);
+
+        assertTrue("Header should match its request", header.matches(new DummyRequest(exchangeId, null, new ArrayList<>())));
+        assertFalse("Header should not match another exchange", header.matches(new DummyRequest(UUID.randomUUID(), null, new ArrayList<>())));
+        assertFalse("Header should not match a response", header.matches(new DummyResponse(exchangeId, null, null)));
+
+        ClientDevice clientDevice = new ClientDevice(USERNAME, CLIENT_DEVICE_ID, null);
+        assertTrue("Header should match a request of its sender", header.matches(new DummyRequest(exchangeId, clientDevice, new ArrayList<>())));
+        assertFalse("Header should not match a request of another user", header.matches(new DummyRequest(exchangeId, new ClientDevice("Piff Jenkins", CLIENT_DEVICE_ID, null), new ArrayList<>())));
+        assertFalse("Header should not match a request of another device", header.matches(new DummyRequest(exchangeId, new ClientDevice(USERNAME, UUID.randomUUID(), null), new ArrayList<>())));
+
+        MessageHeader responseHeader = MessageHeader.create(new DummyResponse(exchangeId, clientDevice, null), USERNAME, CLIENT_DEVICE_ID);
+        assertFalse("Header should not match a response of another device", responseHeader.matches(new DummyResponse(exchangeId, new ClientDevice(USERNAME, UUID.randomUUID(), null), null)));
+    }
+
+    @Test
+    public void testDeadline()
+            throws IOException {
+        DummyRequest request = new DummyRequest(UUID.randomUUID(), null, new ArrayList<>());
+
+        MessageHeader header = MessageHeader.create(request, USERNAME, CLIENT_DEVICE_ID);
+        assertEquals("Header should not have a deadline", 0L, header.getDeadline());
+        assertFalse("Header without deadline should never expire", header.isExpired());
+
+        MessageHeader futureHeader = MessageHeader.create(request, USERNAME, CLIENT_DEVICE_ID, System.currentTimeMillis() + 60000L);
+        assertFalse("Header should not be expired yet", futureHeader.isExpired());
+        assertTrue("Deadline should not affect matching", futureHeader.matches(request));
+        assertFalse("Deadline should be signed", Arrays.equals(header.toBytes(), futureHeader.toBytes()));
+
+        MessageHeader pastHeader = MessageHeader.create(request, USERNAME, CLIENT_DEVICE_ID, System.currentTimeMillis() - MessageHeader.CLOCK_SKEW_TOLERANCE - 1000L);
+        assertTrue("Header should be expired", pastHeader.isExpired());
+    }
+
+    @Test
+    public void testToBytes()
+            throws IOException {
+        UUID exchangeId = UUID.randomUUID();
+        MessageHeader header1 = new MessageHeader(exchangeId, MessageKind.REQUEST, DummyRequest.class.getName(), USERNAME, CLIENT_DEVICE_ID);
+        MessageHeader header2 = new MessageHeader(exchangeId, MessageKind.REQUEST, DummyRequest.class.getName(), USERNAME, CLIENT_DEVICE_ID);
+        MessageHeader header3 = new MessageHeader(exchangeId, MessageKind.RESPONSE, DummyResponse.class.getName(), USERNAME, CLIENT_DEVICE_ID);
+
+        assertArrayEquals("Equal headers should have the same bytes", header1.toBytes(), header2.toBytes());
+        assertFalse("Different headers should have different bytes", Arrays.equals(header1.toBytes(), header3.toBytes()));
+
+        byte[] plainData = new byte[]{1, 2, 3};
+        byte[] signedData = header1.prependTo(plainData);
+        assertEquals("Signed data should contain header and plain data", header1.toBytes().length + plainData.length, signedData.length);
+    }
+
+    @Test
+    public void testNonce()
+            throws IOException {
+        UUID exchangeId = UUID.randomUUID();
+        DummyRequest request = new DummyRequest(exchangeId, null, new ArrayList<>());
+
+        MessageHeader header = MessageHeader.create(request, new byte[]{1, 2, 3}, USERNAME, CLIENT_DEVICE_ID, 0L);
+        MessageHeader retryHeader = MessageHeader.create(request, new byte[]{1, 2, 3}, USERNAME, CLIENT_DEVICE_ID, 0L);
+        MessageHeader otherHeader = MessageHeader.create(request, new byte[]{4, 5, 6}, USERNAME, CLIENT_DEVICE_ID, 0L);
+
+        assertEquals("Retries should have the same message id", header.getMessageId(), retryHeader.getMessageId());
+        assertNotEquals("Messages of the same type with different content should have different nonces", header.getNonce(), otherHeader.getNonce());
+        assertNotEquals("Messages of the same type with different content should have different message ids", header.getMessageId(), otherHeader.getMessageId());
+        assertFalse("Nonce should be covered by the signature", Arrays.equals(header.toBytes(), otherHeader.toBytes()));
+        assertTrue("Nonce should not affect matching the message", otherHeader.matches(request));
+    }
+}
@@ -21,6 +21,7 @@ import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 
@@ -81,4 +82,15 @@ public class NodeLocationTest {
 
         assertThat("IPv6 address should not have a slash in it", nodeLocationIpV6.getIpAddress(), not(containsString("%")));
     }
+
+    @Test
+    public void testLeaseExpiration() {
+        long leaseExpiration = System.currentTimeMillis();
+        NodeLocation nodeLocation = new NodeLocation(user.getUserName(), clientId1, clientIpV4.getPeerAddress(), leaseExpiration);
+        NodeLocation unleasedLocation = new NodeLocation(user.getUserName(), clientId1, clientIpV4.getPeerAddress());
+
+        assertFalse("Lease should be kept while the clocks may be skewed", nodeLocation.isExpired(leaseExpiration + NodeLocation.CLOCK_SKEW_TOLERANCE - 1L));
+        assertTrue("Lease should expire after the clock skew tolerance", nodeLocation.isExpired(leaseExpiration + NodeLocation.CLOCK_SKEW_TOLERANCE));
+        assertFalse("Location without lease should never expire", unleasedLocation.isExpired(Long.MAX_VALUE));
+    }
 }